@@ -7,6 +7,7 @@
 package org.h2.command;
 
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import org.h2.constant.ErrorCode;
 import org.h2.engine.Constants;
@@ -17,6 +18,7 @@ import org.h2.message.DbException;
 import org.h2.message.Trace;
 import org.h2.result.ResultInterface;
 import org.h2.util.MathUtils;
+import org.h2.value.Value;
 
 /**
  * Represents a SQL statement. This object is only used on the server side.
@@ -291,6 +293,27 @@ public abstract class Command implements CommandInterface {
         }
     }
 
+    @Override
+    public int[] executeBatchUpdate(ArrayList<Value[]> batchParameters,
+            ArrayList<DbException> exceptions) {
+        int size = batchParameters.size();
+        int[] result = new int[size];
+        ArrayList<? extends ParameterInterface> parameters = getParameters();
+        for (int i = 0; i < size; i++) {
+            Value[] set = batchParameters.get(i);
+            for (int j = 0; j < set.length; j++) {
+                parameters.get(j).setValue(set[j], false);
+            }
+            try {
+                result[i] = executeUpdate();
+            } catch (Exception e) {
+                exceptions.add(DbException.convert(e));
+                result[i] = Statement.EXECUTE_FAILED;
+            }
+        }
+        return result;
+    }
+
     private long filterConcurrentUpdate(DbException e, long start) {
         if (e.getErrorCode() != ErrorCode.CONCURRENT_UPDATE_1) {
             throw e;
@@ -7,6 +7,7 @@
 package org.h2.command;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import org.h2.api.DatabaseEventListener;
 import org.h2.expression.Parameter;
 import org.h2.expression.ParameterInterface;
@@ -51,8 +52,10 @@ class CommandContainer extends Command {
             prepared.setModificationMetaId(0);
             String sql = prepared.getSQL();
             ArrayList<Parameter> oldParams = prepared.getParameters();
+            HashMap<String, Double> feedback = prepared.getRowCountFeedback();
             Parser parser = new Parser(session);
             prepared = parser.parse(sql);
+            prepared.setRowCountFeedback(feedback);
             long mod = prepared.getModificationMetaId();
             prepared.setModificationMetaId(0);
             ArrayList<Parameter> newParams = prepared.getParameters();
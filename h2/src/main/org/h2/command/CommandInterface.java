@@ -8,7 +8,9 @@ package org.h2.command;
 
 import java.util.ArrayList;
 import org.h2.expression.ParameterInterface;
+import org.h2.message.DbException;
 import org.h2.result.ResultInterface;
+import org.h2.value.Value;
 
 /**
  * Represents a SQL statement.
@@ -489,6 +491,19 @@ public interface CommandInterface {
      */
     int executeUpdate();
 
+    /**
+     * Execute the statement once for each set of parameters. If an execution
+     * fails, the exception is added to the list, and the remaining parameter
+     * sets are still executed.
+     *
+     * @param batchParameters the parameter values, one array per execution
+     * @param exceptions the list where the exceptions are added
+     * @return the update counts (Statement.EXECUTE_FAILED for each failed
+     *         execution)
+     */
+    int[] executeBatchUpdate(ArrayList<Value[]> batchParameters,
+            ArrayList<DbException> exceptions);
+
     /**
      * Close the statement.
      */
@@ -7,8 +7,11 @@
 package org.h2.command;
 
 import java.io.IOException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import org.h2.constant.SysProperties;
+import org.h2.engine.Constants;
+import org.h2.engine.PipelinedRequest;
 import org.h2.engine.SessionRemote;
 import org.h2.expression.ParameterInterface;
 import org.h2.expression.ParameterRemote;
@@ -24,7 +27,7 @@ import org.h2.value.Value;
  * Represents the client-side part of a SQL statement.
  * This class is not used in embedded mode.
  */
-public class CommandRemote implements CommandInterface {
+public class CommandRemote implements CommandInterface, PipelinedRequest {
 
     private final ArrayList<Transfer> transferList;
     private final ArrayList<ParameterInterface> parameters;
@@ -37,13 +40,29 @@ public class CommandRemote implements CommandInterface {
     private boolean readonly;
     private final int created;
 
+    /**
+     * Whether the prepare request was sent, but the response was not read yet.
+     */
+    private boolean pipelined;
+
+    /**
+     * The exception the server sent for a pipelined prepare request.
+     */
+    private DbException prepareError;
+
     public CommandRemote(SessionRemote session,
-            ArrayList<Transfer> transferList, String sql, int fetchSize) {
+            ArrayList<Transfer> transferList, String sql, int fetchSize,
+            boolean pipelined) {
         this.transferList = transferList;
         trace = session.getTrace();
         this.sql = sql;
         parameters = New.arrayList();
-        prepare(session, true);
+        if (pipelined && transferList.size() == 1 &&
+                session.getClientVersion() >= Constants.TCP_PROTOCOL_VERSION_16) {
+            prepareLater(session);
+        } else {
+            prepare(session, true);
+        }
         // set session late because prepare might fail - in this case we don't
         // need to close the object
         this.session = session;
@@ -56,45 +75,153 @@ public class CommandRemote implements CommandInterface {
         for (int i = 0, count = 0; i < transferList.size(); i++) {
             try {
                 Transfer transfer = transferList.get(i);
-                if (createParams) {
-                    s.traceOperation("SESSION_PREPARE_READ_PARAMS", id);
-                    transfer.
-                        writeInt(SessionRemote.SESSION_PREPARE_READ_PARAMS).
-                        writeInt(id).writeString(sql);
-                } else {
-                    s.traceOperation("SESSION_PREPARE", id);
-                    transfer.writeInt(SessionRemote.SESSION_PREPARE).
-                        writeInt(id).writeString(sql);
-                }
+                sendPrepare(s, transfer, createParams);
                 s.done(transfer);
-                isQuery = transfer.readBoolean();
-                readonly = transfer.readBoolean();
-                int paramCount = transfer.readInt();
-                if (createParams) {
-                    parameters.clear();
-                    for (int j = 0; j < paramCount; j++) {
-                        ParameterRemote p = new ParameterRemote(j);
-                        p.readMetaData(transfer);
-                        parameters.add(p);
-                    }
-                }
+                readPrepared(transfer, createParams);
             } catch (IOException e) {
                 s.removeServer(e, i--, ++count);
             }
         }
     }
 
+    /**
+     * Send the prepare request, but don't wait for the response. The session
+     * reads the response before it reads the next response, which is usually
+     * the response of the first execute request. That way, preparing and
+     * executing the statement only needs one round trip.
+     *
+     * @param s the session
+     */
+    private void prepareLater(SessionRemote s) {
+        id = s.getNextId();
+        try {
+            sendPrepare(s, transferList.get(0), true);
+            pipelined = true;
+            s.addPipelinedRequest(this);
+        } catch (IOException e) {
+            s.removeServer(e, 0, 1);
+            prepare(s, true);
+        }
+    }
+
+    private void sendPrepare(SessionRemote s, Transfer transfer,
+            boolean createParams) throws IOException {
+        s.readPipelinedResponses(transfer);
+        if (createParams) {
+            s.traceOperation("SESSION_PREPARE_READ_PARAMS", id);
+            transfer.
+                writeInt(SessionRemote.SESSION_PREPARE_READ_PARAMS).
+                writeInt(id).writeString(sql);
+        } else {
+            s.traceOperation("SESSION_PREPARE", id);
+            transfer.writeInt(SessionRemote.SESSION_PREPARE).
+                writeInt(id).writeString(sql);
+        }
+    }
+
+    private void readPrepared(Transfer transfer, boolean createParams)
+            throws IOException {
+        isQuery = transfer.readBoolean();
+        readonly = transfer.readBoolean();
+        int paramCount = transfer.readInt();
+        if (createParams) {
+            parameters.clear();
+            for (int j = 0; j < paramCount; j++) {
+                ParameterRemote p = new ParameterRemote(j);
+                p.readMetaData(transfer);
+                parameters.add(p);
+            }
+        }
+    }
+
+    /**
+     * Read the response of the pipelined prepare request. If the statement
+     * could not be prepared, the exception is thrown when the command is used.
+     *
+     * @param s the session
+     * @param transfer the transfer object
+     */
+    @Override
+    public void readResponse(SessionRemote s, Transfer transfer)
+            throws IOException {
+        pipelined = false;
+        try {
+            s.readStatus(transfer);
+            readPrepared(transfer, true);
+        } catch (DbException e) {
+            prepareError = e;
+        }
+    }
+
+    /**
+     * Read the responses of pipelined requests (for example a block of rows
+     * that was requested ahead of time) before sending a request that may be
+     * large. Otherwise, the client and the server could both block while
+     * writing. The pipelined prepare request of this command is an exception,
+     * as its response is small.
+     *
+     * @param transfer the transfer object
+     */
+    private void readPipelinedResponses(Transfer transfer) throws IOException {
+        if (!pipelined) {
+            session.readPipelinedResponses(transfer);
+        }
+    }
+
+    /**
+     * Wait for the response of the pipelined prepare request, if it was not
+     * read yet.
+     */
+    private void checkPrepared() {
+        if (pipelined) {
+            pipelined = false;
+            try {
+                session.readPipelinedResponses(transferList.get(0));
+            } catch (IOException e) {
+                session.removeServer(e, 0, 1);
+            }
+        }
+        if (prepareError != null) {
+            throw prepareError;
+        }
+    }
+
+    /**
+     * Called after the response of an execute request was read, or if the
+     * server sent an exception. If the statement was prepared in the same
+     * round trip and that failed, the execute request failed as well; in
+     * this case, the exception of the prepare request is thrown, because it
+     * contains the reason.
+     *
+     * @param transfer the transfer object
+     */
+    private void done(Transfer transfer) throws IOException {
+        try {
+            session.done(transfer);
+        } catch (DbException e) {
+            if (prepareError != null) {
+                throw prepareError;
+            }
+            throw e;
+        }
+    }
+
     @Override
     public boolean isQuery() {
+        checkPrepared();
         return isQuery;
     }
 
     @Override
     public ArrayList<ParameterInterface> getParameters() {
+        checkPrepared();
         return parameters;
     }
 
     private void prepareIfRequired() {
+        if (prepareError != null) {
+            throw prepareError;
+        }
         if (session.getLastReconnect() != created) {
             // in this case we need to prepare again in every case
             id = Integer.MIN_VALUE;
@@ -109,7 +236,7 @@ public class CommandRemote implements CommandInterface {
     @Override
     public ResultInterface getMetaData() {
         synchronized (session) {
-            if (!isQuery) {
+            if (!isQuery()) {
                 return null;
             }
             int objectId = session.getNextId();
@@ -145,6 +272,7 @@ public class CommandRemote implements CommandInterface {
                 prepareIfRequired();
                 Transfer transfer = transferList.get(i);
                 try {
+                    readPipelinedResponses(transfer);
                     session.traceOperation("COMMAND_EXECUTE_QUERY", id);
                     transfer.writeInt(SessionRemote.COMMAND_EXECUTE_QUERY).
                         writeInt(id).writeInt(objectId).writeInt(maxRows);
@@ -156,7 +284,7 @@ public class CommandRemote implements CommandInterface {
                     }
                     transfer.writeInt(fetch);
                     sendParameters(transfer);
-                    session.done(transfer);
+                    done(transfer);
                     int columnCount = transfer.readInt();
                     if (result != null) {
                         result.close();
@@ -186,10 +314,11 @@ public class CommandRemote implements CommandInterface {
                 prepareIfRequired();
                 Transfer transfer = transferList.get(i);
                 try {
+                    readPipelinedResponses(transfer);
                     session.traceOperation("COMMAND_EXECUTE_UPDATE", id);
                     transfer.writeInt(SessionRemote.COMMAND_EXECUTE_UPDATE).writeInt(id);
                     sendParameters(transfer);
-                    session.done(transfer);
+                    done(transfer);
                     updateCount = transfer.readInt();
                     autoCommit = transfer.readBoolean();
                 } catch (IOException e) {
@@ -203,6 +332,84 @@ public class CommandRemote implements CommandInterface {
         }
     }
 
+    @Override
+    public int[] executeBatchUpdate(ArrayList<Value[]> batchParameters,
+            ArrayList<DbException> exceptions) {
+        if (session.getClientVersion() < Constants.TCP_PROTOCOL_VERSION_15 ||
+                !isSet(batchParameters)) {
+            // the server doesn't support batches, or a parameter is not set
+            // (the error is reported per execution): one round trip each
+            int size = batchParameters.size();
+            int[] result = new int[size];
+            for (int i = 0; i < size; i++) {
+                Value[] set = batchParameters.get(i);
+                for (int j = 0; j < set.length; j++) {
+                    parameters.get(j).setValue(set[j], false);
+                }
+                try {
+                    result[i] = executeUpdate();
+                } catch (DbException e) {
+                    exceptions.add(e);
+                    result[i] = Statement.EXECUTE_FAILED;
+                }
+            }
+            return result;
+        }
+        synchronized (session) {
+            int[] result = null;
+            ArrayList<DbException> list = null;
+            boolean autoCommit = false;
+            for (int i = 0, count = 0; i < transferList.size(); i++) {
+                prepareIfRequired();
+                Transfer transfer = transferList.get(i);
+                try {
+                    readPipelinedResponses(transfer);
+                    session.traceOperation("COMMAND_EXECUTE_BATCH", id);
+                    transfer.writeInt(SessionRemote.COMMAND_EXECUTE_BATCH).
+                            writeInt(id).writeInt(batchParameters.size());
+                    for (Value[] set : batchParameters) {
+                        transfer.writeInt(set.length);
+                        for (Value v : set) {
+                            transfer.writeValue(v);
+                        }
+                    }
+                    session.done(transfer);
+                    result = new int[transfer.readInt()];
+                    for (int j = 0; j < result.length; j++) {
+                        result[j] = transfer.readInt();
+                    }
+                    int errorCount = transfer.readInt();
+                    list = New.arrayList(errorCount);
+                    for (int j = 0; j < errorCount; j++) {
+                        list.add(DbException.convert(
+                                SessionRemote.readException(transfer)));
+                    }
+                    autoCommit = transfer.readBoolean();
+                } catch (IOException e) {
+                    session.removeServer(e, i--, ++count);
+                }
+            }
+            if (list != null) {
+                exceptions.addAll(list);
+            }
+            session.setAutoCommitFromServer(autoCommit);
+            session.autoCommitIfCluster();
+            session.readSessionState();
+            return result;
+        }
+    }
+
+    private static boolean isSet(ArrayList<Value[]> batchParameters) {
+        for (Value[] set : batchParameters) {
+            for (Value v : set) {
+                if (v == null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     private void checkParameters() {
         for (ParameterInterface p : parameters) {
             p.checkSet();
@@ -256,7 +463,7 @@ public class CommandRemote implements CommandInterface {
 
     @Override
     public String toString() {
-        return sql + Trace.formatParams(getParameters());
+        return sql + Trace.formatParams(parameters);
     }
 
     @Override
@@ -123,6 +123,7 @@ import org.h2.result.SortOrder;
 import org.h2.schema.Schema;
 import org.h2.schema.Sequence;
 import org.h2.table.Column;
+import org.h2.table.ColumnStatistics;
 import org.h2.table.FunctionTable;
 import org.h2.table.IndexColumn;
 import org.h2.table.RangeTable;
@@ -1189,7 +1190,14 @@ public class Parser {
             }
         }
         alias = readFromAlias(alias);
-        return new TableFilter(session, table, alias, rightsChecked, currentSelect);
+        TableFilter filter = new TableFilter(session, table, alias, rightsChecked, currentSelect);
+        if (readIf("TABLESAMPLE")) {
+            read("(");
+            filter.setSampleSize(readExpression().optimize(session));
+            read("ROWS");
+            read(")");
+        }
+        return filter;
     }
 
     private String readFromAlias(String alias) {
@@ -1197,8 +1205,9 @@ public class Parser {
             alias = readAliasIdentifier();
         } else if (currentTokenType == IDENTIFIER) {
             // left and right are not keywords (because they are functions as
-            // well)
-            if (!isToken("LEFT") && !isToken("RIGHT") && !isToken("FULL")) {
+            // well), and neither is tablesample
+            if (!isToken("LEFT") && !isToken("RIGHT") && !isToken("FULL") &&
+                    !isToken("TABLESAMPLE")) {
                 alias = readAliasIdentifier();
             }
         }
@@ -3784,6 +3793,10 @@ public class Parser {
             int value = getPositiveInt();
             column.setSelectivity(value);
         }
+        if (readIf("STATISTICS")) {
+            Value v = readExpression().optimize(session).getValue(session);
+            column.setStatistics(ColumnStatistics.get(column.getType(), v));
+        }
         String comment = readCommentIf();
         if (comment != null) {
             column.setComment(comment);
@@ -4051,6 +4064,19 @@ public class Parser {
             command.setComment(readCommentIf());
             read("(");
             command.setIndexColumns(parseIndexColumnList());
+            if (readIf("SELECTIVITY")) {
+                read("(");
+                ArrayList<Integer> list = New.arrayList();
+                do {
+                    list.add(getPositiveInt());
+                } while (readIf(","));
+                read(")");
+                int[] selectivity = new int[list.size()];
+                for (int i = 0; i < selectivity.length; i++) {
+                    selectivity[i] = list.get(i);
+                }
+                command.setSelectivity(selectivity);
+            }
             return command;
         }
     }
@@ -4843,6 +4869,14 @@ public class Parser {
             readIfEqualOrTo();
             read();
             return new NoOperation(session);
+        } else if (readIf("NETWORK_COMPRESSION")) {
+            readIfEqualOrTo();
+            read();
+            return new NoOperation(session);
+        } else if (readIf("STATEMENT_POOL_SIZE")) {
+            readIfEqualOrTo();
+            read();
+            return new NoOperation(session);
         } else if (readIf("ASSERT")) {
             readIfEqualOrTo();
             read();
@@ -7,6 +7,7 @@
 package org.h2.command;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import org.h2.api.DatabaseEventListener;
 import org.h2.constant.ErrorCode;
 import org.h2.engine.Database;
@@ -51,6 +52,20 @@ public abstract class Prepared {
      */
     protected boolean prepareAlways;
 
+    /**
+     * The number of rows per index lookup that were actually read when
+     * executing this statement, by table alias and index name. This is used
+     * instead of the estimate when optimizing the statement again. May be
+     * null.
+     */
+    protected HashMap<String, Double> rowCountFeedback;
+
+    /**
+     * If the statement should be optimized again, because the number of rows
+     * that were read was very different from the estimate.
+     */
+    protected boolean reoptimize;
+
     private long modificationMetaId;
     private Command command;
     private int objectId;
@@ -111,7 +126,29 @@ public abstract class Prepared {
         }
         // parser: currently, compiling every create/drop/... twice
         // because needRecompile return true even for the first execution
-        return prepareAlways || modificationMetaId < db.getModificationMetaId() || db.getSettings().recompileAlways;
+        return prepareAlways || reoptimize || modificationMetaId < db.getModificationMetaId() ||
+                db.getSettings().recompileAlways;
+    }
+
+    /**
+     * Get the number of rows per index lookup that were actually read when
+     * executing this statement.
+     *
+     * @return the row counts by table alias and index name, or null
+     */
+    public HashMap<String, Double> getRowCountFeedback() {
+        return rowCountFeedback;
+    }
+
+    /**
+     * Set the number of rows per index lookup that were read when executing
+     * an earlier version of this statement. This method must be called before
+     * the statement is prepared.
+     *
+     * @param rowCountFeedback the row counts by table alias and index name
+     */
+    public void setRowCountFeedback(HashMap<String, Double> rowCountFeedback) {
+        this.rowCountFeedback = rowCountFeedback;
     }
 
     /**
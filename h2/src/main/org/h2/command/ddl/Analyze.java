@@ -9,16 +9,27 @@ package org.h2.command.ddl;
 import java.util.ArrayList;
 import org.h2.command.CommandInterface;
 import org.h2.command.Prepared;
+import org.h2.engine.AnalyzeThread;
+import org.h2.engine.Constants;
 import org.h2.engine.Database;
 import org.h2.engine.Right;
 import org.h2.engine.Session;
 import org.h2.expression.Parameter;
+import org.h2.index.BaseIndex;
+import org.h2.index.Index;
+import org.h2.index.IndexType;
+import org.h2.index.MultiVersionIndex;
+import org.h2.mvstore.db.MVTable;
 import org.h2.result.ResultInterface;
 import org.h2.table.Column;
+import org.h2.table.ColumnStatistics;
 import org.h2.table.Table;
+import org.h2.util.New;
 import org.h2.util.StatementBuilder;
 import org.h2.value.Value;
+import org.h2.value.ValueArray;
 import org.h2.value.ValueInt;
+import org.h2.value.ValueNull;
 
 /**
  * This class represents the statement
@@ -56,6 +67,25 @@ public class Analyze extends DefineCommand {
      * @param manual whether the command was called by the user
      */
     public static void analyzeTable(Session session, Table table, int sample, boolean manual) {
+        analyzeTable(session, table, sample, manual, null);
+    }
+
+    /**
+     * Analyze this table in the background. One query per column is used,
+     * and the thread pauses between the queries.
+     *
+     * @param session the session
+     * @param table the table
+     * @param sample the number of sample rows
+     * @param thread the background thread
+     */
+    public static void analyzeTable(Session session, Table table, int sample,
+            AnalyzeThread thread) {
+        analyzeTable(session, table, sample, false, thread);
+    }
+
+    private static void analyzeTable(Session session, Table table, int sample,
+            boolean manual, AnalyzeThread thread) {
         if (!(table.getTableType().equals(Table.TABLE)) || table.isHidden() || session == null) {
             return;
         }
@@ -82,10 +112,22 @@ public class Analyze extends DefineCommand {
             return;
         }
         Database db = session.getDatabase();
-        StatementBuilder buff = new StatementBuilder("SELECT ");
+        // the HISTOGRAM aggregate keeps a limited number of distinct values;
+        // if the sample is larger, the histograms are built from a sample of
+        // that size, so that no values are dropped
+        int histogramRows = Constants.SELECTIVITY_DISTINCT_COUNT;
+        boolean separateHistogram = false;
+        if (sample <= 0 || sample > histogramRows) {
+            for (Column col : table.getColumns()) {
+                separateHistogram |= isHistogramSupported(col.getType());
+            }
+        }
+        // the expressions of the query, and of the histogram query
+        ArrayList<String> list = New.arrayList();
+        ArrayList<String> histogramList = New.arrayList();
         Column[] columns = table.getColumns();
         for (Column col : columns) {
-            buff.appendExceptFirst(", ");
+            StringBuilder buff = new StringBuilder();
             int type = col.getType();
             if (type == Value.BLOB || type == Value.CLOB) {
                 // can not index LOB columns, so calculating
@@ -94,26 +136,83 @@ public class Analyze extends DefineCommand {
             } else {
                 buff.append("SELECTIVITY(").append(col.getSQL()).append(')');
             }
+            if (isHistogramSupported(type) && !separateHistogram) {
+                buff.append(", HISTOGRAM(").append(col.getSQL()).append(')');
+            } else {
+                buff.append(", NULL");
+            }
+            list.add(buff.toString());
+            histogramList.add(isHistogramSupported(type) ?
+                    "HISTOGRAM(" + col.getSQL() + ")" : null);
         }
-        buff.append(" FROM ").append(table.getSQL());
-        if (sample > 0) {
-            buff.append(" LIMIT ? SAMPLE_SIZE ? ");
+        // the selectivity of the leading columns of multi-column indexes
+        ArrayList<BaseIndex> indexes = New.arrayList();
+        ArrayList<String> prefixes = New.arrayList();
+        for (Index index : table.getIndexes()) {
+            if (index instanceof MultiVersionIndex) {
+                index = ((MultiVersionIndex) index).getBaseIndex();
+            }
+            Column[] cols = index.getColumns();
+            IndexType type = index.getIndexType();
+            if (!(index instanceof BaseIndex) || cols.length < 2 ||
+                    type.isScan() || type.isSpatial() ||
+                    index.getCreateSQL() == null) {
+                continue;
+            }
+            indexes.add((BaseIndex) index);
+            for (int i = 2; i <= cols.length; i++) {
+                String prefix = getColumnListSQL(cols, i);
+                if (!prefixes.contains(prefix)) {
+                    prefixes.add(prefix);
+                    list.add("SELECTIVITY(" + prefix + ")");
+                }
+            }
         }
-        String sql = buff.toString();
-        Prepared command = session.prepare(sql);
-        if (sample > 0) {
-            ArrayList<Parameter> params = command.getParameters();
-            params.get(0).setValue(ValueInt.get(1));
-            params.get(1).setValue(ValueInt.get(sample));
+        // tables of the MVStore can read a random sample without reading
+        // all rows, so the sample is not biased towards the first rows
+        boolean mvTable = table instanceof MVTable;
+        Value[] row = query(session, table, list, sample, mvTable, thread);
+        if (row == null) {
+            return;
+        }
+        if (separateHistogram) {
+            // if all rows are read anyway, a random sample is used as well
+            Value[] histograms = query(session, table, histogramList,
+                    histogramRows, mvTable || sample <= 0, thread);
+            if (histograms == null) {
+                return;
+            }
+            for (int j = 0; j < columns.length; j++) {
+                row[j * 2 + 1] = histograms[j];
+            }
         }
-        ResultInterface result = command.query(0);
-        result.next();
         for (int j = 0; j < columns.length; j++) {
-            int selectivity = result.currentRow()[j].getInt();
-            columns[j].setSelectivity(selectivity);
+            Column col = columns[j];
+            int selectivity = row[j * 2].getInt();
+            col.setSelectivity(selectivity);
+            Value histogram = row[j * 2 + 1];
+            if (histogram != ValueNull.INSTANCE) {
+                col.setStatistics(getStatistics(col.getType(), histogram));
+            }
+        }
+        for (BaseIndex index : indexes) {
+            Column[] cols = index.getColumns();
+            int[] selectivity = new int[cols.length];
+            selectivity[0] = cols[0].getSelectivity();
+            for (int i = 2; i <= cols.length; i++) {
+                int pos = columns.length * 2 +
+                        prefixes.indexOf(getColumnListSQL(cols, i));
+                selectivity[i - 1] = row[pos].getInt();
+            }
+            index.setPrefixSelectivity(selectivity);
         }
         if (manual) {
+            // the automatic update would use a smaller sample
+            db.cancelAnalyzeTableAuto(table);
             db.update(session, table);
+            for (BaseIndex index : indexes) {
+                db.update(session, index);
+            }
         } else {
             Session sysSession = db.getSystemSession();
             if (sysSession != session) {
@@ -122,11 +221,136 @@ public class Analyze extends DefineCommand {
                 // then we can't update the statistics because
                 // that would unlock all locked objects
                 db.update(sysSession, table);
+                for (BaseIndex index : indexes) {
+                    db.update(sysSession, index);
+                }
                 sysSession.commit(true);
             }
         }
     }
 
+    /**
+     * Run the query on the table, or on a sample of the table. If a
+     * background thread is set, one query per expression is run, and the
+     * thread pauses between the queries.
+     *
+     * @param session the session
+     * @param table the table
+     * @param list the expressions of the select list (null for NULL)
+     * @param sample the number of sample rows, or 0 for all rows
+     * @param randomSample whether the sample is random, or the first rows
+     * @param thread the background thread, or null
+     * @return the row of the result, or null if the thread stopped analyzing
+     *         the table
+     */
+    private static Value[] query(Session session, Table table,
+            ArrayList<String> list, int sample, boolean randomSample,
+            AnalyzeThread thread) {
+        if (thread == null) {
+            StatementBuilder buff = new StatementBuilder("SELECT ");
+            for (String e : list) {
+                buff.appendExceptFirst(", ");
+                buff.append(e == null ? "NULL" : e);
+            }
+            return query(session, table, buff.toString(), sample, randomSample);
+        }
+        ArrayList<Value> row = New.arrayList();
+        for (String e : list) {
+            if (e == null) {
+                row.add(ValueNull.INSTANCE);
+                continue;
+            }
+            if (!thread.pause(table)) {
+                return null;
+            }
+            for (Value v : query(session, table, "SELECT " + e, sample,
+                    randomSample)) {
+                row.add(v);
+            }
+        }
+        if (thread.isRemoved(table)) {
+            // the table was analyzed using a larger sample in the meantime
+            return null;
+        }
+        return row.toArray(new Value[row.size()]);
+    }
+
+    /**
+     * Run the query on the table, or on a sample of the table.
+     *
+     * @param session the session
+     * @param table the table
+     * @param select the select list, starting with SELECT
+     * @param sample the number of sample rows, or 0 for all rows
+     * @param randomSample whether the sample is random, or the first rows
+     * @return the row of the result
+     */
+    private static Value[] query(Session session, Table table, String select,
+            int sample, boolean randomSample) {
+        String sql = select + " FROM " + table.getSQL();
+        if (sample > 0) {
+            sql += randomSample ? " TABLESAMPLE(? ROWS)" : " LIMIT ? SAMPLE_SIZE ? ";
+        }
+        Prepared command = session.prepare(sql);
+        if (sample > 0) {
+            ArrayList<Parameter> params = command.getParameters();
+            if (randomSample) {
+                params.get(0).setValue(ValueInt.get(sample));
+            } else {
+                params.get(0).setValue(ValueInt.get(1));
+                params.get(1).setValue(ValueInt.get(sample));
+            }
+        }
+        ResultInterface result = command.query(0);
+        result.next();
+        Value[] row = result.currentRow();
+        result.close();
+        return row;
+    }
+
+    private static String getColumnListSQL(Column[] columns, int count) {
+        StatementBuilder buff = new StatementBuilder("(");
+        for (int i = 0; i < count; i++) {
+            buff.appendExceptFirst(", ");
+            buff.append(columns[i].getSQL());
+        }
+        return buff.append(')').toString();
+    }
+
+    private static boolean isHistogramSupported(int type) {
+        switch (type) {
+        case Value.BLOB:
+        case Value.CLOB:
+        case Value.ARRAY:
+        case Value.JAVA_OBJECT:
+        case Value.RESULT_SET:
+        case Value.GEOMETRY:
+            return false;
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * Create the column statistics from the result of the HISTOGRAM
+     * aggregate, which is an array of (value, count) pairs, sorted by value.
+     *
+     * @param type the data type of the column
+     * @param histogram the result of the aggregate
+     * @return the statistics, or null
+     */
+    private static ColumnStatistics getStatistics(int type, Value histogram) {
+        Value[] list = ((ValueArray) histogram).getList();
+        Value[] values = new Value[list.length];
+        long[] counts = new long[list.length];
+        for (int i = 0; i < list.length; i++) {
+            Value[] pair = ((ValueArray) list[i]).getList();
+            values[i] = pair[0];
+            counts[i] = pair[1].getLong();
+        }
+        return ColumnStatistics.create(type, values, counts);
+    }
+
     public void setTop(int top) {
         this.sampleRows = top;
     }
@@ -12,7 +12,10 @@ import org.h2.engine.Constants;
 import org.h2.engine.Database;
 import org.h2.engine.Right;
 import org.h2.engine.Session;
+import org.h2.index.BaseIndex;
+import org.h2.index.Index;
 import org.h2.index.IndexType;
+import org.h2.index.MultiVersionIndex;
 import org.h2.message.DbException;
 import org.h2.schema.Schema;
 import org.h2.table.IndexColumn;
@@ -30,6 +33,7 @@ public class CreateIndex extends SchemaCommand {
     private boolean primaryKey, unique, hash, spatial;
     private boolean ifNotExists;
     private String comment;
+    private int[] selectivity;
 
     public CreateIndex(Session session, Schema schema) {
         super(session, schema);
@@ -90,7 +94,19 @@ public class CreateIndex extends SchemaCommand {
             indexType = IndexType.createNonUnique(persistent, hash, spatial);
         }
         IndexColumn.mapColumns(indexColumns, table);
-        table.addIndex(session, indexName, id, indexColumns, indexType, create, comment);
+        Index index = table.addIndex(session, indexName, id, indexColumns, indexType, create, comment);
+        if (selectivity != null) {
+            if (index instanceof MultiVersionIndex) {
+                index = ((MultiVersionIndex) index).getBaseIndex();
+            }
+            if (index instanceof BaseIndex &&
+                    selectivity.length == indexColumns.length) {
+                ((BaseIndex) index).setPrefixSelectivity(selectivity);
+                if (!db.isStarting() && persistent) {
+                    db.update(session, index);
+                }
+            }
+        }
         return 0;
     }
 
@@ -114,6 +130,15 @@ public class CreateIndex extends SchemaCommand {
         this.comment = comment;
     }
 
+    /**
+     * Set the selectivity of the leading columns, as collected by ANALYZE.
+     *
+     * @param selectivity the selectivity of each prefix of the columns
+     */
+    public void setSelectivity(int[] selectivity) {
+        this.selectivity = selectivity;
+    }
+
     @Override
     public int getType() {
         return CommandInterface.CREATE_INDEX;
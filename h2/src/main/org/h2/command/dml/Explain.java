@@ -6,6 +6,7 @@
  */
 package org.h2.command.dml;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.Map.Entry;
@@ -141,6 +142,21 @@ public class Explain extends Prepared {
         return command.isReadOnly();
     }
 
+    @Override
+    public boolean needRecompile() {
+        return super.needRecompile() || command.needRecompile();
+    }
+
+    @Override
+    public HashMap<String, Double> getRowCountFeedback() {
+        return command.getRowCountFeedback();
+    }
+
+    @Override
+    public void setRowCountFeedback(HashMap<String, Double> rowCountFeedback) {
+        command.setRowCountFeedback(rowCountFeedback);
+    }
+
     @Override
     public int getType() {
         return CommandInterface.EXPLAIN;
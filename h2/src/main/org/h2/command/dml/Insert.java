@@ -8,12 +8,15 @@ package org.h2.command.dml;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 
 import org.h2.api.Trigger;
 import org.h2.command.Command;
 import org.h2.command.CommandInterface;
 import org.h2.command.Prepared;
 import org.h2.constant.ErrorCode;
+import org.h2.engine.DbObject;
+import org.h2.engine.FunctionAlias;
 import org.h2.engine.Right;
 import org.h2.engine.Session;
 import org.h2.engine.UndoLogRecord;
@@ -21,6 +24,7 @@ import org.h2.expression.Comparison;
 import org.h2.expression.ConditionAndOr;
 import org.h2.expression.Expression;
 import org.h2.expression.ExpressionColumn;
+import org.h2.expression.ExpressionVisitor;
 import org.h2.expression.Parameter;
 import org.h2.index.Index;
 import org.h2.message.DbException;
@@ -40,6 +44,11 @@ import org.h2.value.ValueNull;
  */
 public class Insert extends Prepared implements ResultTarget {
 
+    /**
+     * The maximum number of rows that are added to the table in one batch.
+     */
+    static final int BATCH_SIZE = 1000;
+
     private Table table;
     private Column[] columns;
     private final ArrayList<Expression[]> list = New.arrayList();
@@ -48,6 +57,18 @@ public class Insert extends Prepared implements ResultTarget {
     private int rowNumber;
     private boolean insertFromSelect;
 
+    /**
+     * Whether the values don't depend on the table, so that all rows can be
+     * evaluated before adding the first one.
+     */
+    private boolean independentValues;
+
+    /**
+     * The rows that are not yet added to the table, or null if rows are
+     * added one at a time.
+     */
+    private ArrayList<Row> batchRows;
+
     /**
      * for MySQL-style INSERT ... ON DUPLICATE KEY UPDATE ....
      */
@@ -127,30 +148,41 @@ public class Insert extends Prepared implements ResultTarget {
         int listSize = list.size();
         if (listSize > 0) {
             int columnLen = columns.length;
-            for (int x = 0; x < listSize; x++) {
-                session.startStatementWithinTransaction();
-                Row newRow = table.getTemplateRow();
-                Expression[] expr = list.get(x);
-                setCurrentRowNumber(x + 1);
-                for (int i = 0; i < columnLen; i++) {
-                    Column c = columns[i];
-                    int index = c.getColumnId();
-                    Expression e = expr[i];
-                    if (e != null) {
-                        // e can be null (DEFAULT)
-                        e = e.optimize(session);
-                        try {
-                            Value v = c.convert(e.getValue(session));
-                            newRow.setValue(index, v);
-                        } catch (DbException ex) {
-                            throw setRow(ex, x, getSQL(expr));
+            if (listSize > 1 && independentValues &&
+                    duplicateKeyAssignmentMap == null && table.canAddRows()) {
+                batchRows = New.arrayList();
+            }
+            try {
+                for (int x = 0; x < listSize; x++) {
+                    session.startStatementWithinTransaction();
+                    Row newRow = table.getTemplateRow();
+                    Expression[] expr = list.get(x);
+                    setCurrentRowNumber(x + 1);
+                    for (int i = 0; i < columnLen; i++) {
+                        Column c = columns[i];
+                        int index = c.getColumnId();
+                        Expression e = expr[i];
+                        if (e != null) {
+                            // e can be null (DEFAULT)
+                            e = e.optimize(session);
+                            try {
+                                Value v = c.convert(e.getValue(session));
+                                newRow.setValue(index, v);
+                            } catch (DbException ex) {
+                                throw setRow(ex, x, getSQL(expr));
+                            }
                         }
                     }
-                }
-                rowNumber++;
-                table.validateConvertUpdateSequence(session, newRow);
-                boolean done = table.fireBeforeRow(session, null, newRow);
-                if (!done) {
+                    rowNumber++;
+                    table.validateConvertUpdateSequence(session, newRow);
+                    boolean done = table.fireBeforeRow(session, null, newRow);
+                    if (done) {
+                        continue;
+                    }
+                    if (batchRows != null) {
+                        addToBatch(newRow);
+                        continue;
+                    }
                     table.lock(session, true, false);
                     try {
                         table.addRow(session, newRow);
@@ -160,6 +192,9 @@ public class Insert extends Prepared implements ResultTarget {
                     session.log(table, UndoLogRecord.INSERT, newRow);
                     table.fireAfterRow(session, null, newRow, false);
                 }
+                flushBatch();
+            } finally {
+                batchRows = null;
             }
         } else {
             table.lock(session, true, false);
@@ -167,9 +202,17 @@ public class Insert extends Prepared implements ResultTarget {
                 query.query(0, this);
             } else {
                 ResultInterface rows = query.query(0);
-                while (rows.next()) {
-                    Value[] r = rows.currentRow();
-                    addRow(r);
+                if (table.canAddRows()) {
+                    batchRows = New.arrayList();
+                }
+                try {
+                    while (rows.next()) {
+                        Value[] r = rows.currentRow();
+                        addRow(r);
+                    }
+                    flushBatch();
+                } finally {
+                    batchRows = null;
                 }
                 rows.close();
             }
@@ -194,13 +237,45 @@ public class Insert extends Prepared implements ResultTarget {
         }
         table.validateConvertUpdateSequence(session, newRow);
         boolean done = table.fireBeforeRow(session, null, newRow);
-        if (!done) {
+        if (done) {
+            // nothing to do
+        } else if (batchRows != null) {
+            addToBatch(newRow);
+        } else {
             table.addRow(session, newRow);
             session.log(table, UndoLogRecord.INSERT, newRow);
             table.fireAfterRow(session, null, newRow, false);
         }
     }
 
+    private void addToBatch(Row row) {
+        batchRows.add(row);
+        if (batchRows.size() >= BATCH_SIZE) {
+            flushBatch();
+        }
+    }
+
+    /**
+     * Add the rows of the batch to the table. The table and the indexes are
+     * updated once for all rows, and then the after row constraints are
+     * checked. All rows are added to the undo log before the first constraint
+     * is checked, so that a failing constraint removes the whole batch.
+     */
+    private void flushBatch() {
+        if (batchRows == null || batchRows.size() == 0) {
+            return;
+        }
+        table.lock(session, true, false);
+        table.addRows(session, batchRows);
+        for (Row row : batchRows) {
+            session.log(table, UndoLogRecord.INSERT, row);
+        }
+        for (Row row : batchRows) {
+            table.fireAfterRow(session, null, row, false);
+        }
+        batchRows.clear();
+    }
+
     @Override
     public int getRowCount() {
         return rowNumber;
@@ -276,6 +351,7 @@ public class Insert extends Prepared implements ResultTarget {
                     }
                 }
             }
+            independentValues = isIndependent(list, table);
         } else {
             query.prepare();
             if (query.getColumnCount() != columns.length) {
@@ -352,6 +428,34 @@ public class Insert extends Prepared implements ResultTarget {
         }
     }
 
+    /**
+     * Check if the values of a VALUES list can be evaluated before the rows
+     * are added, that is, they don't read from the table, and don't call
+     * user defined functions (which could read from the table).
+     *
+     * @param list the list of rows
+     * @param table the table
+     * @return true if they can
+     */
+    static boolean isIndependent(ArrayList<Expression[]> list, Table table) {
+        HashSet<DbObject> dependencies = New.hashSet();
+        ExpressionVisitor visitor = ExpressionVisitor.
+                getDependenciesVisitor(dependencies);
+        for (Expression[] expr : list) {
+            for (Expression e : expr) {
+                if (e != null) {
+                    e.isEverything(visitor);
+                }
+            }
+        }
+        for (DbObject obj : dependencies) {
+            if (obj == table || obj instanceof FunctionAlias) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private Index searchForUpdateIndex() {
         Index foundIndex = null;
         for (Index index : table.getIndexes()) {
@@ -7,6 +7,8 @@
 package org.h2.command.dml;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.TreeSet;
 import org.h2.api.Trigger;
 import org.h2.command.Command;
 import org.h2.command.CommandInterface;
@@ -25,6 +27,7 @@ import org.h2.table.Column;
 import org.h2.table.Table;
 import org.h2.util.New;
 import org.h2.util.StatementBuilder;
+import org.h2.value.CompareMode;
 import org.h2.value.Value;
 
 /**
@@ -40,6 +43,22 @@ public class Merge extends Prepared {
     private Query query;
     private Prepared update;
 
+    /**
+     * Whether the values don't depend on the table.
+     */
+    private boolean independentValues;
+
+    /**
+     * The rows that are not yet added to the table, or null if rows are
+     * added one at a time.
+     */
+    private ArrayList<Row> batchRows;
+
+    /**
+     * The rows of the batch, sorted by key.
+     */
+    private TreeSet<Row> batchKeys;
+
     public Merge(Session session) {
         super(session);
     }
@@ -83,7 +102,21 @@ public class Merge extends Prepared {
         session.getUser().checkRight(table, Right.INSERT);
         session.getUser().checkRight(table, Right.UPDATE);
         setCurrentRowNumber(0);
+        try {
+            count = mergeRows();
+        } finally {
+            batchRows = null;
+            batchKeys = null;
+        }
+        return count;
+    }
+
+    private int mergeRows() {
+        int count;
         if (list.size() > 0) {
+            if (list.size() > 1 && independentValues && table.canAddRows()) {
+                startBatch();
+            }
             count = 0;
             for (int x = 0, size = list.size(); x < size; x++) {
                 setCurrentRowNumber(x + 1);
@@ -106,11 +139,15 @@ public class Merge extends Prepared {
                 merge(newRow);
                 count++;
             }
+            flushBatch();
         } else {
             ResultInterface rows = query.query(0);
             count = 0;
             table.fire(session, Trigger.UPDATE | Trigger.INSERT, true);
             table.lock(session, true, false);
+            if (table.canAddRows()) {
+                startBatch();
+            }
             while (rows.next()) {
                 count++;
                 Value[] r = rows.currentRow();
@@ -128,12 +165,32 @@ public class Merge extends Prepared {
                 }
                 merge(newRow);
             }
+            flushBatch();
             rows.close();
             table.fire(session, Trigger.UPDATE | Trigger.INSERT, false);
         }
         return count;
     }
 
+    private void startBatch() {
+        final CompareMode compareMode = session.getDatabase().getCompareMode();
+        batchRows = New.arrayList();
+        batchKeys = new TreeSet<Row>(new Comparator<Row>() {
+            @Override
+            public int compare(Row r1, Row r2) {
+                for (Column c : keys) {
+                    int id = c.getColumnId();
+                    int comp = r1.getValue(id).compareTo(r2.getValue(id),
+                            compareMode);
+                    if (comp != 0) {
+                        return comp;
+                    }
+                }
+                return 0;
+            }
+        });
+    }
+
     private void merge(Row row) {
         ArrayList<Parameter> k = update.getParameters();
         for (int i = 0; i < columns.length; i++) {
@@ -151,43 +208,83 @@ public class Merge extends Prepared {
             Parameter p = k.get(columns.length + i);
             p.setValue(v);
         }
+        if (batchRows != null && batchKeys.contains(row)) {
+            // a row with this key is in the batch: it needs to be updated
+            flushBatch();
+        }
         int count = update.update();
         if (count == 0) {
             try {
                 table.validateConvertUpdateSequence(session, row);
                 boolean done = table.fireBeforeRow(session, null, row);
-                if (!done) {
+                if (done) {
+                    // nothing to do
+                } else if (batchRows != null) {
+                    batchRows.add(row);
+                    batchKeys.add(row);
+                    if (batchRows.size() >= Insert.BATCH_SIZE) {
+                        flushBatch();
+                    }
+                } else {
                     table.lock(session, true, false);
                     table.addRow(session, row);
                     session.log(table, UndoLogRecord.INSERT, row);
                     table.fireAfterRow(session, null, row, false);
                 }
             } catch (DbException e) {
-                if (e.getErrorCode() == ErrorCode.DUPLICATE_KEY_1) {
-                    // possibly a concurrent merge or insert
-                    Index index = (Index) e.getSource();
-                    if (index != null) {
-                        // verify the index columns match the key
-                        Column[] indexColumns = index.getColumns();
-                        boolean indexMatchesKeys = false;
-                        if (indexColumns.length <= keys.length) {
-                            for (int i = 0; i < indexColumns.length; i++) {
-                                if (indexColumns[i] != keys[i]) {
-                                    indexMatchesKeys = false;
-                                    break;
-                                }
-                            }
-                        }
-                        if (indexMatchesKeys) {
-                            throw DbException.get(ErrorCode.CONCURRENT_UPDATE_1, table.getName());
+                throw convertException(e);
+            }
+        } else if (count != 1) {
+            throw DbException.get(ErrorCode.DUPLICATE_KEY_1, table.getSQL());
+        }
+    }
+
+    /**
+     * Add the rows of the batch to the table. All rows are added to the undo
+     * log before the first after row constraint is checked.
+     */
+    private void flushBatch() {
+        if (batchRows == null || batchRows.size() == 0) {
+            return;
+        }
+        try {
+            table.lock(session, true, false);
+            table.addRows(session, batchRows);
+            for (Row row : batchRows) {
+                session.log(table, UndoLogRecord.INSERT, row);
+            }
+            for (Row row : batchRows) {
+                table.fireAfterRow(session, null, row, false);
+            }
+        } catch (DbException e) {
+            throw convertException(e);
+        }
+        batchRows.clear();
+        batchKeys.clear();
+    }
+
+    private DbException convertException(DbException e) {
+        if (e.getErrorCode() == ErrorCode.DUPLICATE_KEY_1) {
+            // possibly a concurrent merge or insert
+            Index index = (Index) e.getSource();
+            if (index != null) {
+                // verify the index columns match the key
+                Column[] indexColumns = index.getColumns();
+                boolean indexMatchesKeys = false;
+                if (indexColumns.length <= keys.length) {
+                    for (int i = 0; i < indexColumns.length; i++) {
+                        if (indexColumns[i] != keys[i]) {
+                            indexMatchesKeys = false;
+                            break;
                         }
                     }
                 }
-                throw e;
+                if (indexMatchesKeys) {
+                    return DbException.get(ErrorCode.CONCURRENT_UPDATE_1, table.getName());
+                }
             }
-        } else if (count != 1) {
-            throw DbException.get(ErrorCode.DUPLICATE_KEY_1, table.getSQL());
         }
+        return e;
     }
 
     @Override
@@ -256,6 +353,7 @@ public class Merge extends Prepared {
                     }
                 }
             }
+            independentValues = Insert.isIndependent(list, table);
         } else {
             query.prepare();
             if (query.getColumnCount() != columns.length) {
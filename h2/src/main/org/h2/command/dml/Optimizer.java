@@ -6,11 +6,14 @@
  */
 package org.h2.command.dml;
 
+import java.util.Arrays;
 import java.util.Random;
 import org.h2.engine.Session;
 import org.h2.expression.Expression;
 import org.h2.table.Plan;
 import org.h2.table.PlanItem;
+import org.h2.table.Table;
+import org.h2.table.TableBase;
 import org.h2.table.TableFilter;
 import org.h2.util.BitField;
 import org.h2.util.Permutations;
@@ -21,13 +24,14 @@ import org.h2.util.Permutations;
  */
 class Optimizer {
 
-    private static final int MAX_BRUTE_FORCE_FILTERS = 7;
+    private static final int MAX_DYNAMIC_FILTERS = 16;
     private static final int MAX_BRUTE_FORCE = 2000;
     private static final int MAX_GENETIC = 500;
     private long start;
+    private int maxTime;
     private BitField switched;
 
-    //  possible plans for filters, if using brute force:
+    //  possible plans for filters, if trying all permutations:
     //  1 filter 1 plan
     //  2 filters 2 plans
     //  3 filters 6 plans
@@ -76,16 +80,79 @@ class Optimizer {
 
     private void calculateBestPlan() {
         start = System.currentTimeMillis();
+        maxTime = session.getDatabase().getSettings().optimizeMaxTime;
         cost = -1;
         if (filters.length == 1) {
             testPlan(filters);
-        } else if (filters.length <= MAX_BRUTE_FORCE_FILTERS) {
-            calculateBruteForceAll();
+            return;
+        }
+        PlanCache cache = session.getDatabase().getPlanCache();
+        String key = cache == null ? null : getCacheKey();
+        Select select = filters[0].getSelect();
+        // if the estimates were wrong, the cached join order is not used
+        if (key != null && (select == null || select.getRowCountFeedback() == null)) {
+            TableFilter[] list = cache.get(key, filters);
+            if (list != null) {
+                testPlan(list);
+                return;
+            }
+        }
+        if (filters.length <= MAX_DYNAMIC_FILTERS) {
+            calculateDynamic();
         } else {
             calculateBruteForceSome();
             random = new Random(0);
             calculateGenetic();
         }
+        if (key != null) {
+            cache.put(key, filters, bestPlan.getFilters());
+        }
+    }
+
+    /**
+     * Get the key of this query in the plan cache.
+     *
+     * @return the key, or null if the join order can not be cached
+     */
+    private String getCacheKey() {
+        StringBuilder buff = new StringBuilder();
+        for (TableFilter f : filters) {
+            if (!appendCacheKey(buff, f)) {
+                return null;
+            }
+            buff.append(';');
+        }
+        if (condition != null) {
+            buff.append(" WHERE ").append(condition.getSQL());
+        }
+        return buff.toString();
+    }
+
+    private static boolean appendCacheKey(StringBuilder buff, TableFilter f) {
+        for (; f != null; f = f.getJoin()) {
+            Table t = f.getTable();
+            if (!(t instanceof TableBase) ||
+                    (t.isTemporary() && !t.isGlobalTemporary())) {
+                // views, function tables, and local temporary tables
+                // are not shared
+                return false;
+            }
+            buff.append(f.isJoinOuter() ? " LEFT " : " ").
+                append(t.getSQL()).append(' ').append(f.getTableAlias());
+            Expression on = f.getJoinCondition();
+            if (on != null) {
+                buff.append(" ON ").append(on.getSQL());
+            }
+            TableFilter n = f.getNestedJoin();
+            if (n != null) {
+                buff.append(" (");
+                if (!appendCacheKey(buff, n)) {
+                    return false;
+                }
+                buff.append(')');
+            }
+        }
+        return true;
     }
 
     private boolean canStop(int x) {
@@ -95,14 +162,63 @@ class Optimizer {
             if (cost >= 0 && 10 * t > cost) {
                 return true;
             }
+            if (cost >= 0 && t > maxTime) {
+                return true;
+            }
         }
         return false;
     }
 
-    private void calculateBruteForceAll() {
+    /**
+     * Find the best join order using dynamic programming. The cost factor of
+     * a table only depends on the set of tables that are read before it, so
+     * the best order of a set of tables is the best order of a smaller set
+     * plus one table. The cost of the best order of each set is only
+     * calculated once. A greedy plan is calculated first: it is used if the
+     * time is up, and sets that are already more expensive are not extended.
+     */
+    private void calculateDynamic() {
         TableFilter[] list = new TableFilter[filters.length];
-        Permutations<TableFilter> p = Permutations.create(filters, list);
-        for (int x = 0; !canStop(x) && p.next(); x++) {
+        calculateGreedy(list, 0);
+        testPlan(list);
+        int n = filters.length, full = (1 << n) - 1;
+        double[] costs = new double[full + 1];
+        byte[] last = new byte[full + 1];
+        Arrays.fill(costs, Double.POSITIVE_INFINITY);
+        costs[0] = 1;
+        Plan plan = new Plan(filters, n, condition);
+        for (int set = 0, x = 0; set < full; set++) {
+            double costSet = costs[set];
+            if (costSet >= cost) {
+                continue;
+            }
+            if (canStop(x++)) {
+                return;
+            }
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                if ((set & (1 << i)) != 0) {
+                    list[count++] = filters[i];
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                int next = set | (1 << i);
+                if (next != set) {
+                    double c = costSet * plan.calculateCostFactor(session,
+                            list, count, filters[i]);
+                    if (c < costs[next]) {
+                        costs[next] = c;
+                        last[next] = (byte) i;
+                    }
+                }
+            }
+        }
+        if (costs[full] < cost) {
+            for (int set = full, i = n - 1; set != 0; i--) {
+                int f = last[set];
+                list[i] = filters[f];
+                set &= ~(1 << f);
+            }
             testPlan(list);
         }
     }
@@ -112,36 +228,46 @@ class Optimizer {
         TableFilter[] list = new TableFilter[filters.length];
         Permutations<TableFilter> p = Permutations.create(filters, list, bruteForce);
         for (int x = 0; !canStop(x) && p.next(); x++) {
-            // find out what filters are not used yet
-            for (TableFilter f : filters) {
-                f.setUsed(false);
-            }
-            for (int i = 0; i < bruteForce; i++) {
-                list[i].setUsed(true);
-            }
-            // fill the remaining elements with the unused elements (greedy)
-            for (int i = bruteForce; i < filters.length; i++) {
-                double costPart = -1.0;
-                int bestPart = -1;
-                for (int j = 0; j < filters.length; j++) {
-                    if (!filters[j].isUsed()) {
-                        if (i == filters.length - 1) {
-                            bestPart = j;
-                            break;
-                        }
-                        list[i] = filters[j];
-                        Plan part = new Plan(list, i+1, condition);
-                        double costNow = part.calculateCost(session);
-                        if (costPart < 0 || costNow < costPart) {
-                            costPart = costNow;
-                            bestPart = j;
-                        }
+            calculateGreedy(list, bruteForce);
+            testPlan(list);
+        }
+    }
+
+    /**
+     * Fill the remaining elements of the list with the unused filters, each
+     * time using the filter that is the cheapest to read next (greedy).
+     *
+     * @param list the list of filters
+     * @param from the number of elements that are already set
+     */
+    private void calculateGreedy(TableFilter[] list, int from) {
+        // find out what filters are not used yet
+        for (TableFilter f : filters) {
+            f.setUsed(false);
+        }
+        for (int i = 0; i < from; i++) {
+            list[i].setUsed(true);
+        }
+        for (int i = from; i < filters.length; i++) {
+            double costPart = -1.0;
+            int bestPart = -1;
+            for (int j = 0; j < filters.length; j++) {
+                if (!filters[j].isUsed()) {
+                    if (i == filters.length - 1) {
+                        bestPart = j;
+                        break;
+                    }
+                    list[i] = filters[j];
+                    Plan part = new Plan(list, i+1, condition);
+                    double costNow = part.calculateCost(session);
+                    if (costPart < 0 || costNow < costPart) {
+                        costPart = costNow;
+                        bestPart = j;
                     }
                 }
-                filters[bestPart].setUsed(true);
-                list[i] = filters[bestPart];
             }
-            testPlan(list);
+            filters[bestPart].setUsed(true);
+            list[i] = filters[bestPart];
         }
     }
 
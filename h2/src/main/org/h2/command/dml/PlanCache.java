@@ -0,0 +1,142 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.command.dml;
+
+import org.h2.engine.Database;
+import org.h2.table.TableFilter;
+import org.h2.util.SmallLRUCache;
+
+/**
+ * A database level cache of the join orders chosen by the optimizer. It is
+ * shared by all sessions, so that a query that was already optimized in one
+ * session does not need to be optimized again in another session. The key
+ * is built from the tables, the join conditions, and the condition of the
+ * query. The cache is cleared when the database meta data changes, and an
+ * entry is not used if the row count of a table changed a lot.
+ */
+public class PlanCache {
+
+    private final Database database;
+    private final SmallLRUCache<String, Entry> map;
+    private long modificationMetaId = -1;
+    private long hits, misses;
+
+    /**
+     * A cached join order.
+     */
+    static class Entry {
+
+        /**
+         * The index of the filter (in the list of filters of the query) for
+         * each position in the join order.
+         */
+        int[] order;
+
+        /**
+         * The approximated row count of each table when the entry was
+         * created.
+         */
+        long[] rowCounts;
+    }
+
+    public PlanCache(Database database, int size) {
+        this.database = database;
+        this.map = SmallLRUCache.newInstance(size);
+    }
+
+    /**
+     * Get the cached join order for the given filters.
+     *
+     * @param key the key
+     * @param filters the filters (in the order of the query)
+     * @return the filters in the cached join order, or null if not found
+     */
+    public synchronized TableFilter[] get(String key, TableFilter[] filters) {
+        checkMetaId();
+        Entry e = map.get(key);
+        if (e == null || e.order.length != filters.length ||
+                !isRowCountSimilar(e.rowCounts, getRowCounts(filters))) {
+            misses++;
+            return null;
+        }
+        hits++;
+        TableFilter[] list = new TableFilter[filters.length];
+        for (int i = 0; i < list.length; i++) {
+            list[i] = filters[e.order[i]];
+        }
+        return list;
+    }
+
+    /**
+     * Add a join order to the cache.
+     *
+     * @param key the key
+     * @param filters the filters (in the order of the query)
+     * @param best the filters in the chosen join order
+     */
+    public synchronized void put(String key, TableFilter[] filters,
+            TableFilter[] best) {
+        checkMetaId();
+        Entry e = new Entry();
+        e.order = new int[best.length];
+        for (int i = 0; i < best.length; i++) {
+            for (int j = 0; j < filters.length; j++) {
+                if (filters[j] == best[i]) {
+                    e.order[i] = j;
+                    break;
+                }
+            }
+        }
+        e.rowCounts = getRowCounts(filters);
+        map.put(key, e);
+    }
+
+    private void checkMetaId() {
+        long id = database.getModificationMetaId();
+        if (id != modificationMetaId) {
+            map.clear();
+            modificationMetaId = id;
+        }
+    }
+
+    private static long[] getRowCounts(TableFilter[] filters) {
+        long[] rowCounts = new long[filters.length];
+        for (int i = 0; i < filters.length; i++) {
+            rowCounts[i] = filters[i].getTable().getRowCountApproximation();
+        }
+        return rowCounts;
+    }
+
+    private static boolean isRowCountSimilar(long[] a, long[] b) {
+        for (int i = 0; i < a.length; i++) {
+            long min = Math.min(a[i], b[i]), max = Math.max(a[i], b[i]);
+            if (max > 2 * min + 16) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of times a join order was found in the cache.
+     *
+     * @return the number of cache hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of times a join order was not found in the cache.
+     *
+     * @return the number of cache misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+}
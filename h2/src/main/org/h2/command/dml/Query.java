@@ -11,6 +11,7 @@ import java.util.HashSet;
 import org.h2.command.Prepared;
 import org.h2.constant.ErrorCode;
 import org.h2.engine.Database;
+import org.h2.engine.DbObject;
 import org.h2.engine.Session;
 import org.h2.expression.Alias;
 import org.h2.expression.Expression;
@@ -24,7 +25,9 @@ import org.h2.result.ResultTarget;
 import org.h2.result.SortOrder;
 import org.h2.table.ColumnResolver;
 import org.h2.table.Table;
+import org.h2.table.TableBase;
 import org.h2.table.TableFilter;
+import org.h2.table.TableView;
 import org.h2.util.New;
 import org.h2.value.Value;
 import org.h2.value.ValueInt;
@@ -66,6 +69,13 @@ public abstract class Query extends Prepared {
     private LocalResult lastResult;
     private Value[] lastParameters;
     private boolean cacheableChecked;
+    private boolean sharedCacheChecked;
+    private String sharedCacheSQL;
+
+    /**
+     * The tables that are read by the query, if it may use the shared cache.
+     */
+    private ArrayList<Table> sharedCacheTables;
 
     Query(Session session) {
         super(session);
@@ -311,13 +321,128 @@ public abstract class Query extends Prepared {
         }
         lastParameters = params;
         closeLastResult();
+        ResultCache cache = target == null ? getSharedResultCache() : null;
+        if (cache != null && !lockSharedCacheTables()) {
+            cache = null;
+        }
+        String key = null;
+        if (cache != null) {
+            key = getSharedResultCacheKey(params, limit);
+            LocalResult r = cache.get(session, key, this);
+            if (r != null) {
+                lastResult = r;
+                this.lastEvaluated = now;
+                lastLimit = limit;
+                return r;
+            }
+        }
         LocalResult r = queryWithoutCache(limit, target);
+        if (key != null) {
+            cache.put(session, key, r, now);
+        }
         lastResult = r;
         this.lastEvaluated = now;
         lastLimit = limit;
         return r;
     }
 
+    /**
+     * Get the result cache that is shared by all sessions, if this query may
+     * use it. Queries that are not deterministic, that use local temporary
+     * tables or system tables, and queries of sessions with uncommitted
+     * changes, don't use the shared cache. The cache is also not used in
+     * multi-version mode, as rows that are committed later on are not
+     * visible to the query, but don't change the modification id.
+     *
+     * @return the cache, or null
+     */
+    private ResultCache getSharedResultCache() {
+        Database db = session.getDatabase();
+        if (db.isMultiVersion() || session.hasPendingTransaction()) {
+            return null;
+        }
+        ResultCache cache = db.getResultCache();
+        if (cache == null) {
+            return null;
+        }
+        if (!sharedCacheChecked) {
+            sharedCacheChecked = true;
+            if (isEverything(ExpressionVisitor.DETERMINISTIC_VISITOR) &&
+                    isEverything(ExpressionVisitor.INDEPENDENT_VISITOR)) {
+                sharedCacheTables = getSharedTables();
+                if (sharedCacheTables != null) {
+                    sharedCacheSQL = getPlanSQL();
+                }
+            }
+        }
+        return sharedCacheSQL == null ? null : cache;
+    }
+
+    /**
+     * Get the tables that are read by this query.
+     *
+     * @return the tables, or null if the query reads local temporary tables
+     *         or system tables
+     */
+    private ArrayList<Table> getSharedTables() {
+        HashSet<DbObject> dependencies = New.hashSet();
+        isEverything(ExpressionVisitor.getDependenciesVisitor(dependencies));
+        ArrayList<Table> tables = New.arrayList();
+        for (DbObject obj : dependencies) {
+            if (obj instanceof Table) {
+                Table t = (Table) obj;
+                if (t.isTemporary() && !t.isGlobalTemporary()) {
+                    return null;
+                }
+                if (t instanceof TableBase) {
+                    tables.add(t);
+                } else if (!(t instanceof TableView)) {
+                    return null;
+                }
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Lock the tables of the query before the shared cache is used, so that
+     * a result is not read from the cache while another session has
+     * uncommitted changes that the query would have to wait for.
+     *
+     * @return false if the cache may not be used, because an MVStore
+     *         transaction of another session changed one of the tables
+     */
+    private boolean lockSharedCacheTables() {
+        boolean mvStore = false;
+        for (Table t : sharedCacheTables) {
+            t.lock(session, false, false);
+            mvStore |= t.isMVStore();
+        }
+        if (mvStore) {
+            for (Session s : session.getDatabase().getSessions(false)) {
+                if (s == session) {
+                    continue;
+                }
+                for (Table t : sharedCacheTables) {
+                    if (t.isMVStore() && s.hasUncommittedChanges(t)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private String getSharedResultCacheKey(Value[] params, int limit) {
+        StringBuilder buff = new StringBuilder(sharedCacheSQL);
+        buff.append("\n/* limit ").append(limit).append(" */");
+        for (Value v : params) {
+            buff.append("\n/* ").append(v.getType()).append(" */ ").
+                append(v.getSQL());
+        }
+        return buff.toString();
+    }
+
     private void closeLastResult() {
         if (lastResult != null) {
             lastResult.close();
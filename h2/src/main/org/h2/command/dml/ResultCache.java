@@ -0,0 +1,159 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.command.dml;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import org.h2.engine.Database;
+import org.h2.engine.Session;
+import org.h2.result.LocalResult;
+import org.h2.value.Value;
+
+/**
+ * A database level cache of query results. It is shared by all sessions, so
+ * that a query that was already executed in one session does not need to be
+ * executed again in another session, as long as the tables used by the query
+ * were not modified. The key is built from the plan of the query, the
+ * parameter values, and the limit. Only results that are kept in memory are
+ * cached, and the total number of rows of all cached results is limited.
+ */
+public class ResultCache {
+
+    private final Database database;
+    private final int maxRows;
+    private final LinkedHashMap<String, Entry> map =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long modificationMetaId = -1;
+    private int rows;
+    private long hits, misses;
+
+    /**
+     * A cached result.
+     */
+    static class Entry {
+
+        /**
+         * The result. It is never returned directly, only shallow copies.
+         */
+        LocalResult result;
+
+        /**
+         * The data modification id of the database when the query was
+         * executed.
+         */
+        long evaluated;
+    }
+
+    public ResultCache(Database database, int maxRows) {
+        this.database = database;
+        this.maxRows = maxRows;
+    }
+
+    /**
+     * Get the cached result of the given query.
+     *
+     * @param session the session
+     * @param key the key
+     * @param query the query
+     * @return a copy of the result, or null if not found
+     */
+    public synchronized LocalResult get(Session session, String key,
+            Query query) {
+        checkMetaId();
+        Entry e = map.get(key);
+        if (e != null) {
+            if (database.getModificationDataId() > e.evaluated &&
+                    query.getMaxDataModificationId() > e.evaluated) {
+                remove(key);
+            } else {
+                LocalResult r = e.result.createShallowCopy(session);
+                if (r != null) {
+                    hits++;
+                    r.reset();
+                    return r;
+                }
+                remove(key);
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Add a result to the cache. Results that are stored on disk, that
+     * contain LOB values, or that are too large are not added.
+     *
+     * @param session the session
+     * @param key the key
+     * @param result the result
+     * @param evaluated the data modification id of the database when the
+     *            query was executed
+     */
+    public synchronized void put(Session session, String key,
+            LocalResult result, long evaluated) {
+        int rowCount = result.getRowCount();
+        if (result.needToClose() || rowCount > maxRows / 4) {
+            return;
+        }
+        for (int i = 0, count = result.getVisibleColumnCount(); i < count; i++) {
+            int type = result.getColumnType(i);
+            if (type == Value.BLOB || type == Value.CLOB) {
+                return;
+            }
+        }
+        LocalResult copy = result.createShallowCopy(session);
+        if (copy == null) {
+            return;
+        }
+        checkMetaId();
+        remove(key);
+        Entry e = new Entry();
+        e.result = copy;
+        e.evaluated = evaluated;
+        map.put(key, e);
+        rows += rowCount;
+        for (Iterator<Entry> it = map.values().iterator(); rows > maxRows;) {
+            rows -= it.next().result.getRowCount();
+            it.remove();
+        }
+    }
+
+    private void remove(String key) {
+        Entry e = map.remove(key);
+        if (e != null) {
+            rows -= e.result.getRowCount();
+        }
+    }
+
+    private void checkMetaId() {
+        long id = database.getModificationMetaId();
+        if (id != modificationMetaId) {
+            map.clear();
+            rows = 0;
+            modificationMetaId = id;
+        }
+    }
+
+    /**
+     * Get the number of times a result was found in the cache.
+     *
+     * @return the number of cache hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of times a result was not found in the cache.
+     *
+     * @return the number of cache misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+}
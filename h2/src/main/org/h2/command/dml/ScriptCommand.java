@@ -266,7 +266,9 @@ public class ScriptCommand extends ScriptBase {
                     continue;
                 }
                 table.lock(session, false, false);
-                String createTableSql = table.getCreateSQL();
+                // the statistics contain values of the rows
+                String createTableSql = data ? table.getCreateSQL() :
+                        table.getCreateSQLWithoutStatistics();
                 if (createTableSql == null) {
                     // null for metadata tables
                     continue;
@@ -17,7 +17,9 @@ import org.h2.constant.SysProperties;
 import org.h2.engine.Constants;
 import org.h2.engine.Database;
 import org.h2.engine.Session;
+import org.h2.expression.Aggregate;
 import org.h2.expression.Comparison;
+import org.h2.expression.CompiledCondition;
 import org.h2.expression.ConditionAndOr;
 import org.h2.expression.Expression;
 import org.h2.expression.ExpressionColumn;
@@ -68,6 +70,7 @@ public class Select extends Query {
     private Expression[] expressionArray;
     private Expression having;
     private Expression condition;
+    private CompiledCondition compiledCondition;
     private int visibleColumnCount, distinctColumnCount;
     private ArrayList<SelectOrderBy> orderList;
     private ArrayList<Expression> group;
@@ -84,6 +87,12 @@ public class Select extends Query {
     private SortOrder sort;
     private int currentGroupRowId;
 
+    /**
+     * The aggregate functions of this query, to release the data of the last
+     * group when the query is done.
+     */
+    private final ArrayList<Aggregate> aggregates = New.arrayList();
+
     public Select(Session session) {
         super(session);
     }
@@ -123,6 +132,15 @@ public class Select extends Query {
         isGroupQuery = true;
     }
 
+    /**
+     * Add an aggregate function of this query.
+     *
+     * @param aggregate the aggregate function
+     */
+    public void addAggregate(Aggregate aggregate) {
+        aggregates.add(aggregate);
+    }
+
     public void setGroupBy(ArrayList<Expression> group) {
         this.group = group;
     }
@@ -157,14 +175,27 @@ public class Select extends Query {
         }
     }
 
+    /**
+     * Check if the condition is met for the current row.
+     *
+     * @return true if there is no condition or if the condition is true
+     */
+    private boolean isConditionMet() {
+        if (compiledCondition != null) {
+            return compiledCondition.isTrue(session);
+        }
+        return condition == null || Boolean.TRUE.equals(condition.getBooleanValue(session));
+    }
+
     private void queryGroupSorted(int columnCount, ResultTarget result) {
         int rowNumber = 0;
         setCurrentRowNumber(0);
         currentGroup = null;
         Value[] previousKeyValues = null;
+        Expression[] aggregateExpressions = getAggregateExpressions(columnCount);
         while (topTableFilter.next()) {
             setCurrentRowNumber(rowNumber + 1);
-            if (condition == null || Boolean.TRUE.equals(condition.getBooleanValue(session))) {
+            if (isConditionMet()) {
                 rowNumber++;
                 Value[] keyValues = new Value[groupIndex.length];
                 // update group
@@ -183,12 +214,8 @@ public class Select extends Query {
                     currentGroup = New.hashMap();
                 }
                 currentGroupRowId++;
-
-                for (int i = 0; i < columnCount; i++) {
-                    if (groupByExpression == null || !groupByExpression[i]) {
-                        Expression expr = expressions.get(i);
-                        expr.updateAggregate(session);
-                    }
+                for (Expression expr : aggregateExpressions) {
+                    expr.updateAggregate(session);
                 }
             }
         }
@@ -319,14 +346,21 @@ public class Select extends Query {
         setCurrentRowNumber(0);
         currentGroup = null;
         ValueArray defaultGroup = ValueArray.get(new Value[0]);
+        HashMap<Expression, Object> defaultValues = null;
         int sampleSize = getSampleSizeValue(session);
+        Expression[] aggregateExpressions = getAggregateExpressions(columnCount);
         while (topTableFilter.next()) {
             setCurrentRowNumber(rowNumber + 1);
-            if (condition == null || Boolean.TRUE.equals(condition.getBooleanValue(session))) {
-                Value key;
+            if (isConditionMet()) {
                 rowNumber++;
+                HashMap<Expression, Object> values;
                 if (groupIndex == null) {
-                    key = defaultGroup;
+                    // no GROUP BY: all rows belong to the same group
+                    if (defaultValues == null) {
+                        defaultValues = new HashMap<Expression, Object>();
+                        groups.put(defaultGroup, defaultValues);
+                    }
+                    values = defaultValues;
                 } else {
                     Value[] keyValues = new Value[groupIndex.length];
                     // update group
@@ -335,21 +369,17 @@ public class Select extends Query {
                         Expression expr = expressions.get(idx);
                         keyValues[i] = expr.getValue(session);
                     }
-                    key = ValueArray.get(keyValues);
-                }
-                HashMap<Expression, Object> values = groups.get(key);
-                if (values == null) {
-                    values = new HashMap<Expression, Object>();
-                    groups.put(key, values);
+                    Value key = ValueArray.get(keyValues);
+                    values = groups.get(key);
+                    if (values == null) {
+                        values = new HashMap<Expression, Object>();
+                        groups.put(key, values);
+                    }
                 }
                 currentGroup = values;
                 currentGroupRowId++;
-                int len = columnCount;
-                for (int i = 0; i < len; i++) {
-                    if (groupByExpression == null || !groupByExpression[i]) {
-                        Expression expr = expressions.get(i);
-                        expr.updateAggregate(session);
-                    }
+                for (Expression expr : aggregateExpressions) {
+                    expr.updateAggregate(session);
                 }
                 if (sampleSize > 0 && rowNumber >= sampleSize) {
                     break;
@@ -383,6 +413,33 @@ public class Select extends Query {
         }
     }
 
+    /**
+     * Release the group data after all rows of a group query were read.
+     */
+    private void resetGroupData() {
+        currentGroup = null;
+        for (Aggregate a : aggregates) {
+            a.resetGroupData();
+        }
+    }
+
+    /**
+     * Get the expressions that need to be updated for each row of a group
+     * (all expressions that are not in the GROUP BY list).
+     *
+     * @param columnCount the number of columns
+     * @return the expressions
+     */
+    private Expression[] getAggregateExpressions(int columnCount) {
+        ArrayList<Expression> list = New.arrayList();
+        for (int i = 0; i < columnCount; i++) {
+            if (groupByExpression == null || !groupByExpression[i]) {
+                list.add(expressions.get(i));
+            }
+        }
+        return list.toArray(new Expression[list.size()]);
+    }
+
     /**
      * Get the index that matches the ORDER BY list, if one exists. This is to
      * avoid running a separate ORDER BY if an index can be used. This is
@@ -526,7 +583,7 @@ public class Select extends Query {
         int sampleSize = getSampleSizeValue(session);
         while (topTableFilter.next()) {
             setCurrentRowNumber(rowNumber + 1);
-            if (condition == null || Boolean.TRUE.equals(condition.getBooleanValue(session))) {
+            if (isConditionMet()) {
                 Value[] row = new Value[columnCount];
                 for (int i = 0; i < columnCount; i++) {
                     Expression expr = expressions.get(i);
@@ -621,10 +678,14 @@ public class Select extends Query {
             if (isQuickAggregateQuery) {
                 queryQuick(columnCount, to);
             } else if (isGroupQuery) {
-                if (isGroupSortedQuery) {
-                    queryGroupSorted(columnCount, to);
-                } else {
-                    queryGroup(columnCount, result);
+                try {
+                    if (isGroupSortedQuery) {
+                        queryGroupSorted(columnCount, to);
+                    } else {
+                        queryGroup(columnCount, result);
+                    }
+                } finally {
+                    resetGroupData();
                 }
             } else if (isDistinctQuery) {
                 queryDistinct(to, limitRows);
@@ -632,6 +693,10 @@ public class Select extends Query {
                 queryFlat(columnCount, to, limitRows);
             }
         }
+        if (limitRows < 0) {
+            // with a limit, not all rows might have been read
+            checkRowCounts();
+        }
         if (offsetExpr != null) {
             result.setOffset(offsetExpr.getValue(session).getInt());
         }
@@ -652,6 +717,30 @@ public class Select extends Query {
         return null;
     }
 
+    /**
+     * Compare the number of rows that were read from each table with the
+     * estimate of the optimizer. If they differ a lot, the statement is
+     * optimized again before the next execution, using the actual numbers.
+     */
+    private void checkRowCounts() {
+        int factor = session.getDatabase().getSettings().reoptimizeFactor;
+        if (factor <= 0 || reoptimize) {
+            return;
+        }
+        HashMap<String, Double> feedback = rowCountFeedback;
+        if (feedback == null) {
+            feedback = New.hashMap();
+        }
+        for (int i = 0, size = filters.size(); i < size; i++) {
+            if (filters.get(i).addRowCountFeedback(feedback, factor)) {
+                reoptimize = true;
+            }
+        }
+        if (reoptimize) {
+            rowCountFeedback = feedback;
+        }
+    }
+
     private LocalResult createLocalResult(LocalResult old) {
         return old != null ? old : new LocalResult(session, expressionArray, visibleColumnCount);
     }
@@ -825,15 +914,17 @@ public class Select extends Query {
             }
         }
         if (isGroupQuery && groupIndex == null && havingIndex < 0 && filters.size() == 1) {
-            if (condition == null) {
+            if (condition == null && filters.get(0).getSampleSize() == null) {
                 Table t = filters.get(0).getTable();
                 ExpressionVisitor optimizable = ExpressionVisitor.getOptimizableVisitor(t);
                 isQuickAggregateQuery = isEverything(optimizable);
             }
         }
         cost = preparePlan();
+        // a sample is read in random order, so no index can be used
+        boolean sampled = topTableFilter.getSampleSize() != null;
         if (distinct && session.getDatabase().getSettings().optimizeDistinct &&
-                !isGroupQuery && filters.size() == 1 &&
+                !isGroupQuery && !sampled && filters.size() == 1 &&
                 expressions.size() == 1 && condition == null) {
             Expression expr = expressions.get(0);
             expr = expr.getNonAliasExpression();
@@ -858,7 +949,7 @@ public class Select extends Query {
                 }
             }
         }
-        if (sort != null && !isQuickAggregateQuery && !isGroupQuery) {
+        if (sort != null && !isQuickAggregateQuery && !isGroupQuery && !sampled) {
             Index index = getSortIndex();
             if (index != null) {
                 Index current = topTableFilter.getIndex();
@@ -888,7 +979,8 @@ public class Select extends Query {
                 }
             }
         }
-        if (!isQuickAggregateQuery && isGroupQuery && getGroupByExpressionCount() > 0) {
+        if (!isQuickAggregateQuery && isGroupQuery && !sampled &&
+                getGroupByExpressionCount() > 0) {
             Index index = getGroupSortedIndex();
             Index current = topTableFilter.getIndex();
             if (index != null && (current.getIndexType().isScan() || current == index)) {
@@ -898,6 +990,9 @@ public class Select extends Query {
         }
         expressionArray = new Expression[expressions.size()];
         expressions.toArray(expressionArray);
+        if (condition != null && session.getDatabase().getSettings().compileConditions) {
+            compiledCondition = CompiledCondition.compile(session, this, condition);
+        }
         isPrepared = true;
     }
 
@@ -1193,6 +1288,7 @@ public class Select extends Query {
             }
         }
         if (addToCondition) {
+            compiledCondition = null;
             if (condition == null) {
                 condition = comp;
             } else {
@@ -1226,6 +1322,10 @@ public class Select extends Query {
                 if (!f.getTable().isDeterministic()) {
                     return false;
                 }
+                if (f.getSampleSize() != null) {
+                    // each execution reads different rows
+                    return false;
+                }
             }
             break;
         }
@@ -1237,6 +1337,12 @@ public class Select extends Query {
             }
             break;
         }
+        case ExpressionVisitor.NOT_READING_TABLES: {
+            if (filters.size() > 0) {
+                return false;
+            }
+            break;
+        }
         case ExpressionVisitor.EVALUATABLE: {
             if (!session.getDatabase().getSettings().optimizeEvaluatableSubqueries) {
                 return false;
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.compress;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import org.h2.message.DbException;
+import org.h2.mvstore.DataUtils;
+
+/**
+ * An input stream to read the frames written by a LZFFrameOutputStream.
+ * Unlike the LZFInputStream, a read operation only blocks if no data of the
+ * current frame is left.
+ */
+public class LZFFrameInputStream extends InputStream {
+
+    private final InputStream in;
+    private final CompressLZF decompress = new CompressLZF();
+    private int pos;
+    private int bufferLength;
+    private byte[] inBuffer;
+    private byte[] buffer;
+
+    public LZFFrameInputStream(InputStream in) {
+        this.in = in;
+    }
+
+    private static byte[] ensureSize(byte[] buff, int len) {
+        return buff == null || buff.length < len ? DataUtils.newBytes(len) : buff;
+    }
+
+    /**
+     * Read the next frame if the current frame is fully read.
+     *
+     * @return false if the end of the stream is reached
+     */
+    private boolean fillBuffer() throws IOException {
+        if (pos < bufferLength) {
+            return true;
+        }
+        int x = in.read();
+        if (x < 0) {
+            return false;
+        }
+        int len = (x << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+        if (len < 0) {
+            len = -len;
+            buffer = ensureSize(buffer, len);
+            readFully(buffer, len);
+        } else {
+            inBuffer = ensureSize(inBuffer, len);
+            int size = readInt();
+            readFully(inBuffer, len);
+            buffer = ensureSize(buffer, size);
+            try {
+                decompress.expand(inBuffer, 0, len, buffer, 0, size);
+            } catch (ArrayIndexOutOfBoundsException e) {
+                throw DbException.convertToIOException(e);
+            }
+            len = size;
+        }
+        pos = 0;
+        bufferLength = len;
+        return true;
+    }
+
+    private int readByte() throws IOException {
+        int x = in.read();
+        if (x < 0) {
+            throw new EOFException();
+        }
+        return x;
+    }
+
+    private int readInt() throws IOException {
+        return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+    }
+
+    private void readFully(byte[] buff, int len) throws IOException {
+        int off = 0;
+        while (len > 0) {
+            int l = in.read(buff, off, len);
+            if (l < 0) {
+                throw new EOFException();
+            }
+            len -= l;
+            off += l;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fillBuffer()) {
+            return -1;
+        }
+        return buffer[pos++] & 255;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fillBuffer()) {
+            return -1;
+        }
+        int max = Math.min(len, bufferLength - pos);
+        System.arraycopy(buffer, pos, b, off, max);
+        pos += max;
+        return max;
+    }
+
+    /**
+     * Get the number of bytes that can be read without blocking. This includes
+     * the rest of the current frame, and the bytes of the source stream (if
+     * the next frame is not complete, reading it may block).
+     *
+     * @return the number of bytes
+     */
+    @Override
+    public int available() throws IOException {
+        return bufferLength - pos + in.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
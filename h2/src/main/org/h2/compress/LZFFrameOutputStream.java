@@ -0,0 +1,106 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.compress;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import org.h2.engine.Constants;
+
+/**
+ * An output stream that writes the data in frames, and compresses the frames
+ * that are large enough. A frame is written when the stream is flushed, or
+ * when the buffer is full. The blocks use the same format as the
+ * LZFOutputStream, but there is no file header, so that the stream can be used
+ * for a network connection.
+ */
+public class LZFFrameOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final CompressLZF compress = new CompressLZF();
+    private final int minCompressLength;
+    private final byte[] buffer;
+    private int pos;
+    private byte[] outBuffer;
+
+    /**
+     * Create a new stream.
+     *
+     * @param out the target stream
+     * @param minCompressLength the length of the smallest frame that is
+     *            compressed; smaller frames are written as is
+     */
+    public LZFFrameOutputStream(OutputStream out, int minCompressLength) {
+        this.out = out;
+        this.minCompressLength = minCompressLength;
+        buffer = new byte[Constants.IO_BUFFER_SIZE_COMPRESS];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (pos >= buffer.length) {
+            writeFrame();
+        }
+        buffer[pos++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] buff, int off, int len) throws IOException {
+        while (len > 0) {
+            int copy = Math.min(buffer.length - pos, len);
+            System.arraycopy(buff, off, buffer, pos, copy);
+            pos += copy;
+            if (pos >= buffer.length) {
+                writeFrame();
+            }
+            off += copy;
+            len -= copy;
+        }
+    }
+
+    private void writeFrame() throws IOException {
+        int len = pos;
+        if (len == 0) {
+            return;
+        }
+        pos = 0;
+        if (len >= minCompressLength) {
+            int outputLen = (len < 100 ? len + 100 : len) * 2;
+            if (outBuffer == null || outBuffer.length < outputLen) {
+                outBuffer = new byte[outputLen];
+            }
+            int compressed = compress.compress(buffer, len, outBuffer, 0);
+            if (compressed < len) {
+                writeInt(compressed);
+                writeInt(len);
+                out.write(outBuffer, 0, compressed);
+                return;
+            }
+        }
+        writeInt(-len);
+        out.write(buffer, 0, len);
+    }
+
+    private void writeInt(int x) throws IOException {
+        out.write((byte) (x >> 24));
+        out.write((byte) (x >> 16));
+        out.write((byte) (x >> 8));
+        out.write((byte) x);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeFrame();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+}
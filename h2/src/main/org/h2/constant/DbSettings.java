@@ -49,12 +49,29 @@ public class DbSettings extends SettingsBase {
      */
     public final int analyzeAuto = get("ANALYZE_AUTO", 2000);
 
+    /**
+     * Database setting <code>ANALYZE_BACKGROUND</code> (default: true).<br />
+     * Whether the automatic ANALYZE (see <code>ANALYZE_AUTO</code>) is run
+     * by a background thread. If disabled, it is run by the statement that
+     * changed the table.
+     */
+    public final boolean analyzeBackground = get("ANALYZE_BACKGROUND", true);
+
     /**
      * Database setting <code>ANALYZE_SAMPLE</code> (default: 10000).<br />
      * The default sample size when analyzing a table.
      */
     public final int analyzeSample = get("ANALYZE_SAMPLE", 10000);
 
+    /**
+     * Database setting <code>COMPILE_CONDITIONS</code> (default: false).<br />
+     * Compile the conditions of queries (the WHERE clause) to Java byte code
+     * when a query is prepared, using the Java compiler. If the Java compiler
+     * is not available, the conditions are interpreted. This setting is
+     * experimental.
+     */
+    public final boolean compileConditions = get("COMPILE_CONDITIONS", false);
+
     /**
      * Database setting <code>DATABASE_TO_UPPER</code> (default: true).<br />
      * Database short names are converted to uppercase for the DATABASE()
@@ -134,6 +151,23 @@ public class DbSettings extends SettingsBase {
     public final int largeResultBufferSize = get("LARGE_RESULT_BUFFER_SIZE",
             4 * 1024);
 
+    /**
+     * Database setting <code>LARGE_RESULT_COMPRESS</code> (default: false).<br />
+     * Compress the temporary files of large result sets using LZF.
+     */
+    public final boolean largeResultCompress = get("LARGE_RESULT_COMPRESS",
+            false);
+
+    /**
+     * Database setting <code>LARGE_RESULT_SORT_THREADS</code> (default: the
+     * number of processors).<br />
+     * The maximum number of threads used to sort a block of rows when
+     * sorting large result sets on disk. Set this value to 1 to sort in the
+     * calling thread only.
+     */
+    public final int largeResultSortThreads = get("LARGE_RESULT_SORT_THREADS",
+            Runtime.getRuntime().availableProcessors());
+
     /**
      * Database setting <code>LARGE_TRANSACTIONS</code> (default: true).<br />
      * Support very large transactions
@@ -172,6 +206,13 @@ public class DbSettings extends SettingsBase {
      */
     public int maxQueryTimeout = get("MAX_QUERY_TIMEOUT", 0);
 
+    /**
+     * Database setting <code>MEMORY_BTREE</code> (default: true).<br />
+     * Whether the regular indexes of in-memory tables use a B-tree. If
+     * disabled, an AVL tree with one node per row is used.
+     */
+    public final boolean memoryBtree = get("MEMORY_BTREE", true);
+
     /**
      * Database setting <code>NESTED_JOINS</code> (default: true).<br />
      * Whether nested joins should be supported.
@@ -229,6 +270,15 @@ public class DbSettings extends SettingsBase {
      */
     public final boolean optimizeIsNull = get("OPTIMIZE_IS_NULL", true);
 
+    /**
+     * Database setting <code>OPTIMIZE_MAX_TIME</code> (default: 100).<br />
+     * The maximum time in milliseconds the optimizer uses to find the best
+     * join order of a query. If the time is exceeded, the best join order
+     * found so far is used. Queries with few tables are usually optimized
+     * much faster.
+     */
+    public final int optimizeMaxTime = get("OPTIMIZE_MAX_TIME", 100);
+
     /**
      * Database setting <code>OPTIMIZE_OR</code> (default: true).<br />
      * Convert (C=? OR C=?) to (C IN(?, ?)).
@@ -271,6 +321,16 @@ public class DbSettings extends SettingsBase {
      */
     public final boolean pageStoreTrim = get("PAGE_STORE_TRIM", true);
 
+    /**
+     * Database setting <code>PLAN_CACHE_SIZE</code> (default: 256).<br />
+     * The size of the join order cache, in number of entries. This cache is
+     * shared by all sessions of a database. If a query with the same tables
+     * and conditions was already optimized, the join order is re-used
+     * instead of calculated again. The cache is cleared when the database
+     * schema changes. Set this value to 0 to disable the cache.
+     */
+    public final int planCacheSize = get("PLAN_CACHE_SIZE", 256);
+
     /**
      * Database setting <code>QUERY_CACHE_SIZE</code> (default: 8).<br />
      * The size of the query cache, in number of cached statements. Each session
@@ -299,6 +359,26 @@ public class DbSettings extends SettingsBase {
      */
     public final int reconnectCheckDelay = get("RECONNECT_CHECK_DELAY", 200);
 
+    /**
+     * Database setting <code>REOPTIMIZE_FACTOR</code> (default: 10).<br />
+     * If the number of rows that a query actually reads using an index
+     * differs from the estimate of the optimizer by more than this factor,
+     * the query is optimized again before it is executed the next time,
+     * using the actual number of rows. Set this value to 0 to disable.
+     */
+    public final int reoptimizeFactor = get("REOPTIMIZE_FACTOR", 10);
+
+    /**
+     * Database setting <code>RESULT_CACHE_ROWS</code> (default: 0).<br />
+     * The size of the query result cache, in number of rows. This cache is
+     * shared by all sessions of a database. If the same deterministic query
+     * with the same parameters was already executed, and the tables used by
+     * the query were not modified since, the result is re-used. Results that
+     * are larger than a quarter of the cache are not cached. Set this value
+     * to 0 to disable the cache.
+     */
+    public final int resultCacheRows = get("RESULT_CACHE_ROWS", 0);
+
     /**
      * Database setting <code>ROWID</code> (default: true).<br />
      * If set, each table has a pseudo-column _ROWID_.
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.engine;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import org.h2.Driver;
+import org.h2.command.ddl.Analyze;
+import org.h2.message.Trace;
+import org.h2.message.TraceSystem;
+import org.h2.table.Table;
+
+/**
+ * The analyze thread updates the statistics of tables that were modified a
+ * lot, so that the statement that caused the modification does not need to
+ * wait. To limit the load, the thread waits after analyzing a table at least
+ * as long as analyzing took. The statistics are read using one short
+ * query per column, and the thread pauses between the queries and unlocks
+ * the database, so that the statements of other sessions don't need to wait
+ * until the whole table is analyzed.
+ */
+public class AnalyzeThread implements Runnable {
+
+    /**
+     * The number of milliseconds to pause between two queries.
+     */
+    private static final int PAUSE = 50;
+
+    /**
+     * The reference to the database. A weak reference is used so that the
+     * database can be garbage collected if it was not closed.
+     */
+    private volatile WeakReference<Database> databaseRef;
+
+    private final Session session;
+    private final int sampleRows;
+    private final LinkedHashSet<Table> tables = new LinkedHashSet<Table>();
+    private Table current;
+    private boolean currentRemoved;
+    private boolean currentLocked;
+    private volatile boolean stop;
+
+    private AnalyzeThread(Database database, Session session, int sampleRows) {
+        this.databaseRef = new WeakReference<Database>(database);
+        this.session = session;
+        this.sampleRows = sampleRows;
+    }
+
+    /**
+     * Create and start a new analyze thread for the given database. If the
+     * thread can't be created, this method returns null.
+     *
+     * @param database the database
+     * @param session the session used to analyze the tables
+     * @param sampleRows the number of sample rows
+     * @return the analyze thread object or null
+     */
+    public static AnalyzeThread create(Database database, Session session,
+            int sampleRows) {
+        try {
+            AnalyzeThread t = new AnalyzeThread(database, session, sampleRows);
+            Thread thread = new Thread(t, "H2 Analyze " + database.getShortName());
+            Driver.setThreadContextClassLoader(thread);
+            thread.setDaemon(true);
+            thread.start();
+            return t;
+        } catch (SecurityException e) {
+            // Google App Engine does not allow threads
+            return null;
+        }
+    }
+
+    /**
+     * Add a table to the list of tables to analyze. If the table is already
+     * in the list, it is only analyzed once.
+     *
+     * @param table the table
+     */
+    public synchronized void add(Table table) {
+        tables.add(table);
+        notify();
+    }
+
+    /**
+     * Remove a table from the list of tables to analyze.
+     *
+     * @param table the table
+     */
+    public synchronized void remove(Table table) {
+        tables.remove(table);
+        if (table == current) {
+            currentRemoved = true;
+        }
+    }
+
+    /**
+     * Check whether the statistics of the table that is currently analyzed
+     * were updated in the meantime, so that the result must not be stored.
+     *
+     * @param table the table
+     * @return true if the table was removed while it was analyzed
+     */
+    public synchronized boolean isRemoved(Table table) {
+        return table == current && currentRemoved;
+    }
+
+    /**
+     * Pause between two queries that read the statistics of a table. The
+     * analyze session commits, so that its locks are released, and the
+     * database is unlocked while waiting. This method must not be called
+     * while a statement is running.
+     *
+     * @param table the table
+     * @return false if the table should no longer be analyzed
+     */
+    public boolean pause(Table table) {
+        Database database = databaseRef.get();
+        if (database == null) {
+            return false;
+        }
+        session.commit(true);
+        Object sync = database.isMultiThreaded() ? (Object) session : database;
+        synchronized (sync) {
+            try {
+                sync.wait(PAUSE);
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        }
+        if (stop || database.isClosing() || table.getId() <= 0 ||
+                isRemoved(table)) {
+            return false;
+        }
+        if (table.isLockedExclusively()) {
+            // try again later
+            currentLocked = true;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void run() {
+        while (!stop) {
+            Table table;
+            synchronized (this) {
+                while (!stop && tables.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+                if (stop) {
+                    break;
+                }
+                Iterator<Table> it = tables.iterator();
+                table = it.next();
+                it.remove();
+                current = table;
+                currentRemoved = false;
+                currentLocked = false;
+            }
+            Database database = databaseRef.get();
+            if (database == null) {
+                break;
+            }
+            long start = System.currentTimeMillis();
+            long wait;
+            if (analyze(database, table)) {
+                wait = System.currentTimeMillis() - start;
+            } else {
+                // try again later
+                add(table);
+                wait = 100;
+            }
+            synchronized (this) {
+                current = null;
+                while (!stop && wait > 0) {
+                    // wait 100 ms at a time
+                    long w = Math.min(wait, 100);
+                    try {
+                        wait(w);
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                    wait -= w;
+                }
+            }
+        }
+        databaseRef = null;
+    }
+
+    /**
+     * Analyze the table.
+     *
+     * @param database the database
+     * @param table the table
+     * @return false if the table is locked by another session
+     */
+    private boolean analyze(Database database, Table table) {
+        Object sync = database.isMultiThreaded() ? (Object) session : database;
+        synchronized (sync) {
+            if (stop || database.isClosing() || table.getId() <= 0) {
+                // the database was closed, or the table was dropped
+                return true;
+            }
+            synchronized (this) {
+                if (currentRemoved) {
+                    // the table was analyzed in the meantime
+                    return true;
+                }
+            }
+            if (table.isLockedExclusively()) {
+                return false;
+            }
+            try {
+                Analyze.analyzeTable(session, table, sampleRows, this);
+                session.commit(true);
+            } catch (Exception e) {
+                try {
+                    session.rollback();
+                } catch (Exception e2) {
+                    // ignore
+                }
+                TraceSystem traceSystem = database.getTraceSystem();
+                // the database may have been closed while pausing
+                if (traceSystem != null && !stop && !database.isClosing()) {
+                    traceSystem.getTrace(Trace.DATABASE).error(e,
+                            "analyze {0}", table.getSQL());
+                }
+            }
+        }
+        return !currentLocked;
+    }
+
+    /**
+     * Stop the thread. This method is called when closing the database.
+     */
+    public void stopThread() {
+        stop = true;
+        // end the query that is running
+        session.cancel();
+        synchronized (this) {
+            tables.clear();
+            notify();
+        }
+    }
+
+}
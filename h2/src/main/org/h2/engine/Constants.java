@@ -87,6 +87,26 @@ public class Constants {
      */
     public static final int TCP_PROTOCOL_VERSION_14 = 14;
 
+    /**
+     * The TCP protocol version number 15.
+     */
+    public static final int TCP_PROTOCOL_VERSION_15 = 15;
+
+    /**
+     * The TCP protocol version number 16.
+     */
+    public static final int TCP_PROTOCOL_VERSION_16 = 16;
+
+    /**
+     * The TCP protocol version number 17.
+     */
+    public static final int TCP_PROTOCOL_VERSION_17 = 17;
+
+    /**
+     * The TCP protocol version number 18.
+     */
+    public static final int TCP_PROTOCOL_VERSION_18 = 18;
+
     /**
      * The major version of this database.
      */
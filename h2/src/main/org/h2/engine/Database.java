@@ -17,7 +17,10 @@ import java.util.Set;
 import java.util.StringTokenizer;
 import org.h2.api.DatabaseEventListener;
 import org.h2.api.JavaObjectSerializer;
+import org.h2.command.ddl.Analyze;
 import org.h2.command.ddl.CreateTableData;
+import org.h2.command.dml.PlanCache;
+import org.h2.command.dml.ResultCache;
 import org.h2.command.dml.SetTypes;
 import org.h2.constant.DbSettings;
 import org.h2.constant.ErrorCode;
@@ -122,6 +125,7 @@ public class Database implements DataHandler {
     private Index metaIdIndex;
     private FileLock lock;
     private WriterThread writer;
+    private AnalyzeThread analyzeThread;
     private boolean starting;
     private TraceSystem traceSystem;
     private Trace trace;
@@ -173,6 +177,8 @@ public class Database implements DataHandler {
     private int cacheSize;
     private int compactMode;
     private SourceCompiler compiler;
+    private PlanCache planCache;
+    private ResultCache resultCache;
     private volatile boolean metaTablesInitialized;
     private boolean flushOnEachCommit;
     private LobStorageInterface lobStorage;
@@ -1259,6 +1265,53 @@ public class Database implements DataHandler {
         }
     }
 
+    private synchronized void stopAnalyzeThread() {
+        if (analyzeThread != null) {
+            analyzeThread.stopThread();
+            analyzeThread = null;
+        }
+    }
+
+    /**
+     * Update the statistics of a table, because it was modified a lot. If
+     * enabled, the statistics are updated by a background thread, so that
+     * the current statement does not need to wait.
+     *
+     * @param session the session that modified the table
+     * @param table the table
+     */
+    public void analyzeTableAuto(Session session, Table table) {
+        int sample = dbSettings.analyzeSample / 10;
+        if (dbSettings.analyzeBackground &&
+                !(table.isTemporary() && !table.isGlobalTemporary())) {
+            AnalyzeThread t;
+            synchronized (this) {
+                if (analyzeThread == null && !closing) {
+                    Session s = new Session(this, systemUser, ++nextSessionId);
+                    analyzeThread = AnalyzeThread.create(this, s, sample);
+                }
+                t = analyzeThread;
+            }
+            if (t != null) {
+                t.add(table);
+                return;
+            }
+        }
+        Analyze.analyzeTable(session, table, sample, false);
+    }
+
+    /**
+     * Cancel the pending automatic update of the statistics of a table,
+     * because the statistics were just updated.
+     *
+     * @param table the table
+     */
+    public synchronized void cancelAnalyzeTableAuto(Table table) {
+        if (analyzeThread != null) {
+            analyzeThread.remove(table);
+        }
+    }
+
     /**
      * Close all open files and unlock the database.
      *
@@ -1266,6 +1319,7 @@ public class Database implements DataHandler {
      */
     private synchronized void closeOpenFilesAndUnlock(boolean flush) {
         stopWriter();
+        stopAnalyzeThread();
         if (pageStore != null) {
             if (flush) {
                 try {
@@ -2512,6 +2566,30 @@ public class Database implements DataHandler {
         this.compactMode = compactMode;
     }
 
+    /**
+     * Get the database level join order cache.
+     *
+     * @return the cache, or null if disabled
+     */
+    public synchronized PlanCache getPlanCache() {
+        if (planCache == null && dbSettings.planCacheSize > 0) {
+            planCache = new PlanCache(this, dbSettings.planCacheSize);
+        }
+        return planCache;
+    }
+
+    /**
+     * Get the database level query result cache.
+     *
+     * @return the cache, or null if disabled
+     */
+    public synchronized ResultCache getResultCache() {
+        if (resultCache == null && dbSettings.resultCacheRows > 0) {
+            resultCache = new ResultCache(this, dbSettings.resultCacheRows);
+        }
+        return resultCache;
+    }
+
     public SourceCompiler getCompiler() {
         if (compiler == null) {
             compiler = new SourceCompiler();
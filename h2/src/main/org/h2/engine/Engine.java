@@ -180,6 +180,26 @@ public class Engine implements SessionFactory {
             }
         }
         session.setAllowLiterals(true);
+        setSettings(session, ci, ignoreUnknownSetting);
+        if (init != null) {
+            try {
+                CommandInterface command = session.prepareCommand(init,
+                        Integer.MAX_VALUE);
+                command.executeUpdate();
+            } catch (DbException e) {
+                if (!ignoreUnknownSetting) {
+                    session.close();
+                    throw e;
+                }
+            }
+        }
+        session.setAllowLiterals(false);
+        session.commit(true);
+        return session;
+    }
+
+    private static void setSettings(Session session, ConnectionInfo ci,
+            boolean ignoreUnknownSetting) {
         DbSettings defaultSettings = DbSettings.getInstance(null);
         for (String setting : ci.getKeys()) {
             if (defaultSettings.containsKey(setting)) {
@@ -199,21 +219,42 @@ public class Engine implements SessionFactory {
                 }
             }
         }
-        if (init != null) {
-            try {
-                CommandInterface command = session.prepareCommand(init,
-                        Integer.MAX_VALUE);
-                command.executeUpdate();
-            } catch (DbException e) {
-                if (!ignoreUnknownSetting) {
-                    session.close();
-                    throw e;
-                }
+    }
+
+    /**
+     * Re-use a session that was reset for a new connection to the same
+     * database, with the same user name and settings. The password is
+     * checked, and the settings are applied again.
+     *
+     * @param session the session
+     * @param ci the connection information
+     * @return true if the session can be used, false if the password is wrong
+     *         or the database is closing
+     */
+    boolean reuseSession(Session session, ConnectionInfo ci) {
+        ci.removeProperty("NO_UPGRADE", false);
+        ci.removeProperty("IFEXISTS", false);
+        boolean ignoreUnknownSetting = ci.removeProperty(
+                "IGNORE_UNKNOWN_SETTINGS", false);
+        String cipher = ci.removeProperty("CIPHER", null);
+        Database database = session.getDatabase();
+        synchronized (database) {
+            if (session.isClosed() || database.isClosing()) {
+                return false;
+            }
+            User user = database.findUser(ci.getUserName());
+            if (user == null || user != session.getUser() ||
+                    !database.validateFilePasswordHash(cipher, ci.getFilePasswordHash()) ||
+                    !user.validateUserPasswordHash(ci.getUserPasswordHash())) {
+                return false;
             }
+            checkClustering(ci, database);
         }
+        session.setAllowLiterals(true);
+        setSettings(session, ci, ignoreUnknownSetting);
         session.setAllowLiterals(false);
         session.commit(true);
-        return session;
+        return true;
     }
 
     private static void checkClustering(ConnectionInfo ci, Database database) {
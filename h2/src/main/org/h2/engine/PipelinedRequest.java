@@ -0,0 +1,31 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.engine;
+
+import java.io.IOException;
+import org.h2.value.Transfer;
+
+/**
+ * A request that was sent to the server without waiting for the response.
+ * The remote session reads the responses of such requests in the order the
+ * requests were sent, before it reads the response of the next request.
+ */
+public interface PipelinedRequest {
+
+    /**
+     * Read the response of the request. Exceptions sent by the server should
+     * be kept and thrown when the result is used.
+     *
+     * @param session the session
+     * @param transfer the transfer object
+     * @throws IOException if there is a communication problem between client
+     *             and server
+     */
+    void readResponse(SessionRemote session, Transfer transfer)
+            throws IOException;
+
+}
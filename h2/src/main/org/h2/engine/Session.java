@@ -115,6 +115,11 @@ public class Session extends SessionWithState {
     private Transaction transaction;
     private long startStatement = -1;
 
+    /**
+     * The MVStore tables that were changed in the current transaction.
+     */
+    private final HashSet<Table> changedTables = New.hashSet();
+
     public Session(Database database, User user, int id) {
         this.database = database;
         this.queryTimeout = database.getSettings().maxQueryTimeout;
@@ -122,11 +127,52 @@ public class Session extends SessionWithState {
         this.undoLog = new UndoLog(this);
         this.user = user;
         this.id = id;
-        Setting setting = database.findSetting(SetTypes.getTypeName(SetTypes.DEFAULT_LOCK_TIMEOUT));
-        this.lockTimeout = setting == null ? Constants.INITIAL_LOCK_TIMEOUT : setting.getIntValue();
+        this.lockTimeout = getDefaultLockTimeout();
         this.currentSchemaName = Constants.SCHEMA_MAIN;
     }
 
+    private int getDefaultLockTimeout() {
+        Setting setting = database.findSetting(SetTypes.getTypeName(SetTypes.DEFAULT_LOCK_TIMEOUT));
+        return setting == null ? Constants.INITIAL_LOCK_TIMEOUT : setting.getIntValue();
+    }
+
+    /**
+     * Reset the session, so that it can be re-used for another connection.
+     * The transaction is rolled back, the local temporary tables and results
+     * are dropped, the exclusive mode is disabled, and the session settings,
+     * variables and identity values are set back to the state of a new
+     * session.
+     */
+    void reset() {
+        rollback();
+        cleanTempTables(true);
+        closeTemporaryResults();
+        synchronized (database) {
+            if (database.getExclusiveSession() == this) {
+                database.setExclusiveSession(null, false);
+            }
+        }
+        currentTransactionName = null;
+        systemIdentifier = 0;
+        autoCommit = true;
+        autoCommitAtTransactionEnd = false;
+        lockTimeout = getDefaultLockTimeout();
+        queryTimeout = database.getSettings().maxQueryTimeout;
+        cancelAt = 0;
+        lastIdentity = ValueLong.get(0);
+        lastScopeIdentity = ValueLong.get(0);
+        currentSchemaName = Constants.SCHEMA_MAIN;
+        schemaSearchPath = null;
+        variables = null;
+        procedures = null;
+        throttle = 0;
+        undoLogEnabled = true;
+        redoLogBinary = true;
+        allowLiterals = false;
+        queryCache = null;
+        modificationId++;
+    }
+
     public boolean setCommitOrRollbackDisabled(boolean x) {
         boolean old = commitOrRollbackDisabled;
         commitOrRollbackDisabled = x;
@@ -378,6 +424,11 @@ public class Session extends SessionWithState {
         return prepareLocal(sql);
     }
 
+    @Override
+    public CommandInterface prepareCommandPipelined(String sql, int fetchSize) {
+        return prepareCommand(sql, fetchSize);
+    }
+
     /**
      * Parse and prepare the given SQL statement. This method also checks the
      * rights.
@@ -480,6 +531,15 @@ public class Session extends SessionWithState {
             }
             transaction.commit();
             transaction = null;
+            synchronized (changedTables) {
+                // the changed tables are not necessarily locked (LOCK_MODE 0)
+                for (Table t : changedTables) {
+                    if (t instanceof MVTable) {
+                        ((MVTable) t).commit();
+                    }
+                }
+                changedTables.clear();
+            }
         }
         if (containsUncommitted()) {
             // need to commit even if rollback is not possible
@@ -563,6 +623,7 @@ public class Session extends SessionWithState {
             // committing will end the transaction
             transaction.commit();
             transaction = null;
+            clearChangedTables();
         }
         if (locks.size() > 0 || needCommit) {
             database.commit(this);
@@ -628,9 +689,31 @@ public class Session extends SessionWithState {
 
     @Override
     public boolean hasPendingTransaction() {
+        if (transaction != null && transaction.hasChanges()) {
+            return true;
+        }
         return undoLog.size() > 0;
     }
 
+    /**
+     * Check whether the current transaction of this session contains
+     * uncommitted changes of the given MVStore table.
+     *
+     * @param table the table
+     * @return true if yes
+     */
+    public boolean hasUncommittedChanges(Table table) {
+        synchronized (changedTables) {
+            return changedTables.contains(table);
+        }
+    }
+
+    private void clearChangedTables() {
+        synchronized (changedTables) {
+            changedTables.clear();
+        }
+    }
+
     /**
      * Create a savepoint to allow rolling back to this state.
      *
@@ -692,6 +775,9 @@ public class Session extends SessionWithState {
      */
     public void log(Table table, short operation, Row row) {
         if (table.isMVStore()) {
+            synchronized (changedTables) {
+                changedTables.add(table);
+            }
             return;
         }
         if (undoLogEnabled) {
@@ -26,6 +26,18 @@ public interface SessionInterface extends Closeable {
      */
     CommandInterface prepareCommand(String sql, int fetchSize);
 
+    /**
+     * Parse a command that is executed right after it is prepared. A remote
+     * session does not wait for the server to parse the statement; instead,
+     * the prepare request is sent together with the first execute request.
+     * Errors in the statement are then reported when it is executed.
+     *
+     * @param sql the SQL statement
+     * @param fetchSize the number of rows to fetch in one step
+     * @return the prepared command
+     */
+    CommandInterface prepareCommandPipelined(String sql, int fetchSize);
+
     /**
      * Roll back pending transactions and close the session.
      */
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import org.h2.message.DbException;
+import org.h2.store.FileLock;
+import org.h2.util.New;
+import org.h2.util.StatementBuilder;
+
+/**
+ * A pool of sessions that were closed by their client. A new connection to
+ * the same database, with the same user name and settings, re-uses such a
+ * session instead of opening a new one. Pooled sessions keep their database
+ * open, so that short-lived connections don't open and close the database
+ * each time.
+ */
+public class SessionPool {
+
+    private final int maxSize;
+
+    /**
+     * The key of each session that was opened using this pool, and is not
+     * closed yet.
+     */
+    private final HashMap<Session, String> keys = New.hashMap();
+
+    /**
+     * The idle sessions. The most recently released session is the last.
+     */
+    private final ArrayList<Session> idle = New.arrayList();
+
+    private boolean closed;
+
+    /**
+     * Create a new session pool.
+     *
+     * @param maxSize the maximum number of idle sessions
+     */
+    public SessionPool(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Open a session, or re-use an idle session that was opened with the same
+     * connection information. The user name and password are checked in both
+     * cases.
+     *
+     * @param ci the connection information
+     * @return the session
+     */
+    public Session createSession(ConnectionInfo ci) {
+        String key = getKey(ci);
+        if (key != null) {
+            while (true) {
+                Session session = take(key);
+                if (session == null) {
+                    break;
+                }
+                ConnectionInfo copy;
+                try {
+                    copy = ci.clone();
+                } catch (CloneNotSupportedException e) {
+                    throw DbException.convert(e);
+                }
+                boolean ok;
+                try {
+                    ok = Engine.getInstance().reuseSession(session, copy);
+                } catch (DbException e) {
+                    discard(session);
+                    throw e;
+                }
+                if (ok) {
+                    return session;
+                }
+                if (session.isClosed() || session.getDatabase().isClosing()) {
+                    discard(session);
+                    continue;
+                }
+                // the password is wrong: keep the session, and let the
+                // engine report the error
+                synchronized (this) {
+                    idle.add(0, session);
+                }
+                break;
+            }
+        }
+        Session session = Engine.getInstance().createSession(ci);
+        if (key != null) {
+            synchronized (this) {
+                keys.put(session, key);
+            }
+        }
+        return session;
+    }
+
+    /**
+     * The client closed the session. If the session was opened using this
+     * pool, it is reset and kept for re-use. Otherwise, or if the pool is
+     * full, a session is closed.
+     *
+     * @param session the session
+     */
+    public void closeSession(Session session) {
+        String key;
+        synchronized (this) {
+            key = keys.get(session);
+        }
+        if (key != null && !session.isClosed()) {
+            boolean reset = false;
+            try {
+                session.reset();
+                reset = true;
+            } catch (DbException e) {
+                // close it below
+            }
+            if (reset) {
+                Session evicted = session;
+                synchronized (this) {
+                    if (!closed) {
+                        idle.add(session);
+                        evicted = idle.size() > maxSize ? idle.remove(0) : null;
+                    }
+                }
+                if (evicted != null) {
+                    discard(evicted);
+                }
+                return;
+            }
+        }
+        discard(session);
+    }
+
+    /**
+     * Close all idle sessions. Sessions that are released afterwards are
+     * closed as well.
+     */
+    public void close() {
+        ArrayList<Session> list;
+        synchronized (this) {
+            closed = true;
+            list = New.arrayList(idle);
+            idle.clear();
+        }
+        for (Session session : list) {
+            discard(session);
+        }
+    }
+
+    private synchronized Session take(String key) {
+        for (int i = idle.size() - 1; i >= 0; i--) {
+            Session session = idle.get(i);
+            if (key.equals(keys.get(session))) {
+                return idle.remove(i);
+            }
+        }
+        return null;
+    }
+
+    private void discard(Session session) {
+        synchronized (this) {
+            keys.remove(session);
+        }
+        if (!session.isClosed()) {
+            try {
+                session.close();
+            } catch (DbException e) {
+                // the database may already be closed
+            }
+        }
+    }
+
+    /**
+     * Get the key of a connection. Sessions can only be re-used by a
+     * connection with the same key.
+     *
+     * @param ci the connection information
+     * @return the key, or null if the session can not be re-used
+     */
+    private static String getKey(ConnectionInfo ci) {
+        if (ci.isUnnamedInMemory() || ci.getProperty("INIT") != null ||
+                ci.getProperty("OPEN_NEW") != null) {
+            return null;
+        }
+        String lockMethodName = ci.getProperty("FILE_LOCK");
+        if (lockMethodName != null &&
+                FileLock.getFileLockMethod(lockMethodName) == FileLock.LOCK_SERIALIZED) {
+            return null;
+        }
+        String[] settings = ci.getKeys();
+        Arrays.sort(settings);
+        StatementBuilder buff = new StatementBuilder(ci.getName());
+        buff.append('\n').append(ci.getUserName());
+        for (String s : settings) {
+            buff.append('\n').append(s).append('=').append(ci.getProperty(s));
+        }
+        return buff.toString();
+    }
+
+}
@@ -60,6 +60,7 @@ public class SessionRemote extends SessionWithState implements DataHandler {
     public static final int SESSION_SET_AUTOCOMMIT = 15;
     public static final int SESSION_HAS_PENDING_TRANSACTION = 16;
     public static final int LOB_READ = 17;
+    public static final int COMMAND_EXECUTE_BATCH = 18;
 
     public static final int STATUS_ERROR = 0;
     public static final int STATUS_OK = 1;
@@ -83,6 +84,7 @@ public class SessionRemote extends SessionWithState implements DataHandler {
     private int clientVersion;
     private boolean autoReconnect;
     private int lastReconnect;
+    private final ArrayList<PipelinedRequest> pipelined = New.arrayList();
     private SessionInterface embedded;
     private DatabaseEventListener eventListener;
     private LobStorageFrontend lobStorage;
@@ -103,7 +105,7 @@ public class SessionRemote extends SessionWithState implements DataHandler {
         trans.setSSL(ci.isSSL());
         trans.init();
         trans.writeInt(Constants.TCP_PROTOCOL_VERSION_6);
-        trans.writeInt(Constants.TCP_PROTOCOL_VERSION_14);
+        trans.writeInt(Constants.TCP_PROTOCOL_VERSION_18);
         trans.writeString(db);
         trans.writeString(ci.getOriginalURL());
         trans.writeString(ci.getUserName());
@@ -123,6 +125,11 @@ public class SessionRemote extends SessionWithState implements DataHandler {
                     trans.writeBytes(ci.getFileEncryptionKey());
                 }
             }
+            if (clientVersion >= Constants.TCP_PROTOCOL_VERSION_17) {
+                if (Boolean.parseBoolean(ci.getProperty("NETWORK_COMPRESSION", "false"))) {
+                    trans.setCompressed();
+                }
+            }
             trans.writeInt(SessionRemote.SESSION_SET_ID);
             trans.writeString(sessionId);
             done(trans);
@@ -456,7 +463,49 @@ public class SessionRemote extends SessionWithState implements DataHandler {
     @Override
     public synchronized CommandInterface prepareCommand(String sql, int fetchSize) {
         checkClosed();
-        return new CommandRemote(this, transferList, sql, fetchSize);
+        return new CommandRemote(this, transferList, sql, fetchSize, false);
+    }
+
+    @Override
+    public synchronized CommandInterface prepareCommandPipelined(String sql,
+            int fetchSize) {
+        checkClosed();
+        return new CommandRemote(this, transferList, sql, fetchSize, true);
+    }
+
+    /**
+     * Remember a request that was sent without waiting for the response. The
+     * responses of such requests are read in the order the requests were
+     * sent, before the next response is read.
+     *
+     * @param request the request
+     */
+    public void addPipelinedRequest(PipelinedRequest request) {
+        pipelined.add(request);
+    }
+
+    /**
+     * Read the responses of all pipelined requests, if there are any. The
+     * buffered requests are sent to the server first.
+     *
+     * @param transfer the transfer object
+     * @throws IOException if there is a communication problem between client
+     *             and server
+     */
+    public void readPipelinedResponses(Transfer transfer) throws IOException {
+        if (pipelined.size() == 0) {
+            return;
+        }
+        transfer.flush();
+        try {
+            while (pipelined.size() > 0) {
+                pipelined.remove(0).readResponse(this, transfer);
+            }
+        } catch (IOException e) {
+            // the remaining responses are lost
+            pipelined.clear();
+            throw e;
+        }
     }
 
     /**
@@ -479,6 +528,8 @@ public class SessionRemote extends SessionWithState implements DataHandler {
             return false;
         }
         lastReconnect++;
+        // the responses of pipelined requests are lost
+        pipelined.clear();
         while (true) {
             try {
                 embedded = connectEmbeddedOrServer(false);
@@ -567,10 +618,20 @@ public class SessionRemote extends SessionWithState implements DataHandler {
         return nextId;
     }
 
+    /**
+     * Get the TCP protocol version that was negotiated with the server.
+     *
+     * @return the protocol version
+     */
+    public int getClientVersion() {
+        return clientVersion;
+    }
+
     /**
      * Called to flush the output after data has been sent to the server and
      * just before receiving data. This method also reads the status code from
-     * the server and throws any exception the server sent.
+     * the server and throws any exception the server sent. The responses of
+     * pipelined requests are read first.
      *
      * @param transfer the transfer object
      * @throws DbException if the server sent an exception
@@ -579,15 +640,24 @@ public class SessionRemote extends SessionWithState implements DataHandler {
      */
     public void done(Transfer transfer) throws IOException {
         transfer.flush();
+        readPipelinedResponses(transfer);
+        readStatus(transfer);
+    }
+
+    /**
+     * Read the status code of a response, and throw the exception if the
+     * server sent one.
+     *
+     * @param transfer the transfer object
+     * @throws DbException if the server sent an exception
+     * @throws IOException if there is a communication problem between client
+     *             and server
+     */
+    public void readStatus(Transfer transfer) throws IOException {
         int status = transfer.readInt();
         if (status == STATUS_ERROR) {
-            String sqlstate = transfer.readString();
-            String message = transfer.readString();
-            String sql = transfer.readString();
-            int errorCode = transfer.readInt();
-            String stackTrace = transfer.readString();
-            JdbcSQLException s = new JdbcSQLException(message, sql, sqlstate, errorCode, null, stackTrace);
-            if (errorCode == ErrorCode.CONNECTION_BROKEN_1) {
+            JdbcSQLException s = readException(transfer);
+            if (s.getErrorCode() == ErrorCode.CONNECTION_BROKEN_1) {
                 // allow re-connect
                 IOException e = new IOException(s.toString(), s);
                 throw e;
@@ -604,6 +674,25 @@ public class SessionRemote extends SessionWithState implements DataHandler {
         }
     }
 
+    /**
+     * Read an exception that was sent by the server.
+     *
+     * @param transfer the transfer object
+     * @return the exception
+     * @throws IOException if there is a communication problem between client
+     *             and server
+     */
+    public static JdbcSQLException readException(Transfer transfer)
+            throws IOException {
+        String sqlstate = transfer.readString();
+        String message = transfer.readString();
+        String sql = transfer.readString();
+        int errorCode = transfer.readInt();
+        String stackTrace = transfer.readString();
+        return new JdbcSQLException(message, sql, sqlstate, errorCode, null,
+                stackTrace);
+    }
+
     /**
      * Returns true if the connection was opened in cluster mode.
      *
@@ -131,6 +131,13 @@ public class Aggregate extends Expression {
     private int displaySize;
     private int lastGroupRowId;
 
+    /**
+     * The group and the aggregate data of the last updated row, to avoid
+     * looking up the data for each row.
+     */
+    private HashMap<Expression, Object> lastGroup;
+    private AggregateData lastData;
+
     /**
      * Create a new aggregate object.
      *
@@ -144,6 +151,7 @@ public class Aggregate extends Expression {
         this.on = on;
         this.select = select;
         this.distinct = distinct;
+        select.addAggregate(this);
     }
 
     static {
@@ -219,6 +227,16 @@ public class Aggregate extends Expression {
         return new SortOrder(session.getDatabase(), index, sortType, null);
     }
 
+    /**
+     * Forget the group that was updated last. This is called when the query
+     * is done, so that the group data can be garbage collected.
+     */
+    public void resetGroupData() {
+        lastGroupRowId = 0;
+        lastGroup = null;
+        lastData = null;
+    }
+
     @Override
     public void updateAggregate(Session session) {
         // TODO aggregates: check nested MIN(MAX(ID)) and so on
@@ -238,10 +256,17 @@ public class Aggregate extends Expression {
         }
         lastGroupRowId = groupRowId;
 
-        AggregateData data = (AggregateData) group.get(this);
-        if (data == null) {
-            data = AggregateData.create(type);
-            group.put(this, data);
+        AggregateData data;
+        if (group == lastGroup) {
+            data = lastData;
+        } else {
+            data = (AggregateData) group.get(this);
+            if (data == null) {
+                data = AggregateData.create(type);
+                group.put(this, data);
+            }
+            lastGroup = group;
+            lastData = data;
         }
         Value v = on == null ? null : on.getValue(session);
         if (type == GROUP_CONCAT) {
@@ -26,6 +26,14 @@ class AggregateDataDefault extends AggregateData {
     private Value value;
     private double m2, mean;
 
+    /**
+     * The sum of the integer values that were not yet added to the value
+     * (only used for SUM and AVG).
+     */
+    private long longSum;
+    private int longSumType;
+    private boolean hasLongSum;
+
     /**
      * @param aggregateType the type of the aggregate operation
      */
@@ -48,6 +56,9 @@ class AggregateDataDefault extends AggregateData {
         }
         switch (aggregateType) {
         case Aggregate.SUM:
+            if (addLong(dataType, v)) {
+                break;
+            }
             if (value == null) {
                 value = v.convertTo(dataType);
             } else {
@@ -56,6 +67,9 @@ class AggregateDataDefault extends AggregateData {
             }
             break;
         case Aggregate.AVG:
+            if (addLong(DataType.getAddProofType(dataType), v)) {
+                break;
+            }
             if (value == null) {
                 value = v.convertTo(DataType.getAddProofType(dataType));
             } else {
@@ -118,6 +132,7 @@ class AggregateDataDefault extends AggregateData {
             count = 0;
             groupDistinct(database, dataType);
         }
+        flushLongSum();
         Value v = null;
         switch (aggregateType) {
         case Aggregate.SUM:
@@ -166,6 +181,53 @@ class AggregateDataDefault extends AggregateData {
         return v == null ? ValueNull.INSTANCE : v.convertTo(dataType);
     }
 
+    /**
+     * Add an integer value to the primitive sum, to avoid creating a value
+     * object for each row. The sum is added to the value if it would overflow.
+     *
+     * @param sumType the data type of the sum
+     * @param v the value to add
+     * @return true if the value was added
+     */
+    private boolean addLong(int sumType, Value v) {
+        if (sumType != Value.LONG && sumType != Value.DECIMAL) {
+            return false;
+        }
+        switch (v.getType()) {
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+            break;
+        default:
+            return false;
+        }
+        if (value != null && value.getType() != sumType) {
+            return false;
+        }
+        long x = v.getLong();
+        long r = longSum + x;
+        if (((longSum ^ r) & (x ^ r)) < 0) {
+            // overflow
+            flushLongSum();
+            r = x;
+        }
+        longSum = r;
+        longSumType = sumType;
+        hasLongSum = true;
+        return true;
+    }
+
+    private void flushLongSum() {
+        if (!hasLongSum) {
+            return;
+        }
+        Value s = ValueLong.get(longSum).convertTo(longSumType);
+        value = value == null ? s : value.add(s);
+        longSum = 0;
+        hasLongSum = false;
+    }
+
     private static Value divide(Value a, long by) {
         if (by == 0) {
             return ValueNull.INSTANCE;
@@ -557,4 +557,13 @@ public class Comparison extends Condition {
         return getLeft ? this.left : right;
     }
 
+    /**
+     * Get the compare type of this condition.
+     *
+     * @return the compare type
+     */
+    int getCompareType() {
+        return compareType;
+    }
+
 }
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.expression;
+
+import java.util.ArrayList;
+import org.h2.command.dml.Select;
+import org.h2.engine.Database;
+import org.h2.engine.Session;
+import org.h2.message.DbException;
+import org.h2.message.Trace;
+import org.h2.table.TableFilter;
+import org.h2.util.New;
+import org.h2.util.SmallLRUCache;
+import org.h2.util.SourceCompiler;
+import org.h2.util.StatementBuilder;
+import org.h2.value.Value;
+
+/**
+ * A condition of a query that was compiled to a Java class. The generated
+ * class reads the column values from the table filters directly, so that the
+ * JIT compiler can inline the whole condition. Comparisons, AND and OR are
+ * compiled; all other expressions are evaluated by calling the expression
+ * object.
+ */
+public abstract class CompiledCondition {
+
+    private static final String PACKAGE_NAME = "org.h2.dynamic";
+
+    /**
+     * The generated classes, keyed by the source code of the class body. A
+     * null value means the condition could not be compiled.
+     */
+    private static final SmallLRUCache<String, Class<?>> CLASSES =
+            SmallLRUCache.newInstance(256);
+
+    private static int nextClassId;
+
+    /**
+     * Check whether the condition is true for the current row.
+     *
+     * @param session the session
+     * @return true if the condition is true, false if it is false or NULL
+     */
+    public abstract boolean isTrue(Session session);
+
+    /**
+     * Compare two values that are not NULL.
+     *
+     * @param database the database
+     * @param l the first value
+     * @param r the second value
+     * @param compareType the compare type
+     * @return the result of the comparison
+     */
+    protected static boolean compare(Database database, Value l, Value r,
+            int compareType) {
+        return Comparison.compareNotNull(database, l, r, compareType);
+    }
+
+    /**
+     * Compile the condition of the given query.
+     *
+     * @param session the session
+     * @param select the query
+     * @param condition the condition
+     * @return the compiled condition, or null if compiling is not possible
+     */
+    public static CompiledCondition compile(Session session, Select select,
+            Expression condition) {
+        Generator g = new Generator(session.getDatabase(), select);
+        String body = g.generate(condition);
+        if (g.compiledCount == 0) {
+            // nothing to gain
+            return null;
+        }
+        Class<?> clazz;
+        synchronized (CLASSES) {
+            if (CLASSES.containsKey(body)) {
+                clazz = CLASSES.get(body);
+            } else {
+                clazz = compileClass(session, body);
+                CLASSES.put(body, clazz);
+            }
+        }
+        if (clazz == null) {
+            return null;
+        }
+        try {
+            Object[] args = g.args.toArray();
+            return (CompiledCondition) clazz.getConstructor(Object[].class).
+                    newInstance(new Object[] { args });
+        } catch (Exception e) {
+            session.getDatabase().getTrace(Trace.COMMAND).error(e, "compile");
+            return null;
+        }
+    }
+
+    private static Class<?> compileClass(Session session, String body) {
+        String className = "Condition" + nextClassId++;
+        String source = "package " + PACKAGE_NAME + ";\n" +
+                "import org.h2.engine.*;\n" +
+                "import org.h2.expression.*;\n" +
+                "import org.h2.table.*;\n" +
+                "import org.h2.value.*;\n" +
+                "public class " + className + " extends CompiledCondition {\n" +
+                body.replace("#CLASS#", className) +
+                "}\n";
+        Trace trace = session.getDatabase().getTrace(Trace.COMMAND);
+        if (trace.isDebugEnabled()) {
+            trace.debug("compile {0}", source);
+        }
+        try {
+            SourceCompiler compiler = new SourceCompiler();
+            compiler.setJavaSystemCompiler(true);
+            String name = PACKAGE_NAME + "." + className;
+            compiler.setSource(name, source);
+            return compiler.getClass(name);
+        } catch (Throwable e) {
+            trace.error(e, "compile");
+            return null;
+        }
+    }
+
+    /**
+     * Generates the source code of a compiled condition.
+     */
+    static class Generator {
+
+        /**
+         * The constructor arguments.
+         */
+        final ArrayList<Object> args = New.arrayList();
+
+        /**
+         * The number of expressions that were compiled (and not just called).
+         */
+        int compiledCount;
+
+        private final Database database;
+        private final Select select;
+        private final StringBuilder fields = new StringBuilder();
+        private final StringBuilder init = new StringBuilder();
+        private final StringBuilder methods = new StringBuilder();
+        private int methodId;
+
+        Generator(Database database, Select select) {
+            this.database = database;
+            this.select = select;
+        }
+
+        /**
+         * Generate the class body (without the class declaration).
+         *
+         * @param condition the condition
+         * @return the class body
+         */
+        String generate(Expression condition) {
+            String database = arg(this.database, "Database");
+            String code = isTrue(condition);
+            StringBuilder buff = new StringBuilder();
+            buff.append(fields);
+            buff.append("    public #CLASS#(Object[] args) {\n").
+                append(init).append("    }\n");
+            buff.append("    public boolean isTrue(Session session) {\n" +
+                    "        return ").append(code).append(";\n    }\n");
+            buff.append(methods);
+            return buff.toString().replace("#DATABASE#", database);
+        }
+
+        private String arg(Object o, String type) {
+            String name = "a" + args.size();
+            args.add(o);
+            fields.append("    private final ").append(type).append(' ').
+                append(name).append(";\n");
+            init.append("        ").append(name).append(" = (").
+                append(type).append(") args[").append(args.size() - 1).
+                append("];\n");
+            return name;
+        }
+
+        private String isTrue(Expression e) {
+            if (e instanceof ConditionAndOr) {
+                ConditionAndOr c = (ConditionAndOr) e;
+                String op = c.getAndOrType() == ConditionAndOr.AND ? " && " : " || ";
+                compiledCount++;
+                return "(" + isTrue(c.getExpression(true)) + op +
+                        isTrue(c.getExpression(false)) + ")";
+            } else if (e instanceof Comparison) {
+                String m = comparison((Comparison) e);
+                if (m != null) {
+                    compiledCount++;
+                    return m + "(session)";
+                }
+            }
+            return "Boolean.TRUE.equals(" + arg(e, "Expression") +
+                    ".getBooleanValue(session))";
+        }
+
+        private String comparison(Comparison c) {
+            int compareType = c.getCompareType();
+            Expression left = c.getExpression(true);
+            Expression right = c.getExpression(false);
+            String method = "c" + methodId++;
+            StatementBuilder buff = new StatementBuilder();
+            buff.append("    private boolean ").append(method).
+                append("(Session session) {\n");
+            switch (compareType) {
+            case Comparison.IS_NULL:
+            case Comparison.IS_NOT_NULL:
+                buff.append("        return ").append(value(left)).
+                    append(compareType == Comparison.IS_NULL ? " == " : " != ").
+                    append("ValueNull.INSTANCE;\n");
+                break;
+            case Comparison.EQUAL:
+            case Comparison.NOT_EQUAL:
+            case Comparison.BIGGER_EQUAL:
+            case Comparison.BIGGER:
+            case Comparison.SMALLER_EQUAL:
+            case Comparison.SMALLER: {
+                buff.append("        Value l = ").append(value(left)).append(";\n" +
+                        "        if (l == ValueNull.INSTANCE) {\n" +
+                        "            return false;\n" +
+                        "        }\n");
+                buff.append("        Value r = ").append(value(right)).append(";\n" +
+                        "        if (r == ValueNull.INSTANCE) {\n" +
+                        "            return false;\n" +
+                        "        }\n");
+                if (isDirect(left) && isDirect(right)) {
+                    // the data types of columns and constants are known
+                    int dataType = Value.getHigherOrder(left.getType(),
+                            right.getType());
+                    if (isLong(dataType)) {
+                        buff.append("        return l.getLong() ").
+                            append(getOperator(compareType)).
+                            append(" r.getLong();\n");
+                    } else {
+                        buff.append("        return compare(#DATABASE#, l.convertTo(").
+                            append(dataType).append("), r.convertTo(").
+                            append(dataType).append("), ").
+                            append(compareType).append(");\n");
+                    }
+                } else {
+                    // the data type of a parameter is only known when
+                    // the query is run, the same as in Comparison.getValue
+                    buff.append("        int t = Value.getHigherOrder(").
+                        append(arg(left, "Expression")).append(".getType(), ").
+                        append(arg(right, "Expression")).append(".getType());\n");
+                    buff.append("        return compare(#DATABASE#, " +
+                            "l.convertTo(t), r.convertTo(t), ").
+                        append(compareType).append(");\n");
+                }
+                break;
+            }
+            default:
+                return null;
+            }
+            buff.append("    }\n");
+            methods.append(buff.toString());
+            return method;
+        }
+
+        private static boolean isLong(int dataType) {
+            switch (dataType) {
+            case Value.BYTE:
+            case Value.SHORT:
+            case Value.INT:
+            case Value.LONG:
+                return true;
+            default:
+                return false;
+            }
+        }
+
+        /**
+         * Check whether the value of the expression is read directly (and
+         * not by calling the expression).
+         */
+        private boolean isDirect(Expression e) {
+            return e instanceof ValueExpression || getTableFilter(e) != null;
+        }
+
+        private TableFilter getTableFilter(Expression e) {
+            if (e instanceof ExpressionColumn) {
+                TableFilter f = ((ExpressionColumn) e).getTableFilter();
+                if (f != null && f.getSelect() == select) {
+                    return f;
+                }
+            }
+            return null;
+        }
+
+        private String value(Expression e) {
+            if (e instanceof ValueExpression) {
+                return arg(e.getValue(null), "Value");
+            }
+            TableFilter f = getTableFilter(e);
+            if (f != null) {
+                ExpressionColumn col = (ExpressionColumn) e;
+                return arg(f, "TableFilter") + ".getValue(" +
+                        arg(col.getColumn(), "Column") + ")";
+            }
+            return arg(e, "Expression") + ".getValue(session)";
+        }
+
+        private static String getOperator(int compareType) {
+            switch (compareType) {
+            case Comparison.EQUAL:
+                return "==";
+            case Comparison.NOT_EQUAL:
+                return "!=";
+            case Comparison.BIGGER_EQUAL:
+                return ">=";
+            case Comparison.BIGGER:
+                return ">";
+            case Comparison.SMALLER_EQUAL:
+                return "<=";
+            case Comparison.SMALLER:
+                return "<";
+            default:
+                throw DbException.throwInternalError("type=" + compareType);
+            }
+        }
+    }
+
+}
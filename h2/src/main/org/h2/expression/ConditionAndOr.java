@@ -283,4 +283,13 @@ public class ConditionAndOr extends Condition {
         return getLeft ? this.left : right;
     }
 
+    /**
+     * Get the type (AND or OR) of this condition.
+     *
+     * @return the type
+     */
+    int getAndOrType() {
+        return andOrType;
+    }
+
 }
@@ -135,6 +135,7 @@ public class ConditionInConstantSet extends Condition {
         case ExpressionVisitor.GET_DEPENDENCIES:
         case ExpressionVisitor.QUERY_COMPARABLE:
         case ExpressionVisitor.GET_COLUMNS:
+        case ExpressionVisitor.NOT_READING_TABLES:
             return true;
         default:
             throw DbException.throwInternalError("type=" + visitor.getType());
@@ -101,6 +101,17 @@ public class ExpressionVisitor {
      */
     public static final ExpressionVisitor QUERY_COMPARABLE_VISITOR = new ExpressionVisitor(QUERY_COMPARABLE);
 
+    /**
+     * Does the expression not read any table data (except the columns of the
+     * current row)? Queries and user-defined functions may read tables.
+     */
+    public static final int NOT_READING_TABLES = 10;
+
+    /**
+     * The visitor singleton for the type NOT_READING_TABLES.
+     */
+    public static final ExpressionVisitor NOT_READING_TABLES_VISITOR = new ExpressionVisitor(NOT_READING_TABLES);
+
     private final int type;
     private final int queryLevel;
     private final HashSet<DbObject> dependencies;
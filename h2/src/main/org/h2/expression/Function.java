@@ -2378,6 +2378,7 @@ public class Function extends Expression implements FunctionCall {
         case ExpressionVisitor.OPTIMIZABLE_MIN_MAX_COUNT_ALL:
         case ExpressionVisitor.SET_MAX_DATA_MODIFICATION_ID:
         case ExpressionVisitor.GET_COLUMNS:
+        case ExpressionVisitor.NOT_READING_TABLES:
             return true;
         default:
             throw DbException.throwInternalError("type=" + visitor.getType());
@@ -144,6 +144,9 @@ public class JavaFunction extends Expression implements FunctionCall {
             }
             // only if all parameters are deterministic as well
             break;
+        case ExpressionVisitor.NOT_READING_TABLES:
+            // the function may run queries
+            return false;
         case ExpressionVisitor.GET_DEPENDENCIES:
             visitor.addDependency(functionAlias);
             break;
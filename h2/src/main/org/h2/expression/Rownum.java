@@ -89,6 +89,7 @@ public class Rownum extends Expression {
         case ExpressionVisitor.GET_DEPENDENCIES:
         case ExpressionVisitor.SET_MAX_DATA_MODIFICATION_ID:
         case ExpressionVisitor.GET_COLUMNS:
+        case ExpressionVisitor.NOT_READING_TABLES:
             // if everything else is the same, the rownum is the same
             return true;
         default:
@@ -76,6 +76,7 @@ public class Variable extends Expression {
         case ExpressionVisitor.QUERY_COMPARABLE:
         case ExpressionVisitor.GET_DEPENDENCIES:
         case ExpressionVisitor.GET_COLUMNS:
+        case ExpressionVisitor.NOT_READING_TABLES:
             return true;
         case ExpressionVisitor.DETERMINISTIC:
             return false;
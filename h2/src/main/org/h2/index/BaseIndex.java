@@ -6,6 +6,7 @@
  */
 package org.h2.index;
 
+import java.util.ArrayList;
 import org.h2.constant.ErrorCode;
 import org.h2.engine.Constants;
 import org.h2.engine.DbObject;
@@ -38,6 +39,7 @@ public abstract class BaseIndex extends SchemaObjectBase implements Index {
     protected Table table;
     protected IndexType indexType;
     protected boolean isMultiVersion;
+    private int[] prefixSelectivity;
 
     /**
      * Initialize the base index.
@@ -169,21 +171,35 @@ public abstract class BaseIndex extends SchemaObjectBase implements Index {
                     cost = 3;
                     break;
                 }
+                long prefixRows = rows;
                 totalSelectivity = 100 - ((100 - totalSelectivity) * (100 - column.getSelectivity()) / 100);
+                boolean correlated = i > 0 && prefixSelectivity != null &&
+                        i < prefixSelectivity.length && prefixSelectivity[i] > 0;
+                if (correlated) {
+                    totalSelectivity = prefixSelectivity[i];
+                }
                 long distinctRows = rowCount * totalSelectivity / 100;
                 if (distinctRows <= 0) {
                     distinctRows = 1;
                 }
-                rows = Math.max(rowCount / distinctRows, 1);
+                rows = Math.min(Math.max(rowCount / distinctRows, 1), prefixRows);
+                // the column statistics assume the columns are independent
+                double fraction = correlated ? -1 : getFraction(filter, column);
+                if (fraction >= 0) {
+                    rows = Math.max((long) (prefixRows * fraction), 1);
+                }
                 cost = 2 + rows;
-            } else if ((mask & IndexCondition.RANGE) == IndexCondition.RANGE) {
-                cost = 2 + rows / 4;
-                break;
-            } else if ((mask & IndexCondition.START) == IndexCondition.START) {
-                cost = 2 + rows / 3;
-                break;
-            } else if ((mask & IndexCondition.END) == IndexCondition.END) {
-                cost = rows / 3;
+            } else if ((mask & IndexCondition.RANGE) != 0) {
+                double fraction = getFraction(filter, column);
+                if (fraction >= 0) {
+                    cost = 2 + (long) (rows * fraction);
+                } else if ((mask & IndexCondition.RANGE) == IndexCondition.RANGE) {
+                    cost = 2 + rows / 4;
+                } else if ((mask & IndexCondition.START) == IndexCondition.START) {
+                    cost = 2 + rows / 3;
+                } else {
+                    cost = rows / 3;
+                }
                 break;
             } else {
                 break;
@@ -230,6 +246,51 @@ public abstract class BaseIndex extends SchemaObjectBase implements Index {
         return cost;
     }
 
+    /**
+     * Estimate the fraction of rows that match the index conditions of the
+     * given column, using the column statistics.
+     *
+     * @param filter the table filter
+     * @param column the column
+     * @return the fraction (between 0 and 1), or -1 if unknown
+     */
+    private static double getFraction(TableFilter filter, Column column) {
+        if (filter == null || column.getStatistics() == null) {
+            return -1;
+        }
+        double equal = 1, start = 1, end = 1;
+        boolean found = false;
+        ArrayList<IndexCondition> conditions = filter.getIndexConditions();
+        for (IndexCondition condition : conditions) {
+            if (condition.getColumn() != column || !condition.isEvaluatable()) {
+                continue;
+            }
+            double f = condition.getFraction(filter.getSession());
+            if (f < 0) {
+                return -1;
+            }
+            switch (condition.getMask(conditions)) {
+            case IndexCondition.EQUALITY:
+                equal = Math.min(equal, f);
+                break;
+            case IndexCondition.START:
+                start = Math.min(start, f);
+                break;
+            case IndexCondition.END:
+                end = Math.min(end, f);
+                break;
+            default:
+                return -1;
+            }
+            found = true;
+        }
+        if (!found) {
+            return -1;
+        }
+        // the rows between the start and the end
+        return Math.min(equal, Math.max(0, start + end - 1));
+    }
+
     @Override
     public int compareRows(SearchRow rowData, SearchRow compare) {
         if (rowData == compare) {
@@ -360,7 +421,33 @@ public abstract class BaseIndex extends SchemaObjectBase implements Index {
 
     @Override
     public String getCreateSQL() {
-        return getCreateSQLForCopy(table, getSQL());
+        String sql = getCreateSQLForCopy(table, getSQL());
+        if (prefixSelectivity != null) {
+            StatementBuilder buff = new StatementBuilder(sql);
+            buff.append(" SELECTIVITY(");
+            for (int s : prefixSelectivity) {
+                buff.appendExceptFirst(", ");
+                buff.append(s);
+            }
+            sql = buff.append(')').toString();
+        }
+        return sql;
+    }
+
+    /**
+     * Get the selectivity of the leading columns of the index, as collected
+     * by ANALYZE. The element at position i is the selectivity of the first
+     * i + 1 columns combined, or 0 if not known. Unlike the product of the
+     * column selectivities, this considers correlated columns.
+     *
+     * @return the selectivity, or null if not known
+     */
+    public int[] getPrefixSelectivity() {
+        return prefixSelectivity;
+    }
+
+    public void setPrefixSelectivity(int[] prefixSelectivity) {
+        this.prefixSelectivity = prefixSelectivity;
     }
 
     @Override
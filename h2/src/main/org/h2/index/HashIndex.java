@@ -15,7 +15,7 @@ import org.h2.table.Column;
 import org.h2.table.IndexColumn;
 import org.h2.table.RegularTable;
 import org.h2.table.TableFilter;
-import org.h2.util.ValueHashMap;
+import org.h2.util.RowKeyHashMap;
 import org.h2.value.Value;
 
 /**
@@ -29,7 +29,7 @@ public class HashIndex extends BaseIndex {
     private final int indexColumn;
 
     private final RegularTable tableData;
-    private ValueHashMap<Long> rows;
+    private RowKeyHashMap rows;
 
     public HashIndex(RegularTable table, int id, String indexName, IndexColumn[] columns, IndexType indexType) {
         initBaseIndex(table, id, indexName, columns, indexType);
@@ -39,7 +39,7 @@ public class HashIndex extends BaseIndex {
     }
 
     private void reset() {
-        rows = ValueHashMap.newInstance();
+        rows = RowKeyHashMap.newInstance(columns[0].getType());
     }
 
     @Override
@@ -50,17 +50,16 @@ public class HashIndex extends BaseIndex {
     @Override
     public void add(Session session, Row row) {
         Value key = row.getValue(indexColumn);
-        Object old = rows.get(key);
-        if (old != null) {
+        if (rows.containsKey(key)) {
             // TODO index duplicate key for hash indexes: is this allowed?
             throw getDuplicateKeyException(key.toString());
         }
-        rows.put(key, row.getKey());
+        rows.add(key, row.getKey());
     }
 
     @Override
     public void remove(Session session, Row row) {
-        rows.remove(row.getValue(indexColumn));
+        rows.remove(row.getValue(indexColumn), row.getKey());
     }
 
     @Override
@@ -73,16 +72,16 @@ public class HashIndex extends BaseIndex {
         /*
          * Sometimes the incoming search is a similar, but not the same type
          * e.g. the search value is INT, but the index column is LONG. In which
-         * case we need to convert, otherwise the ValueHashMap will not find the
-         * result.
+         * case we need to convert, otherwise the RowKeyHashMap will not find
+         * the result.
          */
         v = v.convertTo(tableData.getColumn(indexColumn).getType());
         Row result;
-        Long pos = rows.get(v);
+        long[] pos = rows.get(v);
         if (pos == null) {
             result = null;
         } else {
-            result = tableData.getRow(session, pos.intValue());
+            result = tableData.getRow(session, pos[0]);
         }
         return new SingleRowCursor(result);
     }
@@ -20,10 +20,12 @@ import org.h2.expression.ExpressionVisitor;
 import org.h2.message.DbException;
 import org.h2.result.ResultInterface;
 import org.h2.table.Column;
+import org.h2.table.ColumnStatistics;
 import org.h2.table.Table;
 import org.h2.util.StatementBuilder;
 import org.h2.value.CompareMode;
 import org.h2.value.Value;
+import org.h2.value.ValueNull;
 
 /**
  * A index condition object is made for each condition that can potentially use
@@ -161,6 +163,67 @@ public class IndexCondition {
         return array;
     }
 
+    /**
+     * Estimate the fraction of the rows of the table that match this
+     * condition, using the statistics of the column. This is only possible
+     * if the values are constants.
+     *
+     * @param session the session
+     * @return the fraction (between 0 and 1), or -1 if unknown
+     */
+    public double getFraction(Session session) {
+        ColumnStatistics stat = column == null ? null : column.getStatistics();
+        if (stat == null) {
+            return -1;
+        }
+        CompareMode mode = session.getDatabase().getCompareMode();
+        try {
+            switch (compareType) {
+            case Comparison.EQUAL:
+            case Comparison.EQUAL_NULL_SAFE: {
+                if (!expression.isConstant()) {
+                    return -1;
+                }
+                Value v = expression.getValue(session);
+                if (v == ValueNull.INSTANCE &&
+                        compareType == Comparison.EQUAL_NULL_SAFE) {
+                    return stat.getNullFraction();
+                }
+                return stat.getEqualFraction(mode, v);
+            }
+            case Comparison.IN_LIST: {
+                for (Expression e : expressionList) {
+                    if (!e.isConstant()) {
+                        return -1;
+                    }
+                }
+                double f = 0;
+                for (Value v : getCurrentValueList(session)) {
+                    f += stat.getEqualFraction(mode, v);
+                }
+                return Math.min(1, f);
+            }
+            case Comparison.BIGGER_EQUAL:
+            case Comparison.BIGGER:
+                if (!expression.isConstant()) {
+                    return -1;
+                }
+                return stat.getRangeFraction(mode, expression.getValue(session), null);
+            case Comparison.SMALLER_EQUAL:
+            case Comparison.SMALLER:
+                if (!expression.isConstant()) {
+                    return -1;
+                }
+                return stat.getRangeFraction(mode, null, expression.getValue(session));
+            default:
+                return -1;
+            }
+        } catch (DbException e) {
+            // the value can not be converted to the column type
+            return -1;
+        }
+    }
+
     /**
      * Get the current result of the expression. The rows may not be of the same
      * type, therefore the rows may not be unique.
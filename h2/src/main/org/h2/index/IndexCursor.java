@@ -16,9 +16,11 @@ import org.h2.result.Row;
 import org.h2.result.SearchRow;
 import org.h2.result.SortOrder;
 import org.h2.table.Column;
+import org.h2.table.ColumnStatistics;
 import org.h2.table.IndexColumn;
 import org.h2.table.Table;
 import org.h2.table.TableFilter;
+import org.h2.value.CompareMode;
 import org.h2.value.Value;
 import org.h2.value.ValueGeometry;
 import org.h2.value.ValueNull;
@@ -33,6 +35,12 @@ import org.h2.value.ValueNull;
  */
 public class IndexCursor implements Cursor {
 
+    /**
+     * The number of rows that can be read sequentially at about the same
+     * cost as one index search.
+     */
+    private static final int ROWS_PER_SEARCH = 8;
+
     private Session session;
     private final TableFilter tableFilter;
     private Index index;
@@ -45,6 +53,7 @@ public class IndexCursor implements Cursor {
     private Column inColumn;
     private int inListIndex;
     private Value[] inList;
+    private boolean inListScan;
     private ResultInterface inResult;
     private HashSet<Value> inResultTested;
 
@@ -79,10 +88,16 @@ public class IndexCursor implements Cursor {
         alwaysFalse = false;
         start = end = null;
         inList = null;
+        inListScan = false;
         inColumn = null;
         inResult = null;
         inResultTested = null;
         intersects = null;
+        if (tableFilter.getSampleSize() != null) {
+            // the index conditions are still checked by the query
+            cursor = new MetaCursor(tableFilter.getSampleRows(s));
+            return;
+        }
         // don't use enhanced for loop to avoid creating objects
         for (int i = 0, size = indexConditions.size(); i < size; i++) {
             IndexCondition condition = indexConditions.get(i);
@@ -149,6 +164,10 @@ public class IndexCursor implements Cursor {
             }
         }
         if (inColumn != null) {
+            cursor = null;
+            if (inList != null && !alwaysFalse) {
+                findInListRange();
+            }
             return;
         }
         if (!alwaysFalse) {
@@ -161,6 +180,93 @@ public class IndexCursor implements Cursor {
         }
     }
 
+    /**
+     * If the values of the IN list are dense, read all rows between the
+     * smallest and the largest value in one ordered range scan, and skip the
+     * rows that don't match. This avoids searching the index for each value,
+     * and the index pages are read sequentially.
+     */
+    private void findInListRange() {
+        int first = 0;
+        while (first < inList.length && inList[first] == ValueNull.INSTANCE) {
+            first++;
+        }
+        int count = inList.length - first;
+        if (count < 2 || !isDense(inList[first], inList[inList.length - 1], count)) {
+            return;
+        }
+        int id = inColumn.getColumnId();
+        start = getSearchRow(null, id, inList[first], true);
+        end = getSearchRow(null, id, inList[inList.length - 1], false);
+        cursor = index.find(tableFilter, start, end);
+        inListIndex = inList.length;
+        inListScan = true;
+    }
+
+    private boolean isDense(Value min, Value max, int count) {
+        int id = inColumn.getColumnId();
+        IndexColumn idxCol = id < 0 ? null : indexColumns[id];
+        IndexType type = index.getIndexType();
+        if (idxCol == null || (idxCol.sortType & SortOrder.DESCENDING) != 0 ||
+                type.isHash() || type.isSpatial() || type.isScan()) {
+            return false;
+        }
+        double rows, matches;
+        if (type.isUnique() && index.getColumns().length == 1 &&
+                isInteger(inColumn.getType())) {
+            // there is at most one row per value
+            rows = (double) max.getLong() - min.getLong() + 1;
+            matches = count;
+        } else {
+            ColumnStatistics stats = inColumn.getStatistics();
+            if (stats == null) {
+                return false;
+            }
+            CompareMode compareMode = table.getDatabase().getCompareMode();
+            long rowCount = table.getRowCountApproximation();
+            rows = stats.getRangeFraction(compareMode, min, max) * rowCount;
+            matches = 0;
+            // the NULL values are at the start of the list, and never match
+            for (int i = inList.length - count; i < inList.length; i++) {
+                matches += stats.getEqualFraction(compareMode, inList[i]) * rowCount;
+            }
+        }
+        return rows - matches <= count * ROWS_PER_SEARCH;
+    }
+
+    private static boolean isInteger(int type) {
+        switch (type) {
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private boolean isInList(SearchRow row) {
+        Value v = row.getValue(inColumn.getColumnId());
+        if (v == null || v == ValueNull.INSTANCE) {
+            return false;
+        }
+        CompareMode compareMode = table.getDatabase().getCompareMode();
+        int low = 0, high = inList.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int comp = inList[mid].compareTo(v, compareMode);
+            if (comp < 0) {
+                low = mid + 1;
+            } else if (comp > 0) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private boolean canUseIndexForIn(Column column) {
         if (inColumn != null) {
             // only one IN(..) condition can be used at the same time
@@ -272,6 +378,9 @@ public class IndexCursor implements Cursor {
                 }
             }
             if (cursor.next()) {
+                if (inListScan && !isInList(cursor.getSearchRow())) {
+                    continue;
+                }
                 return true;
             }
             cursor = null;
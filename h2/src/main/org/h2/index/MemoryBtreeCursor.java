@@ -0,0 +1,108 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.index;
+
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+
+/**
+ * The cursor implementation for the in-memory B-tree index. The cursor
+ * iterates over the linked leaves. If the tree was modified after the cursor
+ * read its position, the position is searched again using the current row.
+ */
+public class MemoryBtreeCursor implements Cursor {
+
+    private final MemoryBtreeIndex index;
+    private final SearchRow first, last;
+    private MemoryBtreeNode leaf;
+    private int pos;
+    private int version;
+    private Row current;
+    private boolean beforeFirst = true;
+
+    MemoryBtreeCursor(MemoryBtreeIndex index, SearchRow first, SearchRow last) {
+        this.index = index;
+        this.first = first;
+        this.last = last;
+    }
+
+    /**
+     * Set the position of the cursor.
+     *
+     * @param leaf the leaf
+     * @param pos the position within the leaf
+     * @param version the modification counter of the index
+     */
+    void setPosition(MemoryBtreeNode leaf, int pos, int version) {
+        this.leaf = leaf;
+        this.pos = pos;
+        this.version = version;
+        beforeFirst = false;
+    }
+
+    @Override
+    public Row get() {
+        return current;
+    }
+
+    @Override
+    public SearchRow getSearchRow() {
+        return current;
+    }
+
+    @Override
+    public boolean next() {
+        if (beforeFirst) {
+            index.seek(this, first, false, false);
+        } else if (leaf == null) {
+            return false;
+        } else if (current == null) {
+            // before the first row, after calling previous()
+        } else if (index.isModified(version)) {
+            index.seek(this, current, true, true);
+        } else {
+            pos++;
+        }
+        while (pos >= leaf.count) {
+            leaf = leaf.next;
+            if (leaf == null) {
+                current = null;
+                return false;
+            }
+            pos = 0;
+        }
+        current = leaf.rows[pos];
+        if (last != null && index.compareRows(current, last) > 0) {
+            current = null;
+            leaf = null;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean previous() {
+        if (leaf == null) {
+            return false;
+        }
+        if (current != null && index.isModified(version)) {
+            index.seek(this, current, true, false);
+        }
+        pos--;
+        while (pos < 0) {
+            leaf = leaf.previous;
+            if (leaf == null) {
+                current = null;
+                return false;
+            }
+            pos = leaf.count - 1;
+        }
+        current = leaf.rows[pos];
+        return true;
+    }
+
+}
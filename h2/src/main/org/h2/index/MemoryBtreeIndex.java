@@ -0,0 +1,369 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.index;
+
+import org.h2.engine.Session;
+import org.h2.message.DbException;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.result.SortOrder;
+import org.h2.table.IndexColumn;
+import org.h2.table.RegularTable;
+import org.h2.table.TableFilter;
+import org.h2.value.Value;
+import org.h2.value.ValueNull;
+
+/**
+ * An in-memory index based on a B+-tree. Compared to the AVL tree of the
+ * TreeIndex, there is no node object per row, and the rows are stored in
+ * arrays, so that searching and iterating needs fewer memory accesses. The
+ * rows are sorted by the index columns and then by the row key. The leaves are
+ * linked, so that cursors can iterate without going through the inner nodes.
+ */
+public class MemoryBtreeIndex extends BaseIndex {
+
+    /**
+     * The maximum number of rows per leaf, and children per inner node.
+     */
+    static final int NODE_SIZE = 64;
+
+    /**
+     * Nodes with fewer entries are merged with a sibling if possible.
+     */
+    private static final int MIN_NODE_SIZE = NODE_SIZE / 4;
+
+    private final RegularTable tableData;
+    private MemoryBtreeNode root;
+    private int height;
+    private long rowCount;
+    private boolean closed;
+    private MemoryBtreeNode[] path;
+    private int[] pathIndex;
+
+    /**
+     * The modification counter. Cursors use it to detect that the tree was
+     * changed since they read the current position.
+     */
+    private int version;
+
+    public MemoryBtreeIndex(RegularTable table, int id, String indexName,
+            IndexColumn[] columns, IndexType indexType) {
+        initBaseIndex(table, id, indexName, columns, indexType);
+        tableData = table;
+        if (!database.isStarting()) {
+            checkIndexColumnTypes(columns);
+        }
+        reset();
+    }
+
+    private void reset() {
+        root = new MemoryBtreeNode(NODE_SIZE, true);
+        height = 0;
+        rowCount = 0;
+        path = new MemoryBtreeNode[4];
+        pathIndex = new int[4];
+        version++;
+    }
+
+    @Override
+    public void close(Session session) {
+        root = null;
+        closed = true;
+    }
+
+    /**
+     * Compare a row of the index with a search row.
+     *
+     * @param row the row of the index
+     * @param search the search row
+     * @param withKey whether to compare the keys if the index columns are equal
+     * @return the comparison result
+     */
+    private int compare(SearchRow row, SearchRow search, boolean withKey) {
+        int comp = compareRows(row, search);
+        if (comp == 0 && withKey) {
+            comp = compareKeys(row, search);
+        }
+        return comp;
+    }
+
+    /**
+     * Count the rows in the given range that are smaller than the search row
+     * (or smaller or equal if after is set). The rows must be sorted.
+     *
+     * @param rows the rows
+     * @param from the index of the first row
+     * @param to the index after the last row
+     * @param search the search row
+     * @param withKey whether to compare the keys
+     * @param after whether rows that are equal to the search row are counted
+     * @return the number of rows
+     */
+    private int count(Row[] rows, int from, int to, SearchRow search,
+            boolean withKey, boolean after) {
+        int low = from, high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int comp = compare(rows[mid], search, withKey);
+            if (comp < 0 || (after && comp == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - from;
+    }
+
+    /**
+     * Position the cursor at the first row that is larger or equal to the
+     * search row (or larger, if after is set).
+     *
+     * @param cursor the cursor
+     * @param search the search row, or null for the first row
+     * @param withKey whether to compare the keys
+     * @param after whether to skip rows that are equal
+     */
+    void seek(MemoryBtreeCursor cursor, SearchRow search, boolean withKey,
+            boolean after) {
+        MemoryBtreeNode n = root;
+        while (!n.isLeaf()) {
+            int i = search == null ? 0 : count(n.rows, 1, n.count, search,
+                    withKey, after);
+            n = n.children[i];
+        }
+        int pos = search == null ? 0 : count(n.rows, 0, n.count, search,
+                withKey, after);
+        cursor.setPosition(n, pos, version);
+    }
+
+    private MemoryBtreeNode findLeaf(Row row) {
+        MemoryBtreeNode n = root;
+        for (int depth = 0; !n.isLeaf(); depth++) {
+            int i = count(n.rows, 1, n.count, row, true, true);
+            if (depth >= path.length) {
+                MemoryBtreeNode[] p = new MemoryBtreeNode[depth * 2];
+                int[] pi = new int[depth * 2];
+                System.arraycopy(path, 0, p, 0, depth);
+                System.arraycopy(pathIndex, 0, pi, 0, depth);
+                path = p;
+                pathIndex = pi;
+            }
+            path[depth] = n;
+            pathIndex[depth] = i;
+            n = n.children[i];
+        }
+        return n;
+    }
+
+    @Override
+    public void add(Session session, Row row) {
+        if (closed) {
+            throw DbException.throwInternalError();
+        }
+        MemoryBtreeNode leaf = findLeaf(row);
+        int pos = count(leaf.rows, 0, leaf.count, row, true, true);
+        if (indexType.isUnique()) {
+            Row prev = pos > 0 ? leaf.rows[pos - 1] : getLast(leaf.previous);
+            Row next = pos < leaf.count ? leaf.rows[pos] : getFirst(leaf.next);
+            if ((prev != null && compareRows(prev, row) == 0) ||
+                    (next != null && compareRows(next, row) == 0)) {
+                if (!containsNullAndAllowMultipleNull(row)) {
+                    throw getDuplicateKeyException(row.toString());
+                }
+            }
+        }
+        leaf.insert(pos, row, null);
+        rowCount++;
+        version++;
+        MemoryBtreeNode n = leaf;
+        boolean append = pos == leaf.count - 1;
+        for (int depth = height - 1; n.count > NODE_SIZE; depth--) {
+            // if rows are added in ascending order, keep the nodes full
+            MemoryBtreeNode split = n.split(NODE_SIZE, append ? NODE_SIZE
+                    : n.count / 2);
+            if (depth < 0) {
+                MemoryBtreeNode r = new MemoryBtreeNode(NODE_SIZE, false);
+                r.rows[0] = n.rows[0];
+                r.children[0] = n;
+                r.count = 1;
+                r.insert(1, split.rows[0], split);
+                root = r;
+                height++;
+                break;
+            }
+            MemoryBtreeNode parent = path[depth];
+            int i = pathIndex[depth] + 1;
+            append = i == parent.count;
+            parent.insert(i, split.rows[0], split);
+            n = parent;
+        }
+    }
+
+    private static Row getFirst(MemoryBtreeNode leaf) {
+        for (; leaf != null; leaf = leaf.next) {
+            if (leaf.count > 0) {
+                return leaf.rows[0];
+            }
+        }
+        return null;
+    }
+
+    private static Row getLast(MemoryBtreeNode leaf) {
+        for (; leaf != null; leaf = leaf.previous) {
+            if (leaf.count > 0) {
+                return leaf.rows[leaf.count - 1];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void remove(Session session, Row row) {
+        if (closed) {
+            throw DbException.throwInternalError();
+        }
+        MemoryBtreeNode leaf = findLeaf(row);
+        int pos = count(leaf.rows, 0, leaf.count, row, true, true) - 1;
+        if (pos < 0 || compare(leaf.rows[pos], row, true) != 0) {
+            throw DbException.throwInternalError("not found!");
+        }
+        leaf.remove(pos);
+        rowCount--;
+        version++;
+        MemoryBtreeNode n = leaf;
+        for (int depth = height - 1; depth >= 0 && n.count < MIN_NODE_SIZE;
+                depth--) {
+            MemoryBtreeNode parent = path[depth];
+            if (parent.count < 2) {
+                break;
+            }
+            // merge the right node into the left node
+            int i = pathIndex[depth];
+            if (i == parent.count - 1) {
+                i--;
+            }
+            MemoryBtreeNode left = parent.children[i];
+            MemoryBtreeNode right = parent.children[i + 1];
+            if (left.count + right.count > NODE_SIZE) {
+                break;
+            }
+            left.merge(right, parent.rows[i + 1]);
+            parent.remove(i + 1);
+            n = parent;
+        }
+        while (!root.isLeaf() && root.count == 1) {
+            root = root.children[0];
+            height--;
+        }
+    }
+
+    @Override
+    public Cursor find(TableFilter filter, SearchRow first, SearchRow last) {
+        return find(first, last);
+    }
+
+    @Override
+    public Cursor find(Session session, SearchRow first, SearchRow last) {
+        return find(first, last);
+    }
+
+    private Cursor find(SearchRow first, SearchRow last) {
+        if (closed) {
+            throw DbException.throwInternalError();
+        }
+        return new MemoryBtreeCursor(this, first, last);
+    }
+
+    /**
+     * Check whether the tree was modified.
+     *
+     * @param v the modification counter as seen by the cursor
+     * @return true if the tree was modified
+     */
+    boolean isModified(int v) {
+        return v != version;
+    }
+
+    @Override
+    public double getCost(Session session, int[] masks, TableFilter filter,
+            SortOrder sortOrder) {
+        return getCostRangeIndex(masks, tableData.getRowCountApproximation(),
+                filter, sortOrder);
+    }
+
+    @Override
+    public void remove(Session session) {
+        truncate(session);
+    }
+
+    @Override
+    public void truncate(Session session) {
+        reset();
+    }
+
+    @Override
+    public void checkRename() {
+        // nothing to do
+    }
+
+    @Override
+    public boolean needRebuild() {
+        return true;
+    }
+
+    @Override
+    public boolean canGetFirstOrLast() {
+        return true;
+    }
+
+    @Override
+    public Cursor findFirstOrLast(Session session, boolean first) {
+        if (closed) {
+            throw DbException.throwInternalError();
+        }
+        MemoryBtreeCursor cursor = new MemoryBtreeCursor(this, null, null);
+        if (first) {
+            // TODO optimization: this loops through NULL
+            while (cursor.next()) {
+                Value v = cursor.get().getValue(columnIds[0]);
+                if (v != ValueNull.INSTANCE) {
+                    break;
+                }
+            }
+            return cursor;
+        }
+        MemoryBtreeNode n = root;
+        while (!n.isLeaf()) {
+            n = n.children[n.count - 1];
+        }
+        cursor.setPosition(n, n.count, version);
+        // TODO optimization: this loops through NULL elements
+        while (cursor.previous()) {
+            Value v = cursor.get().getValue(columnIds[0]);
+            if (v != ValueNull.INSTANCE) {
+                break;
+            }
+        }
+        return cursor;
+    }
+
+    @Override
+    public long getRowCount(Session session) {
+        return rowCount;
+    }
+
+    @Override
+    public long getRowCountApproximation() {
+        return rowCount;
+    }
+
+    @Override
+    public long getDiskSpaceUsed() {
+        return 0;
+    }
+
+}
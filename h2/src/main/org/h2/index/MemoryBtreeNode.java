@@ -0,0 +1,149 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.index;
+
+import org.h2.result.Row;
+
+/**
+ * A node of an in-memory B-tree index. A leaf contains the rows, and an inner
+ * node contains the child nodes. The arrays have one more element than the
+ * maximum number of entries, so that a node can be split after adding an
+ * entry.
+ */
+class MemoryBtreeNode {
+
+    /**
+     * The rows of a leaf. For an inner node, rows[i] is the smallest row of
+     * the child i (for i > 0), and rows[0] is not used for searching.
+     */
+    final Row[] rows;
+
+    /**
+     * The child nodes, or null if this is a leaf.
+     */
+    final MemoryBtreeNode[] children;
+
+    /**
+     * The number of rows of a leaf, or the number of children of an inner
+     * node.
+     */
+    int count;
+
+    /**
+     * The next leaf, or null.
+     */
+    MemoryBtreeNode next;
+
+    /**
+     * The previous leaf, or null.
+     */
+    MemoryBtreeNode previous;
+
+    MemoryBtreeNode(int size, boolean leaf) {
+        rows = new Row[size + 1];
+        children = leaf ? null : new MemoryBtreeNode[size + 1];
+    }
+
+    /**
+     * Check if this node is a leaf.
+     *
+     * @return true if it is
+     */
+    boolean isLeaf() {
+        return children == null;
+    }
+
+    /**
+     * Insert a row (and for an inner node, the child node that starts with
+     * this row) at the given position.
+     *
+     * @param index the position
+     * @param row the row
+     * @param child the child node or null
+     */
+    void insert(int index, Row row, MemoryBtreeNode child) {
+        System.arraycopy(rows, index, rows, index + 1, count - index);
+        rows[index] = row;
+        if (children != null) {
+            System.arraycopy(children, index, children, index + 1, count
+                    - index);
+            children[index] = child;
+        }
+        count++;
+    }
+
+    /**
+     * Remove the entry at the given position.
+     *
+     * @param index the position
+     */
+    void remove(int index) {
+        count--;
+        System.arraycopy(rows, index + 1, rows, index, count - index);
+        rows[count] = null;
+        if (children != null) {
+            System.arraycopy(children, index + 1, children, index, count
+                    - index);
+            children[count] = null;
+        }
+    }
+
+    /**
+     * Move the entries starting at the given position to a new node.
+     *
+     * @param size the maximum number of entries
+     * @param index the position
+     * @return the new node
+     */
+    MemoryBtreeNode split(int size, int index) {
+        MemoryBtreeNode n = new MemoryBtreeNode(size, isLeaf());
+        int len = count - index;
+        System.arraycopy(rows, index, n.rows, 0, len);
+        if (children != null) {
+            System.arraycopy(children, index, n.children, 0, len);
+        }
+        for (int i = index; i < count; i++) {
+            rows[i] = null;
+            if (children != null) {
+                children[i] = null;
+            }
+        }
+        n.count = len;
+        count = index;
+        if (isLeaf()) {
+            n.next = next;
+            n.previous = this;
+            if (next != null) {
+                next.previous = n;
+            }
+            next = n;
+        }
+        return n;
+    }
+
+    /**
+     * Append all entries of the given node, which must be the next sibling.
+     *
+     * @param n the next sibling
+     * @param separator the smallest row of the next sibling (only used for
+     *            inner nodes)
+     */
+    void merge(MemoryBtreeNode n, Row separator) {
+        System.arraycopy(n.rows, 0, rows, count, n.count);
+        if (children != null) {
+            System.arraycopy(n.children, 0, children, count, n.count);
+            rows[count] = separator;
+        } else {
+            next = n.next;
+            if (next != null) {
+                next.previous = this;
+            }
+        }
+        count += n.count;
+    }
+
+}
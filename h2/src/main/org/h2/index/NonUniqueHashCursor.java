@@ -6,7 +6,6 @@
  */
 package org.h2.index;
 
-import java.util.ArrayList;
 import org.h2.engine.Session;
 import org.h2.result.Row;
 import org.h2.result.SearchRow;
@@ -20,12 +19,12 @@ import org.h2.table.RegularTable;
 public class NonUniqueHashCursor implements Cursor {
 
     private final Session session;
-    private final ArrayList<Long> positions;
+    private final long[] positions;
     private final RegularTable tableData;
 
     private int index = -1;
 
-    public NonUniqueHashCursor(Session session, RegularTable tableData, ArrayList<Long> positions) {
+    public NonUniqueHashCursor(Session session, RegularTable tableData, long[] positions) {
         this.session = session;
         this.tableData = tableData;
         this.positions = positions;
@@ -33,10 +32,10 @@ public class NonUniqueHashCursor implements Cursor {
 
     @Override
     public Row get() {
-        if (index < 0 || index >= positions.size()) {
+        if (index < 0 || index >= positions.length) {
             return null;
         }
-        return tableData.getRow(session, positions.get(index));
+        return tableData.getRow(session, positions[index]);
     }
 
     @Override
@@ -46,7 +45,7 @@ public class NonUniqueHashCursor implements Cursor {
 
     @Override
     public boolean next() {
-        return positions != null && ++index < positions.size();
+        return positions != null && ++index < positions.length;
     }
 
     @Override
@@ -6,7 +6,6 @@
  */
 package org.h2.index;
 
-import java.util.ArrayList;
 import org.h2.engine.Session;
 import org.h2.message.DbException;
 import org.h2.result.Row;
@@ -16,8 +15,7 @@ import org.h2.table.Column;
 import org.h2.table.IndexColumn;
 import org.h2.table.RegularTable;
 import org.h2.table.TableFilter;
-import org.h2.util.New;
-import org.h2.util.ValueHashMap;
+import org.h2.util.RowKeyHashMap;
 import org.h2.value.Value;
 
 /**
@@ -31,7 +29,7 @@ public class NonUniqueHashIndex extends BaseIndex {
      * The index of the indexed column.
      */
     private final int indexColumn;
-    private ValueHashMap<ArrayList<Long>> rows;
+    private RowKeyHashMap rows;
     private final RegularTable tableData;
     private long rowCount;
 
@@ -43,7 +41,7 @@ public class NonUniqueHashIndex extends BaseIndex {
     }
 
     private void reset() {
-        rows = ValueHashMap.newInstance();
+        rows = RowKeyHashMap.newInstance(columns[0].getType());
         rowCount = 0;
     }
 
@@ -55,12 +53,7 @@ public class NonUniqueHashIndex extends BaseIndex {
     @Override
     public void add(Session session, Row row) {
         Value key = row.getValue(indexColumn);
-        ArrayList<Long> positions = rows.get(key);
-        if (positions == null) {
-            positions = New.arrayList();
-            rows.put(key, positions);
-        }
-        positions.add(row.getKey());
+        rows.add(key, row.getKey());
         rowCount++;
     }
 
@@ -70,14 +63,7 @@ public class NonUniqueHashIndex extends BaseIndex {
             // last row in table
             reset();
         } else {
-            Value key = row.getValue(indexColumn);
-            ArrayList<Long> positions = rows.get(key);
-            if (positions.size() == 1) {
-                // last row with such key
-                rows.remove(key);
-            } else {
-                positions.remove(row.getKey());
-            }
+            rows.remove(row.getValue(indexColumn), row.getKey());
             rowCount--;
         }
     }
@@ -96,11 +82,11 @@ public class NonUniqueHashIndex extends BaseIndex {
         /*
          * Sometimes the incoming search is a similar, but not the same type
          * e.g. the search value is INT, but the index column is LONG. In which
-         * case we need to convert, otherwise the ValueHashMap will not find the
-         * result.
+         * case we need to convert, otherwise the RowKeyHashMap will not find
+         * the result.
          */
         v = v.convertTo(tableData.getColumn(indexColumn).getType());
-        ArrayList<Long> positions = rows.get(v);
+        long[] positions = rows.get(v);
         return new NonUniqueHashCursor(session, tableData, positions);
     }
 
@@ -26,6 +26,9 @@ import java.sql.SQLXML;
 import java.sql.Savepoint;
 import java.sql.Statement;
 import java.sql.Struct;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
 import org.h2.command.CommandInterface;
@@ -35,14 +38,19 @@ import org.h2.engine.ConnectionInfo;
 import org.h2.engine.Constants;
 import org.h2.engine.SessionInterface;
 import org.h2.engine.SessionRemote;
+import org.h2.expression.ParameterInterface;
 import org.h2.message.DbException;
 import org.h2.message.TraceObject;
 import org.h2.result.ResultInterface;
+import org.h2.store.LobStorageFrontend;
 import org.h2.util.CloseWatcher;
+import org.h2.util.New;
 import org.h2.util.Utils;
 import org.h2.value.CompareMode;
 import org.h2.value.Value;
 import org.h2.value.ValueInt;
+import org.h2.value.ValueLob;
+import org.h2.value.ValueLobDb;
 import org.h2.value.ValueNull;
 import org.h2.value.ValueString;
 
@@ -83,6 +91,13 @@ public class JdbcConnection extends TraceObject implements Connection {
     private final CloseWatcher watcher;
     private int queryTimeoutCache = -1;
 
+    /**
+     * The commands of closed prepared statements, by SQL statement, in the
+     * order they were released (if statement pooling is enabled).
+     */
+    private LinkedHashMap<String, CommandInterface> statementPool;
+    private int statementPoolSize;
+
     /**
      * INTERNAL
      */
@@ -113,6 +128,11 @@ public class JdbcConnection extends TraceObject implements Connection {
                         + ", " + quote(user) + ", \"\");");
             }
             this.url = ci.getURL();
+            statementPoolSize = Integer.parseInt(
+                    ci.getProperty("STATEMENT_POOL_SIZE", "0"));
+            if (statementPoolSize > 0) {
+                statementPool = new LinkedHashMap<String, CommandInterface>();
+            }
             closeOld();
             watcher = CloseWatcher.register(this, session, keepOpenStackTrace);
         } catch (Exception e) {
@@ -376,6 +396,18 @@ public class JdbcConnection extends TraceObject implements Connection {
     }
 
     private void closePreparedCommands() {
+        if (statementPool != null) {
+            ArrayList<CommandInterface> list;
+            // the same lock as in releaseCommand, which may be called
+            // concurrently when a statement is closed
+            synchronized (this) {
+                list = New.arrayList(statementPool.values());
+                statementPool.clear();
+            }
+            for (CommandInterface command : list) {
+                command.close();
+            }
+        }
         commit = closeAndSetNull(commit);
         rollback = closeAndSetNull(rollback);
         getReadOnly = closeAndSetNull(getReadOnly);
@@ -1138,6 +1170,108 @@ public class JdbcConnection extends TraceObject implements Connection {
         return session.prepareCommand(sql, fetchSize);
     }
 
+    /**
+     * Prepare a command that is executed right away. Errors in the statement
+     * may only be reported when it is executed.
+     *
+     * @param sql the SQL statement
+     * @param fetchSize the fetch size (used in remote connections)
+     * @return the command
+     */
+    CommandInterface prepareCommandPipelined(String sql, int fetchSize) {
+        return session.prepareCommandPipelined(sql, fetchSize);
+    }
+
+    /**
+     * Prepare the command of a prepared statement. If statement pooling is
+     * enabled, the command of a closed statement with the same SQL statement
+     * is re-used, so that it does not need to be parsed (and, for remote
+     * connections, prepared on the server) again.
+     *
+     * @param sql the SQL statement
+     * @param fetchSize the fetch size (used in remote connections)
+     * @return the command
+     */
+    CommandInterface preparePooledCommand(String sql, int fetchSize) {
+        if (statementPool != null) {
+            CommandInterface command;
+            synchronized (this) {
+                command = statementPool.remove(sql);
+            }
+            if (command != null) {
+                return command;
+            }
+        }
+        return prepareCommand(sql, fetchSize);
+    }
+
+    /**
+     * The prepared statement was closed. If statement pooling is enabled, the
+     * command is kept (with the parameter values cleared), otherwise it is
+     * closed. If the pool is full, the least recently released command is
+     * closed.
+     *
+     * @param sql the SQL statement
+     * @param command the command
+     */
+    void releaseCommand(String sql, CommandInterface command) {
+        if (statementPool == null || session == null || session.isClosed()) {
+            command.close();
+            return;
+        }
+        ArrayList<? extends ParameterInterface> parameters = command.getParameters();
+        for (int i = 0, size = parameters.size(); i < size; i++) {
+            ParameterInterface p = parameters.get(i);
+            Value v = p.getParamValue();
+            if (v != null && isTemporaryLob(v)) {
+                // embedded parameters don't close the old value
+                try {
+                    v.close();
+                } catch (DbException e) {
+                    trace.error(e, "releaseCommand");
+                }
+            }
+            p.setValue(null, true);
+        }
+        CommandInterface old;
+        synchronized (this) {
+            if (session == null) {
+                // the connection was closed concurrently
+                old = command;
+            } else {
+                // re-insert, so that the command becomes the most recent one
+                old = statementPool.remove(sql);
+                statementPool.put(sql, command);
+                if (old == null && statementPool.size() > statementPoolSize) {
+                    Iterator<CommandInterface> it = statementPool.values().iterator();
+                    old = it.next();
+                    it.remove();
+                }
+            }
+        }
+        if (old != null) {
+            old.close();
+        }
+    }
+
+    /**
+     * Check whether the value is a LOB that is not stored in a table. Such
+     * values are removed when the pooled command is released, so that the
+     * temporary data is not kept until the database is closed. A LOB that
+     * was inserted is linked to the table and must not be removed.
+     *
+     * @param v the value
+     * @return true if the value is a temporary LOB
+     */
+    private static boolean isTemporaryLob(Value v) {
+        if (v instanceof ValueLobDb) {
+            return ((ValueLobDb) v).getTableId() == LobStorageFrontend.TABLE_TEMP;
+        } else if (v instanceof ValueLob) {
+            return !v.isLinked();
+        }
+        return false;
+    }
+
     private CommandInterface prepareCommand(String sql, CommandInterface old) {
         return old == null ? session.prepareCommand(sql, Integer.MAX_VALUE) : old;
     }
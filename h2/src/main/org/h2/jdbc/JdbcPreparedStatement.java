@@ -67,7 +67,7 @@ public class JdbcPreparedStatement extends JdbcStatement implements PreparedStat
         super(conn, id, resultSetType, resultSetConcurrency, closeWithResultSet);
         setTrace(session.getTrace(), TraceObject.PREPARED_STATEMENT, id);
         this.sqlStatement = sql;
-        command = conn.prepareCommand(sql, fetchSize);
+        command = conn.preparePooledCommand(sql, fetchSize);
     }
 
     /**
@@ -1109,10 +1109,15 @@ public class JdbcPreparedStatement extends JdbcStatement implements PreparedStat
     @Override
     public void close() throws SQLException {
         try {
+            JdbcConnection c = conn;
             super.close();
             batchParameters = null;
             if (command != null) {
-                command.close();
+                if (c != null) {
+                    c.releaseCommand(sqlStatement, command);
+                } else {
+                    command.close();
+                }
                 command = null;
             }
         } catch (Exception e) {
@@ -1134,33 +1139,32 @@ public class JdbcPreparedStatement extends JdbcStatement implements PreparedStat
                 // TODO batch: check what other database do if no parameters are set
                 batchParameters = New.arrayList();
             }
-            int size = batchParameters.size();
-            int[] result = new int[size];
             boolean error = false;
             SQLException next = null;
             checkClosedForWrite();
             try {
-                for (int i = 0; i < size; i++) {
-                    Value[] set = batchParameters.get(i);
-                    ArrayList<? extends ParameterInterface> parameters = command.getParameters();
-                    for (int j = 0; j < set.length; j++) {
-                        Value value = set[j];
-                        ParameterInterface param = parameters.get(j);
-                        param.setValue(value, false);
-                    }
+                ArrayList<DbException> exceptions = New.arrayList();
+                int[] result;
+                closeOldResultSet();
+                synchronized (session) {
                     try {
-                        result[i] = executeUpdateInternal();
-                    } catch (Exception re) {
-                        SQLException e = logAndConvert(re);
-                        if (next == null) {
-                            next = e;
-                        } else {
-                            e.setNextException(next);
-                            next = e;
-                        }
-                        result[i] = Statement.EXECUTE_FAILED;
-                        error = true;
+                        setExecutingStatement(command);
+                        // a remote command sends all parameter sets at once
+                        result = command.executeBatchUpdate(batchParameters,
+                                exceptions);
+                    } finally {
+                        setExecutingStatement(null);
+                    }
+                }
+                for (DbException re : exceptions) {
+                    SQLException e = logAndConvert(re);
+                    if (next == null) {
+                        next = e;
+                    } else {
+                        e.setNextException(next);
+                        next = e;
                     }
+                    error = true;
                 }
                 batchParameters = null;
                 if (error) {
@@ -69,7 +69,7 @@ public class JdbcStatement extends TraceObject implements Statement {
                 checkClosed();
                 closeOldResultSet();
                 sql = JdbcConnection.translateSQL(sql, escapeProcessing);
-                CommandInterface command = conn.prepareCommand(sql, fetchSize);
+                CommandInterface command = conn.prepareCommandPipelined(sql, fetchSize);
                 ResultInterface result;
                 boolean scrollable = resultSetType != ResultSet.TYPE_FORWARD_ONLY;
                 boolean updatable = resultSetConcurrency == ResultSet.CONCUR_UPDATABLE;
@@ -121,7 +121,7 @@ public class JdbcStatement extends TraceObject implements Statement {
         try {
             closeOldResultSet();
             sql = JdbcConnection.translateSQL(sql, escapeProcessing);
-            CommandInterface command = conn.prepareCommand(sql, fetchSize);
+            CommandInterface command = conn.prepareCommandPipelined(sql, fetchSize);
             synchronized (session) {
                 setExecutingStatement(command);
                 try {
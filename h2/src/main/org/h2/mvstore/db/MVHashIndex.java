@@ -0,0 +1,510 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.db;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.List;
+
+import org.h2.constant.ErrorCode;
+import org.h2.engine.Database;
+import org.h2.engine.Session;
+import org.h2.expression.Comparison;
+import org.h2.index.BaseIndex;
+import org.h2.index.Cursor;
+import org.h2.index.IndexCondition;
+import org.h2.index.IndexType;
+import org.h2.message.DbException;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.db.TransactionStore.Transaction;
+import org.h2.mvstore.db.TransactionStore.TransactionMap;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.result.SortOrder;
+import org.h2.table.Column;
+import org.h2.table.IndexColumn;
+import org.h2.table.TableFilter;
+import org.h2.value.Value;
+import org.h2.value.ValueArray;
+import org.h2.value.ValueInt;
+import org.h2.value.ValueLong;
+import org.h2.value.ValueNull;
+
+/**
+ * A hash index stored in a MVStore. The key of the map is the hash code of the
+ * indexed values, followed by the values and the row key. The entries are
+ * therefore distributed evenly over the pages of the map, and a lookup mostly
+ * compares integers instead of the values. Only equality lookups are
+ * supported. The hash code is persisted, so it must not change between
+ * versions.
+ */
+public class MVHashIndex extends BaseIndex implements MVIndex {
+
+    /**
+     * The multi-value table.
+     */
+    final MVTable mvTable;
+
+    private final int keyColumns;
+    private final String mapName;
+    private TransactionMap<Value, Value> dataMap;
+
+    public MVHashIndex(Database db, MVTable table, int id, String indexName,
+                IndexColumn[] columns, IndexType indexType) {
+        this.mvTable = table;
+        initBaseIndex(table, id, indexName, columns, indexType);
+        if (!database.isStarting()) {
+            checkIndexColumnTypes(columns);
+        }
+        // the hash code, the index columns, and the row key
+        keyColumns = columns.length + 2;
+        mapName = getMapName(getId());
+        ValueDataType keyType = getKeyType();
+        ValueDataType valueType = new ValueDataType(null, null, null);
+        dataMap = mvTable.getTransaction(null).openMap(
+                mapName, keyType, valueType);
+        if (!keyType.equals(dataMap.getKeyType())) {
+            throw DbException.throwInternalError("Incompatible key type");
+        }
+    }
+
+    /**
+     * Get the name of the map of the hash index with the given id.
+     *
+     * @param id the index id
+     * @return the map name
+     */
+    static String getMapName(int id) {
+        return "hash." + id;
+    }
+
+    private ValueDataType getKeyType() {
+        int[] sortTypes = new int[keyColumns];
+        for (int i = 0; i < keyColumns; i++) {
+            sortTypes[i] = SortOrder.ASCENDING;
+        }
+        return new ValueDataType(database.getCompareMode(), database,
+                sortTypes);
+    }
+
+    @Override
+    public void addRowsToBuffer(List<Row> rows, String bufferName) {
+        MVMap<Value, Value> map = openMap(bufferName);
+        for (Row row : rows) {
+            map.put(getKey(row, row.getKey()), ValueNull.INSTANCE);
+        }
+    }
+
+    @Override
+    public void addBufferedRows(List<String> bufferNames) {
+        // each buffer is sorted by hash code, so there is no need
+        // to merge them: the order of the buffers doesn't matter
+        try {
+            for (String bufferName : bufferNames) {
+                MVMap<Value, Value> map = openMap(bufferName);
+                Iterator<Value> it = map.keyIterator(null);
+                while (it.hasNext()) {
+                    ValueArray key = (ValueArray) it.next();
+                    if (indexType.isUnique()) {
+                        SearchRow row = getRow(key.getList());
+                        checkUnique(dataMap, row, getKey(row, Long.MIN_VALUE));
+                    }
+                    dataMap.putCommitted(key, ValueNull.INSTANCE);
+                }
+            }
+        } finally {
+            for (String bufferName : bufferNames) {
+                MVMap<Value, Value> map = openMap(bufferName);
+                map.getStore().removeMap(map);
+            }
+        }
+    }
+
+    private MVMap<Value, Value> openMap(String name) {
+        ValueDataType keyType = getKeyType();
+        ValueDataType valueType = new ValueDataType(null, null, null);
+        MVMap.Builder<Value, Value> builder =
+                new MVMap.Builder<Value, Value>().keyType(keyType).valueType(valueType);
+        MVMap<Value, Value> map = database.getMvStore().
+                getStore().openMap(name, builder);
+        if (!keyType.equals(map.getKeyType())) {
+            throw DbException.throwInternalError("Incompatible key type");
+        }
+        return map;
+    }
+
+    @Override
+    public void close(Session session) {
+        // ok
+    }
+
+    /**
+     * Check that there is no committed row with the same values.
+     *
+     * @param map the map
+     * @param row the row
+     * @param min the smallest key with the same values
+     */
+    private void checkUnique(TransactionMap<Value, Value> map, SearchRow row,
+            ValueArray min) {
+        ValueArray key = (ValueArray) map.getLatestCeilingKey(min);
+        if (key != null) {
+            SearchRow r2 = getRow(key.getList());
+            if (compareRows(row, r2) == 0) {
+                if (!containsNullAndAllowMultipleNull(r2)) {
+                    throw getDuplicateKeyException(key.toString());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void add(Session session, Row row) {
+        TransactionMap<Value, Value> map = getMap(session);
+        ValueArray array = getKey(row, row.getKey());
+        ValueArray unique = null;
+        if (indexType.isUnique()) {
+            // this will detect committed entries only
+            unique = getKey(row, Long.MIN_VALUE);
+            checkUnique(map, row, unique);
+        }
+        try {
+            map.put(array, ValueNull.INSTANCE);
+        } catch (IllegalStateException e) {
+            throw DbException.get(ErrorCode.CONCURRENT_UPDATE_1, table.getName());
+        }
+        if (indexType.isUnique()) {
+            Iterator<Value> it = map.keyIterator(unique, true);
+            while (it.hasNext()) {
+                ValueArray k = (ValueArray) it.next();
+                SearchRow r2 = getRow(k.getList());
+                if (compareRows(row, r2) != 0) {
+                    break;
+                }
+                if (containsNullAndAllowMultipleNull(r2)) {
+                    // this is allowed
+                    continue;
+                }
+                if (map.isSameTransaction(k)) {
+                    continue;
+                }
+                if (map.get(k) != null) {
+                    // committed
+                    throw getDuplicateKeyException(k.toString());
+                }
+                throw DbException.get(ErrorCode.CONCURRENT_UPDATE_1, table.getName());
+            }
+        }
+    }
+
+    @Override
+    public void remove(Session session, Row row) {
+        ValueArray array = getKey(row, row.getKey());
+        TransactionMap<Value, Value> map = getMap(session);
+        try {
+            Value old = map.remove(array);
+            if (old == null) {
+                throw DbException.get(ErrorCode.ROW_NOT_FOUND_WHEN_DELETING_1,
+                        getSQL() + ": " + row.getKey());
+            }
+        } catch (IllegalStateException e) {
+            throw DbException.get(ErrorCode.CONCURRENT_UPDATE_1, table.getName());
+        }
+    }
+
+    @Override
+    public Cursor find(Session session, SearchRow first, SearchRow last) {
+        if (first == null || last == null) {
+            throw DbException.throwInternalError();
+        }
+        TransactionMap<Value, Value> map = getMap(session);
+        if (!isBound(first) || !isBound(last) || compareRows(first, last) != 0) {
+            // the hash code is only known if all columns are set to one
+            // value; otherwise scan the whole index and let the query
+            // conditions filter the rows
+            return new MVHashCursor(session, map.keyIterator(null), null);
+        }
+        ValueArray min = getKey(first, Long.MIN_VALUE);
+        return new MVHashCursor(session, map.keyIterator(min), first);
+    }
+
+    private boolean isBound(SearchRow r) {
+        for (Column c : columns) {
+            if (r.getValue(c.getColumnId()) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the hash code of the index columns of the given row. The search
+     * values are converted to the column type first, so that for example an
+     * INT search value finds the rows of a BIGINT column.
+     *
+     * @param array the converted values (the first element is not used)
+     * @return the hash code
+     */
+    private static int getHash(Value[] array) {
+        int hash = 0;
+        for (int i = 1; i < array.length - 1; i++) {
+            Value v = array[i];
+            int h;
+            if (v == null || v == ValueNull.INSTANCE) {
+                h = 0;
+            } else if (v.getType() == Value.DECIMAL) {
+                // 1.0 and 1.00 are equal, but the hash codes are not
+                BigDecimal d = v.getBigDecimal();
+                h = d.signum() == 0 ? 0 : d.stripTrailingZeros().hashCode();
+            } else {
+                h = v.hashCode();
+            }
+            hash = 31 * hash + h;
+        }
+        return hash;
+    }
+
+    private ValueArray getKey(SearchRow r, long key) {
+        Value[] array = new Value[keyColumns];
+        for (int i = 0; i < columns.length; i++) {
+            Column c = columns[i];
+            int idx = c.getColumnId();
+            Value v = r.getValue(idx);
+            if (v != null) {
+                array[i + 1] = v.convertTo(c.getType());
+            }
+        }
+        array[0] = ValueInt.get(getHash(array));
+        array[keyColumns - 1] = ValueLong.get(key);
+        return ValueArray.get(array);
+    }
+
+    /**
+     * Get the row with the given index key.
+     *
+     * @param array the index key
+     * @return the row
+     */
+    SearchRow getRow(Value[] array) {
+        SearchRow searchRow = mvTable.getTemplateRow();
+        searchRow.setKey((array[array.length - 1]).getLong());
+        Column[] cols = getColumns();
+        for (int i = 0; i < cols.length; i++) {
+            searchRow.setValue(cols[i].getColumnId(), array[i + 1]);
+        }
+        return searchRow;
+    }
+
+    @Override
+    public MVTable getTable() {
+        return mvTable;
+    }
+
+    @Override
+    public double getCost(Session session, int[] masks, TableFilter filter,
+            SortOrder sortOrder) {
+        if (masks == null) {
+            return Long.MAX_VALUE;
+        }
+        for (Column column : columns) {
+            int index = column.getColumnId();
+            int mask = masks[index];
+            if ((mask & IndexCondition.EQUALITY) != IndexCondition.EQUALITY) {
+                return Long.MAX_VALUE;
+            }
+            if (!hasEqualCondition(filter, column)) {
+                return Long.MAX_VALUE;
+            }
+        }
+        try {
+            // the same number of rows as a range index, but the lookup is
+            // cheaper, so that the hash index is preferred for equality
+            long rows = getCostRangeIndex(masks, dataMap.sizeAsLongMax(),
+                    filter, null) - 1;
+            return 10 * rows;
+        } catch (IllegalStateException e) {
+            throw DbException.get(ErrorCode.OBJECT_CLOSED);
+        }
+    }
+
+    /**
+     * Check whether the given column has a plain equality condition. An IN(..)
+     * condition is only used for single-column indexes, where the index cursor
+     * looks up each value separately; for multi-column indexes, it would be
+     * searched with an incomplete key.
+     *
+     * @param filter the table filter
+     * @param column the column
+     * @return true if the hash code of the key can be calculated
+     */
+    private boolean hasEqualCondition(TableFilter filter, Column column) {
+        if (filter == null) {
+            return false;
+        }
+        for (IndexCondition condition : filter.getIndexConditions()) {
+            if (condition.getColumn() != column) {
+                continue;
+            }
+            switch (condition.getCompareType()) {
+            case Comparison.EQUAL:
+            case Comparison.EQUAL_NULL_SAFE:
+                return true;
+            case Comparison.IN_LIST:
+            case Comparison.IN_QUERY:
+                if (columns.length == 1) {
+                    return true;
+                }
+                break;
+            default:
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void remove(Session session) {
+        TransactionMap<Value, Value> map = getMap(session);
+        if (!map.isClosed()) {
+            Transaction t = mvTable.getTransaction(session);
+            t.removeMap(map);
+        }
+    }
+
+    @Override
+    public void truncate(Session session) {
+        TransactionMap<Value, Value> map = getMap(session);
+        map.clear();
+    }
+
+    @Override
+    public boolean canGetFirstOrLast() {
+        return false;
+    }
+
+    @Override
+    public Cursor findFirstOrLast(Session session, boolean first) {
+        throw DbException.getUnsupportedException("HASH");
+    }
+
+    @Override
+    public boolean canScan() {
+        return false;
+    }
+
+    @Override
+    public boolean needRebuild() {
+        try {
+            return dataMap.sizeAsLongMax() == 0;
+        } catch (IllegalStateException e) {
+            throw DbException.get(ErrorCode.OBJECT_CLOSED);
+        }
+    }
+
+    @Override
+    public long getRowCount(Session session) {
+        TransactionMap<Value, Value> map = getMap(session);
+        return map.sizeAsLong();
+    }
+
+    @Override
+    public long getRowCountApproximation() {
+        try {
+            return dataMap.sizeAsLongMax();
+        } catch (IllegalStateException e) {
+            throw DbException.get(ErrorCode.OBJECT_CLOSED);
+        }
+    }
+
+    @Override
+    public long getDiskSpaceUsed() {
+        // TODO estimate disk space usage
+        return 0;
+    }
+
+    @Override
+    public void checkRename() {
+        // ok
+    }
+
+    /**
+     * Get the map to store the data.
+     *
+     * @param session the session
+     * @return the map
+     */
+    TransactionMap<Value, Value> getMap(Session session) {
+        if (session == null) {
+            return dataMap;
+        }
+        Transaction t = mvTable.getTransaction(session);
+        return dataMap.getInstance(t, Long.MAX_VALUE);
+    }
+
+    /**
+     * A cursor that iterates over the rows with the given values.
+     */
+    class MVHashCursor implements Cursor {
+
+        private final Session session;
+        private final Iterator<Value> it;
+        private final SearchRow search;
+        private Value current;
+        private SearchRow searchRow;
+        private Row row;
+
+        public MVHashCursor(Session session, Iterator<Value> it,
+                SearchRow search) {
+            this.session = session;
+            this.it = it;
+            this.search = search;
+        }
+
+        @Override
+        public Row get() {
+            if (row == null) {
+                SearchRow r = getSearchRow();
+                if (r != null) {
+                    row = mvTable.getRow(session, r.getKey());
+                }
+            }
+            return row;
+        }
+
+        @Override
+        public SearchRow getSearchRow() {
+            if (searchRow == null) {
+                if (current != null) {
+                    searchRow = getRow(((ValueArray) current).getList());
+                }
+            }
+            return searchRow;
+        }
+
+        @Override
+        public boolean next() {
+            current = it.hasNext() ? it.next() : null;
+            searchRow = null;
+            if (current != null && search != null) {
+                // entries with the same hash code but other values
+                // are sorted after the matching entries
+                if (compareRows(getSearchRow(), search) != 0) {
+                    searchRow = null;
+                    current = null;
+                }
+            }
+            row = null;
+            return current != null;
+        }
+
+        @Override
+        public boolean previous() {
+            throw DbException.getUnsupportedException("previous");
+        }
+
+    }
+
+}
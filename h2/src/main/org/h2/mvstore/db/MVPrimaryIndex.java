@@ -6,11 +6,14 @@
  */
 package org.h2.mvstore.db;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Random;
+import java.util.TreeSet;
 
 import org.h2.constant.ErrorCode;
 import org.h2.engine.Constants;
@@ -29,6 +32,7 @@ import org.h2.result.SortOrder;
 import org.h2.table.Column;
 import org.h2.table.IndexColumn;
 import org.h2.table.TableFilter;
+import org.h2.util.New;
 import org.h2.value.Value;
 import org.h2.value.ValueArray;
 import org.h2.value.ValueLong;
@@ -211,6 +215,43 @@ public class MVPrimaryIndex extends BaseIndex {
         return row;
     }
 
+    /**
+     * Get a uniformly distributed random sample of the rows. The rows are
+     * read by their position in the map, so that only the sampled rows (and
+     * the pages on the way to them) are read, and not the whole table. Rows
+     * that are not visible to the session are skipped, so that fewer rows
+     * might be returned if there are uncommitted changes.
+     *
+     * @param session the session
+     * @param count the maximum number of rows
+     * @return the rows, ordered by key
+     */
+    ArrayList<Row> getSampleRows(Session session, int count) {
+        TransactionMap<Value, Value> map = getMap(session);
+        long size = map.sizeAsLongMax();
+        int n = (int) Math.min(count, size);
+        // choose n distinct positions (Floyd's algorithm)
+        TreeSet<Long> positions = new TreeSet<Long>();
+        Random random = new Random();
+        for (long j = size - n; j < size; j++) {
+            long p = (long) (random.nextDouble() * (j + 1));
+            if (!positions.add(p)) {
+                positions.add(j);
+            }
+        }
+        ArrayList<Row> rows = New.arrayList();
+        for (long p : positions) {
+            Value key = map.getKeyAtPosition(p);
+            Value v = key == null ? null : map.get(key);
+            if (v != null) {
+                Row row = new Row(((ValueArray) v).getList(), 0);
+                row.setKey(key.getLong());
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
     @Override
     public double getCost(Session session, int[] masks, TableFilter filter,
             SortOrder sortOrder) {
@@ -13,7 +13,6 @@ import java.util.HashSet;
 import java.util.Set;
 
 import org.h2.api.DatabaseEventListener;
-import org.h2.command.ddl.Analyze;
 import org.h2.command.ddl.CreateTableData;
 import org.h2.constant.ErrorCode;
 import org.h2.constant.SysProperties;
@@ -40,6 +39,7 @@ import org.h2.table.Table;
 import org.h2.table.TableBase;
 import org.h2.util.MathUtils;
 import org.h2.util.New;
+import org.h2.value.CompareMode;
 import org.h2.value.DataType;
 import org.h2.value.Value;
 
@@ -388,7 +388,8 @@ public class MVTable extends TableBase {
         int mainIndexColumn;
         mainIndexColumn = getMainIndexColumn(indexType, cols);
         if (database.isStarting()) {
-            if (store.store.hasMap("index." + indexId)) {
+            if (store.store.hasMap("index." + indexId) ||
+                    store.store.hasMap(MVHashIndex.getMapName(indexId))) {
                 mainIndexColumn = -1;
             }
         } else if (primaryIndex.getRowCountMax() != 0) {
@@ -402,6 +403,14 @@ public class MVTable extends TableBase {
             index = new MVSpatialIndex(session.getDatabase(),
                     this, indexId,
                     indexName, cols, indexType);
+        } else if (indexType.isHash() && !(database.isStarting() &&
+                store.store.hasMap("index." + indexId)) &&
+                CompareMode.OFF.equals(database.getCompareMode().getName())) {
+            // hash indexes of older databases are stored as a secondary index;
+            // with a collation, equal strings can have different hash codes
+            index = new MVHashIndex(session.getDatabase(),
+                    this, indexId,
+                    indexName, cols, indexType);
         } else {
             index = new MVSecondaryIndex(session.getDatabase(),
                     this, indexId,
@@ -608,21 +617,59 @@ public class MVTable extends TableBase {
             }
         } catch (Throwable e) {
             t.rollbackToSavepoint(savepoint);
-            DbException de = DbException.convert(e);
-            if (de.getErrorCode() == ErrorCode.DUPLICATE_KEY_1) {
-                for (int j = 0; j < indexes.size(); j++) {
-                    Index index = indexes.get(j);
-                    if (index.getIndexType().isUnique() && index instanceof MultiVersionIndex) {
-                        MultiVersionIndex mv = (MultiVersionIndex) index;
-                        if (mv.isUncommittedFromOtherSession(session, row)) {
-                            throw DbException.get(ErrorCode.CONCURRENT_UPDATE_1, index.getName());
-                        }
+            throw convertAddRowException(session, row, e);
+        }
+        analyzeIfRequired(session);
+    }
+
+    /**
+     * Add the rows one index after the other. The rows are sorted for each
+     * index, except for the primary index, where the order of the rows
+     * defines the row keys.
+     */
+    @Override
+    public void addRows(Session session, ArrayList<Row> rows) {
+        int count = rows.size();
+        if (count == 0) {
+            return;
+        }
+        lastModificationId = database.getNextModificationDataId();
+        Transaction t = getTransaction(session);
+        long savepoint = t.setSavepoint();
+        Row row = null;
+        try {
+            for (int i = 0, size = indexes.size(); i < size; i++) {
+                Index index = indexes.get(i);
+                ArrayList<Row> list = i == 0 ? rows : getSortedRows(rows, index);
+                for (int j = 0; j < count; j++) {
+                    row = list.get(j);
+                    index.add(session, row);
+                }
+            }
+        } catch (Throwable e) {
+            t.rollbackToSavepoint(savepoint);
+            throw convertAddRowException(session, row, e);
+        }
+        for (int j = 0; j < count; j++) {
+            analyzeIfRequired(session);
+        }
+    }
+
+    private DbException convertAddRowException(Session session, Row row,
+            Throwable e) {
+        DbException de = DbException.convert(e);
+        if (row != null && de.getErrorCode() == ErrorCode.DUPLICATE_KEY_1) {
+            for (int j = 0; j < indexes.size(); j++) {
+                Index index = indexes.get(j);
+                if (index.getIndexType().isUnique() && index instanceof MultiVersionIndex) {
+                    MultiVersionIndex mv = (MultiVersionIndex) index;
+                    if (mv.isUncommittedFromOtherSession(session, row)) {
+                        throw DbException.get(ErrorCode.CONCURRENT_UPDATE_1, index.getName());
                     }
                 }
             }
-            throw de;
         }
-        analyzeIfRequired(session);
+        return de;
     }
 
     private void analyzeIfRequired(Session session) {
@@ -634,8 +681,7 @@ public class MVTable extends TableBase {
         if (n > 0) {
             nextAnalyze = n;
         }
-        int rows = session.getDatabase().getSettings().analyzeSample / 10;
-        Analyze.analyzeTable(session, this, rows, false);
+        database.analyzeTableAuto(session, this);
     }
 
     @Override
@@ -653,6 +699,11 @@ public class MVTable extends TableBase {
         return primaryIndex;
     }
 
+    @Override
+    public ArrayList<Row> getSampleRows(Session session, int count) {
+        return primaryIndex.getSampleRows(session, count);
+    }
+
     @Override
     public Index getUniqueIndex() {
         return primaryIndex;
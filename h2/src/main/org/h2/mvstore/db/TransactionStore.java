@@ -667,6 +667,15 @@ public class TransactionStore {
             return logId;
         }
 
+        /**
+         * Check whether this transaction changed any data.
+         *
+         * @return true if there are changes
+         */
+        public boolean hasChanges() {
+            return logId > 0;
+        }
+
         /**
          * Add a log entry.
          *
@@ -882,6 +891,19 @@ public class TransactionStore {
             return map.sizeAsLong();
         }
 
+        /**
+         * Get the key at the given position of the raw map. Like
+         * {@link #sizeAsLongMax()}, the position includes uncommitted and
+         * transiently removed entries, so the entry might not be visible to
+         * this transaction.
+         *
+         * @param index the position
+         * @return the key, or null if the position is out of range
+         */
+        public K getKeyAtPosition(long index) {
+            return map.getKey(index);
+        }
+
         /**
          * Get the size of the map as seen by this transaction.
          *
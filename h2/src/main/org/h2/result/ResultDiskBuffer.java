@@ -6,23 +6,39 @@
  */
 package org.h2.result;
 
-import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import org.h2.compress.CompressLZF;
 import org.h2.engine.Constants;
 import org.h2.engine.Database;
 import org.h2.engine.Session;
 import org.h2.message.DbException;
 import org.h2.store.Data;
 import org.h2.store.FileStore;
+import org.h2.util.MathUtils;
 import org.h2.util.New;
+import org.h2.util.Task;
 import org.h2.value.Value;
 
 /**
  * This class implements the disk buffer for the LocalResult class.
+ * <p>
+ * Rows are written in blocks. Each block starts with a header of
+ * FILE_BLOCK_SIZE bytes (the total block length, the length of the
+ * serialized rows, and the stored length, which is smaller if the block is
+ * compressed), followed by the serialized rows. A whole block is read at once.
+ * </p>
+ * <p>
+ * When sorting, each call to addRows creates one or more sorted runs (tapes).
+ * Large runs are split and sorted in parallel threads. The tapes are merged
+ * using a binary heap.
+ * </p>
  */
 class ResultDiskBuffer implements ResultExternal {
 
-    private static final int READ_AHEAD = 128;
+    /**
+     * The minimum number of rows per run if the rows are sorted in parallel.
+     */
+    private static final int MIN_PARALLEL_RUN = 4 * 1024;
 
     private final Data rowBuff;
     private final ArrayList<ResultDiskTape> tapes;
@@ -30,10 +46,18 @@ class ResultDiskBuffer implements ResultExternal {
     private final SortOrder sort;
     private final int columnCount;
     private final int maxBufferSize;
+    private final int sortThreads;
+    private final CompressLZF compress;
 
     private FileStore file;
     private int rowCount;
 
+    /**
+     * The heap of tape indexes (only used when sorting).
+     */
+    private int[] heap;
+    private int heapSize;
+
     private final ResultDiskBuffer parent;
     private boolean closed;
     private int childCount;
@@ -63,6 +87,68 @@ class ResultDiskBuffer implements ResultExternal {
          * A list of rows in the buffer.
          */
         ArrayList<Value[]> buffer = New.arrayList();
+
+        /**
+         * The index of the next row in the buffer.
+         */
+        int bufferPos;
+
+        /**
+         * Check whether there are rows in the buffer that were not yet read.
+         *
+         * @return true if yes
+         */
+        boolean hasBufferedRows() {
+            return bufferPos < buffer.size();
+        }
+
+        /**
+         * Get the current row from the buffer.
+         *
+         * @return the row
+         */
+        Value[] current() {
+            return buffer.get(bufferPos);
+        }
+
+        /**
+         * Clear the buffer and reset the read position.
+         *
+         * @param pos the new read position
+         */
+        void reset(long pos) {
+            this.pos = pos;
+            buffer.clear();
+            bufferPos = 0;
+        }
+    }
+
+    /**
+     * Sorts one run in a separate thread. A Task only catches exceptions, so
+     * errors (for example an OutOfMemoryError) are kept here and re-thrown
+     * by the calling thread.
+     */
+    private class SortTask extends Task {
+
+        /**
+         * The error thrown while sorting, if any.
+         */
+        Error error;
+
+        private final ArrayList<Value[]> run;
+
+        SortTask(ArrayList<Value[]> run) {
+            this.run = run;
+        }
+
+        @Override
+        public void call() {
+            try {
+                sort.sort(run);
+            } catch (Error e) {
+                error = e;
+            }
+        }
     }
 
     ResultDiskBuffer(Session session, SortOrder sort, int columnCount) {
@@ -81,9 +167,11 @@ class ResultDiskBuffer implements ResultExternal {
         } else {
             tapes = null;
             mainTape = new ResultDiskTape();
-            mainTape.pos = FileStore.HEADER_LENGTH;
+            mainTape.pos = mainTape.start = mainTape.end = FileStore.HEADER_LENGTH;
         }
         this.maxBufferSize = db.getSettings().largeResultBufferSize;
+        this.sortThreads = db.getSettings().largeResultSortThreads;
+        this.compress = db.getSettings().largeResultCompress ? new CompressLZF() : null;
     }
 
     private ResultDiskBuffer(ResultDiskBuffer parent) {
@@ -112,6 +200,8 @@ class ResultDiskBuffer implements ResultExternal {
         sort = parent.sort;
         columnCount = parent.columnCount;
         maxBufferSize = parent.maxBufferSize;
+        sortThreads = parent.sortThreads;
+        compress = parent.compress == null ? null : new CompressLZF();
     }
 
     @Override
@@ -126,50 +216,116 @@ class ResultDiskBuffer implements ResultExternal {
     @Override
     public int addRows(ArrayList<Value[]> rows) {
         if (sort != null) {
+            for (ArrayList<Value[]> run : sortRuns(rows)) {
+                ResultDiskTape tape = new ResultDiskTape();
+                tape.start = file.getFilePointer();
+                writeRows(run);
+                tape.end = file.getFilePointer();
+                tapes.add(tape);
+            }
+        } else {
+            writeRows(rows);
+            mainTape.end = file.getFilePointer();
+        }
+        rowCount += rows.size();
+        return rowCount;
+    }
+
+    /**
+     * Sort the rows. If there are many rows and multiple threads may be used,
+     * the list is split into multiple runs that are sorted concurrently.
+     * Rows with LOB values in the sorted columns are sorted in the current
+     * thread, because comparing LOBs may need to read them using the session.
+     *
+     * @param rows the rows
+     * @return the sorted runs
+     */
+    private ArrayList<ArrayList<Value[]>> sortRuns(ArrayList<Value[]> rows) {
+        ArrayList<ArrayList<Value[]>> runs = New.arrayList();
+        int size = rows.size();
+        int threads = Math.min(sortThreads, size / MIN_PARALLEL_RUN);
+        if (threads <= 1 || containsLob(rows)) {
             sort.sort(rows);
+            runs.add(rows);
+            return runs;
         }
+        int runSize = (size + threads - 1) / threads;
+        for (int i = 0; i < size; i += runSize) {
+            runs.add(New.arrayList(rows.subList(i, Math.min(size, i + runSize))));
+        }
+        ArrayList<SortTask> tasks = New.arrayList();
+        for (int i = 1; i < runs.size(); i++) {
+            SortTask t = new SortTask(runs.get(i));
+            t.execute("H2 sort");
+            tasks.add(t);
+        }
+        // the current thread sorts the first run
+        sort.sort(runs.get(0));
+        for (SortTask t : tasks) {
+            Exception e = t.getException();
+            if (t.error != null) {
+                throw t.error;
+            }
+            if (e != null) {
+                throw DbException.convert(e);
+            }
+        }
+        return runs;
+    }
+
+    private boolean containsLob(ArrayList<Value[]> rows) {
+        int[] indexes = sort.getQueryColumnIndexes();
+        for (Value[] row : rows) {
+            for (int i : indexes) {
+                int type = row[i].getType();
+                if (type == Value.BLOB || type == Value.CLOB) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void writeRows(ArrayList<Value[]> rows) {
         Data buff = rowBuff;
-        long start = file.getFilePointer();
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        int bufferLen = 0;
+        buff.reset();
         for (Value[] row : rows) {
-            buff.reset();
-            buff.writeInt(0);
             for (int j = 0; j < columnCount; j++) {
                 Value v = row[j];
                 buff.checkCapacity(buff.getValueLen(v));
                 buff.writeValue(v);
             }
-            buff.fillAligned();
-            int len = buff.length();
-            buff.setInt(0, len);
-            if (maxBufferSize > 0) {
-                buffer.write(buff.getBytes(), 0, len);
-                bufferLen += len;
-                if (bufferLen > maxBufferSize) {
-                    byte[] data = buffer.toByteArray();
-                    buffer.reset();
-                    file.write(data, 0, data.length);
-                    bufferLen = 0;
-                }
-            } else {
-                file.write(buff.getBytes(), 0, len);
+            if (buff.length() >= maxBufferSize) {
+                writeBlock(buff);
+                buff.reset();
             }
         }
-        if (bufferLen > 0) {
-            byte[] data = buffer.toByteArray();
-            file.write(data, 0, data.length);
+        if (buff.length() > 0) {
+            writeBlock(buff);
+            buff.reset();
         }
-        if (sort != null) {
-            ResultDiskTape tape = new ResultDiskTape();
-            tape.start = start;
-            tape.end = file.getFilePointer();
-            tapes.add(tape);
-        } else {
-            mainTape.end = file.getFilePointer();
+    }
+
+    private void writeBlock(Data buff) {
+        int len = buff.length();
+        int header = Constants.FILE_BLOCK_SIZE;
+        byte[] block = new byte[MathUtils.roundUpInt(header + len * 2 + 32,
+                Constants.FILE_BLOCK_SIZE)];
+        int storedLen = len;
+        if (compress != null && len > header) {
+            int compressed = compress.compress(buff.getBytes(), len, block, header);
+            storedLen = compressed - header;
         }
-        rowCount += rows.size();
-        return rowCount;
+        if (storedLen >= len) {
+            storedLen = len;
+            System.arraycopy(buff.getBytes(), 0, block, header, len);
+        }
+        int blockLen = MathUtils.roundUpInt(header + storedLen, Constants.FILE_BLOCK_SIZE);
+        Data d = Data.create(null, block);
+        d.writeInt(blockLen);
+        d.writeInt(len);
+        d.writeInt(storedLen);
+        file.write(block, 0, blockLen);
     }
 
     @Override
@@ -182,31 +338,53 @@ class ResultDiskBuffer implements ResultExternal {
     public void reset() {
         if (sort != null) {
             for (ResultDiskTape tape : tapes) {
-                tape.pos = tape.start;
-                tape.buffer = New.arrayList();
+                tape.reset(tape.start);
             }
+            heap = null;
         } else {
-            mainTape.pos = FileStore.HEADER_LENGTH;
-            mainTape.buffer = New.arrayList();
+            mainTape.reset(mainTape.start);
         }
     }
 
-    private void readRow(ResultDiskTape tape) {
-        int min = Constants.FILE_BLOCK_SIZE;
+    /**
+     * Read the next block of the tape into the buffer of the tape.
+     *
+     * @param tape the tape
+     */
+    private void readBlock(ResultDiskTape tape) {
+        tape.buffer.clear();
+        tape.bufferPos = 0;
+        if (tape.pos >= tape.end) {
+            return;
+        }
+        int header = Constants.FILE_BLOCK_SIZE;
         Data buff = rowBuff;
         buff.reset();
-        file.readFully(buff.getBytes(), 0, min);
+        file.seek(tape.pos);
+        file.readFully(buff.getBytes(), 0, header);
+        int blockLen = buff.readInt();
         int len = buff.readInt();
-        buff.checkCapacity(len);
-        if (len - min > 0) {
-            file.readFully(buff.getBytes(), min, len - min);
+        int storedLen = buff.readInt();
+        byte[] block = new byte[blockLen];
+        file.readFully(block, 0, blockLen - header);
+        tape.pos += blockLen;
+        if (storedLen != len) {
+            buff.reset();
+            buff.checkCapacity(len);
+            compress.expand(block, 0, storedLen, buff.getBytes(), 0, len);
+        } else {
+            buff.reset();
+            buff.checkCapacity(len);
+            System.arraycopy(block, 0, buff.getBytes(), 0, len);
         }
-        tape.pos += len;
-        Value[] row = new Value[columnCount];
-        for (int k = 0; k < columnCount; k++) {
-            row[k] = buff.readValue();
+        buff.reset();
+        while (buff.length() < len) {
+            Value[] row = new Value[columnCount];
+            for (int k = 0; k < columnCount; k++) {
+                row[k] = buff.readValue();
+            }
+            tape.buffer.add(row);
         }
-        tape.buffer.add(row);
     }
 
     @Override
@@ -215,45 +393,80 @@ class ResultDiskBuffer implements ResultExternal {
     }
 
     private Value[] nextUnsorted() {
-        file.seek(mainTape.pos);
-        if (mainTape.buffer.size() == 0) {
-            for (int j = 0; mainTape.pos < mainTape.end && j < READ_AHEAD; j++) {
-                readRow(mainTape);
+        if (!mainTape.hasBufferedRows()) {
+            readBlock(mainTape);
+            if (!mainTape.hasBufferedRows()) {
+                return null;
             }
         }
-        Value[] row = mainTape.buffer.get(0);
-        mainTape.buffer.remove(0);
-        return row;
+        return mainTape.buffer.get(mainTape.bufferPos++);
     }
 
     private Value[] nextSorted() {
-        int next = -1;
-        for (int i = 0, size = tapes.size(); i < size; i++) {
+        if (heap == null) {
+            initHeap();
+        }
+        if (heapSize == 0) {
+            return null;
+        }
+        ResultDiskTape t = tapes.get(heap[0]);
+        Value[] row = t.buffer.get(t.bufferPos++);
+        if (!t.hasBufferedRows()) {
+            readBlock(t);
+            if (!t.hasBufferedRows()) {
+                heap[0] = heap[--heapSize];
+            }
+        }
+        siftDown(0);
+        return row;
+    }
+
+    private void initHeap() {
+        int size = tapes.size();
+        heap = new int[size];
+        heapSize = 0;
+        for (int i = 0; i < size; i++) {
             ResultDiskTape tape = tapes.get(i);
-            if (tape.buffer.size() == 0 && tape.pos < tape.end) {
-                file.seek(tape.pos);
-                for (int j = 0; tape.pos < tape.end && j < READ_AHEAD; j++) {
-                    readRow(tape);
-                }
+            if (!tape.hasBufferedRows()) {
+                readBlock(tape);
             }
-            if (tape.buffer.size() > 0) {
-                if (next == -1) {
-                    next = i;
-                } else if (compareTapes(tape, tapes.get(next)) < 0) {
-                    next = i;
-                }
+            if (tape.hasBufferedRows()) {
+                heap[heapSize++] = i;
             }
         }
-        ResultDiskTape t = tapes.get(next);
-        Value[] row = t.buffer.get(0);
-        t.buffer.remove(0);
-        return row;
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    private void siftDown(int i) {
+        int x = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && compareTapes(heap[child + 1], heap[child]) < 0) {
+                child++;
+            }
+            if (compareTapes(heap[child], x) >= 0) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = x;
     }
 
-    private int compareTapes(ResultDiskTape a, ResultDiskTape b) {
-        Value[] va = a.buffer.get(0);
-        Value[] vb = b.buffer.get(0);
-        return sort.compare(va, vb);
+    private int compareTapes(int a, int b) {
+        Value[] va = tapes.get(a).current();
+        Value[] vb = tapes.get(b).current();
+        int comp = sort.compare(va, vb);
+        if (comp == 0) {
+            // keep the order of the tapes for equal rows
+            comp = a < b ? -1 : a > b ? 1 : 0;
+        }
+        return comp;
     }
 
     private synchronized void closeChild() {
@@ -7,8 +7,12 @@
 package org.h2.result;
 
 import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketException;
 import java.util.ArrayList;
 import org.h2.constant.SysProperties;
+import org.h2.engine.Constants;
+import org.h2.engine.PipelinedRequest;
 import org.h2.engine.SessionRemote;
 import org.h2.message.DbException;
 import org.h2.message.Trace;
@@ -20,14 +24,65 @@ import org.h2.value.Value;
  * The client side part of a result set that is kept on the server.
  * In many cases, the complete data is kept on the client side,
  * but for large results only a subset is in-memory.
+ * Once the application has read the first block of rows, the next block is
+ * requested ahead of time, so that the server can send it while the
+ * application processes the current one. If the application did not set a
+ * fetch size, the blocks grow up to a memory limit.
+ * <p>
+ * A block is only requested ahead of time if it is expected to fit in the
+ * socket buffer. Otherwise the server could not write the whole block until
+ * the application reads it, and a server that uses a pool of worker threads
+ * would keep a thread busy for that time.
  */
-public class ResultRemote implements ResultInterface {
+public class ResultRemote implements ResultInterface, PipelinedRequest {
+
+    /**
+     * The prefetch limit if the size of the socket buffer is not known.
+     */
+    private static final int DEFAULT_PREFETCH_LIMIT = 64 * 1024;
 
     private int fetchSize;
+
+    /**
+     * The number of rows requested for the next block.
+     */
+    private int fetchCount;
+
+    /**
+     * Whether the number of rows per block may grow.
+     */
+    private boolean adaptive;
+
+    /**
+     * Whether the next block was requested, but the response was not read
+     * yet.
+     */
+    private boolean prefetching;
+
+    /**
+     * The rows of the next block, or null.
+     */
+    private ArrayList<Value[]> prefetched;
+
+    /**
+     * The exception the server sent when fetching the next block.
+     */
+    private DbException prefetchError;
+
+    /**
+     * The next block is only requested ahead of time if the estimated memory
+     * of the current block is at most this size. The fetch size is not
+     * increased further if a block uses more than half of it.
+     */
+    private final int prefetchLimit;
+
+    private int fetchRequested;
+    private int blockMemory;
     private SessionRemote session;
     private Transfer transfer;
     private int id;
     private final ResultColumn[] columns;
+    private final int[] columnTypes;
     private Value[] currentRow;
     private final int rowCount;
     private int rowId, rowOffset;
@@ -41,16 +96,33 @@ public class ResultRemote implements ResultInterface {
         this.transfer = transfer;
         this.id = id;
         this.columns = new ResultColumn[columnCount];
+        columnTypes = new int[columnCount];
         rowCount = transfer.readInt();
         for (int i = 0; i < columnCount; i++) {
             columns[i] = new ResultColumn(transfer);
+            columnTypes[i] = columns[i].columnType;
         }
         rowId = -1;
         result = New.arrayList();
         this.fetchSize = fetchSize;
+        fetchCount = fetchSize;
+        adaptive = fetchSize == SysProperties.SERVER_RESULT_SET_FETCH_SIZE &&
+                session.getClientVersion() >= Constants.TCP_PROTOCOL_VERSION_16;
+        prefetchLimit = getPrefetchLimit(transfer.getSocket());
         fetchRows(false);
     }
 
+    private static int getPrefetchLimit(Socket socket) {
+        if (socket != null) {
+            try {
+                return socket.getReceiveBufferSize();
+            } catch (SocketException e) {
+                // use the default
+            }
+        }
+        return DEFAULT_PREFETCH_LIMIT;
+    }
+
     @Override
     public String getAlias(int i) {
         return columns[i].alias;
@@ -111,8 +183,12 @@ public class ResultRemote implements ResultInterface {
         synchronized (session) {
             session.checkClosed();
             try {
+                session.readPipelinedResponses(transfer);
+                prefetched = null;
+                prefetchError = null;
                 session.traceOperation("RESULT_RESET", id);
-                transfer.writeInt(SessionRemote.RESULT_RESET).writeInt(id).flush();
+                // there is no response: sent with the next request
+                transfer.writeInt(SessionRemote.RESULT_RESET).writeInt(id);
             } catch (IOException e) {
                 throw DbException.convertIOException(e, null);
             }
@@ -206,27 +282,35 @@ public class ResultRemote implements ResultInterface {
             try {
                 rowOffset += result.size();
                 result.clear();
-                int fetch = Math.min(fetchSize, rowCount - rowOffset);
                 if (sendFetch) {
-                    session.traceOperation("RESULT_FETCH_ROWS", id);
-                    transfer.writeInt(SessionRemote.RESULT_FETCH_ROWS).writeInt(id).writeInt(fetch);
-                    session.done(transfer);
-                }
-                for (int r = 0; r < fetch; r++) {
-                    boolean row = transfer.readBoolean();
-                    if (!row) {
-                        break;
+                    if (!prefetching && prefetched == null) {
+                        sendFetch();
                     }
-                    int len = columns.length;
-                    Value[] values = new Value[len];
-                    for (int i = 0; i < len; i++) {
-                        Value v = transfer.readValue();
-                        values[i] = v;
+                    session.readPipelinedResponses(transfer);
+                    if (prefetchError != null) {
+                        DbException e = prefetchError;
+                        prefetchError = null;
+                        throw e;
                     }
-                    result.add(values);
+                    result = prefetched;
+                    prefetched = null;
+                } else {
+                    int fetch = Math.min(fetchSize, rowCount - rowOffset);
+                    readRows(transfer, result, fetch);
                 }
                 if (rowOffset + result.size() >= rowCount) {
                     sendClose();
+                } else if (sendFetch && session.getClientVersion() >=
+                        Constants.TCP_PROTOCOL_VERSION_16 &&
+                        blockMemory <= prefetchLimit) {
+                    // the application reads more than one block:
+                    // request the next block now
+                    if (adaptive && blockMemory < prefetchLimit / 2) {
+                        fetchCount = Math.min(fetchCount * 2,
+                                Integer.MAX_VALUE / 2);
+                    }
+                    sendFetch();
+                    transfer.flush();
                 }
             } catch (IOException e) {
                 throw DbException.convertIOException(e, null);
@@ -234,6 +318,55 @@ public class ResultRemote implements ResultInterface {
         }
     }
 
+    /**
+     * Request the next block of rows. The response is read by the session
+     * before it reads the next response.
+     */
+    private void sendFetch() throws IOException {
+        int fetch = Math.min(fetchCount, rowCount - rowOffset - result.size());
+        session.traceOperation("RESULT_FETCH_ROWS", id);
+        transfer.writeInt(SessionRemote.RESULT_FETCH_ROWS).writeInt(id).
+                writeInt(fetch);
+        prefetching = true;
+        fetchRequested = fetch;
+        session.addPipelinedRequest(this);
+    }
+
+    /**
+     * Read the response of the request for the next block of rows.
+     *
+     * @param s the session
+     * @param t the transfer object
+     */
+    @Override
+    public void readResponse(SessionRemote s, Transfer t) throws IOException {
+        prefetching = false;
+        ArrayList<Value[]> rows = New.arrayList();
+        try {
+            s.readStatus(t);
+            readRows(t, rows, fetchRequested);
+        } catch (DbException e) {
+            prefetchError = e;
+        }
+        prefetched = rows;
+    }
+
+    private void readRows(Transfer t, ArrayList<Value[]> rows, int fetch)
+            throws IOException {
+        int memory = 0;
+        for (int r = 0; r < fetch; r++) {
+            Value[] values = t.readRow(columnTypes);
+            if (values == null) {
+                break;
+            }
+            for (Value v : values) {
+                memory += v.getMemory();
+            }
+            rows.add(values);
+        }
+        blockMemory = memory;
+    }
+
     @Override
     public String toString() {
         return "columns: " + columns.length + " rows: " + rowCount + " pos: " + rowId;
@@ -247,6 +380,8 @@ public class ResultRemote implements ResultInterface {
     @Override
     public void setFetchSize(int fetchSize) {
         this.fetchSize = fetchSize;
+        fetchCount = fetchSize;
+        adaptive = false;
     }
 
     @Override
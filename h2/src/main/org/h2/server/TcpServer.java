@@ -23,7 +23,11 @@ import java.util.Properties;
 import java.util.Set;
 import org.h2.Driver;
 import org.h2.constant.ErrorCode;
+import org.h2.engine.ConnectionInfo;
 import org.h2.engine.Constants;
+import org.h2.engine.Engine;
+import org.h2.engine.Session;
+import org.h2.engine.SessionPool;
 import org.h2.message.DbException;
 import org.h2.message.TraceSystem;
 import org.h2.util.JdbcUtils;
@@ -45,6 +49,12 @@ public class TcpServer implements Service {
     private static final int SHUTDOWN_NORMAL = 0;
     private static final int SHUTDOWN_FORCE = 1;
 
+    /**
+     * The default number of worker threads that are kept if non-blocking I/O
+     * is used.
+     */
+    private static final int DEFAULT_THREADS = 32;
+
     /**
      * The name of the in-memory management database used by the TCP server
      * to keep the active sessions.
@@ -57,9 +67,14 @@ public class TcpServer implements Service {
     private boolean portIsSet;
     private boolean trace;
     private boolean ssl;
+    private boolean nio;
+    private int threads = DEFAULT_THREADS;
+    private int sessionPoolSize;
+    private volatile SessionPool sessionPool;
     private boolean stop;
     private ShutdownHandler shutdownHandler;
     private ServerSocket serverSocket;
+    private TcpServerSelector selector;
     private final Set<TcpServerThread> running = Collections.synchronizedSet(new HashSet<TcpServerThread>());
     private String baseDir;
     private boolean allowOthers;
@@ -169,6 +184,12 @@ public class TcpServer implements Service {
                 trace = true;
             } else if (Tool.isOption(a, "-tcpSSL")) {
                 ssl = true;
+            } else if (Tool.isOption(a, "-tcpNio")) {
+                nio = true;
+            } else if (Tool.isOption(a, "-tcpThreads")) {
+                threads = Integer.decode(args[++i]);
+            } else if (Tool.isOption(a, "-tcpSessionPool")) {
+                sessionPoolSize = Integer.decode(args[++i]);
             } else if (Tool.isOption(a, "-tcpPort")) {
                 port = Integer.decode(args[++i]);
                 portIsSet = true;
@@ -223,16 +244,36 @@ public class TcpServer implements Service {
     public synchronized void start() throws SQLException {
         stop = false;
         try {
-            serverSocket = NetUtils.createServerSocket(port, ssl);
+            serverSocket = createServerSocket(port);
         } catch (DbException e) {
             if (!portIsSet) {
-                serverSocket = NetUtils.createServerSocket(0, ssl);
+                serverSocket = createServerSocket(0);
             } else {
                 throw e;
             }
         }
         port = serverSocket.getLocalPort();
         initManagementDb();
+        if (sessionPoolSize > 0) {
+            sessionPool = new SessionPool(sessionPoolSize);
+        }
+    }
+
+    private ServerSocket createServerSocket(int p) {
+        if (isNio()) {
+            return NetUtils.createServerSocketChannel(p);
+        }
+        return NetUtils.createServerSocket(p, ssl);
+    }
+
+    /**
+     * Check whether non-blocking I/O is used. This is not supported for SSL
+     * connections.
+     *
+     * @return true if the connections are multiplexed over a selector
+     */
+    private boolean isNio() {
+        return nio && !ssl;
     }
 
     @Override
@@ -240,10 +281,18 @@ public class TcpServer implements Service {
         listenerThread = Thread.currentThread();
         String threadName = listenerThread.getName();
         try {
+            if (isNio()) {
+                selector = new TcpServerSelector(threads, threadName, isDaemon);
+                selector.start();
+            }
             while (!stop) {
                 Socket s = serverSocket.accept();
                 TcpServerThread c = new TcpServerThread(s, this, nextThreadId++);
                 running.add(c);
+                if (selector != null) {
+                    selector.connect(c);
+                    continue;
+                }
                 Thread thread = new Thread(c, threadName + " thread");
                 thread.setDaemon(isDaemon);
                 c.setThread(thread);
@@ -306,13 +355,55 @@ public class TcpServer implements Service {
         for (TcpServerThread c : New.arrayList(running)) {
             if (c != null) {
                 c.close();
+                Thread thread = c.getThread();
+                if (thread == null) {
+                    continue;
+                }
                 try {
-                    c.getThread().join(100);
+                    thread.join(100);
                 } catch (Exception e) {
                     TraceSystem.traceThrowable(e);
                 }
             }
         }
+        if (selector != null) {
+            selector.stop();
+            selector = null;
+        }
+        if (sessionPool != null) {
+            sessionPool.close();
+            sessionPool = null;
+        }
+    }
+
+    /**
+     * Open a session for a new connection. If the session pool is enabled, an
+     * idle session with the same database, user name and settings is re-used.
+     *
+     * @param ci the connection information
+     * @return the session
+     */
+    Session createSession(ConnectionInfo ci) {
+        SessionPool pool = sessionPool;
+        if (pool == null) {
+            return Engine.getInstance().createSession(ci);
+        }
+        return pool.createSession(ci);
+    }
+
+    /**
+     * Close the session of a connection. If the session pool is enabled, the
+     * session is kept for re-use if possible.
+     *
+     * @param session the session
+     */
+    void closeSession(Session session) {
+        SessionPool pool = sessionPool;
+        if (pool == null) {
+            session.close();
+        } else {
+            pool.closeSession(session);
+        }
     }
 
     /**
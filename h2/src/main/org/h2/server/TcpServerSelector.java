@@ -0,0 +1,236 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.server;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.h2.message.DbException;
+import org.h2.message.TraceSystem;
+import org.h2.util.New;
+
+/**
+ * Multiplexes the client connections of the TCP server over a selector, so
+ * that the number of threads does not depend on the number of connections.
+ * While a connection is idle, it is registered with the selector. When a
+ * request arrives, the connection is removed from the selector and handed to
+ * a pool of worker threads, which reads and processes the requests with the
+ * regular (blocking) protocol implementation of the TcpServerThread.
+ * Afterwards, the connection is registered with the selector again.
+ * <p>
+ * The worker pool keeps a fixed number of threads, and starts additional
+ * threads while all of them are busy, so that a request (for example the
+ * commit of a transaction other requests wait for) never waits for a free
+ * worker. New connections, including the ones that cancel a statement, are
+ * opened by a separate pool, so that a slow handshake does not delay the
+ * requests of open connections.
+ */
+class TcpServerSelector implements Runnable {
+
+    /**
+     * The number of seconds an additional thread is kept when it is idle.
+     */
+    private static final int KEEP_ALIVE_SECONDS = 60;
+
+    private final Selector selector;
+    private final ExecutorService workers;
+    private final ExecutorService connectors;
+    private final ArrayList<TcpServerThread> idle = New.arrayList();
+    private volatile boolean stop;
+    private Thread thread;
+
+    /**
+     * Create a new selector and the thread pools.
+     *
+     * @param threadCount the number of worker threads that are kept when
+     *            they are idle
+     * @param threadName the prefix of the thread names
+     * @param daemon whether the threads are daemon threads
+     */
+    TcpServerSelector(int threadCount, String threadName, boolean daemon) {
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            throw DbException.convertIOException(e, null);
+        }
+        workers = new ThreadPoolExecutor(threadCount, Integer.MAX_VALUE,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(),
+                createThreadFactory(threadName + " worker", daemon));
+        connectors = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(),
+                createThreadFactory(threadName + " connect", daemon));
+        thread = new Thread(this, threadName + " selector");
+        thread.setDaemon(daemon);
+    }
+
+    private static ThreadFactory createThreadFactory(final String name,
+            final boolean daemon) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name);
+                t.setDaemon(daemon);
+                return t;
+            }
+        };
+    }
+
+    /**
+     * Start the selector thread.
+     */
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Open a new connection, and process the requests that are already
+     * available. This is done in a thread of the connect pool. The channel of
+     * the connection must be in blocking mode.
+     *
+     * @param c the connection
+     */
+    void connect(TcpServerThread c) {
+        execute(connectors, c);
+    }
+
+    /**
+     * Process the pending requests of a connection in a worker thread. The
+     * channel of the connection must be in blocking mode.
+     *
+     * @param c the connection
+     */
+    void process(TcpServerThread c) {
+        execute(workers, c);
+    }
+
+    private void execute(ExecutorService executor, final TcpServerThread c) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (c.processAvailable()) {
+                        register(c);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the server was stopped
+            c.close();
+        }
+    }
+
+    /**
+     * Wait for the next request of an idle connection.
+     *
+     * @param c the connection
+     */
+    void register(TcpServerThread c) {
+        synchronized (idle) {
+            idle.add(c);
+        }
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!stop) {
+                registerIdle();
+                selector.select();
+                dispatchSelected();
+            }
+        } catch (Exception e) {
+            if (!stop) {
+                TraceSystem.traceThrowable(e);
+            }
+        } finally {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                TraceSystem.traceThrowable(e);
+            }
+        }
+    }
+
+    private void registerIdle() {
+        ArrayList<TcpServerThread> list;
+        synchronized (idle) {
+            if (idle.size() == 0) {
+                return;
+            }
+            list = New.arrayList(idle);
+            idle.clear();
+        }
+        for (TcpServerThread c : list) {
+            SocketChannel channel = getChannel(c);
+            try {
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ, c);
+            } catch (IOException e) {
+                // the connection was closed
+                c.close();
+            }
+        }
+    }
+
+    private void dispatchSelected() throws IOException {
+        ArrayList<TcpServerThread> ready = New.arrayList();
+        Set<SelectionKey> keys = selector.selectedKeys();
+        do {
+            for (SelectionKey key : keys) {
+                // the key is cancelled, because a channel that is registered
+                // with a selector can not be switched to blocking mode
+                key.cancel();
+                ready.add((TcpServerThread) key.attachment());
+            }
+            keys.clear();
+            // this deregisters the cancelled keys
+        } while (selector.selectNow() > 0);
+        for (TcpServerThread c : ready) {
+            try {
+                getChannel(c).configureBlocking(true);
+            } catch (IOException e) {
+                // the connection was closed
+                c.close();
+                continue;
+            }
+            process(c);
+        }
+    }
+
+    private static SocketChannel getChannel(TcpServerThread c) {
+        return c.transfer.getSocket().getChannel();
+    }
+
+    /**
+     * Stop the selector thread and the thread pools. Requests that are
+     * currently processed are not interrupted.
+     */
+    void stop() {
+        stop = true;
+        workers.shutdown();
+        connectors.shutdown();
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            TraceSystem.traceThrowable(e);
+        }
+    }
+
+}
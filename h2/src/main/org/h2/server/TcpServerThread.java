@@ -20,7 +20,6 @@ import org.h2.constant.ErrorCode;
 import org.h2.constant.SysProperties;
 import org.h2.engine.ConnectionInfo;
 import org.h2.engine.Constants;
-import org.h2.engine.Engine;
 import org.h2.engine.Session;
 import org.h2.engine.SessionRemote;
 import org.h2.expression.Parameter;
@@ -32,6 +31,7 @@ import org.h2.result.ResultColumn;
 import org.h2.result.ResultInterface;
 import org.h2.store.LobStorageInterface;
 import org.h2.util.IOUtils;
+import org.h2.util.New;
 import org.h2.util.SmallLRUCache;
 import org.h2.util.SmallMap;
 import org.h2.util.StringUtils;
@@ -40,7 +40,9 @@ import org.h2.value.Value;
 import org.h2.value.ValueLobDb;
 
 /**
- * One server thread is opened per client connection.
+ * One server thread is opened per client connection. If the server uses
+ * non-blocking I/O, the connection does not have its own thread; instead, the
+ * requests are processed by the worker threads of the TcpServerSelector.
  */
 public class TcpServerThread implements Runnable {
 
@@ -48,6 +50,7 @@ public class TcpServerThread implements Runnable {
     private final TcpServer server;
     private Session session;
     private boolean stop;
+    private boolean connected;
     private Thread thread;
     private Command commit;
     private final SmallMap cache = new SmallMap(SysProperties.SERVER_CACHED_OBJECTS);
@@ -58,6 +61,7 @@ public class TcpServerThread implements Runnable {
     private final int threadId;
     private int clientVersion;
     private String sessionId;
+    private int cancelId = -1;
 
     TcpServerThread(Socket socket, TcpServer server, int id) {
         this.server = server;
@@ -73,92 +77,9 @@ public class TcpServerThread implements Runnable {
     @Override
     public void run() {
         try {
-            transfer.init();
-            trace("Connect");
-            // TODO server: should support a list of allowed databases
-            // and a list of allowed clients
-            try {
-                if (!server.allow(transfer.getSocket())) {
-                    throw DbException.get(ErrorCode.REMOTE_CONNECTION_NOT_ALLOWED);
-                }
-                int minClientVersion = transfer.readInt();
-                if (minClientVersion < Constants.TCP_PROTOCOL_VERSION_6) {
-                    throw DbException.get(ErrorCode.DRIVER_VERSION_ERROR_2,
-                            "" + clientVersion, "" + Constants.TCP_PROTOCOL_VERSION_6);
-                } else if (minClientVersion > Constants.TCP_PROTOCOL_VERSION_14) {
-                    throw DbException.get(ErrorCode.DRIVER_VERSION_ERROR_2,
-                            "" + clientVersion, "" + Constants.TCP_PROTOCOL_VERSION_14);
-                }
-                int maxClientVersion = transfer.readInt();
-                if (maxClientVersion >= Constants.TCP_PROTOCOL_VERSION_14) {
-                    clientVersion = Constants.TCP_PROTOCOL_VERSION_14;
-                } else {
-                    clientVersion = minClientVersion;
-                }
-                transfer.setVersion(clientVersion);
-                String db = transfer.readString();
-                String originalURL = transfer.readString();
-                if (db == null && originalURL == null) {
-                    String targetSessionId = transfer.readString();
-                    int command = transfer.readInt();
-                    stop = true;
-                    if (command == SessionRemote.SESSION_CANCEL_STATEMENT) {
-                        // cancel a running statement
-                        int statementId = transfer.readInt();
-                        server.cancelStatement(targetSessionId, statementId);
-                    } else if (command == SessionRemote.SESSION_CHECK_KEY) {
-                        // check if this is the correct server
-                        db = server.checkKeyAndGetDatabaseName(targetSessionId);
-                        if (!targetSessionId.equals(db)) {
-                            transfer.writeInt(SessionRemote.STATUS_OK);
-                        } else {
-                            transfer.writeInt(SessionRemote.STATUS_ERROR);
-                        }
-                    }
-                }
-                String baseDir = server.getBaseDir();
-                if (baseDir == null) {
-                    baseDir = SysProperties.getBaseDir();
-                }
-                db = server.checkKeyAndGetDatabaseName(db);
-                ConnectionInfo ci = new ConnectionInfo(db);
-                ci.setOriginalURL(originalURL);
-                ci.setUserName(transfer.readString());
-                ci.setUserPasswordHash(transfer.readBytes());
-                ci.setFilePasswordHash(transfer.readBytes());
-                int len = transfer.readInt();
-                for (int i = 0; i < len; i++) {
-                    ci.setProperty(transfer.readString(), transfer.readString());
-                }
-                // override client's requested properties with server settings
-                if (baseDir != null) {
-                    ci.setBaseDir(baseDir);
-                }
-                if (server.getIfExists()) {
-                    ci.setProperty("IFEXISTS", "TRUE");
-                }
-                transfer.writeInt(SessionRemote.STATUS_OK);
-                transfer.writeInt(clientVersion);
-                transfer.flush();
-                if (clientVersion >= Constants.TCP_PROTOCOL_VERSION_13) {
-                    if (ci.getFilePasswordHash() != null) {
-                        ci.setFileEncryptionKey(transfer.readBytes());
-                    }
-                }
-                session = Engine.getInstance().createSession(ci);
-                transfer.setSession(session);
-                server.addConnection(threadId, originalURL, ci.getUserName());
-                trace("Connected");
-            } catch (Throwable e) {
-                sendError(e);
-                stop = true;
-            }
+            connect();
             while (!stop) {
-                try {
-                    process();
-                } catch (Throwable e) {
-                    sendError(e);
-                }
+                processRequest();
             }
             trace("Disconnect");
         } catch (Throwable e) {
@@ -168,6 +89,134 @@ public class TcpServerThread implements Runnable {
         }
     }
 
+    /**
+     * Process the requests of the client that can be read without blocking.
+     * This is used if the server multiplexes the connections over a selector,
+     * so that the connection does not have its own thread. The first call
+     * opens the session. At least one request is processed, and then all
+     * requests that are already buffered, so that no data is left in the
+     * buffer when the connection goes back to the selector.
+     *
+     * @return true if the connection is still open
+     */
+    boolean processAvailable() {
+        try {
+            if (!connected) {
+                connect();
+            } else {
+                processRequest();
+            }
+            while (!stop && transfer.available() > 0) {
+                processRequest();
+            }
+            if (!stop) {
+                return true;
+            }
+            trace("Disconnect");
+        } catch (Throwable e) {
+            server.traceError(e);
+        }
+        close();
+        return false;
+    }
+
+    private void connect() throws IOException {
+        connected = true;
+        transfer.init();
+        trace("Connect");
+        // TODO server: should support a list of allowed databases
+        // and a list of allowed clients
+        try {
+            if (!server.allow(transfer.getSocket())) {
+                throw DbException.get(ErrorCode.REMOTE_CONNECTION_NOT_ALLOWED);
+            }
+            int minClientVersion = transfer.readInt();
+            if (minClientVersion < Constants.TCP_PROTOCOL_VERSION_6) {
+                throw DbException.get(ErrorCode.DRIVER_VERSION_ERROR_2,
+                        "" + clientVersion, "" + Constants.TCP_PROTOCOL_VERSION_6);
+            } else if (minClientVersion > Constants.TCP_PROTOCOL_VERSION_18) {
+                throw DbException.get(ErrorCode.DRIVER_VERSION_ERROR_2,
+                        "" + clientVersion, "" + Constants.TCP_PROTOCOL_VERSION_18);
+            }
+            int maxClientVersion = transfer.readInt();
+            if (maxClientVersion >= Constants.TCP_PROTOCOL_VERSION_18) {
+                clientVersion = Constants.TCP_PROTOCOL_VERSION_18;
+            } else {
+                clientVersion = minClientVersion;
+            }
+            transfer.setVersion(clientVersion);
+            String db = transfer.readString();
+            String originalURL = transfer.readString();
+            if (db == null && originalURL == null) {
+                String targetSessionId = transfer.readString();
+                int command = transfer.readInt();
+                stop = true;
+                if (command == SessionRemote.SESSION_CANCEL_STATEMENT) {
+                    // cancel a running statement
+                    int statementId = transfer.readInt();
+                    server.cancelStatement(targetSessionId, statementId);
+                } else if (command == SessionRemote.SESSION_CHECK_KEY) {
+                    // check if this is the correct server
+                    db = server.checkKeyAndGetDatabaseName(targetSessionId);
+                    if (!targetSessionId.equals(db)) {
+                        transfer.writeInt(SessionRemote.STATUS_OK);
+                    } else {
+                        transfer.writeInt(SessionRemote.STATUS_ERROR);
+                    }
+                }
+            }
+            String baseDir = server.getBaseDir();
+            if (baseDir == null) {
+                baseDir = SysProperties.getBaseDir();
+            }
+            db = server.checkKeyAndGetDatabaseName(db);
+            ConnectionInfo ci = new ConnectionInfo(db);
+            ci.setOriginalURL(originalURL);
+            ci.setUserName(transfer.readString());
+            ci.setUserPasswordHash(transfer.readBytes());
+            ci.setFilePasswordHash(transfer.readBytes());
+            int len = transfer.readInt();
+            for (int i = 0; i < len; i++) {
+                ci.setProperty(transfer.readString(), transfer.readString());
+            }
+            // override client's requested properties with server settings
+            if (baseDir != null) {
+                ci.setBaseDir(baseDir);
+            }
+            if (server.getIfExists()) {
+                ci.setProperty("IFEXISTS", "TRUE");
+            }
+            transfer.writeInt(SessionRemote.STATUS_OK);
+            transfer.writeInt(clientVersion);
+            transfer.flush();
+            if (clientVersion >= Constants.TCP_PROTOCOL_VERSION_13) {
+                if (ci.getFilePasswordHash() != null) {
+                    ci.setFileEncryptionKey(transfer.readBytes());
+                }
+            }
+            if (clientVersion >= Constants.TCP_PROTOCOL_VERSION_17) {
+                if (Boolean.parseBoolean(ci.getProperty("NETWORK_COMPRESSION", "false"))) {
+                    transfer.setCompressed();
+                }
+            }
+            session = server.createSession(ci);
+            transfer.setSession(session);
+            server.addConnection(threadId, originalURL, ci.getUserName());
+            trace("Connected");
+        } catch (Throwable e) {
+            sendError(e);
+            stop = true;
+        }
+    }
+
+    private void processRequest() {
+        try {
+            process();
+        } catch (Throwable e) {
+            sendError(e);
+        }
+    }
+
     private void closeSession() {
         if (session != null) {
             RuntimeException closeError = null;
@@ -181,7 +230,7 @@ public class TcpServerThread implements Runnable {
                 server.traceError(e);
             }
             try {
-                session.close();
+                server.closeSession(session);
                 server.removeConnection(threadId);
             } catch (RuntimeException e) {
                 if (closeError == null) {
@@ -217,22 +266,9 @@ public class TcpServerThread implements Runnable {
 
     private void sendError(Throwable t) {
         try {
-            SQLException e = DbException.convert(t).getSQLException();
-            StringWriter writer = new StringWriter();
-            e.printStackTrace(new PrintWriter(writer));
-            String trace = writer.toString();
-            String message;
-            String sql;
-            if (e instanceof JdbcSQLException) {
-                JdbcSQLException j = (JdbcSQLException) e;
-                message = j.getOriginalMessage();
-                sql = j.getSQL();
-            } else {
-                message = e.getMessage();
-                sql = null;
-            }
-            transfer.writeInt(SessionRemote.STATUS_ERROR).writeString(e.getSQLState()).writeString(message)
-                    .writeString(sql).writeInt(e.getErrorCode()).writeString(trace).flush();
+            transfer.writeInt(SessionRemote.STATUS_ERROR);
+            writeError(t);
+            flush();
         } catch (Exception e2) {
             if (!transfer.isClosed()) {
                 server.traceError(e2);
@@ -242,12 +278,46 @@ public class TcpServerThread implements Runnable {
         }
     }
 
-    private void setParameters(Command command) throws IOException {
-        int len = transfer.readInt();
+    private void writeError(Throwable t) throws IOException {
+        SQLException e = DbException.convert(t).getSQLException();
+        StringWriter writer = new StringWriter();
+        e.printStackTrace(new PrintWriter(writer));
+        String trace = writer.toString();
+        String message;
+        String sql;
+        if (e instanceof JdbcSQLException) {
+            JdbcSQLException j = (JdbcSQLException) e;
+            message = j.getOriginalMessage();
+            sql = j.getSQL();
+        } else {
+            message = e.getMessage();
+            sql = null;
+        }
+        transfer.writeString(e.getSQLState()).writeString(message)
+                .writeString(sql).writeInt(e.getErrorCode()).writeString(trace);
+    }
+
+    /**
+     * Read the parameter values of an execute request. They are read before
+     * the command is looked up, so that the request is read completely even
+     * if the command does not exist (for example because the client sent the
+     * prepare request in the same round trip, and it failed).
+     *
+     * @return the parameter values
+     */
+    private Value[] readParameters() throws IOException {
+        Value[] values = new Value[transfer.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = transfer.readValue();
+        }
+        return values;
+    }
+
+    private static void setParameters(Command command, Value[] values) {
         ArrayList<? extends ParameterInterface> params = command.getParameters();
-        for (int i = 0; i < len; i++) {
+        for (int i = 0; i < values.length; i++) {
             Parameter p = (Parameter) params.get(i);
-            p.setValue(transfer.readValue());
+            p.setValue(values[i]);
         }
     }
 
@@ -261,7 +331,13 @@ public class TcpServerThread implements Runnable {
             int old = session.getModificationId();
             Command command = session.prepareLocal(sql);
             boolean readonly = command.isReadOnly();
-            cache.addObject(id, command);
+            synchronized (this) {
+                cache.addObject(id, command);
+                if (id == cancelId) {
+                    // canceled while the request was on its way
+                    command.cancel();
+                }
+            }
             boolean isQuery = command.isQuery();
             ArrayList<? extends ParameterInterface> params = command.getParameters();
             transfer.writeInt(getState(old)).writeBoolean(isQuery).writeBoolean(readonly)
@@ -271,13 +347,14 @@ public class TcpServerThread implements Runnable {
                     ParameterRemote.writeMetaData(transfer, p);
                 }
             }
-            transfer.flush();
+            flush();
             break;
         }
         case SessionRemote.SESSION_CLOSE: {
             stop = true;
             closeSession();
-            transfer.writeInt(SessionRemote.STATUS_OK).flush();
+            transfer.writeInt(SessionRemote.STATUS_OK);
+            flush();
             close();
             break;
         }
@@ -287,7 +364,8 @@ public class TcpServerThread implements Runnable {
             }
             int old = session.getModificationId();
             commit.executeUpdate();
-            transfer.writeInt(getState(old)).flush();
+            transfer.writeInt(getState(old));
+            flush();
             break;
         }
         case SessionRemote.COMMAND_GET_META_DATA: {
@@ -301,7 +379,7 @@ public class TcpServerThread implements Runnable {
             for (int i = 0; i < columnCount; i++) {
                 ResultColumn.writeColumn(transfer, result, i);
             }
-            transfer.flush();
+            flush();
             break;
         }
         case SessionRemote.COMMAND_EXECUTE_QUERY: {
@@ -309,8 +387,9 @@ public class TcpServerThread implements Runnable {
             int objectId = transfer.readInt();
             int maxRows = transfer.readInt();
             int fetchSize = transfer.readInt();
+            Value[] values = readParameters();
             Command command = (Command) cache.getObject(id, false);
-            setParameters(command);
+            setParameters(command, values);
             int old = session.getModificationId();
             ResultInterface result;
             synchronized (session) {
@@ -326,16 +405,18 @@ public class TcpServerThread implements Runnable {
                 ResultColumn.writeColumn(transfer, result, i);
             }
             int fetch = Math.min(rowCount, fetchSize);
+            int[] columnTypes = getColumnTypes(result);
             for (int i = 0; i < fetch; i++) {
-                sendRow(result);
+                sendRow(result, columnTypes);
             }
-            transfer.flush();
+            flush();
             break;
         }
         case SessionRemote.COMMAND_EXECUTE_UPDATE: {
             int id = transfer.readInt();
+            Value[] values = readParameters();
             Command command = (Command) cache.getObject(id, false);
-            setParameters(command);
+            setParameters(command, values);
             int old = session.getModificationId();
             int updateCount;
             synchronized (session) {
@@ -348,7 +429,39 @@ public class TcpServerThread implements Runnable {
                 status = getState(old);
             }
             transfer.writeInt(status).writeInt(updateCount).writeBoolean(session.getAutoCommit());
-            transfer.flush();
+            flush();
+            break;
+        }
+        case SessionRemote.COMMAND_EXECUTE_BATCH: {
+            int id = transfer.readInt();
+            int size = transfer.readInt();
+            ArrayList<Value[]> batchParameters = New.arrayList(size);
+            for (int i = 0; i < size; i++) {
+                batchParameters.add(readParameters());
+            }
+            Command command = (Command) cache.getObject(id, false);
+            int old = session.getModificationId();
+            ArrayList<DbException> exceptions = New.arrayList();
+            int[] result;
+            synchronized (session) {
+                result = command.executeBatchUpdate(batchParameters, exceptions);
+            }
+            int status;
+            if (session.isClosed()) {
+                status = SessionRemote.STATUS_CLOSED;
+            } else {
+                status = getState(old);
+            }
+            transfer.writeInt(status).writeInt(result.length);
+            for (int updateCount : result) {
+                transfer.writeInt(updateCount);
+            }
+            transfer.writeInt(exceptions.size());
+            for (DbException e : exceptions) {
+                writeError(e);
+            }
+            transfer.writeBoolean(session.getAutoCommit());
+            flush();
             break;
         }
         case SessionRemote.COMMAND_CLOSE: {
@@ -365,10 +478,11 @@ public class TcpServerThread implements Runnable {
             int count = transfer.readInt();
             ResultInterface result = (ResultInterface) cache.getObject(id, false);
             transfer.writeInt(SessionRemote.STATUS_OK);
+            int[] columnTypes = getColumnTypes(result);
             for (int i = 0; i < count; i++) {
-                sendRow(result);
+                sendRow(result, columnTypes);
             }
-            transfer.flush();
+            flush();
             break;
         }
         case SessionRemote.RESULT_RESET: {
@@ -396,18 +510,21 @@ public class TcpServerThread implements Runnable {
         }
         case SessionRemote.SESSION_SET_ID: {
             sessionId = transfer.readString();
-            transfer.writeInt(SessionRemote.STATUS_OK).flush();
+            transfer.writeInt(SessionRemote.STATUS_OK);
+            flush();
             break;
         }
         case SessionRemote.SESSION_SET_AUTOCOMMIT: {
             boolean autoCommit = transfer.readBoolean();
             session.setAutoCommit(autoCommit);
-            transfer.writeInt(SessionRemote.STATUS_OK).flush();
+            transfer.writeInt(SessionRemote.STATUS_OK);
+            flush();
             break;
         }
         case SessionRemote.SESSION_HAS_PENDING_TRANSACTION: {
             transfer.writeInt(SessionRemote.STATUS_OK).
-                writeInt(session.hasPendingTransaction() ? 1 : 0).flush();
+                writeInt(session.hasPendingTransaction() ? 1 : 0);
+            flush();
             break;
         }
         case SessionRemote.LOB_READ: {
@@ -457,7 +574,7 @@ public class TcpServerThread implements Runnable {
             transfer.writeInt(SessionRemote.STATUS_OK);
             transfer.writeInt(length);
             transfer.writeBytes(buff, 0, length);
-            transfer.flush();
+            flush();
             break;
         }
         default:
@@ -467,6 +584,19 @@ public class TcpServerThread implements Runnable {
         }
     }
 
+    /**
+     * Send the buffered response, unless the client already sent the next
+     * request. In that case, the client sent multiple requests without
+     * waiting, and the response is sent together with the response of the
+     * next request. This avoids sending many small packets, which is slow if
+     * the client delays acknowledging them.
+     */
+    private void flush() throws IOException {
+        if (transfer.available() == 0) {
+            transfer.flush();
+        }
+    }
+
     private int getState(int oldModificationId) {
         if (session.getModificationId() == oldModificationId) {
             return SessionRemote.STATUS_OK;
@@ -474,14 +604,22 @@ public class TcpServerThread implements Runnable {
         return SessionRemote.STATUS_OK_STATE_CHANGED;
     }
 
-    private void sendRow(ResultInterface result) throws IOException {
+    private static int[] getColumnTypes(ResultInterface result) {
+        int[] columnTypes = new int[result.getVisibleColumnCount()];
+        for (int i = 0; i < columnTypes.length; i++) {
+            columnTypes[i] = result.getColumnType(i);
+        }
+        return columnTypes;
+    }
+
+    private void sendRow(ResultInterface result, int[] columnTypes) throws IOException {
         if (result.next()) {
-            transfer.writeBoolean(true);
             Value[] v = result.currentRow();
-            for (int i = 0; i < result.getVisibleColumnCount(); i++) {
-                if (clientVersion >= Constants.TCP_PROTOCOL_VERSION_12) {
-                    transfer.writeValue(v[i]);
-                } else {
+            if (clientVersion >= Constants.TCP_PROTOCOL_VERSION_12) {
+                transfer.writeRow(v, columnTypes);
+            } else {
+                transfer.writeBoolean(true);
+                for (int i = 0; i < columnTypes.length; i++) {
                     writeValue(v[i]);
                 }
             }
@@ -512,15 +650,20 @@ public class TcpServerThread implements Runnable {
     }
 
     /**
-     * Cancel a running statement.
+     * Cancel a running statement. If the statement is sent together with the
+     * request to execute it, it may not be prepared yet; it is then canceled
+     * as soon as it is prepared.
      *
      * @param targetSessionId the session id
      * @param statementId the statement to cancel
      */
-    void cancelStatement(String targetSessionId, int statementId) {
+    synchronized void cancelStatement(String targetSessionId, int statementId) {
         if (StringUtils.equals(targetSessionId, this.sessionId)) {
-            Command cmd = (Command) cache.getObject(statementId, false);
-            cmd.cancel();
+            cancelId = statementId;
+            Command cmd = (Command) cache.getObject(statementId, true);
+            if (cmd != null) {
+                cmd.cancel();
+            }
         }
     }
 
@@ -6,6 +6,8 @@
  */
 package org.h2.server.pg;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
@@ -14,7 +16,6 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.net.Socket;
@@ -24,13 +25,18 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Properties;
 
 import org.h2.command.CommandInterface;
+import org.h2.constant.ErrorCode;
 import org.h2.constant.SysProperties;
 import org.h2.engine.ConnectionInfo;
 import org.h2.jdbc.JdbcConnection;
@@ -38,10 +44,12 @@ import org.h2.jdbc.JdbcPreparedStatement;
 import org.h2.jdbc.JdbcStatement;
 import org.h2.message.DbException;
 import org.h2.mvstore.DataUtils;
+import org.h2.util.DateTimeUtils;
 import org.h2.util.IOUtils;
 import org.h2.util.JdbcUtils;
 import org.h2.util.MathUtils;
 import org.h2.util.ScriptReader;
+import org.h2.util.StatementBuilder;
 import org.h2.util.StringUtils;
 import org.h2.util.Utils;
 import org.h2.value.CaseInsensitiveMap;
@@ -50,16 +58,34 @@ import org.h2.value.CaseInsensitiveMap;
  * One server thread is opened for each client.
  */
 public class PgServerThread implements Runnable {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * The number of rows of a COPY FROM STDIN command that are inserted in one
+     * batch.
+     */
+    private static final int COPY_BATCH_SIZE = 1000;
+
+    /**
+     * The number of days between 1970-01-01 and 2000-01-01, the epoch of the
+     * binary date and time formats.
+     */
+    private static final long PG_EPOCH_DAY = DateTimeUtils.absoluteDayFromDateValue(
+            DateTimeUtils.dateValue(2000, 1, 1));
+
+    private static final long MICROS_PER_DAY = DateTimeUtils.MILLIS_PER_DAY * 1000;
+
     private final PgServer server;
     private Socket socket;
     private Connection conn;
     private boolean stop;
     private DataInputStream dataInRaw;
     private DataInputStream dataIn;
-    private OutputStream out;
+    private DataOutputStream out;
     private int messageType;
-    private ByteArrayOutputStream outBuffer;
-    private DataOutputStream dataOut;
+    private final ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
+    private final DataOutputStream dataOut = new DataOutputStream(outBuffer);
     private Thread thread;
     private boolean initDone;
     private String userName;
@@ -83,11 +109,16 @@ public class PgServerThread implements Runnable {
         try {
             server.trace("Connect");
             InputStream ins = socket.getInputStream();
-            out = socket.getOutputStream();
-            dataInRaw = new DataInputStream(ins);
+            out = new DataOutputStream(new BufferedOutputStream(
+                    socket.getOutputStream(), BUFFER_SIZE));
+            dataInRaw = new DataInputStream(new BufferedInputStream(
+                    ins, BUFFER_SIZE));
             while (!stop) {
                 process();
-                out.flush();
+                // the responses to pipelined messages are sent together
+                if (!stop && dataInRaw.available() == 0) {
+                    out.flush();
+                }
             }
         } catch (EOFException e) {
             // more or less normal disconnect
@@ -236,6 +267,22 @@ public class PgServerThread implements Runnable {
                 server.checkType(type);
                 p.paramType[i] = type;
             }
+            Prepared old = prepared.get(p.name);
+            if (old != null) {
+                if (old.sql.equals(p.sql) && Arrays.equals(old.paramType, p.paramType)) {
+                    // clients re-parse the unnamed statement for each
+                    // execution: keep the already prepared statement
+                    try {
+                        old.prep.clearParameters();
+                        sendParseComplete();
+                    } catch (Exception e) {
+                        sendErrorResponse(e);
+                    }
+                    break;
+                }
+                prepared.remove(p.name);
+                JdbcUtils.closeSilently(old.prep);
+            }
             try {
                 p.prep = (JdbcPreparedStatement) conn.prepareStatement(p.sql);
                 prepared.put(p.name, p);
@@ -265,7 +312,8 @@ public class PgServerThread implements Runnable {
             int paramCount = readShort();
             try {
                 for (int i = 0; i < paramCount; i++) {
-                    setParameter(prep.prep, prep.paramType[i], i, formatCodes);
+                    int pgType = i < prep.paramType.length ? prep.paramType[i] : 0;
+                    setParameter(prep.prep, pgType, i, formatCodes);
                 }
             } catch (Exception e) {
                 sendErrorResponse(e);
@@ -317,7 +365,7 @@ public class PgServerThread implements Runnable {
                     PreparedStatement prep = p.prep.prep;
                     try {
                         ResultSetMetaData meta = prep.getMetaData();
-                        sendRowDescription(meta);
+                        sendRowDescription(meta, p.resultColumnFormat);
                     } catch (Exception e) {
                         sendErrorResponse(e);
                     }
@@ -336,7 +384,7 @@ public class PgServerThread implements Runnable {
                 sendErrorResponse("Portal not found: " + name);
                 break;
             }
-            int maxRows = readShort();
+            int maxRows = readInt();
             Prepared prepared = p.prep;
             JdbcPreparedStatement prep = prepared.prep;
             server.trace(prepared.sql);
@@ -348,8 +396,10 @@ public class PgServerThread implements Runnable {
                     try {
                         ResultSet rs = prep.getResultSet();
                         // the meta-data is sent in the prior 'Describe'
+                        int[] pgTypes = getPgTypes(rs.getMetaData());
+                        boolean[] binary = getBinaryColumns(pgTypes, p.resultColumnFormat);
                         while (rs.next()) {
-                            sendDataRow(rs);
+                            sendDataRow(rs, pgTypes, binary);
                         }
                         sendCommandComplete(prep, 0);
                     } catch (Exception e) {
@@ -386,6 +436,12 @@ public class PgServerThread implements Runnable {
                         break;
                     }
                     s = getSQL(s);
+                    if (Copy.isCopy(s)) {
+                        if (!copy(s)) {
+                            break;
+                        }
+                        continue;
+                    }
                     stat = (JdbcStatement) conn.createStatement();
                     setActiveRequest(stat);
                     boolean result = stat.execute(s);
@@ -393,9 +449,11 @@ public class PgServerThread implements Runnable {
                         ResultSet rs = stat.getResultSet();
                         ResultSetMetaData meta = rs.getMetaData();
                         try {
-                            sendRowDescription(meta);
+                            sendRowDescription(meta, null);
+                            int[] pgTypes = getPgTypes(meta);
+                            boolean[] binary = getBinaryColumns(pgTypes, null);
                             while (rs.next()) {
-                                sendDataRow(rs);
+                                sendDataRow(rs, pgTypes, binary);
                             }
                             sendCommandComplete(stat, 0);
                         } catch (Exception e) {
@@ -425,6 +483,12 @@ public class PgServerThread implements Runnable {
             close();
             break;
         }
+        case 'd':
+        case 'c':
+        case 'f':
+            // the rest of a failed COPY FROM STDIN is dropped
+            server.trace("CopyData ignored");
+            break;
         default:
             server.trace("Unsupported: " + x + " (" + (char) x + ")");
             break;
@@ -475,19 +539,66 @@ public class PgServerThread implements Runnable {
         sendMessage();
     }
 
-    private void sendDataRow(ResultSet rs) throws Exception {
-        ResultSetMetaData metaData = rs.getMetaData();
-        int columns = metaData.getColumnCount();
+    private static int[] getPgTypes(ResultSetMetaData meta) throws SQLException {
+        int columns = meta.getColumnCount();
+        int[] pgTypes = new int[columns];
+        for (int i = 0; i < columns; i++) {
+            pgTypes[i] = PgServer.convertType(meta.getColumnType(i + 1));
+        }
+        return pgTypes;
+    }
+
+    /**
+     * Get which columns are sent in the binary format. Columns are sent as
+     * text, unless the type is always sent as binary, or if the client
+     * requested the binary format and it is supported for this type.
+     *
+     * @param pgTypes the column types
+     * @param formatCodes the result format codes of the portal, or null
+     * @return the array of binary flags
+     */
+    private static boolean[] getBinaryColumns(int[] pgTypes, int[] formatCodes) {
+        boolean[] binary = new boolean[pgTypes.length];
+        for (int i = 0; i < pgTypes.length; i++) {
+            int pgType = pgTypes[i];
+            binary[i] = !formatAsText(pgType) ||
+                    (isBinaryFormat(formatCodes, i) && isBinarySupported(pgType));
+        }
+        return binary;
+    }
+
+    /**
+     * Check whether the binary format is requested for the given column or
+     * parameter. No format code means text, a single format code applies to
+     * all columns.
+     *
+     * @param formatCodes the format codes
+     * @param i the column or parameter index (0 based)
+     * @return true for binary
+     */
+    private static boolean isBinaryFormat(int[] formatCodes, int i) {
+        if (formatCodes == null || formatCodes.length == 0) {
+            return false;
+        } else if (formatCodes.length == 1) {
+            return formatCodes[0] == 1;
+        }
+        return i < formatCodes.length && formatCodes[i] == 1;
+    }
+
+    private void sendDataRow(ResultSet rs, int[] pgTypes, boolean[] binary)
+            throws Exception {
+        int columns = pgTypes.length;
         startMessage('D');
         writeShort(columns);
-        for (int i = 1; i <= columns; i++) {
-            writeDataColumn(rs, i, PgServer.convertType(metaData.getColumnType(i)));
+        for (int i = 0; i < columns; i++) {
+            writeDataColumn(rs, i + 1, pgTypes[i], binary[i]);
         }
         sendMessage();
     }
 
-    private void writeDataColumn(ResultSet rs, int column, int pgType) throws Exception {
-        if (formatAsText(pgType)) {
+    private void writeDataColumn(ResultSet rs, int column, int pgType,
+            boolean binary) throws Exception {
+        if (!binary) {
             // plain text
             switch (pgType) {
             case PgServer.PG_TYPE_BOOL:
@@ -507,27 +618,67 @@ public class PgServerThread implements Runnable {
         } else {
             // binary
             switch (pgType) {
-            case PgServer.PG_TYPE_INT2:
-                writeInt(2);
-                writeShort(rs.getShort(column));
+            case PgServer.PG_TYPE_BOOL: {
+                boolean x = rs.getBoolean(column);
+                if (rs.wasNull()) {
+                    writeInt(-1);
+                } else {
+                    writeInt(1);
+                    write(x ? 1 : 0);
+                }
                 break;
-            case PgServer.PG_TYPE_INT4:
-                writeInt(4);
-                writeInt(rs.getInt(column));
+            }
+            case PgServer.PG_TYPE_INT2: {
+                short x = rs.getShort(column);
+                if (rs.wasNull()) {
+                    writeInt(-1);
+                } else {
+                    writeInt(2);
+                    writeShort(x);
+                }
                 break;
-            case PgServer.PG_TYPE_INT8:
-                writeInt(8);
-                dataOut.writeLong(rs.getLong(column));
+            }
+            case PgServer.PG_TYPE_INT4: {
+                int x = rs.getInt(column);
+                if (rs.wasNull()) {
+                    writeInt(-1);
+                } else {
+                    writeInt(4);
+                    writeInt(x);
+                }
                 break;
-            case PgServer.PG_TYPE_FLOAT4:
-                writeInt(4);
-                dataOut.writeFloat(rs.getFloat(column));
+            }
+            case PgServer.PG_TYPE_INT8: {
+                long x = rs.getLong(column);
+                if (rs.wasNull()) {
+                    writeInt(-1);
+                } else {
+                    writeInt(8);
+                    dataOut.writeLong(x);
+                }
                 break;
-            case PgServer.PG_TYPE_FLOAT8:
-                writeInt(8);
-                dataOut.writeDouble(rs.getDouble(column));
+            }
+            case PgServer.PG_TYPE_FLOAT4: {
+                float x = rs.getFloat(column);
+                if (rs.wasNull()) {
+                    writeInt(-1);
+                } else {
+                    writeInt(4);
+                    dataOut.writeFloat(x);
+                }
                 break;
-            case PgServer.PG_TYPE_BYTEA:
+            }
+            case PgServer.PG_TYPE_FLOAT8: {
+                double x = rs.getDouble(column);
+                if (rs.wasNull()) {
+                    writeInt(-1);
+                } else {
+                    writeInt(8);
+                    dataOut.writeDouble(x);
+                }
+                break;
+            }
+            case PgServer.PG_TYPE_BYTEA: {
                 byte[] data = rs.getBytes(column);
                 if (data == null) {
                     writeInt(-1);
@@ -536,12 +687,265 @@ public class PgServerThread implements Runnable {
                     write(data);
                 }
                 break;
-
+            }
+            case PgServer.PG_TYPE_DATE: {
+                java.sql.Date x = rs.getDate(column);
+                if (x == null) {
+                    writeInt(-1);
+                } else {
+                    writeInt(4);
+                    long dateValue = DateTimeUtils.dateValueFromDate(x.getTime());
+                    writeInt((int) (DateTimeUtils.absoluteDayFromDateValue(dateValue) -
+                            PG_EPOCH_DAY));
+                }
+                break;
+            }
+            case PgServer.PG_TYPE_TIME: {
+                Time x = rs.getTime(column);
+                if (x == null) {
+                    writeInt(-1);
+                } else {
+                    writeInt(8);
+                    dataOut.writeLong(DateTimeUtils.nanosFromDate(x.getTime()) / 1000);
+                }
+                break;
+            }
+            case PgServer.PG_TYPE_TIMESTAMP_NO_TMZONE: {
+                Timestamp x = rs.getTimestamp(column);
+                if (x == null) {
+                    writeInt(-1);
+                } else {
+                    writeInt(8);
+                    long ms = x.getTime();
+                    long dateValue = DateTimeUtils.dateValueFromDate(ms);
+                    long days = DateTimeUtils.absoluteDayFromDateValue(dateValue) -
+                            PG_EPOCH_DAY;
+                    long nanos = DateTimeUtils.nanosFromDate(ms) +
+                            x.getNanos() % 1000000;
+                    dataOut.writeLong(days * MICROS_PER_DAY + nanos / 1000);
+                }
+                break;
+            }
             default: throw new IllegalStateException("output binary format is undefined");
             }
         }
     }
 
+    /**
+     * Check whether the binary format is supported for the given type.
+     *
+     * @param pgType the type
+     * @return true if supported
+     */
+    private static boolean isBinarySupported(int pgType) {
+        switch (pgType) {
+        case PgServer.PG_TYPE_BOOL:
+        case PgServer.PG_TYPE_INT2:
+        case PgServer.PG_TYPE_INT4:
+        case PgServer.PG_TYPE_INT8:
+        case PgServer.PG_TYPE_FLOAT4:
+        case PgServer.PG_TYPE_FLOAT8:
+        case PgServer.PG_TYPE_BYTEA:
+        case PgServer.PG_TYPE_DATE:
+        case PgServer.PG_TYPE_TIME:
+        case PgServer.PG_TYPE_TIMESTAMP_NO_TMZONE:
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Run a COPY FROM STDIN or COPY TO STDOUT command.
+     *
+     * @param sql the command
+     * @return true if successful, false if an error response was sent
+     */
+    private boolean copy(String sql) throws IOException {
+        boolean autoCommit = false;
+        Savepoint savepoint = null;
+        JdbcStatement stat = null;
+        try {
+            Copy copy = Copy.parse(sql);
+            server.trace(copy.toStdout ? "CopyOut" : "CopyIn");
+            if (copy.toStdout) {
+                stat = (JdbcStatement) conn.createStatement();
+                setActiveRequest(stat);
+                copyOut(stat.executeQuery(copy.getSelect()));
+                return true;
+            }
+            autoCommit = conn.getAutoCommit();
+            if (autoCommit) {
+                conn.setAutoCommit(false);
+            } else {
+                savepoint = conn.setSavepoint();
+            }
+            stat = (JdbcStatement) conn.prepareStatement(copy.getSelect());
+            int columns = ((PreparedStatement) stat).getMetaData().getColumnCount();
+            stat.close();
+            JdbcPreparedStatement prep = (JdbcPreparedStatement) conn.prepareStatement(
+                    copy.getInsert(columns));
+            stat = prep;
+            setActiveRequest(prep);
+            int count = copyIn(prep);
+            if (autoCommit) {
+                conn.commit();
+            }
+            startMessage('C');
+            writeString("COPY " + count);
+            sendMessage();
+            return true;
+        } catch (Exception e) {
+            try {
+                if (autoCommit) {
+                    conn.rollback();
+                } else if (savepoint != null) {
+                    conn.rollback(savepoint);
+                }
+            } catch (SQLException e2) {
+                server.traceError(e2);
+            }
+            if (stat != null && stat.wasCancelled()) {
+                sendCancelQueryResponse();
+            } else {
+                sendErrorResponse(e);
+            }
+            return false;
+        } finally {
+            JdbcUtils.closeSilently(stat);
+            setActiveRequest(null);
+            if (autoCommit) {
+                try {
+                    conn.setAutoCommit(true);
+                } catch (SQLException e) {
+                    server.traceError(e);
+                }
+            }
+        }
+    }
+
+    private void copyOut(ResultSet rs) throws Exception {
+        int[] pgTypes = getPgTypes(rs.getMetaData());
+        int columns = pgTypes.length;
+        startMessage('H');
+        // text format
+        write(0);
+        writeShort(columns);
+        for (int i = 0; i < columns; i++) {
+            writeShort(0);
+        }
+        sendMessage();
+        StringBuilder buff = new StringBuilder();
+        int count = 0;
+        while (rs.next()) {
+            buff.setLength(0);
+            for (int i = 0; i < columns; i++) {
+                if (i > 0) {
+                    buff.append('\t');
+                }
+                String s;
+                if (pgTypes[i] == PgServer.PG_TYPE_BOOL) {
+                    boolean x = rs.getBoolean(i + 1);
+                    s = rs.wasNull() ? null : x ? "t" : "f";
+                } else {
+                    s = rs.getString(i + 1);
+                }
+                Copy.appendText(buff, s);
+            }
+            buff.append('\n');
+            startMessage('d');
+            writeStringPart(buff.toString());
+            sendMessage();
+            count++;
+        }
+        startMessage('c');
+        sendMessage();
+        startMessage('C');
+        writeString("COPY " + count);
+        sendMessage();
+    }
+
+    /**
+     * Read the CopyData messages of a COPY FROM STDIN command, and insert the
+     * rows.
+     *
+     * @param prep the insert statement
+     * @return the number of rows
+     */
+    private int copyIn(JdbcPreparedStatement prep) throws Exception {
+        int columns = prep.getParameterMetaData().getParameterCount();
+        server.trace(prep.toString());
+        startMessage('G');
+        // text format
+        write(0);
+        writeShort(columns);
+        for (int i = 0; i < columns; i++) {
+            writeShort(0);
+        }
+        sendMessage();
+        out.flush();
+        String[] row = new String[columns];
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        boolean end = false;
+        int count = 0, batchSize = 0;
+        while (true) {
+            int x = dataInRaw.read();
+            if (x < 0) {
+                throw new EOFException();
+            }
+            int len = dataInRaw.readInt() - 4;
+            byte[] data = DataUtils.newBytes(len);
+            dataInRaw.readFully(data, 0, len);
+            if (x == 'c') {
+                break;
+            } else if (x == 'f') {
+                dataIn = new DataInputStream(new ByteArrayInputStream(data, 0, len));
+                throw DbException.get(ErrorCode.GENERAL_ERROR_1,
+                        "COPY from stdin failed: " + readString());
+            } else if (x == 'H' || x == 'S') {
+                // Flush and Sync are ignored in the copy-in mode
+                continue;
+            } else if (x != 'd') {
+                throw DbException.get(ErrorCode.GENERAL_ERROR_1,
+                        "Unexpected message type " + (char) x + " during COPY from stdin");
+            }
+            int start = 0;
+            for (int i = 0; i < len; i++) {
+                if (data[i] != '\n') {
+                    continue;
+                }
+                line.write(data, start, i - start);
+                start = i + 1;
+                if (!end) {
+                    String s = new String(line.toByteArray(), getEncoding());
+                    if (s.equals("\\.")) {
+                        end = true;
+                    } else {
+                        Copy.parseText(s, row);
+                        for (int j = 0; j < columns; j++) {
+                            prep.setString(j + 1, row[j]);
+                        }
+                        prep.addBatch();
+                        count++;
+                        if (++batchSize >= COPY_BATCH_SIZE) {
+                            prep.executeBatch();
+                            batchSize = 0;
+                        }
+                    }
+                }
+                line.reset();
+            }
+            line.write(data, start, len - start);
+        }
+        if (line.size() > 0 && !end) {
+            throw DbException.get(ErrorCode.GENERAL_ERROR_1,
+                    "COPY from stdin: missing end of line");
+        }
+        if (batchSize > 0) {
+            prep.executeBatch();
+        }
+        return count;
+    }
+
     private String getEncoding() {
         if ("UNICODE".equals(clientEncoding)) {
             return "UTF-8";
@@ -551,7 +955,7 @@ public class PgServerThread implements Runnable {
 
     private void setParameter(PreparedStatement prep,
             int pgType, int i, int[] formatCodes) throws SQLException, IOException {
-        boolean text = (i >= formatCodes.length) || (formatCodes[i] == 0);
+        boolean text = !isBinaryFormat(formatCodes, i);
         int col = i + 1;
         int paramLen = readInt();
         if (paramLen == -1) {
@@ -564,8 +968,12 @@ public class PgServerThread implements Runnable {
         } else {
             // binary
             switch (pgType) {
+            case PgServer.PG_TYPE_BOOL:
+                checkParamLength(1, paramLen);
+                prep.setBoolean(col, readByte() != 0);
+                break;
             case PgServer.PG_TYPE_INT2:
-                checkParamLength(4, paramLen);
+                checkParamLength(2, paramLen);
                 prep.setShort(col, readShort());
                 break;
             case PgServer.PG_TYPE_INT4:
@@ -589,6 +997,33 @@ public class PgServerThread implements Runnable {
                 readFully(d1);
                 prep.setBytes(col, d1);
                 break;
+            case PgServer.PG_TYPE_DATE: {
+                checkParamLength(4, paramLen);
+                long dateValue = DateTimeUtils.dateValueFromAbsoluteDay(
+                        readInt() + PG_EPOCH_DAY);
+                prep.setDate(col, DateTimeUtils.convertDateValueToDate(dateValue));
+                break;
+            }
+            case PgServer.PG_TYPE_TIME:
+                checkParamLength(8, paramLen);
+                prep.setTime(col, DateTimeUtils.convertNanoToTime(
+                        dataIn.readLong() * 1000));
+                break;
+            case PgServer.PG_TYPE_TIMESTAMP_NO_TMZONE: {
+                checkParamLength(8, paramLen);
+                long micros = dataIn.readLong();
+                long days = micros / MICROS_PER_DAY;
+                micros -= days * MICROS_PER_DAY;
+                if (micros < 0) {
+                    days--;
+                    micros += MICROS_PER_DAY;
+                }
+                long dateValue = DateTimeUtils.dateValueFromAbsoluteDay(
+                        days + PG_EPOCH_DAY);
+                prep.setTimestamp(col, DateTimeUtils.convertDateValueToTimestamp(
+                        dateValue, micros * 1000));
+                break;
+            }
             default:
                 server.trace("Binary format for type: "+pgType+" is unsupported");
                 byte[] d2 = DataUtils.newBytes(paramLen);
@@ -661,7 +1096,8 @@ public class PgServerThread implements Runnable {
         sendMessage();
     }
 
-    private void sendRowDescription(ResultSetMetaData meta) throws Exception {
+    private void sendRowDescription(ResultSetMetaData meta, int[] formatCodes)
+            throws Exception {
         if (meta == null) {
             sendNoData();
         } else {
@@ -686,6 +1122,7 @@ public class PgServerThread implements Runnable {
                 }
                 types[i] = pgType;
             }
+            boolean[] binary = getBinaryColumns(types, formatCodes);
             startMessage('T');
             writeShort(columns);
             for (int i = 0; i < columns; i++) {
@@ -701,7 +1138,7 @@ public class PgServerThread implements Runnable {
                 // pg_attribute.atttypmod
                 writeInt(-1);
                 // the format type: text = 0, binary = 1
-                writeShort(formatAsText(types[i]) ? 0 : 1);
+                writeShort(binary[i] ? 1 : 0);
             }
             sendMessage();
         }
@@ -850,7 +1287,7 @@ public class PgServerThread implements Runnable {
         sendMessage();
         sendParameterStatus("client_encoding", clientEncoding);
         sendParameterStatus("DateStyle", dateStyle);
-        sendParameterStatus("integer_datetimes", "off");
+        sendParameterStatus("integer_datetimes", "on");
         sendParameterStatus("is_superuser", "off");
         sendParameterStatus("server_encoding", "SQL_ASCII");
         sendParameterStatus("server_version", "8.1.4");
@@ -915,19 +1352,14 @@ public class PgServerThread implements Runnable {
 
     private void startMessage(int newMessageType) {
         this.messageType = newMessageType;
-        outBuffer = new ByteArrayOutputStream();
-        dataOut = new DataOutputStream(outBuffer);
+        outBuffer.reset();
     }
 
     private void sendMessage() throws IOException {
         dataOut.flush();
-        byte[] buff = outBuffer.toByteArray();
-        int len = buff.length;
-        dataOut = new DataOutputStream(out);
-        dataOut.write(messageType);
-        dataOut.writeInt(len + 4);
-        dataOut.write(buff);
-        dataOut.flush();
+        out.write(messageType);
+        out.writeInt(outBuffer.size() + 4);
+        outBuffer.writeTo(out);
     }
 
     private void sendParameterStatus(String param, String value) throws IOException {
@@ -997,6 +1429,282 @@ public class PgServerThread implements Runnable {
         int[] paramType;
     }
 
+    /**
+     * A COPY FROM STDIN or COPY TO STDOUT command. Only the text format is
+     * supported.
+     */
+    static class Copy {
+
+        /**
+         * The table name (if set).
+         */
+        String table;
+
+        /**
+         * The comma separated column list (if set).
+         */
+        String columns;
+
+        /**
+         * The query (if set).
+         */
+        String query;
+
+        /**
+         * Whether the data is sent to the client.
+         */
+        boolean toStdout;
+
+        /**
+         * Check whether the statement is a COPY command.
+         *
+         * @param sql the statement
+         * @return true if it is
+         */
+        static boolean isCopy(String sql) {
+            sql = sql.trim();
+            if (sql.length() < 5 || !sql.regionMatches(true, 0, "copy", 0, 4)) {
+                return false;
+            }
+            char c = sql.charAt(4);
+            return Character.isWhitespace(c) || c == '(';
+        }
+
+        /**
+         * Parse a COPY command.
+         *
+         * @param sql the statement
+         * @return the command
+         */
+        static Copy parse(String sql) {
+            String s = sql.trim();
+            while (s.endsWith(";")) {
+                s = s.substring(0, s.length() - 1).trim();
+            }
+            Copy copy = new Copy();
+            int len = s.length();
+            int i = skipWhitespace(s, 4);
+            if (i < len && s.charAt(i) == '(') {
+                int end = findClose(s, i);
+                copy.query = s.substring(i + 1, end);
+                i = end + 1;
+            } else {
+                int start = i;
+                for (; i < len; i++) {
+                    char c = s.charAt(i);
+                    if (c == '"') {
+                        i = s.indexOf('"', i + 1);
+                        if (i < 0) {
+                            throw DbException.getSyntaxError(s, start);
+                        }
+                    } else if (Character.isWhitespace(c) || c == '(') {
+                        break;
+                    }
+                }
+                copy.table = s.substring(start, i);
+                i = skipWhitespace(s, i);
+                if (i < len && s.charAt(i) == '(') {
+                    int end = findClose(s, i);
+                    copy.columns = s.substring(i + 1, end);
+                    i = end + 1;
+                }
+                if (copy.table.length() == 0) {
+                    throw DbException.getSyntaxError(s, start, "table");
+                }
+            }
+            String[] rest = StringUtils.toLowerEnglish(
+                    s.substring(i).trim()).split("\\s+");
+            if (rest.length >= 2 && "from".equals(rest[0]) &&
+                    "stdin".equals(rest[1]) && copy.query == null) {
+                copy.toStdout = false;
+            } else if (rest.length >= 2 && "to".equals(rest[0]) &&
+                    "stdout".equals(rest[1])) {
+                copy.toStdout = true;
+            } else {
+                throw DbException.getUnsupportedException(s);
+            }
+            if (rest.length > 2) {
+                throw DbException.getUnsupportedException("COPY options: " + s);
+            }
+            return copy;
+        }
+
+        private static int skipWhitespace(String s, int i) {
+            while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+                i++;
+            }
+            return i;
+        }
+
+        private static int findClose(String s, int start) {
+            int level = 0;
+            for (int i = start; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '\'' || c == '"') {
+                    i = s.indexOf(c, i + 1);
+                    if (i < 0) {
+                        break;
+                    }
+                } else if (c == '(') {
+                    level++;
+                } else if (c == ')' && --level == 0) {
+                    return i;
+                }
+            }
+            throw DbException.getSyntaxError(s, start, ")");
+        }
+
+        /**
+         * Get the query that returns the data of a COPY TO STDOUT command, or
+         * the columns of a COPY FROM STDIN command.
+         *
+         * @return the query
+         */
+        String getSelect() {
+            if (query != null) {
+                return query;
+            }
+            return "SELECT " + (columns == null ? "*" : columns) + " FROM " + table;
+        }
+
+        /**
+         * Get the insert statement of a COPY FROM STDIN command.
+         *
+         * @param columnCount the number of columns
+         * @return the insert statement
+         */
+        String getInsert(int columnCount) {
+            StatementBuilder buff = new StatementBuilder("INSERT INTO ");
+            buff.append(table);
+            if (columns != null) {
+                buff.append('(').append(columns).append(')');
+            }
+            buff.append(" VALUES(");
+            for (int i = 0; i < columnCount; i++) {
+                buff.appendExceptFirst(", ");
+                buff.append('?');
+            }
+            return buff.append(')').toString();
+        }
+
+        /**
+         * Append a value in the text format. Backslash, tab, newline and
+         * carriage return are escaped, and NULL is written as \N.
+         *
+         * @param buff the target buffer
+         * @param s the value or null
+         */
+        static void appendText(StringBuilder buff, String s) {
+            if (s == null) {
+                buff.append("\\N");
+                return;
+            }
+            for (int i = 0, len = s.length(); i < len; i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                case '\\':
+                    buff.append("\\\\");
+                    break;
+                case '\t':
+                    buff.append("\\t");
+                    break;
+                case '\n':
+                    buff.append("\\n");
+                    break;
+                case '\r':
+                    buff.append("\\r");
+                    break;
+                default:
+                    buff.append(c);
+                }
+            }
+        }
+
+        /**
+         * Parse a line in the text format.
+         *
+         * @param line the line (without the newline)
+         * @param row the array to store the values
+         */
+        static void parseText(String line, String[] row) {
+            int len = line.length();
+            if (len > 0 && line.charAt(len - 1) == '\r') {
+                len--;
+            }
+            StringBuilder buff = new StringBuilder();
+            boolean isNull = false;
+            int column = 0;
+            for (int i = 0; i <= len; i++) {
+                char c = i < len ? line.charAt(i) : '\t';
+                if (c == '\t') {
+                    if (column >= row.length) {
+                        throw DbException.get(ErrorCode.COLUMN_COUNT_DOES_NOT_MATCH);
+                    }
+                    row[column++] = isNull ? null : buff.toString();
+                    buff.setLength(0);
+                    isNull = false;
+                    continue;
+                } else if (c != '\\' || i == len - 1) {
+                    buff.append(c);
+                    continue;
+                }
+                c = line.charAt(++i);
+                switch (c) {
+                case 'N':
+                    isNull = true;
+                    break;
+                case 'b':
+                    buff.append('\b');
+                    break;
+                case 'f':
+                    buff.append('\f');
+                    break;
+                case 'n':
+                    buff.append('\n');
+                    break;
+                case 'r':
+                    buff.append('\r');
+                    break;
+                case 't':
+                    buff.append('\t');
+                    break;
+                case 'v':
+                    buff.append((char) 11);
+                    break;
+                case 'x': {
+                    int end = i + 1;
+                    while (end < len && end < i + 3 &&
+                            Character.digit(line.charAt(end), 16) >= 0) {
+                        end++;
+                    }
+                    if (end == i + 1) {
+                        buff.append(c);
+                    } else {
+                        buff.append((char) Integer.parseInt(line.substring(i + 1, end), 16));
+                        i = end - 1;
+                    }
+                    break;
+                }
+                default:
+                    if (c >= '0' && c <= '7') {
+                        int end = i + 1;
+                        while (end < len && end < i + 3 &&
+                                line.charAt(end) >= '0' && line.charAt(end) <= '7') {
+                            end++;
+                        }
+                        buff.append((char) Integer.parseInt(line.substring(i, end), 8));
+                        i = end - 1;
+                    } else {
+                        buff.append(c);
+                    }
+                }
+            }
+            if (column != row.length) {
+                throw DbException.get(ErrorCode.COLUMN_COUNT_DOES_NOT_MATCH);
+            }
+        }
+    }
+
     /**
      * Represents a PostgreSQL Portal object.
      */
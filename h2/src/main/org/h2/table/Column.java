@@ -81,6 +81,7 @@ public class Column {
     private boolean isComputed;
     private TableFilter computeTableFilter;
     private int selectivity;
+    private ColumnStatistics statistics;
     private SingleColumnResolver resolver;
     private String comment;
     private boolean primaryKey;
@@ -394,6 +395,17 @@ public class Column {
     }
 
     public String getCreateSQL() {
+        return getCreateSQL(true);
+    }
+
+    /**
+     * Get the SQL snippet to create this column.
+     *
+     * @param statistics whether to include the column statistics, which
+     *            contain sampled values of the rows
+     * @return the SQL snippet
+     */
+    public String getCreateSQL(boolean statistics) {
         StringBuilder buff = new StringBuilder();
         if (name != null) {
             buff.append(Parser.quoteIdentifier(name)).append(' ');
@@ -439,6 +451,9 @@ public class Column {
         if (selectivity != 0) {
             buff.append(" SELECTIVITY ").append(selectivity);
         }
+        if (statistics && this.statistics != null) {
+            buff.append(" STATISTICS ").append(this.statistics.getSQL());
+        }
         if (comment != null) {
             buff.append(" COMMENT ").append(StringUtils.quoteStringSQL(comment));
         }
@@ -527,6 +542,19 @@ public class Column {
         this.selectivity = selectivity;
     }
 
+    /**
+     * Get the statistics of the column, as collected by ANALYZE.
+     *
+     * @return the statistics, or null if not available
+     */
+    public ColumnStatistics getStatistics() {
+        return statistics;
+    }
+
+    public void setStatistics(ColumnStatistics statistics) {
+        this.statistics = statistics;
+    }
+
     /**
      * Add a check constraint expression to this column. An existing check
      * constraint constraint is added using AND.
@@ -0,0 +1,363 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.table;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import org.h2.message.DbException;
+import org.h2.value.CompareMode;
+import org.h2.value.Value;
+import org.h2.value.ValueArray;
+import org.h2.value.ValueLong;
+import org.h2.value.ValueNull;
+
+/**
+ * The statistics of a column, as collected by ANALYZE. The statistics consist
+ * of a list of the most common values and their number of occurrences, and
+ * an equi-depth histogram of the remaining values. They are used to estimate
+ * the number of rows that match a condition.
+ */
+public class ColumnStatistics {
+
+    /**
+     * The maximum number of most common values.
+     */
+    static final int MAX_COMMON_VALUES = 10;
+
+    /**
+     * The maximum number of buckets of the histogram.
+     */
+    static final int MAX_BUCKETS = 32;
+
+    /**
+     * The maximum length of the SQL representation of a value. If a value is
+     * longer, no statistics are kept for the column.
+     */
+    private static final int MAX_VALUE_LENGTH = 64;
+
+    private final int type;
+    private final long rowCount;
+    private final long nullCount;
+    private final long distinctCount;
+    private final Value[] commonValues;
+    private final long[] commonCounts;
+    private final Value[] bounds;
+    private final long otherCount;
+
+    private ColumnStatistics(int type, long rowCount, long nullCount,
+            long distinctCount, Value[] commonValues, long[] commonCounts,
+            Value[] bounds) {
+        this.type = type;
+        this.rowCount = rowCount;
+        this.nullCount = nullCount;
+        this.distinctCount = distinctCount;
+        this.commonValues = commonValues;
+        this.commonCounts = commonCounts;
+        this.bounds = bounds;
+        long other = rowCount - nullCount;
+        for (long c : commonCounts) {
+            other -= c;
+        }
+        this.otherCount = Math.max(0, other);
+    }
+
+    /**
+     * Create the statistics from the distinct values of a sample.
+     *
+     * @param type the data type of the column
+     * @param values the distinct values (including NULL), sorted
+     * @param counts the number of occurrences of each value
+     * @return the statistics, or null if there are no rows or if the values
+     *         are too long
+     */
+    public static ColumnStatistics create(int type, Value[] values,
+            long[] counts) {
+        long rowCount = 0, nullCount = 0, nonNullCount = 0;
+        int distinct = 0;
+        for (int i = 0; i < values.length; i++) {
+            rowCount += counts[i];
+            if (values[i] == ValueNull.INSTANCE) {
+                nullCount += counts[i];
+            } else {
+                nonNullCount += counts[i];
+                distinct++;
+            }
+        }
+        if (rowCount == 0) {
+            return null;
+        }
+        // the most common values are the ones that occur a lot more often
+        // than the average value
+        boolean[] common = new boolean[values.length];
+        int commonLength = 0;
+        if (distinct > 0) {
+            double average = (double) nonNullCount / distinct;
+            Integer[] order = new Integer[values.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            final long[] c = counts;
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    long x = c[a], y = c[b];
+                    return x > y ? -1 : x < y ? 1 : 0;
+                }
+            });
+            for (int i = 0; i < order.length && commonLength < MAX_COMMON_VALUES; i++) {
+                int j = order[i];
+                if (values[j] == ValueNull.INSTANCE) {
+                    continue;
+                }
+                if (counts[j] <= 1 || counts[j] < average * 1.25) {
+                    break;
+                }
+                common[j] = true;
+                commonLength++;
+            }
+        }
+        Value[] commonValues = new Value[commonLength];
+        long[] commonCounts = new long[commonLength];
+        long otherCount = 0;
+        int otherDistinct = 0;
+        for (int i = 0, j = 0; i < values.length; i++) {
+            if (common[i]) {
+                commonValues[j] = values[i];
+                commonCounts[j++] = counts[i];
+            } else if (values[i] != ValueNull.INSTANCE) {
+                otherCount += counts[i];
+                otherDistinct++;
+            }
+        }
+        // the bounds of the buckets of the equi-depth histogram:
+        // each bucket contains about the same number of rows
+        Value[] bounds;
+        if (otherDistinct == 0) {
+            bounds = new Value[0];
+        } else {
+            int buckets = Math.min(MAX_BUCKETS, otherDistinct);
+            bounds = new Value[buckets + 1];
+            long sum = 0;
+            int k = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (common[i] || values[i] == ValueNull.INSTANCE) {
+                    continue;
+                }
+                if (k == 0) {
+                    bounds[k++] = values[i];
+                }
+                sum += counts[i];
+                while (k <= buckets && sum * buckets >= k * otherCount) {
+                    bounds[k++] = values[i];
+                }
+            }
+        }
+        if (!isShort(commonValues) || !isShort(bounds)) {
+            return null;
+        }
+        return new ColumnStatistics(type, rowCount, nullCount, otherDistinct,
+                commonValues, commonCounts, bounds);
+    }
+
+    private static boolean isShort(Value[] values) {
+        for (Value v : values) {
+            if (v.getSQL().length() > MAX_VALUE_LENGTH) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Create the statistics from the value as returned by {@link #getValue}.
+     *
+     * @param type the data type of the column
+     * @param v the value
+     * @return the statistics
+     */
+    public static ColumnStatistics get(int type, Value v) {
+        Value[] list = ((ValueArray) v.convertTo(Value.ARRAY)).getList();
+        if (list.length != 6) {
+            throw DbException.throwInternalError(v.getSQL());
+        }
+        Value[] commonValues = convert(list[3], type);
+        Value[] c = convert(list[4], Value.LONG);
+        long[] commonCounts = new long[c.length];
+        for (int i = 0; i < c.length; i++) {
+            commonCounts[i] = c[i].getLong();
+        }
+        return new ColumnStatistics(type, list[0].getLong(), list[1].getLong(),
+                list[2].getLong(), commonValues, commonCounts,
+                convert(list[5], type));
+    }
+
+    private static Value[] convert(Value v, int type) {
+        Value[] list = ((ValueArray) v.convertTo(Value.ARRAY)).getList();
+        Value[] result = new Value[list.length];
+        for (int i = 0; i < list.length; i++) {
+            result[i] = list[i].convertTo(type);
+        }
+        return result;
+    }
+
+    /**
+     * Get the statistics as a value. The value is an array of the number of
+     * rows, the number of NULL values, the number of distinct values that are
+     * not in the list of most common values, the most common values, the
+     * number of occurrences of the most common values, and the bounds of the
+     * histogram.
+     *
+     * @return the value
+     */
+    public Value getValue() {
+        Value[] c = new Value[commonCounts.length];
+        for (int i = 0; i < c.length; i++) {
+            c[i] = ValueLong.get(commonCounts[i]);
+        }
+        return ValueArray.get(new Value[] {
+                ValueLong.get(rowCount), ValueLong.get(nullCount),
+                ValueLong.get(distinctCount), ValueArray.get(commonValues),
+                ValueArray.get(c), ValueArray.get(bounds) });
+    }
+
+    public String getSQL() {
+        return getValue().getSQL();
+    }
+
+    /**
+     * Get the fraction of rows that are NULL.
+     *
+     * @return the fraction (between 0 and 1)
+     */
+    public double getNullFraction() {
+        return rowCount == 0 ? 0 : (double) nullCount / rowCount;
+    }
+
+    /**
+     * Estimate the fraction of rows that are equal to the given value.
+     *
+     * @param compareMode the compare mode
+     * @param v the value
+     * @return the fraction (between 0 and 1)
+     */
+    public double getEqualFraction(CompareMode compareMode, Value v) {
+        if (rowCount == 0 || v == ValueNull.INSTANCE) {
+            return 0;
+        }
+        v = v.convertTo(type);
+        for (int i = 0; i < commonValues.length; i++) {
+            if (commonValues[i].compareTo(v, compareMode) == 0) {
+                return (double) commonCounts[i] / rowCount;
+            }
+        }
+        if (distinctCount == 0 || bounds.length == 0 ||
+                v.compareTo(bounds[0], compareMode) < 0 ||
+                v.compareTo(bounds[bounds.length - 1], compareMode) > 0) {
+            return 0;
+        }
+        return (double) otherCount / distinctCount / rowCount;
+    }
+
+    /**
+     * Estimate the fraction of rows that are within the given range. The
+     * bounds are inclusive.
+     *
+     * @param compareMode the compare mode
+     * @param min the lower bound, or null if there is none
+     * @param max the upper bound, or null if there is none
+     * @return the fraction (between 0 and 1)
+     */
+    public double getRangeFraction(CompareMode compareMode, Value min,
+            Value max) {
+        if (rowCount == 0 || min == ValueNull.INSTANCE ||
+                max == ValueNull.INSTANCE) {
+            return 0;
+        }
+        if (min != null) {
+            min = min.convertTo(type);
+        }
+        if (max != null) {
+            max = max.convertTo(type);
+        }
+        double count = 0;
+        for (int i = 0; i < commonValues.length; i++) {
+            Value v = commonValues[i];
+            if ((min == null || v.compareTo(min, compareMode) >= 0) &&
+                    (max == null || v.compareTo(max, compareMode) <= 0)) {
+                count += commonCounts[i];
+            }
+        }
+        int last = bounds.length - 1;
+        if (otherCount > 0 && last >= 0 &&
+                (min == null || min.compareTo(bounds[last], compareMode) <= 0) &&
+                (max == null || max.compareTo(bounds[0], compareMode) >= 0)) {
+            double high = max == null ? 1 : getPosition(compareMode, max, true);
+            double low = min == null ? 0 : getPosition(compareMode, min, false);
+            // the range contains at least one value
+            double f = Math.max(high - low, 1.0 / distinctCount);
+            count += Math.min(f, 1) * otherCount;
+        }
+        return Math.min(1, count / rowCount);
+    }
+
+    /**
+     * Get the estimated position of a value within the histogram, between 0
+     * (smaller than all values) and 1 (larger than all values).
+     *
+     * @param compareMode the compare mode
+     * @param v the value
+     * @param inclusive whether bounds that are equal to the value are
+     *            smaller than the value
+     * @return the position
+     */
+    private double getPosition(CompareMode compareMode, Value v,
+            boolean inclusive) {
+        // the number of bounds smaller than the value
+        int low = 0, high = bounds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int comp = bounds[mid].compareTo(v, compareMode);
+            if (comp < 0 || (inclusive && comp == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low == 0) {
+            return 0;
+        } else if (low == bounds.length) {
+            return 1;
+        }
+        int buckets = bounds.length - 1;
+        if (isNumeric(type)) {
+            // interpolate within the bucket
+            double a = bounds[low - 1].getDouble();
+            double b = bounds[low].getDouble();
+            if (b > a) {
+                double x = Math.max(a, Math.min(b, v.getDouble()));
+                return (low - 1 + (x - a) / (b - a)) / buckets;
+            }
+        }
+        return (low - 0.5) / buckets;
+    }
+
+    private static boolean isNumeric(int type) {
+        switch (type) {
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+        case Value.DECIMAL:
+        case Value.DOUBLE:
+        case Value.FLOAT:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+}
@@ -18,6 +18,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Locale;
 import org.h2.command.Command;
+import org.h2.command.dml.PlanCache;
+import org.h2.command.dml.ResultCache;
 import org.h2.constraint.Constraint;
 import org.h2.constraint.ConstraintCheck;
 import org.h2.constraint.ConstraintReferential;
@@ -890,6 +892,16 @@ public class MetaTable extends Table {
             add(rows, "info.VERSION_MAJOR", "" + Constants.VERSION_MAJOR);
             add(rows, "info.VERSION_MINOR", "" + Constants.VERSION_MINOR);
             add(rows, "info.VERSION", "" + Constants.getFullVersion());
+            PlanCache planCache = database.getPlanCache();
+            if (planCache != null) {
+                add(rows, "info.PLAN_CACHE_HITS", "" + planCache.getHits());
+                add(rows, "info.PLAN_CACHE_MISSES", "" + planCache.getMisses());
+            }
+            ResultCache resultCache = database.getResultCache();
+            if (resultCache != null) {
+                add(rows, "info.RESULT_CACHE_HITS", "" + resultCache.getHits());
+                add(rows, "info.RESULT_CACHE_MISSES", "" + resultCache.getMisses());
+            }
             if (admin) {
                 String[] settings = {
                         "java.runtime.version",
@@ -129,6 +129,56 @@ public class Plan {
         return cost;
     }
 
+    /**
+     * Calculate by how much the cost grows if the given table is read after
+     * the given other tables. The cost of a plan is the product of these
+     * factors, and the factor of a table only depends on which tables are
+     * read before (not on their order). This allows to calculate the cost of
+     * a plan incrementally.
+     *
+     * @param session the session
+     * @param before the tables that are read before
+     * @param count the number of tables that are read before
+     * @param filter the table to read next
+     * @return the factor, or infinity if the table can not be read next
+     */
+    public double calculateCostFactor(Session session, TableFilter[] before,
+            int count, TableFilter filter) {
+        final ArrayList<TableFilter> list = New.arrayList();
+        TableFilterVisitor visitor = new TableFilterVisitor() {
+            @Override
+            public void accept(TableFilter f) {
+                list.add(f);
+            }
+        };
+        for (int i = 0; i < count; i++) {
+            before[i].visit(visitor);
+        }
+        int done = list.size();
+        filter.visit(visitor);
+        for (int i = 0; i < done; i++) {
+            setEvaluatable(list.get(i), true);
+        }
+        double factor = 1;
+        for (int i = done; i < list.size(); i++) {
+            TableFilter f = list.get(i);
+            PlanItem item = f.getBestPlanItem(session, i + 1);
+            factor += factor * item.cost;
+            setEvaluatable(f, true);
+            Expression on = f.getJoinCondition();
+            if (on != null) {
+                if (!on.isEverything(ExpressionVisitor.EVALUATABLE_VISITOR)) {
+                    factor = Double.POSITIVE_INFINITY;
+                    break;
+                }
+            }
+        }
+        for (TableFilter f : list) {
+            setEvaluatable(f, false);
+        }
+        return factor;
+    }
+
     private void setEvaluatable(TableFilter filter, boolean b) {
         filter.setEvaluatable(filter, b);
         for (Expression e : allConditions) {
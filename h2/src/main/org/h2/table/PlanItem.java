@@ -19,6 +19,11 @@ public class PlanItem {
      */
     double cost;
 
+    /**
+     * The estimated number of rows that are read per index lookup.
+     */
+    double rows;
+
     private Index index;
     private PlanItem joinPlan;
     private PlanItem nestedJoinPlan;
@@ -12,7 +12,6 @@ import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Set;
 import org.h2.api.DatabaseEventListener;
-import org.h2.command.ddl.Analyze;
 import org.h2.command.ddl.CreateTableData;
 import org.h2.constant.ErrorCode;
 import org.h2.constant.SysProperties;
@@ -25,6 +24,7 @@ import org.h2.index.Cursor;
 import org.h2.index.HashIndex;
 import org.h2.index.Index;
 import org.h2.index.IndexType;
+import org.h2.index.MemoryBtreeIndex;
 import org.h2.index.MultiVersionIndex;
 import org.h2.index.NonUniqueHashIndex;
 import org.h2.index.PageBtreeIndex;
@@ -134,21 +134,80 @@ public class RegularTable extends TableBase {
                 trace.error(e2, "could not undo operation");
                 throw e2;
             }
-            DbException de = DbException.convert(e);
-            if (de.getErrorCode() == ErrorCode.DUPLICATE_KEY_1) {
-                for (int j = 0; j < indexes.size(); j++) {
-                    Index index = indexes.get(j);
-                    if (index.getIndexType().isUnique() && index instanceof MultiVersionIndex) {
-                        MultiVersionIndex mv = (MultiVersionIndex) index;
-                        if (mv.isUncommittedFromOtherSession(session, row)) {
-                            throw DbException.get(ErrorCode.CONCURRENT_UPDATE_1, index.getName());
-                        }
+            throw convertAddRowException(session, row, e);
+        }
+        analyzeIfRequired(session);
+    }
+
+    /**
+     * Add the rows one index after the other. The rows are sorted for each
+     * index, except for the scan index, where the order of the rows
+     * defines the row keys.
+     */
+    @Override
+    public void addRows(Session session, ArrayList<Row> rows) {
+        int count = rows.size();
+        if (count == 0) {
+            return;
+        }
+        lastModificationId = database.getNextModificationDataId();
+        if (database.isMultiVersion()) {
+            for (int j = 0; j < count; j++) {
+                rows.get(j).setSessionId(session.getId());
+            }
+        }
+        int i = 0, added = 0;
+        ArrayList<Row> list = rows;
+        try {
+            for (int size = indexes.size(); i < size; i++) {
+                Index index = indexes.get(i);
+                list = i == 0 ? rows : getSortedRows(rows, index);
+                for (added = 0; added < count; added++) {
+                    index.add(session, list.get(added));
+                }
+                checkRowCount(session, index, count);
+            }
+            rowCount += count;
+        } catch (Throwable e) {
+            // the row that could not be added
+            Row row = added < count ? list.get(added) : null;
+            try {
+                while (--added >= 0) {
+                    indexes.get(i).remove(session, list.get(added));
+                }
+                while (--i >= 0) {
+                    Index index = indexes.get(i);
+                    for (int j = 0; j < count; j++) {
+                        index.remove(session, rows.get(j));
+                    }
+                    checkRowCount(session, index, 0);
+                }
+            } catch (DbException e2) {
+                trace.error(e2, "could not undo operation");
+                throw e2;
+            }
+            throw convertAddRowException(session, row, e);
+        }
+        for (int j = 0; j < count; j++) {
+            analyzeIfRequired(session);
+        }
+    }
+
+    private DbException convertAddRowException(Session session, Row row,
+            Throwable e) {
+        DbException de = DbException.convert(e);
+        if (row != null && de.getErrorCode() == ErrorCode.DUPLICATE_KEY_1) {
+            for (int j = 0; j < indexes.size(); j++) {
+                Index index = indexes.get(j);
+                if (index.getIndexType().isUnique() && index instanceof MultiVersionIndex) {
+                    MultiVersionIndex mv = (MultiVersionIndex) index;
+                    if (mv.isUncommittedFromOtherSession(session, row)) {
+                        throw DbException.get(ErrorCode.CONCURRENT_UPDATE_1, index.getName());
                     }
                 }
             }
-            throw de;
         }
-        analyzeIfRequired(session);
+        return de;
     }
 
     @Override
@@ -239,6 +298,8 @@ public class RegularTable extends TableBase {
                 }
             } else if (indexType.isSpatial()) {
                 index = new SpatialTreeIndex(this, indexId, indexName, cols, indexType, false, true, session);
+            } else if (database.getSettings().memoryBtree) {
+                index = new MemoryBtreeIndex(this, indexId, indexName, cols, indexType);
             } else {
                 index = new TreeIndex(this, indexId, indexName, cols, indexType);
             }
@@ -416,8 +477,7 @@ public class RegularTable extends TableBase {
         if (n > 0) {
             nextAnalyze = n;
         }
-        int rows = session.getDatabase().getSettings().analyzeSample / 10;
-        Analyze.analyzeTable(session, this, rows, false);
+        database.analyzeTableAuto(session, this);
     }
 
     @Override
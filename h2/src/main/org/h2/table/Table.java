@@ -7,8 +7,11 @@
 package org.h2.table;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Random;
 import java.util.Set;
 import org.h2.command.Prepared;
 import org.h2.constant.ErrorCode;
@@ -20,6 +23,7 @@ import org.h2.engine.Session;
 import org.h2.engine.UndoLogRecord;
 import org.h2.expression.Expression;
 import org.h2.expression.ExpressionVisitor;
+import org.h2.index.Cursor;
 import org.h2.index.Index;
 import org.h2.index.IndexType;
 import org.h2.message.DbException;
@@ -201,6 +205,56 @@ public abstract class Table extends SchemaObjectBase {
      */
     public abstract void addRow(Session session, Row row);
 
+    /**
+     * Add a list of rows to the table and all indexes. Either all rows are
+     * added, or none. The default implementation adds one row after the
+     * other.
+     *
+     * @param session the session
+     * @param rows the rows
+     * @throws DbException if a constraint was violated
+     */
+    public void addRows(Session session, ArrayList<Row> rows) {
+        int i = 0;
+        try {
+            for (int size = rows.size(); i < size; i++) {
+                addRow(session, rows.get(i));
+            }
+        } catch (DbException e) {
+            while (--i >= 0) {
+                removeRow(session, rows.get(i));
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Sort a copy of the rows in the order of the given index, so that
+     * adding them to the index accesses each page only once. Rows that are
+     * equal in the index keep their order. For indexes that are not sorted,
+     * the list is returned as is.
+     *
+     * @param rows the rows
+     * @param index the index
+     * @return the sorted rows
+     */
+    protected static ArrayList<Row> getSortedRows(ArrayList<Row> rows,
+            final Index index) {
+        IndexType type = index.getIndexType();
+        if (rows.size() < 2 || type.isHash() || type.isSpatial() ||
+                type.isScan()) {
+            return rows;
+        }
+        ArrayList<Row> list = New.arrayList(rows);
+        Collections.sort(list, new Comparator<Row>() {
+            @Override
+            public int compare(Row r1, Row r2) {
+                return index.compareRows(r1, r2);
+            }
+        });
+        return list;
+    }
+
     /**
      * Commit an operation (when using multi-version concurrency).
      *
@@ -233,6 +287,35 @@ public abstract class Table extends SchemaObjectBase {
      */
     public abstract Index getScanIndex(Session session);
 
+    /**
+     * Get a uniformly distributed random sample of the rows of this table.
+     * This implementation reads all rows (reservoir sampling); tables that
+     * support reading a row by its position override it.
+     *
+     * @param session the session
+     * @param count the maximum number of rows
+     * @return the rows, in no particular order
+     */
+    public ArrayList<Row> getSampleRows(Session session, int count) {
+        ArrayList<Row> rows = New.arrayList();
+        if (count <= 0) {
+            return rows;
+        }
+        Random random = new Random();
+        Cursor cursor = getScanIndex(session).find(session, null, null);
+        for (long i = 0; cursor.next(); i++) {
+            if (i < count) {
+                rows.add(cursor.get());
+            } else {
+                long j = (long) (random.nextDouble() * (i + 1));
+                if (j < count) {
+                    rows.set((int) j, cursor.get());
+                }
+            }
+        }
+        return rows;
+    }
+
     /**
      * Get any unique index for this table if one exists.
      *
@@ -322,6 +405,16 @@ public abstract class Table extends SchemaObjectBase {
         throw DbException.throwInternalError();
     }
 
+    /**
+     * Get the SQL statement to create this table, without the column
+     * statistics. The statistics contain sampled values of the rows.
+     *
+     * @return the SQL statement, or null for metadata tables
+     */
+    public String getCreateSQLWithoutStatistics() {
+        return getCreateSQL();
+    }
+
     /**
      * Add all objects that this table depends on to the hash set.
      *
@@ -657,6 +750,9 @@ public abstract class Table extends SchemaObjectBase {
             for (int i = 1, size = indexes.size(); i < size; i++) {
                 Index index = indexes.get(i);
                 double cost = index.getCost(session, masks, filter, sortOrder);
+                if (filter != null) {
+                    cost = filter.getCostFeedback(session, index, cost);
+                }
                 if (cost < item.cost) {
                     item.cost = cost;
                     item.setIndex(index);
@@ -871,6 +967,44 @@ public abstract class Table extends SchemaObjectBase {
         return (constraints != null && constraints.size() > 0) || (triggers != null && triggers.size() > 0);
     }
 
+    /**
+     * Check if rows can be added in a batch, that is, all rows are added
+     * before the first after row constraint is checked. This is not possible
+     * if there are triggers, or if a referential constraint references this
+     * table itself. It is also not possible if a check constraint, a column
+     * check constraint or a default value may read the table, as the before
+     * row constraints of all rows are checked before the first row is added.
+     *
+     * @return true if rows can be added in a batch
+     */
+    public boolean canAddRows() {
+        if (triggers != null && triggers.size() > 0) {
+            return false;
+        }
+        if (constraints != null) {
+            for (int i = 0, size = constraints.size(); i < size; i++) {
+                Constraint constraint = constraints.get(i);
+                if (constraint.isBefore()) {
+                    if (!constraint.isEverything(
+                            ExpressionVisitor.DETERMINISTIC_VISITOR) ||
+                            !constraint.isEverything(
+                            ExpressionVisitor.NOT_READING_TABLES_VISITOR)) {
+                        return false;
+                    }
+                } else if (constraint.getTable() == this &&
+                        constraint.getRefTable() == this) {
+                    return false;
+                }
+            }
+        }
+        for (Column col : columns) {
+            if (!col.isEverything(ExpressionVisitor.NOT_READING_TABLES_VISITOR)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Fire all triggers that need to be called before a row is updated.
      *
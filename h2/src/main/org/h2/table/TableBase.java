@@ -51,6 +51,15 @@ public abstract class TableBase extends Table {
 
     @Override
     public String getCreateSQL() {
+        return getCreateSQL(true);
+    }
+
+    @Override
+    public String getCreateSQLWithoutStatistics() {
+        return getCreateSQL(false);
+    }
+
+    private String getCreateSQL(boolean statistics) {
         StatementBuilder buff = new StatementBuilder("CREATE ");
         if (isTemporary()) {
             if (isGlobalTemporary()) {
@@ -75,7 +84,7 @@ public abstract class TableBase extends Table {
         buff.append("(\n    ");
         for (Column column : columns) {
             buff.appendExceptFirst(",\n    ");
-            buff.append(column.getCreateSQL());
+            buff.append(column.getCreateSQL(statistics));
         }
         buff.append("\n)");
         if (tableEngine != null) {
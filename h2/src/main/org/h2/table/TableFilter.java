@@ -7,9 +7,11 @@
 package org.h2.table;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import org.h2.command.Parser;
 import org.h2.command.dml.Select;
 import org.h2.constant.SysProperties;
+import org.h2.engine.Constants;
 import org.h2.engine.Right;
 import org.h2.engine.Session;
 import org.h2.engine.UndoLogRecord;
@@ -40,6 +42,12 @@ public class TableFilter implements ColumnResolver {
 
     private static final int BEFORE_FIRST = 0, FOUND = 1, AFTER_LAST = 2, NULL_ROW = 3;
 
+    /**
+     * The minimum number of rows that need to be read (or estimated to be
+     * read) before the actual number of rows is compared with the estimate.
+     */
+    private static final int MIN_ROWS_FEEDBACK = 1000;
+
     /**
      * Whether this is a direct or indirect (nested) outer join
      */
@@ -52,6 +60,8 @@ public class TableFilter implements ColumnResolver {
     private String alias;
     private Index index;
     private int scanCount;
+    private int lookupCount;
+    private double estimatedRows = -1;
     private boolean evaluatable;
 
     /**
@@ -99,6 +109,16 @@ public class TableFilter implements ColumnResolver {
      */
     private TableFilter nestedJoin;
 
+    /**
+     * The number of rows to sample, or null to read all rows.
+     */
+    private Expression sampleSize;
+
+    /**
+     * The sample of the current query, or null if it was not read yet.
+     */
+    private ArrayList<Row> sampleRows;
+
     private ArrayList<Column> naturalJoinColumns;
     private boolean foundOne;
     private Expression fullCondition;
@@ -158,7 +178,8 @@ public class TableFilter implements ColumnResolver {
      */
     public PlanItem getBestPlanItem(Session s, int level) {
         PlanItem item;
-        if (indexConditions.size() == 0) {
+        if (indexConditions.size() == 0 || sampleSize != null) {
+            // a sample is always read using the scan index
             item = new PlanItem();
             item.setIndex(table.getScanIndex(s));
             item.cost = item.getIndex().getCost(s, null, null, null);
@@ -182,6 +203,7 @@ public class TableFilter implements ColumnResolver {
                 sortOrder = select.getSortOrder();
             }
             item = table.getBestPlanItem(s, masks, this, sortOrder);
+            item.rows = getEstimatedRows(s, item.getIndex(), item.cost);
             // The more index conditions, the earlier the table.
             // This is to ensure joins without indexes run quickly:
             // x (x.a=10); y (x.b=y.b) - see issue 113
@@ -204,6 +226,86 @@ public class TableFilter implements ColumnResolver {
         return item;
     }
 
+    /**
+     * Get the cost of reading rows using the given index. If the number of
+     * rows per lookup was observed when executing an earlier version of the
+     * query, the cost is calculated from this number instead of the estimate.
+     *
+     * @param s the session
+     * @param index the index
+     * @param cost the estimated cost
+     * @return the cost
+     */
+    public double getCostFeedback(Session s, Index index, double cost) {
+        HashMap<String, Double> feedback = select == null ? null :
+                select.getRowCountFeedback();
+        if (feedback == null || !(table instanceof TableBase)) {
+            return cost;
+        }
+        Double rows = feedback.get(getFeedbackKey(index));
+        if (rows == null) {
+            return cost;
+        }
+        return (rows + 2) * getCostPerRow(s);
+    }
+
+    /**
+     * Get the estimated number of rows per lookup, calculated from the cost
+     * of the index.
+     *
+     * @param s the session
+     * @param index the index
+     * @param cost the cost
+     * @return the number of rows, or -1 if unknown
+     */
+    private double getEstimatedRows(Session s, Index index, double cost) {
+        if (index.getIndexType().isScan() || !(table instanceof TableBase)) {
+            return -1;
+        }
+        return Math.max(1, cost / getCostPerRow(s) - 2);
+    }
+
+    private double getCostPerRow(Session s) {
+        // the cost of most indexes is proportional to the number of rows that
+        // are read, with the same factor as the cost of the scan index
+        long rowCount = table.getRowCountApproximation() + Constants.COST_ROW_OFFSET;
+        return table.getScanIndex(s).getCost(s, null, null, null) / rowCount;
+    }
+
+    private String getFeedbackKey(Index index) {
+        return getTableAlias() + "." + index.getName();
+    }
+
+    /**
+     * Compare the number of rows that were read per lookup in the last
+     * execution with the estimate. If they differ by more than the given
+     * factor, the actual number is added to the feedback, unless there is
+     * already an entry for this table and index.
+     *
+     * @param feedback the actual number of rows by table alias and index
+     * @param factor the factor
+     * @return true if an entry was added
+     */
+    public boolean addRowCountFeedback(HashMap<String, Double> feedback,
+            int factor) {
+        if (estimatedRows < 0 || lookupCount == 0) {
+            return false;
+        }
+        double rows = (double) Math.max(0, scanCount - lookupCount) / lookupCount;
+        if (Math.max(rows, estimatedRows) * lookupCount < MIN_ROWS_FEEDBACK) {
+            return false;
+        }
+        if (rows <= estimatedRows * factor && rows * factor >= estimatedRows) {
+            return false;
+        }
+        String key = getFeedbackKey(index);
+        if (feedback.containsKey(key)) {
+            return false;
+        }
+        feedback.put(key, rows);
+        return true;
+    }
+
     private void setEvaluatable(TableFilter join) {
         if (session.getDatabase().getSettings().nestedJoins) {
             setEvaluatable(true);
@@ -235,6 +337,7 @@ public class TableFilter implements ColumnResolver {
             return;
         }
         setIndex(item.getIndex());
+        estimatedRows = item.rows;
         if (nestedJoin != null) {
             if (item.getNestedJoinPlan() != null) {
                 nestedJoin.setPlanItem(item.getNestedJoinPlan());
@@ -294,6 +397,8 @@ public class TableFilter implements ColumnResolver {
     public void startQuery(Session s) {
         this.session = s;
         scanCount = 0;
+        lookupCount = 0;
+        sampleRows = null;
         if (nestedJoin != null) {
             nestedJoin.startQuery(s);
         }
@@ -326,6 +431,7 @@ public class TableFilter implements ColumnResolver {
             return false;
         } else if (state == BEFORE_FIRST) {
             cursor.find(session, indexConditions);
+            lookupCount++;
             if (!cursor.isAlwaysFalse()) {
                 if (nestedJoin != null) {
                     nestedJoin.reset();
@@ -485,6 +591,10 @@ public class TableFilter implements ColumnResolver {
         indexConditions.add(condition);
     }
 
+    public ArrayList<IndexCondition> getIndexConditions() {
+        return indexConditions;
+    }
+
     /**
      * Add a filter condition.
      *
@@ -671,6 +781,10 @@ public class TableFilter implements ColumnResolver {
         if (alias != null) {
             buff.append(' ').append(Parser.quoteIdentifier(alias));
         }
+        if (sampleSize != null) {
+            String sample = StringUtils.unEnclose(sampleSize.getSQL());
+            buff.append(" TABLESAMPLE(").append(sample).append(" ROWS)");
+        }
         if (index != null) {
             buff.append('\n');
             StatementBuilder planBuff = new StatementBuilder();
@@ -727,9 +841,44 @@ public class TableFilter implements ColumnResolver {
         return index;
     }
 
+    /**
+     * Only read a random sample of the given number of rows.
+     *
+     * @param sampleSize the number of rows
+     */
+    public void setSampleSize(Expression sampleSize) {
+        this.sampleSize = sampleSize;
+    }
+
+    public Expression getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * Get the random sample of rows. The sample is only read once per query,
+     * so that if this is the inner table of a join, it is not read again for
+     * each row of the outer table, and all rows of the outer table are joined
+     * with the same sample.
+     *
+     * @param s the session
+     * @return the rows
+     */
+    public ArrayList<Row> getSampleRows(Session s) {
+        if (sampleRows == null) {
+            int count = sampleSize.getValue(s).getInt();
+            if (count < 0) {
+                throw DbException.getInvalidValueException("TABLESAMPLE", count);
+            }
+            sampleRows = table.getSampleRows(s, count);
+        }
+        return sampleRows;
+    }
+
     public void setIndex(Index index) {
         this.index = index;
         cursor.setIndex(index);
+        // the estimate is set afterwards if the index is part of a plan
+        estimatedRows = -1;
     }
 
     public void setUsed(boolean used) {
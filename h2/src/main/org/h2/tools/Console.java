@@ -167,6 +167,12 @@ ShutdownHandler {
                     // no parameters
                 } else if ("-tcpSSL".equals(arg)) {
                     // no parameters
+                } else if ("-tcpNio".equals(arg)) {
+                    // no parameters
+                } else if ("-tcpThreads".equals(arg)) {
+                    i++;
+                } else if ("-tcpSessionPool".equals(arg)) {
+                    i++;
                 } else if ("-tcpPort".equals(arg)) {
                     i++;
                 } else if ("-tcpPassword".equals(arg)) {
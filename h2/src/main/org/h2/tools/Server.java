@@ -83,6 +83,12 @@ public class Server extends Tool implements Runnable, ShutdownHandler {
      * <td>The port (default: 9092)</td></tr>
      * <tr><td>[-tcpSSL]</td>
      * <td>Use encrypted (SSL) connections</td></tr>
+     * <tr><td>[-tcpNio]</td>
+     * <td>Use non-blocking I/O with a pool of worker threads</td></tr>
+     * <tr><td>[-tcpThreads &lt;count&gt;]</td>
+     * <td>The number of idle worker threads kept for -tcpNio (default: 32)</td></tr>
+     * <tr><td>[-tcpSessionPool &lt;count&gt;]</td>
+     * <td>Keep up to count closed sessions for re-use</td></tr>
      * <tr><td>[-tcpPassword &lt;pwd&gt;]</td>
      * <td>The password for shutting down a TCP server</td></tr>
      * <tr><td>[-tcpShutdown "&lt;url&gt;"]</td>
@@ -151,6 +157,12 @@ public class Server extends Tool implements Runnable, ShutdownHandler {
                     // no parameters
                 } else if ("-tcpSSL".equals(arg)) {
                     // no parameters
+                } else if ("-tcpNio".equals(arg)) {
+                    // no parameters
+                } else if ("-tcpThreads".equals(arg)) {
+                    i++;
+                } else if ("-tcpSessionPool".equals(arg)) {
+                    i++;
                 } else if ("-tcpPort".equals(arg)) {
                     i++;
                 } else if ("-tcpPassword".equals(arg)) {
@@ -251,6 +263,12 @@ public class Server extends Tool implements Runnable, ShutdownHandler {
                     // no parameters
                 } else if ("-tcpSSL".equals(arg)) {
                     // no parameters
+                } else if ("-tcpNio".equals(arg)) {
+                    // no parameters
+                } else if ("-tcpThreads".equals(arg)) {
+                    i++;
+                } else if ("-tcpSessionPool".equals(arg)) {
+                    i++;
                 } else if ("-tcpPort".equals(arg)) {
                     i++;
                 } else if ("-tcpPassword".equals(arg)) {
@@ -430,7 +448,8 @@ public class Server extends Tool implements Runnable, ShutdownHandler {
      * </pre>
      * Supported options are:
      * -tcpPort, -tcpSSL, -tcpPassword, -tcpAllowOthers, -tcpDaemon,
-     * -trace, -ifExists, -baseDir, -key.
+     * -tcpNio, -tcpThreads, -tcpSessionPool, -trace, -ifExists, -baseDir,
+     * -key.
      * See the main method for details.
      *
      * @param args the argument list
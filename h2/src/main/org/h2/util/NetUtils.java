@@ -14,6 +14,7 @@ import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
 import org.h2.constant.ErrorCode;
 import org.h2.constant.SysProperties;
 import org.h2.message.DbException;
@@ -161,6 +162,40 @@ public class NetUtils {
         }
     }
 
+    /**
+     * Create a server socket that is backed by a server socket channel. The
+     * sockets it accepts can be used with a selector. The system property
+     * h2.bindAddress is used if set.
+     *
+     * @param port the port to listen on
+     * @return the server socket
+     */
+    public static ServerSocket createServerSocketChannel(int port) {
+        try {
+            return createServerSocketChannelTry(port);
+        } catch (Exception e) {
+            // try again
+            return createServerSocketChannelTry(port);
+        }
+    }
+
+    private static ServerSocket createServerSocketChannelTry(int port) {
+        ServerSocketChannel channel = null;
+        try {
+            channel = ServerSocketChannel.open();
+            ServerSocket socket = channel.socket();
+            socket.bind(new InetSocketAddress(getBindAddress(), port));
+            return socket;
+        } catch (BindException be) {
+            IOUtils.closeSilently(channel);
+            throw DbException.get(ErrorCode.EXCEPTION_OPENING_PORT_2,
+                    be, "" + port, be.toString());
+        } catch (IOException e) {
+            IOUtils.closeSilently(channel);
+            throw DbException.convertIOException(e, "port: " + port);
+        }
+    }
+
     /**
      * Get the bind address if the system property h2.bindAddress is set, or
      * null if not.
@@ -0,0 +1,529 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.util;
+
+import org.h2.message.DbException;
+import org.h2.value.Value;
+import org.h2.value.ValueNull;
+
+/**
+ * A hash map from a key of type Value to one or more row keys, as used by the
+ * in-memory hash indexes. Unlike a ValueHashMap, no objects are allocated per
+ * entry: the keys are kept in a primitive array if the data type allows it
+ * (INT, BIGINT, and similar types are stored as long values, VARCHAR as
+ * strings), and the row keys are kept in a long array. If there are multiple
+ * row keys for the same key, they are stored in a separate long array (the
+ * run) for this slot, and the row key field of the slot contains the number of
+ * row keys. The NULL key uses the additional slot at the end of the arrays.
+ */
+public abstract class RowKeyHashMap extends HashBase {
+
+    private static final byte USED = 1, DELETED = 2;
+
+    /**
+     * The state of each slot: empty (0), used, or deleted.
+     */
+    private byte[] states;
+
+    /**
+     * The row key of each slot, or the number of row keys if there is a run.
+     */
+    private long[] rowKeys;
+
+    /**
+     * The row keys of each slot that has more than one row key, or null if
+     * there is no such slot.
+     */
+    private long[][] runs;
+
+    /**
+     * Create a new map for keys of the given data type.
+     *
+     * @param type the data type
+     * @return the map
+     */
+    public static RowKeyHashMap newInstance(int type) {
+        switch (type) {
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+            return new LongKeys();
+        case Value.STRING:
+            return new StringKeys();
+        default:
+            return new ValueKeys();
+        }
+    }
+
+    @Override
+    protected void reset(int newLevel) {
+        super.reset(newLevel);
+        // one more slot for the NULL key
+        states = new byte[len + 1];
+        rowKeys = new long[len + 1];
+        runs = null;
+        zeroKey = false;
+        resetKeys(len + 1);
+    }
+
+    @Override
+    protected void rehash(int newLevel) {
+        byte[] oldStates = states;
+        long[] oldRowKeys = rowKeys;
+        long[][] oldRuns = runs;
+        Object oldKeys = getKeys();
+        boolean nullKey = zeroKey;
+        reset(newLevel);
+        int nullIndex = oldStates.length - 1;
+        for (int i = 0; i < nullIndex; i++) {
+            if (oldStates[i] != USED) {
+                continue;
+            }
+            int index = getIndex(hashCode(oldKeys, i));
+            int plus = 1;
+            while (states[index] != 0) {
+                index = (index + plus++) & mask;
+            }
+            states[index] = USED;
+            moveKey(oldKeys, i, index);
+            copy(oldRowKeys, oldRuns, i, index);
+            size++;
+        }
+        if (nullKey) {
+            zeroKey = true;
+            states[len] = USED;
+            copy(oldRowKeys, oldRuns, nullIndex, len);
+        }
+    }
+
+    private void copy(long[] oldRowKeys, long[][] oldRuns, int oldIndex,
+            int index) {
+        rowKeys[index] = oldRowKeys[oldIndex];
+        if (oldRuns != null && oldRuns[oldIndex] != null) {
+            setRun(index, oldRuns[oldIndex]);
+        }
+    }
+
+    private void setRun(int index, long[] run) {
+        if (runs == null) {
+            if (run == null) {
+                return;
+            }
+            runs = new long[len + 1][];
+        }
+        runs[index] = run;
+    }
+
+    private long[] getRun(int index) {
+        return runs == null ? null : runs[index];
+    }
+
+    /**
+     * Get the slot of the given key.
+     *
+     * @param key the key
+     * @return the slot, or -1 if not found
+     */
+    private int find(Value key) {
+        if (key == ValueNull.INSTANCE) {
+            return zeroKey ? len : -1;
+        }
+        int index = getIndex(hashCode(key));
+        int plus = 1;
+        do {
+            byte s = states[index];
+            if (s == 0) {
+                // found an empty record
+                return -1;
+            } else if (s == USED && equals(index, key)) {
+                return index;
+            }
+            index = (index + plus++) & mask;
+        } while (plus <= len);
+        return -1;
+    }
+
+    /**
+     * Check whether the map contains the given key.
+     *
+     * @param key the key
+     * @return true if it does
+     */
+    public boolean containsKey(Value key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Get the row keys for the given key, in the order they were added.
+     *
+     * @param key the key
+     * @return a new array with the row keys, or null if not found
+     */
+    public long[] get(Value key) {
+        int index = find(key);
+        if (index < 0) {
+            return null;
+        }
+        long[] run = getRun(index);
+        if (run == null) {
+            return new long[] { rowKeys[index] };
+        }
+        int count = (int) rowKeys[index];
+        long[] result = new long[count];
+        System.arraycopy(run, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * Add a row key for the given key. If the key already exists, the row key
+     * is appended to the existing row keys.
+     *
+     * @param key the key
+     * @param rowKey the row key
+     */
+    public void add(Value key, long rowKey) {
+        if (key == ValueNull.INSTANCE) {
+            if (zeroKey) {
+                append(len, rowKey);
+            } else {
+                zeroKey = true;
+                states[len] = USED;
+                rowKeys[len] = rowKey;
+            }
+            return;
+        }
+        checkSizePut();
+        int index = getIndex(hashCode(key));
+        int plus = 1;
+        int deleted = -1;
+        do {
+            byte s = states[index];
+            if (s == 0) {
+                // found an empty record
+                if (deleted >= 0) {
+                    index = deleted;
+                    deletedCount--;
+                }
+                size++;
+                states[index] = USED;
+                setKey(index, key);
+                rowKeys[index] = rowKey;
+                return;
+            } else if (s == DELETED) {
+                // found a deleted record
+                if (deleted < 0) {
+                    deleted = index;
+                }
+            } else if (equals(index, key)) {
+                append(index, rowKey);
+                return;
+            }
+            index = (index + plus++) & mask;
+        } while (plus <= len);
+        // no space
+        DbException.throwInternalError("hashmap is full");
+    }
+
+    private void append(int index, long rowKey) {
+        long[] run = getRun(index);
+        if (run == null) {
+            run = new long[4];
+            run[0] = rowKeys[index];
+            run[1] = rowKey;
+            rowKeys[index] = 2;
+            setRun(index, run);
+            return;
+        }
+        int count = (int) rowKeys[index];
+        if (count == run.length) {
+            long[] r = new long[count * 2];
+            System.arraycopy(run, 0, r, 0, count);
+            run = r;
+            runs[index] = run;
+        }
+        run[count] = rowKey;
+        rowKeys[index] = count + 1;
+    }
+
+    /**
+     * Remove the given row key for the given key. If it was the last row key
+     * of this key, the key is removed as well.
+     *
+     * @param key the key
+     * @param rowKey the row key
+     * @return true if the row key was found
+     */
+    public boolean remove(Value key, long rowKey) {
+        int index = find(key);
+        if (index < 0) {
+            return false;
+        }
+        long[] run = getRun(index);
+        if (run == null) {
+            if (rowKeys[index] != rowKey) {
+                return false;
+            }
+            if (index == len) {
+                zeroKey = false;
+                states[index] = 0;
+            } else {
+                states[index] = DELETED;
+                clearKey(index);
+                deletedCount++;
+                size--;
+                checkSizeRemove();
+            }
+            return true;
+        }
+        int count = (int) rowKeys[index];
+        int i = 0;
+        while (i < count && run[i] != rowKey) {
+            i++;
+        }
+        if (i == count) {
+            return false;
+        }
+        System.arraycopy(run, i + 1, run, i, count - i - 1);
+        count--;
+        if (count == 1) {
+            rowKeys[index] = run[0];
+            runs[index] = null;
+        } else {
+            rowKeys[index] = count;
+            if (count * 4 < run.length) {
+                long[] r = new long[count * 2];
+                System.arraycopy(run, 0, r, 0, count);
+                runs[index] = r;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Allocate the key array.
+     *
+     * @param length the number of slots
+     */
+    protected abstract void resetKeys(int length);
+
+    /**
+     * Get the key array.
+     *
+     * @return the key array
+     */
+    protected abstract Object getKeys();
+
+    /**
+     * Calculate the hash code of the given key.
+     *
+     * @param key the key (not NULL)
+     * @return the hash code
+     */
+    protected abstract int hashCode(Value key);
+
+    /**
+     * Calculate the hash code of the key at the given slot of an old key
+     * array. The hash code must be the same as the hash code of the key as a
+     * value.
+     *
+     * @param keys the old key array
+     * @param index the slot
+     * @return the hash code
+     */
+    protected abstract int hashCode(Object keys, int index);
+
+    /**
+     * Check whether the key at the given slot is equal to the given key.
+     *
+     * @param index the slot
+     * @param key the key
+     * @return true if they are equal
+     */
+    protected abstract boolean equals(int index, Value key);
+
+    /**
+     * Store the key at the given slot.
+     *
+     * @param index the slot
+     * @param key the key
+     */
+    protected abstract void setKey(int index, Value key);
+
+    /**
+     * Copy the key at the given slot of an old key array to a slot of the
+     * current key array.
+     *
+     * @param keys the old key array
+     * @param oldIndex the slot in the old key array
+     * @param index the slot in the current key array
+     */
+    protected abstract void moveKey(Object keys, int oldIndex, int index);
+
+    /**
+     * Clear the key at the given slot, so that it can be garbage collected.
+     *
+     * @param index the slot
+     */
+    protected abstract void clearKey(int index);
+
+    /**
+     * A map with keys that can be represented as a long value.
+     */
+    static class LongKeys extends RowKeyHashMap {
+
+        private long[] keys;
+
+        @Override
+        protected void resetKeys(int length) {
+            keys = new long[length];
+        }
+
+        @Override
+        protected Object getKeys() {
+            return keys;
+        }
+
+        private static int hash(long x) {
+            int h = (int) (x ^ (x >>> 32));
+            // spread the bits, as only the low bits are used
+            h ^= h >>> 16;
+            h *= 0x45d9f3b;
+            return h ^ (h >>> 16);
+        }
+
+        @Override
+        protected int hashCode(Value key) {
+            return hash(key.getLong());
+        }
+
+        @Override
+        protected int hashCode(Object k, int index) {
+            return hash(((long[]) k)[index]);
+        }
+
+        @Override
+        protected boolean equals(int index, Value key) {
+            return keys[index] == key.getLong();
+        }
+
+        @Override
+        protected void setKey(int index, Value key) {
+            keys[index] = key.getLong();
+        }
+
+        @Override
+        protected void moveKey(Object k, int oldIndex, int index) {
+            keys[index] = ((long[]) k)[oldIndex];
+        }
+
+        @Override
+        protected void clearKey(int index) {
+            keys[index] = 0;
+        }
+
+    }
+
+    /**
+     * A map with string keys.
+     */
+    static class StringKeys extends RowKeyHashMap {
+
+        private String[] keys;
+
+        @Override
+        protected void resetKeys(int length) {
+            keys = new String[length];
+        }
+
+        @Override
+        protected Object getKeys() {
+            return keys;
+        }
+
+        @Override
+        protected int hashCode(Value key) {
+            return key.getString().hashCode();
+        }
+
+        @Override
+        protected int hashCode(Object k, int index) {
+            return ((String[]) k)[index].hashCode();
+        }
+
+        @Override
+        protected boolean equals(int index, Value key) {
+            return keys[index].equals(key.getString());
+        }
+
+        @Override
+        protected void setKey(int index, Value key) {
+            keys[index] = key.getString();
+        }
+
+        @Override
+        protected void moveKey(Object k, int oldIndex, int index) {
+            keys[index] = ((String[]) k)[oldIndex];
+        }
+
+        @Override
+        protected void clearKey(int index) {
+            keys[index] = null;
+        }
+
+    }
+
+    /**
+     * A map with keys of any other data type.
+     */
+    static class ValueKeys extends RowKeyHashMap {
+
+        private Value[] keys;
+
+        @Override
+        protected void resetKeys(int length) {
+            keys = new Value[length];
+        }
+
+        @Override
+        protected Object getKeys() {
+            return keys;
+        }
+
+        @Override
+        protected int hashCode(Value key) {
+            return key.hashCode();
+        }
+
+        @Override
+        protected int hashCode(Object k, int index) {
+            return ((Value[]) k)[index].hashCode();
+        }
+
+        @Override
+        protected boolean equals(int index, Value key) {
+            return keys[index].equals(key);
+        }
+
+        @Override
+        protected void setKey(int index, Value key) {
+            keys[index] = key;
+        }
+
+        @Override
+        protected void moveKey(Object k, int oldIndex, int index) {
+            keys[index] = ((Value[]) k)[oldIndex];
+        }
+
+        @Override
+        protected void clearKey(int index) {
+            keys[index] = null;
+        }
+
+    }
+
+}
@@ -13,6 +13,7 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.Reader;
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.sql.Date;
@@ -21,6 +22,8 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Time;
 import java.sql.Timestamp;
+import org.h2.compress.LZFFrameInputStream;
+import org.h2.compress.LZFFrameOutputStream;
 import org.h2.constant.ErrorCode;
 import org.h2.engine.Constants;
 import org.h2.engine.SessionInterface;
@@ -47,6 +50,18 @@ public class Transfer {
     private static final int BUFFER_SIZE = 16 * 1024;
     private static final int LOB_MAGIC = 0x1234;
     private static final int LOB_MAC_SALT_LENGTH = 16;
+    private static final int COMPRESS_MIN_LENGTH = 512;
+
+    /**
+     * A row where each value is written together with its data type.
+     */
+    private static final int ROW_VALUES = 1;
+
+    /**
+     * A row where null values are marked in a bitmap, and the other values
+     * are written without data type, because they have the type of the column.
+     */
+    private static final int ROW_COMPACT = 2;
 
     private Socket socket;
     private DataInputStream in;
@@ -55,6 +70,7 @@ public class Transfer {
     private boolean ssl;
     private int version;
     private byte[] lobMacSalt;
+    private final byte[] varBuffer = new byte[10];
 
     /**
      * Create a new transfer object for the specified session.
@@ -89,6 +105,17 @@ public class Transfer {
         }
     }
 
+    /**
+     * Compress the data that is written from now on, and expand the data that
+     * is read. Both sides of the connection need to switch at the same
+     * position in the stream. Small messages are not compressed.
+     */
+    public synchronized void setCompressed() {
+        in = new DataInputStream(new LZFFrameInputStream(in));
+        out = new DataOutputStream(
+                new LZFFrameOutputStream(out, COMPRESS_MIN_LENGTH));
+    }
+
     /**
      * Write pending changes.
      */
@@ -96,6 +123,16 @@ public class Transfer {
         out.flush();
     }
 
+    /**
+     * Get the number of bytes that can be read without blocking. This includes
+     * the bytes that are already buffered.
+     *
+     * @return the number of bytes
+     */
+    public int available() throws IOException {
+        return in.available();
+    }
+
     /**
      * Write a boolean.
      *
@@ -176,6 +213,68 @@ public class Transfer {
         return in.readLong();
     }
 
+    /**
+     * Write an int in the variable size format. Small positive and negative
+     * values need one byte.
+     *
+     * @param x the value
+     */
+    private void writeVarInt(int x) throws IOException {
+        writeVarLong((long) x);
+    }
+
+    /**
+     * Read an int in the variable size format.
+     *
+     * @return the value
+     */
+    private int readVarInt() throws IOException {
+        int x = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = in.readByte();
+            x |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        return (x >>> 1) ^ -(x & 1);
+    }
+
+    /**
+     * Write a long in the variable size format. Small positive and negative
+     * values need one byte.
+     *
+     * @param x the value
+     */
+    private void writeVarLong(long x) throws IOException {
+        x = (x << 1) ^ (x >> 63);
+        byte[] buff = varBuffer;
+        int len = 0;
+        while ((x & ~0x7f) != 0) {
+            buff[len++] = (byte) (0x80 | (x & 0x7f));
+            x >>>= 7;
+        }
+        buff[len++] = (byte) x;
+        out.write(buff, 0, len);
+    }
+
+    /**
+     * Read a long in the variable size format.
+     *
+     * @return the value
+     */
+    private long readVarLong() throws IOException {
+        long x = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = in.readByte();
+            x |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        return (x >>> 1) ^ -(x & 1);
+    }
+
     /**
      * Write a double.
      *
@@ -336,7 +435,91 @@ public class Transfer {
      */
     public void writeValue(Value v) throws IOException {
         int type = v.getType();
-        writeInt(type);
+        if (version >= Constants.TCP_PROTOCOL_VERSION_18) {
+            writeVarInt(type);
+        } else {
+            writeInt(type);
+        }
+        writeValueData(v, type);
+    }
+
+    /**
+     * Write a row of a result. Starting with protocol version 18, if all
+     * values have the data type of their column or are null, the null values
+     * are marked in a bitmap, and the other values are written without their
+     * data type.
+     *
+     * @param row the row (may contain more values than columns)
+     * @param columnTypes the data types of the columns
+     */
+    public void writeRow(Value[] row, int[] columnTypes) throws IOException {
+        int len = columnTypes.length;
+        boolean compact = version >= Constants.TCP_PROTOCOL_VERSION_18;
+        for (int i = 0; compact && i < len; i++) {
+            int type = row[i].getType();
+            compact = type == columnTypes[i] || type == Value.NULL;
+        }
+        if (!compact) {
+            writeByte((byte) ROW_VALUES);
+            for (int i = 0; i < len; i++) {
+                writeValue(row[i]);
+            }
+            return;
+        }
+        writeByte((byte) ROW_COMPACT);
+        for (int i = 0; i < len; i += 8) {
+            int nulls = 0;
+            for (int j = 0; j < 8 && i + j < len; j++) {
+                if (row[i + j].getType() == Value.NULL) {
+                    nulls |= 1 << j;
+                }
+            }
+            writeByte((byte) nulls);
+        }
+        for (int i = 0; i < len; i++) {
+            Value v = row[i];
+            if (v.getType() != Value.NULL) {
+                writeValueData(v, columnTypes[i]);
+            }
+        }
+    }
+
+    /**
+     * Read a row of a result.
+     *
+     * @param columnTypes the data types of the columns
+     * @return the row, or null if there are no more rows
+     */
+    public Value[] readRow(int[] columnTypes) throws IOException {
+        int format = readByte();
+        if (format == 0) {
+            return null;
+        }
+        int len = columnTypes.length;
+        Value[] row = new Value[len];
+        if (format != ROW_COMPACT) {
+            for (int i = 0; i < len; i++) {
+                row[i] = readValue();
+            }
+            return row;
+        }
+        for (int i = 0; i < len; i += 8) {
+            int nulls = readByte();
+            for (int j = 0; j < 8 && i + j < len; j++) {
+                if ((nulls & (1 << j)) != 0) {
+                    row[i + j] = ValueNull.INSTANCE;
+                }
+            }
+        }
+        for (int i = 0; i < len; i++) {
+            if (row[i] == null) {
+                row[i] = readValueData(columnTypes[i]);
+            }
+        }
+        return row;
+    }
+
+    private void writeValueData(Value v, int type) throws IOException {
         switch (type) {
         case Value.NULL:
             break;
@@ -357,7 +540,9 @@ public class Transfer {
             writeByte(v.getByte());
             break;
         case Value.TIME:
-            if (version >= Constants.TCP_PROTOCOL_VERSION_9) {
+            if (version >= Constants.TCP_PROTOCOL_VERSION_18) {
+                writeVarLong(((ValueTime) v).getNanos());
+            } else if (version >= Constants.TCP_PROTOCOL_VERSION_9) {
                 writeLong(((ValueTime) v).getNanos());
             } else if (version >= Constants.TCP_PROTOCOL_VERSION_7) {
                 writeLong(DateTimeUtils.getTimeLocalWithoutDst(v.getTime()));
@@ -366,7 +551,9 @@ public class Transfer {
             }
             break;
         case Value.DATE:
-            if (version >= Constants.TCP_PROTOCOL_VERSION_9) {
+            if (version >= Constants.TCP_PROTOCOL_VERSION_18) {
+                writeVarLong(((ValueDate) v).getDateValue());
+            } else if (version >= Constants.TCP_PROTOCOL_VERSION_9) {
                 writeLong(((ValueDate) v).getDateValue());
             } else if (version >= Constants.TCP_PROTOCOL_VERSION_7) {
                 writeLong(DateTimeUtils.getTimeLocalWithoutDst(v.getDate()));
@@ -375,7 +562,11 @@ public class Transfer {
             }
             break;
         case Value.TIMESTAMP: {
-            if (version >= Constants.TCP_PROTOCOL_VERSION_9) {
+            if (version >= Constants.TCP_PROTOCOL_VERSION_18) {
+                ValueTimestamp ts = (ValueTimestamp) v;
+                writeVarLong(ts.getDateValue());
+                writeVarLong(ts.getNanos());
+            } else if (version >= Constants.TCP_PROTOCOL_VERSION_9) {
                 ValueTimestamp ts = (ValueTimestamp) v;
                 writeLong(ts.getDateValue());
                 writeLong(ts.getNanos());
@@ -391,7 +582,15 @@ public class Transfer {
             break;
         }
         case Value.DECIMAL:
-            writeString(v.getString());
+            if (version >= Constants.TCP_PROTOCOL_VERSION_18) {
+                BigDecimal x = v.getBigDecimal();
+                writeVarInt(x.scale());
+                byte[] unscaled = x.unscaledValue().toByteArray();
+                writeVarInt(unscaled.length);
+                out.write(unscaled);
+            } else {
+                writeString(v.getString());
+            }
             break;
         case Value.DOUBLE:
             writeDouble(v.getDouble());
@@ -400,13 +599,25 @@ public class Transfer {
             writeFloat(v.getFloat());
             break;
         case Value.INT:
-            writeInt(v.getInt());
+            if (version >= Constants.TCP_PROTOCOL_VERSION_18) {
+                writeVarInt(v.getInt());
+            } else {
+                writeInt(v.getInt());
+            }
             break;
         case Value.LONG:
-            writeLong(v.getLong());
+            if (version >= Constants.TCP_PROTOCOL_VERSION_18) {
+                writeVarLong(v.getLong());
+            } else {
+                writeLong(v.getLong());
+            }
             break;
         case Value.SHORT:
-            writeInt(v.getShort());
+            if (version >= Constants.TCP_PROTOCOL_VERSION_18) {
+                writeVarInt(v.getShort());
+            } else {
+                writeInt(v.getShort());
+            }
             break;
         case Value.STRING:
         case Value.STRING_IGNORECASE:
@@ -532,7 +743,16 @@ public class Transfer {
      * @return the value
      */
     public Value readValue() throws IOException {
-        int type = readInt();
+        int type;
+        if (version >= Constants.TCP_PROTOCOL_VERSION_18) {
+            type = readVarInt();
+        } else {
+            type = readInt();
+        }
+        return readValueData(type);
+    }
+
+    private Value readValueData(int type) throws IOException {
         switch(type) {
         case Value.NULL:
             return ValueNull.INSTANCE;
@@ -547,21 +767,27 @@ public class Transfer {
         case Value.BYTE:
             return ValueByte.get(readByte());
         case Value.DATE:
-            if (version >= Constants.TCP_PROTOCOL_VERSION_9) {
+            if (version >= Constants.TCP_PROTOCOL_VERSION_18) {
+                return ValueDate.fromDateValue(readVarLong());
+            } else if (version >= Constants.TCP_PROTOCOL_VERSION_9) {
                 return ValueDate.fromDateValue(readLong());
             } else if (version >= Constants.TCP_PROTOCOL_VERSION_7) {
                 return ValueDate.get(new Date(DateTimeUtils.getTimeUTCWithoutDst(readLong())));
             }
             return ValueDate.get(new Date(readLong()));
         case Value.TIME:
-            if (version >= Constants.TCP_PROTOCOL_VERSION_9) {
+            if (version >= Constants.TCP_PROTOCOL_VERSION_18) {
+                return ValueTime.fromNanos(readVarLong());
+            } else if (version >= Constants.TCP_PROTOCOL_VERSION_9) {
                 return ValueTime.fromNanos(readLong());
             } else if (version >= Constants.TCP_PROTOCOL_VERSION_7) {
                 return ValueTime.get(new Time(DateTimeUtils.getTimeUTCWithoutDst(readLong())));
             }
             return ValueTime.get(new Time(readLong()));
         case Value.TIMESTAMP: {
-            if (version >= Constants.TCP_PROTOCOL_VERSION_9) {
+            if (version >= Constants.TCP_PROTOCOL_VERSION_18) {
+                return ValueTimestamp.fromDateValueAndNanos(readVarLong(), readVarLong());
+            } else if (version >= Constants.TCP_PROTOCOL_VERSION_9) {
                 return ValueTimestamp.fromDateValueAndNanos(readLong(), readLong());
             } else if (version >= Constants.TCP_PROTOCOL_VERSION_7) {
                 Timestamp ts = new Timestamp(DateTimeUtils.getTimeUTCWithoutDst(readLong()));
@@ -573,16 +799,31 @@ public class Transfer {
             return ValueTimestamp.get(ts);
         }
         case Value.DECIMAL:
+            if (version >= Constants.TCP_PROTOCOL_VERSION_18) {
+                int scale = readVarInt();
+                byte[] unscaled = DataUtils.newBytes(readVarInt());
+                in.readFully(unscaled);
+                return ValueDecimal.get(new BigDecimal(new BigInteger(unscaled), scale));
+            }
             return ValueDecimal.get(new BigDecimal(readString()));
         case Value.DOUBLE:
             return ValueDouble.get(readDouble());
         case Value.FLOAT:
             return ValueFloat.get(readFloat());
         case Value.INT:
+            if (version >= Constants.TCP_PROTOCOL_VERSION_18) {
+                return ValueInt.get(readVarInt());
+            }
             return ValueInt.get(readInt());
         case Value.LONG:
+            if (version >= Constants.TCP_PROTOCOL_VERSION_18) {
+                return ValueLong.get(readVarLong());
+            }
             return ValueLong.get(readLong());
         case Value.SHORT:
+            if (version >= Constants.TCP_PROTOCOL_VERSION_18) {
+                return ValueShort.get((short) readVarInt());
+            }
             return ValueShort.get((short) readInt());
         case Value.STRING:
             return ValueString.get(readString());
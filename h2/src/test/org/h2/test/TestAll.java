@@ -38,6 +38,7 @@ import org.h2.test.db.TestLargeBlob;
 import org.h2.test.db.TestLinkedTable;
 import org.h2.test.db.TestListener;
 import org.h2.test.db.TestLob;
+import org.h2.test.db.TestMemoryIndexBenchmark;
 import org.h2.test.db.TestMemoryUsage;
 import org.h2.test.db.TestMultiConn;
 import org.h2.test.db.TestMultiDimension;
@@ -178,6 +179,7 @@ import org.h2.test.unit.TestPgServer;
 import org.h2.test.unit.TestReader;
 import org.h2.test.unit.TestRecovery;
 import org.h2.test.unit.TestReopen;
+import org.h2.test.unit.TestRowKeyHashMap;
 import org.h2.test.unit.TestSampleApps;
 import org.h2.test.unit.TestScriptReader;
 import org.h2.test.unit.TestSecurity;
@@ -649,6 +651,7 @@ kill -9 `jps -l | grep "org.h2.test." | cut -d " " -f 1`
         new TestLinkedTable().runTest(this);
         new TestListener().runTest(this);
         new TestLob().runTest(this);
+        new TestMemoryIndexBenchmark().runTest(this);
         new TestMemoryUsage().runTest(this);
         new TestMultiConn().runTest(this);
         new TestMultiDimension().runTest(this);
@@ -796,6 +799,7 @@ kill -9 `jps -l | grep "org.h2.test." | cut -d " " -f 1`
         new TestPgServer().runTest(this);
         new TestReader().runTest(this);
         new TestRecovery().runTest(this);
+        new TestRowKeyHashMap().runTest(this);
         new TestSampleApps().runTest(this);
         new TestScriptReader().runTest(this);
         runTest("org.h2.test.unit.TestServlet");
@@ -40,6 +40,7 @@ public class TestBigResult extends TestBase {
         testCloseConnectionDelete();
         testOrderGroup();
         testLimitBufferedResult();
+        testLargeSort();
         deleteDb("bigResult");
     }
 
@@ -202,4 +203,50 @@ public class TestBigResult extends TestBase {
         conn.close();
     }
 
+    private void testLargeSort() throws SQLException {
+        deleteDb("bigResult");
+        Connection conn = getConnection("bigResult;" +
+                "LARGE_RESULT_SORT_THREADS=4;LARGE_RESULT_COMPRESS=TRUE");
+        Statement stat = conn.createStatement();
+        int len = getSize(50000, 200000);
+        stat.execute("SET MAX_MEMORY_ROWS " + (len / 4));
+        stat.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR)");
+        stat.execute("INSERT INTO TEST SELECT X, SPACE(MOD(X, 7)) || X " +
+                "FROM SYSTEM_RANGE(1, " + len + ")");
+        ResultSet rs = stat.executeQuery(
+                "SELECT ID, NAME FROM TEST ORDER BY MOD(ID * 7919, " + len + "), ID");
+        int count = 0;
+        long last = -1;
+        while (rs.next()) {
+            int id = rs.getInt(1);
+            long key = (long) id * 7919 % len;
+            assertTrue(key >= last);
+            last = key;
+            assertEquals(id, Integer.parseInt(rs.getString(2).trim()));
+            count++;
+        }
+        assertEquals(len, count);
+        rs = stat.executeQuery("SELECT ID FROM TEST ORDER BY ID DESC");
+        for (int i = len; i > 0; i--) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+        }
+        assertFalse(rs.next());
+        // LOBs are compared using the session, so they are not sorted in
+        // other threads
+        len = 20000;
+        stat.execute("SET MAX_MEMORY_ROWS " + (len / 2));
+        stat.execute("CREATE TABLE TEST_CLOB(ID INT PRIMARY KEY, DATA CLOB)");
+        stat.execute("INSERT INTO TEST_CLOB SELECT X, REPEAT(" +
+                "CAST(MOD(X * 7919, " + len + ") + 100000000 AS VARCHAR), 20) " +
+                "FROM SYSTEM_RANGE(1, " + len + ")");
+        rs = stat.executeQuery("SELECT ID FROM TEST_CLOB ORDER BY DATA");
+        for (int i = 0; i < len; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, (long) rs.getInt(1) * 7919 % len);
+        }
+        assertFalse(rs.next());
+        conn.close();
+    }
+
 }
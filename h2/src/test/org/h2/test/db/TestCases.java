@@ -40,6 +40,8 @@ public class TestCases extends TestBase {
     @Override
     public void test() throws Exception {
         testReferenceableIndexUsage();
+        testMultiRowInsert();
+        testMultiRowInsertConstraint();
         testClearSyntaxException();
         testEmptyStatements();
         testViewParameters();
@@ -118,6 +120,96 @@ public class TestCases extends TestBase {
         conn.close();
     }
 
+    private void testMultiRowInsert() throws SQLException {
+        deleteDb("cases");
+        Connection conn = getConnection("cases");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, name varchar, " +
+                "value int unique)");
+        stat.execute("create index idx_name on test(name)");
+        stat.execute("insert into test values(3, 'c', 30), (1, 'a', 10), " +
+                "(2, 'b', 20)");
+        // the statement is atomic
+        assertThrows(ErrorCode.DUPLICATE_KEY_1, stat).
+                execute("insert into test values(5, 'e', 50), (4, 'd', 20)");
+        ResultSet rs = stat.executeQuery("select count(*) from test");
+        rs.next();
+        assertEquals(3, rs.getInt(1));
+        // more rows than fit in one batch
+        stat.execute("insert into test select x, 'n' || (3000 - x), x * 10 " +
+                "from system_range(4, 2500)");
+        rs = stat.executeQuery("select count(*) from test where name > 'n'");
+        rs.next();
+        assertEquals(2497, rs.getInt(1));
+        rs = stat.executeQuery("select id from test where name = 'n1000'");
+        rs.next();
+        assertEquals(2000, rs.getInt(1));
+        // rows with the same key: the second row updates the first
+        stat.execute("merge into test key(id) values(1, 'x', 1), " +
+                "(10000, 'y', 2), (10000, 'z', 3)");
+        rs = stat.executeQuery("select name, value from test " +
+                "where id in(1, 10000) order by id");
+        rs.next();
+        assertEquals("x", rs.getString(1));
+        rs.next();
+        assertEquals("z", rs.getString(1));
+        assertEquals(3, rs.getInt(2));
+        assertFalse(rs.next());
+        // a row can not reference a row that is inserted later
+        stat.execute("create table tree(id int primary key, parent int " +
+                "references tree(id))");
+        assertThrows(ErrorCode.REFERENTIAL_INTEGRITY_VIOLATED_PARENT_MISSING_1,
+                stat).execute("insert into tree values(1, null), (2, 3), " +
+                "(3, 1)");
+        stat.execute("insert into tree values(1, null), (2, 1), (3, 2)");
+        // a check constraint that reads the table sees the previous rows
+        stat.execute("create table limited(id int)");
+        stat.execute("alter table limited add constraint c_limit " +
+                "check ((select count(*) from limited) < 2)");
+        assertThrows(ErrorCode.CHECK_CONSTRAINT_VIOLATED_1, stat).
+                execute("insert into limited values(1), (2), (3)");
+        assertThrows(ErrorCode.CHECK_CONSTRAINT_VIOLATED_1, stat).
+                execute("insert into limited select x from system_range(1, 3)");
+        assertThrows(ErrorCode.CHECK_CONSTRAINT_VIOLATED_1, stat).
+                execute("merge into limited key(id) values(1), (2), (3)");
+        rs = stat.executeQuery("select count(*) from limited");
+        rs.next();
+        assertEquals(0, rs.getInt(1));
+        stat.execute("insert into limited values(1), (2)");
+        stat.execute("drop table test, tree, limited");
+        conn.close();
+    }
+
+    private void testMultiRowInsertConstraint() throws SQLException {
+        for (int i = 0; i < 2; i++) {
+            String name = i == 0 ? "cases" : "casesMV";
+            deleteDb(name);
+            Connection conn = getConnection(name + ";MV_STORE=" + (i == 1));
+            Statement stat = conn.createStatement();
+            stat.execute("create table p(id int primary key)");
+            stat.execute("insert into p values(1), (2), (3)");
+            stat.execute("create table c(id int primary key, " +
+                    "pid int references p(id))");
+            // the foreign key fails in the middle of the batch
+            assertThrows(ErrorCode.REFERENTIAL_INTEGRITY_VIOLATED_PARENT_MISSING_1,
+                    stat).execute("insert into c values(1, 1), (2, 999), " +
+                    "(3, 2), (4, 3)");
+            ResultSet rs = stat.executeQuery("select count(*) from c");
+            rs.next();
+            assertEquals(0, rs.getInt(1));
+            assertThrows(ErrorCode.REFERENTIAL_INTEGRITY_VIOLATED_PARENT_MISSING_1,
+                    stat).execute("merge into c key(id) values(1, 1), " +
+                    "(2, 999), (3, 2), (4, 3)");
+            rs = stat.executeQuery("select count(*) from c");
+            rs.next();
+            assertEquals(0, rs.getInt(1));
+            stat.execute("insert into c values(1, 1), (2, 2), (3, 3)");
+            stat.execute("drop table c, p");
+            conn.close();
+            deleteDb(name);
+        }
+    }
+
     private void testClearSyntaxException() throws SQLException {
         Connection conn = getConnection("cases");
         Statement stat = conn.createStatement();
@@ -41,6 +41,7 @@ public class TestIndex extends TestBase {
         deleteDb("index");
         testIndexTypes();
         testHashIndexOnMemoryTable();
+        testMemoryBtreeIndex();
         testErrorMessage();
         testDuplicateKeyException();
         testNonUniqueHashIndex();
@@ -564,6 +565,85 @@ public class TestIndex extends TestBase {
                 getValue("select count(*) from hash_index_test where id = 1"));
     }
 
+    private void testMemoryBtreeIndex() throws SQLException {
+        deleteDb("index");
+        deleteDb("indexAvl");
+        Connection conn = getConnection("index");
+        Connection connAvl = getConnection("indexAvl;MEMORY_BTREE=FALSE");
+        Statement stat = conn.createStatement();
+        Statement statAvl = connAvl.createStatement();
+        String[] init = {
+                "create memory table test(id int primary key, " +
+                        "a int, b varchar)",
+                "create index idx_ab on test(a, b desc)",
+                "create unique index idx_b on test(b)" };
+        for (String sql : init) {
+            stat.execute(sql);
+            statAvl.execute(sql);
+        }
+        Random r = new Random(1);
+        int len = getSize(1000, 5000);
+        for (int i = 0; i < len; i++) {
+            int x = r.nextInt(1000);
+            String b = r.nextInt(5) == 0 ? "null" : "'" + r.nextInt(3000) + "'";
+            String sql;
+            switch (r.nextInt(8)) {
+            case 0:
+            case 1:
+                sql = "insert into test values(" + x + ", " +
+                        r.nextInt(100) + ", " + b + ")";
+                break;
+            case 2:
+                sql = "insert into test select id + 1000, a + 1, b || 'x' " +
+                        "from test where a between " + (x % 100) +
+                        " and " + (x % 100 + 5);
+                break;
+            case 3:
+                sql = "delete from test where a = " + (x % 100);
+                break;
+            case 4:
+                sql = "update test set a = a + 1 where a >= " + (x % 100);
+                break;
+            case 5:
+                sql = "select id, a, b from test where a between " +
+                        (x % 100) + " and " + (x % 100 + 10) +
+                        " order by a, b desc";
+                break;
+            case 6:
+                sql = "select min(a), max(a), min(b), max(b), count(*) " +
+                        "from test";
+                break;
+            default:
+                sql = "select id from test where b < " + b + " order by b";
+            }
+            String expected = execute(statAvl, sql);
+            assertEquals(sql, expected, execute(stat, sql));
+        }
+        conn.close();
+        connAvl.close();
+        deleteDb("indexAvl");
+    }
+
+    private static String execute(Statement stat, String sql) {
+        try {
+            if (!stat.execute(sql)) {
+                return "update count " + stat.getUpdateCount();
+            }
+            ResultSet rs = stat.getResultSet();
+            StringBuilder buff = new StringBuilder();
+            int columnCount = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                for (int i = 0; i < columnCount; i++) {
+                    buff.append(rs.getString(i + 1)).append(' ');
+                }
+                buff.append('\n');
+            }
+            return buff.toString();
+        } catch (SQLException e) {
+            return "error " + e.getErrorCode();
+        }
+    }
+
     private int getValue(String sql) throws SQLException {
         ResultSet rs = stat.executeQuery(sql);
         rs.next();
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.test.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+import org.h2.test.TestBase;
+import org.h2.util.Task;
+
+/**
+ * Compares the performance and memory usage of the B-tree and the AVL tree
+ * indexes of in-memory tables. The results are only printed, as timings
+ * depend on the machine.
+ */
+public class TestMemoryIndexBenchmark extends TestBase {
+
+    /**
+     * Run just this test.
+     *
+     * @param a ignored
+     */
+    public static void main(String... a) throws Exception {
+        TestBase test = TestBase.createCaller().init();
+        test.config.traceTest = true;
+        test.config.big = true;
+        test.test();
+    }
+
+    @Override
+    public void test() throws SQLException {
+        if (!config.big) {
+            return;
+        }
+        if (config.coverage || config.codeCoverage) {
+            return;
+        }
+        int rowCount = 200000;
+        // warm up
+        test(true, rowCount / 10);
+        test(false, rowCount / 10);
+        testConcurrent(true, rowCount / 10);
+        testConcurrent(false, rowCount / 10);
+        // alternate, and use the best result of each
+        long[] btree = null, avl = null;
+        long concurrentBtree = Long.MAX_VALUE, concurrentAvl = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            btree = min(btree, test(true, rowCount));
+            avl = min(avl, test(false, rowCount));
+            concurrentBtree = Math.min(concurrentBtree,
+                    testConcurrent(true, rowCount));
+            concurrentAvl = Math.min(concurrentAvl,
+                    testConcurrent(false, rowCount));
+        }
+        println("btree " + toString(btree) +
+                ", concurrent: " + concurrentBtree + " ms" +
+                "; avl " + toString(avl) +
+                ", concurrent: " + concurrentAvl + " ms");
+    }
+
+    private static long[] min(long[] a, long[] b) {
+        if (a != null) {
+            for (int i = 0; i < b.length; i++) {
+                b[i] = Math.min(a[i], b[i]);
+            }
+        }
+        return b;
+    }
+
+    private static String toString(long[] result) {
+        return "memory: " + result[0] / 1024 + " KB, insert: " + result[1] +
+                " ms, lookup: " + result[2] + " ms, range: " + result[3] +
+                " ms, delete: " + result[4] + " ms";
+    }
+
+    private long[] test(boolean btree, int rowCount) throws SQLException {
+        Connection conn = getConnection(
+                "jdbc:h2:mem:memoryIndex;MEMORY_BTREE=" + btree);
+        Statement stat = conn.createStatement();
+        stat.execute("create memory table test(id int, data int)");
+        long[] result = new long[5];
+        stat.execute("create index idx_id on test(id)");
+        stat.execute("create index idx_data on test(data)");
+        Random r = new Random(1);
+        PreparedStatement prep = conn.prepareStatement(
+                "insert into test values(?, ?)");
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < rowCount; i++) {
+            prep.setInt(1, i);
+            prep.setInt(2, r.nextInt(rowCount));
+            prep.execute();
+        }
+        result[1] = System.currentTimeMillis() - time;
+        prep = conn.prepareStatement("select data from test where id = ?");
+        time = System.currentTimeMillis();
+        for (int i = 0; i < rowCount; i++) {
+            prep.setInt(1, r.nextInt(rowCount));
+            ResultSet rs = prep.executeQuery();
+            rs.next();
+        }
+        result[2] = System.currentTimeMillis() - time;
+        prep = conn.prepareStatement(
+                "select sum(id) from test where data between ? and ?");
+        time = System.currentTimeMillis();
+        for (int i = 0; i < rowCount / 100; i++) {
+            int x = r.nextInt(rowCount);
+            prep.setInt(1, x);
+            prep.setInt(2, x + 1000);
+            ResultSet rs = prep.executeQuery();
+            rs.next();
+        }
+        result[3] = System.currentTimeMillis() - time;
+        // the memory used by a new index on the column with random values
+        long mem = Math.min(getMemoryUsedBytes(), getMemoryUsedBytes());
+        stat.execute("create index idx_data_2 on test(data)");
+        result[0] = getMemoryUsedBytes() - mem;
+        stat.execute("drop index idx_data_2");
+        prep = conn.prepareStatement("delete from test where id = ?");
+        time = System.currentTimeMillis();
+        for (int i = 0; i < rowCount; i += 2) {
+            prep.setInt(1, i);
+            prep.execute();
+        }
+        result[4] = System.currentTimeMillis() - time;
+        conn.close();
+        return result;
+    }
+
+    /**
+     * Run lookups and range scans in multiple threads, while another thread
+     * updates the indexed column.
+     *
+     * @param btree whether to use the B-tree index
+     * @param rowCount the number of rows
+     * @return the time in milliseconds until all threads are done
+     */
+    private long testConcurrent(boolean btree, final int rowCount)
+            throws SQLException {
+        final String url = "jdbc:h2:mem:memoryIndexConcurrent;" +
+                "MULTI_THREADED=1;LOCK_TIMEOUT=60000;MEMORY_BTREE=" + btree;
+        Connection conn = getConnection(url);
+        Statement stat = conn.createStatement();
+        stat.execute("create memory table test(id int, data int)");
+        stat.execute("create index idx_id on test(id)");
+        stat.execute("create index idx_data on test(data)");
+        stat.execute("insert into test select x, mod(x * 7919, " +
+                rowCount + ") from system_range(0, " + (rowCount - 1) + ")");
+        final int threadCount = 4;
+        Task[] tasks = new Task[threadCount + 1];
+        for (int i = 0; i < threadCount; i++) {
+            final int seed = i;
+            tasks[i] = new Task() {
+                @Override
+                public void call() throws Exception {
+                    Connection c = getConnection(url);
+                    Random r = new Random(seed);
+                    PreparedStatement lookup = c.prepareStatement(
+                            "select data from test where id = ?");
+                    PreparedStatement range = c.prepareStatement(
+                            "select sum(id) from test " +
+                            "where data between ? and ?");
+                    for (int j = 0; j < rowCount / 4; j++) {
+                        lookup.setInt(1, r.nextInt(rowCount));
+                        lookup.executeQuery().next();
+                        if (j % 100 == 0) {
+                            int x = r.nextInt(rowCount);
+                            range.setInt(1, x);
+                            range.setInt(2, x + 1000);
+                            range.executeQuery().next();
+                        }
+                    }
+                    c.close();
+                }
+            };
+        }
+        tasks[threadCount] = new Task() {
+            @Override
+            public void call() throws Exception {
+                Connection c = getConnection(url);
+                Random r = new Random(threadCount);
+                PreparedStatement prep = c.prepareStatement(
+                        "update test set data = ? where id = ?");
+                for (int j = 0; j < rowCount / 20; j++) {
+                    prep.setInt(1, r.nextInt(rowCount));
+                    prep.setInt(2, r.nextInt(rowCount));
+                    prep.execute();
+                }
+                c.close();
+            }
+        };
+        long time = System.currentTimeMillis();
+        for (Task t : tasks) {
+            t.execute();
+        }
+        for (Task t : tasks) {
+            t.get();
+        }
+        time = System.currentTimeMillis() - time;
+        conn.close();
+        return time;
+    }
+
+}
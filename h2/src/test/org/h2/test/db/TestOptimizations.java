@@ -6,6 +6,7 @@
  */
 package org.h2.test.db;
 
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -76,9 +77,606 @@ public class TestOptimizations extends TestBase {
         testMinMaxCountOptimization(false);
         testOrderedIndexes();
         testConvertOrToIn();
+        testCompileConditions();
+        testPlanCache();
+        testResultCache();
+        testResultCacheMVStore();
+        testColumnStatistics();
+        testCorrelatedColumns();
+        testAnalyzeBackground();
+        testAnalyzeBackgroundConcurrentWrite();
+        testTableSample();
+        testJoinOrderManyTables();
+        testReoptimize();
+        testInListRange();
         deleteDb("optimizations");
     }
 
+    private void testAnalyzeBackground() throws Exception {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations;ANALYZE_AUTO=100");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, name varchar)");
+        stat.execute("insert into test select x, 'n' || x " +
+                "from system_range(1, 1000)");
+        // the statistics are updated by a background thread
+        int selectivity = 0;
+        for (int i = 0; i < 100; i++) {
+            ResultSet rs = stat.executeQuery("select selectivity " +
+                    "from information_schema.columns " +
+                    "where table_name = 'TEST' and column_name = 'NAME'");
+            rs.next();
+            selectivity = rs.getInt(1);
+            if (selectivity == 100) {
+                break;
+            }
+            Thread.sleep(50);
+        }
+        assertEquals(100, selectivity);
+        stat.execute("drop table test");
+        conn.close();
+    }
+
+    private void testAnalyzeBackgroundConcurrentWrite() throws Exception {
+        if (config.memory) {
+            return;
+        }
+        deleteDb("optimizations");
+        // a large sample, so that reading it takes some time
+        final String url = "optimizations;MVCC=TRUE;" +
+                "ANALYZE_AUTO=1000;ANALYZE_SAMPLE=10000000";
+        Connection conn = getConnection(url);
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, name varchar)");
+        stat.execute("create index idx_name on test(name)");
+        final int rowCount = 100000;
+        stat.execute("insert into test select -x, 'n' || mod(x, 100) " +
+                "from system_range(1, " + rowCount + ")");
+        int threadCount = 4;
+        final int[] committed = new int[threadCount];
+        Task[] tasks = new Task[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            final int t = i;
+            tasks[i] = new Task() {
+                @Override
+                public void call() throws Exception {
+                    Connection c = getConnection(url);
+                    c.setAutoCommit(false);
+                    PreparedStatement prep = c.prepareStatement(
+                            "insert into test values(?, ?)");
+                    Statement s = c.createStatement();
+                    Random r = new Random(t);
+                    int id = t * 1000000;
+                    while (!stop) {
+                        int start = id;
+                        for (int j = 0; j < 50; j++) {
+                            prep.setInt(1, id++);
+                            prep.setString(2, "n" + r.nextInt(100));
+                            prep.execute();
+                        }
+                        s.execute("update test set name = name || 'x' " +
+                                "where id between " + start + " and " + id);
+                        // change the rows that are read by the analyze
+                        // thread (each thread its own rows)
+                        int deleted = 0;
+                        for (int j = 0; j < 20; j++) {
+                            int x = -(r.nextInt(rowCount / 4) * 4 + t + 1);
+                            if (r.nextBoolean()) {
+                                s.execute("update test set name = " +
+                                        "name || 'yyyyyyyyyy' where id = " + x);
+                            } else {
+                                deleted += s.executeUpdate(
+                                        "delete from test where id = " + x);
+                            }
+                        }
+                        if (r.nextBoolean()) {
+                            c.commit();
+                            committed[t] += 50 - deleted;
+                        } else {
+                            c.rollback();
+                        }
+                    }
+                    c.close();
+                }
+            };
+            tasks[i].execute();
+        }
+        Thread.sleep(2000);
+        int expected = rowCount;
+        for (int i = 0; i < threadCount; i++) {
+            tasks[i].get();
+            expected += committed[i];
+        }
+        ResultSet rs = stat.executeQuery("select count(*) from test");
+        rs.next();
+        assertEquals(expected, rs.getInt(1));
+        stat.execute("drop table test");
+        conn.close();
+    }
+
+    private void testTableSample() throws SQLException {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, name varchar)");
+        stat.execute("insert into test select x, 'n' || x " +
+                "from system_range(1, 1000)");
+        ResultSet rs = stat.executeQuery("select count(*), count(distinct id) " +
+                "from test tablesample(10 rows)");
+        rs.next();
+        assertEquals(10, rs.getInt(1));
+        assertEquals(10, rs.getInt(2));
+        rs = stat.executeQuery("select count(*) from test t tablesample(2000 rows)");
+        rs.next();
+        assertEquals(1000, rs.getInt(1));
+        rs = stat.executeQuery("select count(*) from test tablesample(100 rows) " +
+                "where id > 0");
+        rs.next();
+        assertEquals(100, rs.getInt(1));
+        assertContains(getPlan(stat, "select * from test tablesample(10 rows)"),
+                "TABLESAMPLE(10 ROWS)");
+        // each execution reads a different sample
+        PreparedStatement prep = conn.prepareStatement(
+                "select group_concat(id order by id) from test tablesample(? rows)");
+        prep.setInt(1, 100);
+        rs = prep.executeQuery();
+        rs.next();
+        String first = rs.getString(1);
+        rs = prep.executeQuery();
+        rs.next();
+        assertFalse(first.equals(rs.getString(1)));
+        // the inner table of a join is sampled once
+        rs = stat.executeQuery("select count(*), count(distinct b.id) " +
+                "from test a, test b tablesample(5 rows) where a.id <= 100");
+        rs.next();
+        assertEquals(500, rs.getInt(1));
+        assertEquals(5, rs.getInt(2));
+        stat.execute("create view test_view as " +
+                "select * from test tablesample(5 rows)");
+        rs = stat.executeQuery("select count(*) from test_view");
+        rs.next();
+        assertEquals(5, rs.getInt(1));
+        assertThrows(ErrorCode.INVALID_VALUE_2, stat).
+                executeQuery("select * from test tablesample(-1 rows)");
+        stat.execute("drop view test_view");
+        stat.execute("drop table test");
+        conn.close();
+    }
+
+    private void testJoinOrderManyTables() throws SQLException {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        int count = 12;
+        for (int i = 0; i < count; i++) {
+            stat.execute("create table t" + i + "(id int primary key, next int)");
+            stat.execute("insert into t" + i + " select x, x " +
+                    "from system_range(1, 100)");
+        }
+        // the tables are listed in the reverse order of the best join order
+        StringBuilder buff = new StringBuilder("select count(*) from ");
+        for (int i = count - 1; i >= 0; i--) {
+            buff.append("t").append(i).append(i > 0 ? ", " : " where t0.id = 1");
+        }
+        for (int i = 1; i < count; i++) {
+            buff.append(" and t").append(i - 1).append(".next = t").
+                append(i).append(".id");
+        }
+        String sql = buff.toString();
+        String plan = getPlan(stat, sql);
+        int last = -1;
+        for (int i = 0; i < count; i++) {
+            int pos = plan.indexOf("PUBLIC.T" + i + "\n");
+            assertTrue(plan, pos > last);
+            last = pos;
+        }
+        ResultSet rs = stat.executeQuery(sql);
+        rs.next();
+        assertEquals(1, rs.getInt(1));
+        for (int i = 0; i < count; i++) {
+            stat.execute("drop table t" + i);
+        }
+        conn.close();
+    }
+
+    private void testReoptimize() throws SQLException {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations;ANALYZE_AUTO=0");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, a int, b int)");
+        stat.execute("create index idx_a on test(a)");
+        stat.execute("create index idx_b on test(b)");
+        // without statistics, the optimizer expects few rows with a = 1
+        stat.execute("insert into test select x, 1, x " +
+                "from system_range(1, 10000)");
+        PreparedStatement prep = conn.prepareStatement("explain analyze " +
+                "select * from test where a = 1 and b between 1 and 10");
+        ResultSet rs = prep.executeQuery();
+        rs.next();
+        assertContains(rs.getString(1), "IDX_A");
+        // the actual number of rows is used the next time
+        rs = prep.executeQuery();
+        rs.next();
+        assertContains(rs.getString(1), "IDX_B");
+        stat.execute("drop table test");
+        conn.close();
+    }
+
+    private void testInListRange() throws SQLException {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, a int, b varchar)");
+        stat.execute("create index idx_a on test(a)");
+        stat.execute("create index idx_b on test(b)");
+        stat.execute("insert into test select x, mod(x, 50), " +
+                "case when mod(x, 7) = 0 then null else 'b' || mod(x, 30) end " +
+                "from system_range(1, 1000)");
+        stat.execute("analyze");
+        Random random = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            String column = i % 3 == 0 ? "id" : i % 3 == 1 ? "a" : "b";
+            int range = random.nextBoolean() ? 20 : 2000;
+            StringBuilder buff = new StringBuilder();
+            for (int j = 0, count = 1 + random.nextInt(30); j < count; j++) {
+                if (j > 0) {
+                    buff.append(", ");
+                }
+                int x = random.nextInt(range) - 5;
+                if (random.nextInt(10) == 0) {
+                    buff.append("null");
+                } else if (column.equals("b")) {
+                    buff.append("'b").append(x).append('\'');
+                } else {
+                    buff.append(x);
+                }
+            }
+            String list = buff.toString();
+            String expected = getResult(stat, "select count(*), sum(id) " +
+                    "from test where " + column + " || '' in(" + list + ")");
+            String actual = getResult(stat, "select count(*), sum(id) " +
+                    "from test where " + column + " in(" + list + ")");
+            assertEquals(list, expected, actual);
+        }
+        stat.execute("drop table test");
+        conn.close();
+    }
+
+    private static String getResult(Statement stat, String sql)
+            throws SQLException {
+        ResultSet rs = stat.executeQuery(sql);
+        rs.next();
+        return rs.getString(1) + " " + rs.getString(2);
+    }
+
+    private void testCorrelatedColumns() throws SQLException {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, " +
+                "tenant int, status int, c int)");
+        stat.execute("create index idx_ts on test(tenant, status)");
+        stat.execute("create index idx_c on test(c)");
+        // the status is the same as the tenant
+        stat.execute("insert into test select x, mod(x, 100), mod(x, 100), x " +
+                "from system_range(1, 10000)");
+        stat.execute("analyze");
+        // 100 rows match the tenant and status, but only 80 the range
+        String sql = "select * from test " +
+                "where tenant = 5 and status = 5 and c between 1 and 80";
+        assertContains(getPlan(stat, sql), "IDX_C");
+        if (!config.memory) {
+            conn.close();
+            conn = getConnection("optimizations");
+            stat = conn.createStatement();
+            assertContains(getPlan(stat, sql), "IDX_C");
+            ResultSet rs = stat.executeQuery("select sql from " +
+                    "information_schema.indexes where index_name = 'IDX_TS'");
+            rs.next();
+            assertContains(rs.getString(1), "SELECTIVITY(1, 1)");
+        }
+        stat.execute("drop table test");
+        conn.close();
+    }
+
+    private void testColumnStatistics() throws SQLException {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, a int, b int)");
+        stat.execute("create index idx_a on test(a)");
+        stat.execute("create index idx_b on test(b)");
+        stat.execute("insert into test select x, x, " +
+                "case when x > 9990 then x else 0 end " +
+                "from system_range(1, 10000)");
+        stat.execute("analyze");
+        // the range on b only matches 10 rows
+        String sql = "select * from test where a between 1 and 9000 and b > 5";
+        assertContains(getPlan(stat, sql), "IDX_B");
+        // b = 0 matches almost all rows
+        sql = "select * from test where a = 5000 and b = 0";
+        assertContains(getPlan(stat, sql), "IDX_A");
+        sql = "select * from test where a between 1 and 9000 and b in(0, 2)";
+        assertContains(getPlan(stat, sql), "IDX_A");
+        sql = "select * from test where a > 9995 and b is null";
+        assertContains(getPlan(stat, sql), "IDX_B");
+        ResultSet rs = stat.executeQuery("select count(*) from test " +
+                "where a between 1 and 9000 and b > 5");
+        rs.next();
+        assertEquals(0, rs.getInt(1));
+        if (!config.memory) {
+            conn.close();
+            conn = getConnection("optimizations");
+            stat = conn.createStatement();
+            sql = "select * from test where a between 1 and 9000 and b > 5";
+            assertContains(getPlan(stat, sql), "IDX_B");
+        }
+        // the statistics contain values of the rows
+        String script = getScript(stat, "script");
+        assertContains(script, "STATISTICS");
+        script = getScript(stat, "script nodata");
+        assertFalse(script, script.contains("STATISTICS"));
+        assertFalse(script, script.contains("9995"));
+        stat.execute("drop table test");
+
+        // more distinct values than the histogram aggregate keeps
+        stat.execute("create table test(id int primary key, a int, b int)");
+        stat.execute("create index idx_a on test(a)");
+        stat.execute("create index idx_b on test(b)");
+        stat.execute("insert into test select x, x, x " +
+                "from system_range(1, 30000)");
+        stat.execute("analyze sample_size 0");
+        // 100 rows match the range on a, and 5000 the range on b
+        sql = "select * from test where a < 100 and b > 25000";
+        assertContains(getPlan(stat, sql), "IDX_A");
+        stat.execute("drop table test");
+        conn.close();
+    }
+
+    private static String getScript(Statement stat, String sql)
+            throws SQLException {
+        ResultSet rs = stat.executeQuery(sql);
+        StringBuilder buff = new StringBuilder();
+        while (rs.next()) {
+            buff.append(rs.getString(1)).append('\n');
+        }
+        return buff.toString();
+    }
+
+    private static String getPlan(Statement stat, String sql)
+            throws SQLException {
+        ResultSet rs = stat.executeQuery("explain " + sql);
+        rs.next();
+        return rs.getString(1);
+    }
+
+    private void testResultCache() throws SQLException {
+        if (config.mvcc) {
+            return;
+        }
+        deleteDb("optimizations");
+        String url = "optimizations;RESULT_CACHE_ROWS=1000";
+        Connection conn = getConnection(url);
+        Connection conn2 = getConnection(url);
+        Statement stat = conn.createStatement();
+        Statement stat2 = conn2.createStatement();
+        stat.execute("create table test(id int primary key, name varchar)");
+        stat.execute("insert into test select x, 'n' || x from system_range(1, 100)");
+        stat.execute("create local temporary table temp(id int)");
+        stat2.execute("create local temporary table temp(id int)");
+        stat.execute("insert into temp values(1)");
+        String sql = "select count(*), max(name) from test where id > ?";
+        PreparedStatement prep = conn.prepareStatement(sql);
+        PreparedStatement prep2 = conn2.prepareStatement(sql);
+        long hits = getResultCacheInfo(stat, "HITS");
+        prep.setInt(1, 10);
+        assertEquals(90, getCount(prep));
+        prep2.setInt(1, 10);
+        assertEquals(90, getCount(prep2));
+        assertEquals(hits + 1, getResultCacheInfo(stat, "HITS"));
+        // different parameter values
+        prep2.setInt(1, 20);
+        assertEquals(80, getCount(prep2));
+        assertEquals(hits + 1, getResultCacheInfo(stat, "HITS"));
+        // the entry is invalidated when the table is modified
+        stat.execute("delete from test where id = 50");
+        prep2.setInt(1, 10);
+        assertEquals(89, getCount(prep2));
+        assertEquals(hits + 1, getResultCacheInfo(stat, "HITS"));
+        prep.setInt(1, 10);
+        assertEquals(89, getCount(prep));
+        assertEquals(hits + 2, getResultCacheInfo(stat, "HITS"));
+        // uncommitted changes are not shared
+        conn.setAutoCommit(false);
+        stat.execute("delete from test where id = 60");
+        assertEquals(88, getCount(prep));
+        conn.rollback();
+        conn.setAutoCommit(true);
+        assertEquals(89, getCount(prep2));
+        // local temporary tables are not shared
+        ResultSet rs = stat.executeQuery("select count(*) from temp");
+        rs.next();
+        assertEquals(1, rs.getInt(1));
+        rs = stat2.executeQuery("select count(*) from temp");
+        rs.next();
+        assertEquals(0, rs.getInt(1));
+        // non-deterministic queries are not shared
+        rs = stat.executeQuery("select session_id() from test where id = 1");
+        rs.next();
+        int id = rs.getInt(1);
+        rs = stat2.executeQuery("select session_id() from test where id = 1");
+        rs.next();
+        assertTrue(id != rs.getInt(1));
+        stat.execute("drop table test");
+        conn2.close();
+        conn.close();
+    }
+
+    private void testResultCacheMVStore() throws SQLException {
+        if (config.mvcc || config.memory) {
+            return;
+        }
+        deleteDb("optimizations");
+        String url = "optimizations;MV_STORE=TRUE;RESULT_CACHE_ROWS=1000;" +
+                "LOCK_TIMEOUT=100";
+        Connection conn = getConnection(url);
+        Connection conn2 = getConnection(url);
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key)");
+        stat.execute("insert into test values(1)");
+        String sql = "select count(*) from test";
+        PreparedStatement prep = conn.prepareStatement(sql);
+        PreparedStatement prep2 = conn2.prepareStatement(sql);
+        assertEquals(1, getCount(prep));
+        assertEquals(1, getCount(prep2));
+        // uncommitted changes of an MVStore transaction are not shared
+        conn.setAutoCommit(false);
+        stat.execute("insert into test values(2)");
+        assertEquals(2, getCount(prep));
+        assertThrows(ErrorCode.LOCK_TIMEOUT_1, prep2).executeQuery();
+        conn.commit();
+        assertEquals(2, getCount(prep2));
+        // also not if the other session doesn't need to wait for a lock
+        stat.execute("set lock_mode 0");
+        stat.execute("insert into test values(3)");
+        assertEquals(3, getCount(prep));
+        int count = getCount(prep2);
+        conn.commit();
+        assertEquals(3, getCount(prep2));
+        assertEquals(count, 2);
+        conn.setAutoCommit(true);
+        stat.execute("drop table test");
+        conn2.close();
+        conn.close();
+    }
+
+    private static int getCount(PreparedStatement prep) throws SQLException {
+        ResultSet rs = prep.executeQuery();
+        rs.next();
+        return rs.getInt(1);
+    }
+
+    private static long getResultCacheInfo(Statement stat, String name)
+            throws SQLException {
+        ResultSet rs = stat.executeQuery("select value from " +
+                "information_schema.settings where name = 'info.RESULT_CACHE_" +
+                name + "'");
+        return rs.next() ? rs.getLong(1) : 0;
+    }
+
+    private void testPlanCache() throws SQLException {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Connection conn2 = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        Statement stat2 = conn2.createStatement();
+        stat.execute("create table a(id int primary key, b_id int)");
+        stat.execute("create table b(id int primary key, c_id int)");
+        stat.execute("create table c(id int primary key, name varchar)");
+        stat.execute("insert into a select x, x from system_range(1, 100)");
+        stat.execute("insert into b select x, x from system_range(1, 100)");
+        stat.execute("insert into c select x, 'n' || x from system_range(1, 100)");
+        String sql = "select c.name from a, b, c " +
+                "where a.b_id = b.id and b.c_id = c.id and a.id = 5";
+        long hits = getPlanCacheInfo(stat, "HITS");
+        long misses = getPlanCacheInfo(stat, "MISSES");
+        ResultSet rs = stat.executeQuery("explain " + sql);
+        rs.next();
+        String plan = rs.getString(1);
+        assertEquals(misses + 1, getPlanCacheInfo(stat, "MISSES"));
+        rs = stat2.executeQuery("explain " + sql);
+        rs.next();
+        assertEquals(plan, rs.getString(1));
+        assertEquals(hits + 1, getPlanCacheInfo(stat, "HITS"));
+        rs = stat2.executeQuery(sql);
+        rs.next();
+        assertEquals("n5", rs.getString(1));
+        assertFalse(rs.next());
+        // the cache is cleared when the schema changes
+        stat.execute("create index idx_c_name on c(name)");
+        misses = getPlanCacheInfo(stat, "MISSES");
+        stat2.executeQuery(sql);
+        assertEquals(misses + 1, getPlanCacheInfo(stat, "MISSES"));
+        stat.execute("drop table a, b, c");
+        conn2.close();
+        conn.close();
+    }
+
+    private static long getPlanCacheInfo(Statement stat, String name)
+            throws SQLException {
+        ResultSet rs = stat.executeQuery("select value from " +
+                "information_schema.settings where name = 'info.PLAN_CACHE_" +
+                name + "'");
+        return rs.next() ? rs.getLong(1) : 0;
+    }
+
+    private void testCompileConditions() throws SQLException {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        createCompileConditionsTable(conn.createStatement());
+        String[] conditions = {
+                "x > 5", "x = 3 and name = 'n1'", "x < 2 or x is null",
+                "d >= 10.5 and x <> 7", "x is not null and id < 20",
+                "x in(1, 2) or name > 'n1'", "x > 2.5", "name = 'n1' or d = 3",
+                "x = (select max(x) from test)", "not (x > 3)",
+                "x >= ? and id < 50", "x > ? and id > 0",
+                "name = ? and id > 0", "x = ? or id < 3", "? = ? and id > 0",
+                "d < ? and id > 0"
+        };
+        // the values of the parameters, one array per condition; the
+        // type of a parameter is only known when the query is run
+        Object[][] parameters = {
+                null, null, null, null, null, null, null, null, null, null,
+                { 0, 3, 6 },
+                { new BigDecimal("2.5"), 7, null },
+                { "n1", null, "n2" },
+                { null, new BigDecimal("4.0"), "4" },
+                { 1, null, "a" },
+                { "10.5", new BigDecimal("1E1"), null }
+        };
+        String[] expected = new String[conditions.length];
+        for (int i = 0; i < conditions.length; i++) {
+            expected[i] = getCountAndSum(conn, conditions[i], parameters[i]);
+        }
+        conn.createStatement().execute("drop table test");
+        conn.close();
+        // the setting is only used when the database is opened
+        conn = getConnection("optimizations;COMPILE_CONDITIONS=TRUE");
+        createCompileConditionsTable(conn.createStatement());
+        for (int i = 0; i < conditions.length; i++) {
+            assertEquals(conditions[i], expected[i],
+                    getCountAndSum(conn, conditions[i], parameters[i]));
+        }
+        conn.createStatement().execute("drop table test");
+        conn.close();
+    }
+
+    private static void createCompileConditionsTable(Statement stat)
+            throws SQLException {
+        stat.execute("create table test(id int primary key, " +
+                "x bigint, name varchar, d decimal(10, 2))");
+        stat.execute("insert into test select x, " +
+                "case when mod(x, 5) = 0 then null else mod(x, 10) end, " +
+                "'n' || mod(x, 3), x / 4 from system_range(1, 100)");
+    }
+
+    private static String getCountAndSum(Connection conn, String condition,
+            Object[] values) throws SQLException {
+        PreparedStatement prep = conn.prepareStatement(
+                "select count(*), sum(id) from test where " + condition);
+        StringBuilder buff = new StringBuilder();
+        for (int i = 0; i < 3; i++) {
+            int count = prep.getParameterMetaData().getParameterCount();
+            for (int j = 0; j < count; j++) {
+                prep.setObject(j + 1, values[i]);
+            }
+            ResultSet rs = prep.executeQuery();
+            rs.next();
+            buff.append(rs.getString(1)).append(' ').append(rs.getString(2)).append(';');
+        }
+        return buff.toString();
+    }
+
     private void testExplainRoundTrip() throws Exception {
         Connection conn = getConnection("optimizations");
         assertExplainRoundTrip(conn, 
@@ -17,7 +17,9 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
+import org.h2.constant.ErrorCode;
 import org.h2.test.TestBase;
+import org.h2.tools.Server;
 
 /**
  * Test for batch updates.
@@ -66,6 +68,7 @@ public class TestBatchUpdates extends TestBase {
         testRootCause();
         testExecuteCall();
         testException();
+        testRemote();
         testCoffee();
         deleteDb("batchUpdates");
     }
@@ -145,6 +148,58 @@ public class TestBatchUpdates extends TestBase {
         return (int) f;
     }
 
+    private void testRemote() throws SQLException {
+        Server server = Server.createTcpServer().start();
+        try {
+            conn = getConnection("jdbc:h2:tcp://localhost:" +
+                    server.getPort() + "/mem:batchUpdates");
+            stat = conn.createStatement();
+            stat.execute("create table test(id int primary key, name varchar)");
+            stat.execute("insert into test values(5, 'x')");
+            prep = conn.prepareStatement("insert into test values(?, ?)");
+            for (int i = 0; i < 100; i++) {
+                prep.setInt(1, i % 10 == 9 ? 5 : i);
+                prep.setString(2, "Hello " + i);
+                prep.addBatch();
+            }
+            try {
+                prep.executeBatch();
+                fail();
+            } catch (BatchUpdateException e) {
+                int[] updateCounts = e.getUpdateCounts();
+                assertEquals(100, updateCounts.length);
+                for (int i = 0; i < 100; i++) {
+                    assertEquals(i % 10 == 9 || i == 5 ?
+                            Statement.EXECUTE_FAILED : 1, updateCounts[i]);
+                }
+                int count = 0;
+                for (SQLException e2 = e.getNextException(); e2 != null;
+                        e2 = e2.getNextException()) {
+                    assertEquals(ErrorCode.DUPLICATE_KEY_1, e2.getErrorCode());
+                    count++;
+                }
+                assertEquals(11, count);
+            }
+            ResultSet rs = stat.executeQuery("select count(*) from test");
+            rs.next();
+            assertEquals(90, rs.getInt(1));
+            prep = conn.prepareStatement("update test set name = ? where id = ?");
+            prep.setString(1, "World");
+            prep.setInt(2, 1);
+            prep.addBatch();
+            prep.setString(1, "World");
+            prep.setInt(2, 1000);
+            prep.addBatch();
+            int[] updateCounts = prep.executeBatch();
+            assertEquals(1, updateCounts[0]);
+            assertEquals(0, updateCounts[1]);
+            assertEquals(0, prep.executeBatch().length);
+            conn.close();
+        } finally {
+            server.stop();
+        }
+    }
+
     private void testException() throws SQLException {
         deleteDb("batchUpdates");
         conn = getConnection("batchUpdates");
@@ -94,6 +94,7 @@ public class TestPreparedStatement extends TestBase {
         testParameterMetaData(conn);
         conn.close();
         testPreparedStatementWithLiteralsNone();
+        testStatementPool();
         deleteDb("preparedStatement");
     }
 
@@ -1346,6 +1347,85 @@ public class TestPreparedStatement extends TestBase {
         deleteDb("preparedStatement");
     }
 
+    private void testStatementPool() throws SQLException {
+        deleteDb("preparedStatement");
+        Connection conn = getConnection(
+                "preparedStatement;STATEMENT_POOL_SIZE=2");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int)");
+        PreparedStatement prep = conn.prepareStatement("select ? from test");
+        prep.setInt(1, 10);
+        prep.executeQuery().next();
+        prep.close();
+        assertThrows(ErrorCode.OBJECT_CLOSED, prep).executeQuery();
+        // the pooled command is re-used, without the parameter values
+        PreparedStatement prep2 = conn.prepareStatement("select ? from test");
+        assertThrows(ErrorCode.PARAMETER_NOT_SET_1, prep2).executeQuery();
+        // a statement with the same SQL statement that is open at the same
+        // time uses its own command
+        PreparedStatement prep3 = conn.prepareStatement("select ? from test");
+        stat.execute("insert into test values(1)");
+        prep2.setInt(1, 2);
+        prep3.setInt(1, 3);
+        ResultSet rs2 = prep2.executeQuery();
+        ResultSet rs3 = prep3.executeQuery();
+        assertTrue(rs2.next());
+        assertTrue(rs3.next());
+        assertEquals(2, rs2.getInt(1));
+        assertEquals(3, rs3.getInt(1));
+        prep2.close();
+        prep3.close();
+        // pooled commands are re-compiled if required
+        prep = conn.prepareStatement("select * from test");
+        assertEquals(1, prep.getMetaData().getColumnCount());
+        prep.close();
+        stat.execute("alter table test add column name varchar");
+        prep = conn.prepareStatement("select * from test");
+        rs2 = prep.executeQuery();
+        assertEquals(2, rs2.getMetaData().getColumnCount());
+        assertTrue(rs2.next());
+        prep.close();
+        // more statements than the pool size
+        for (int i = 0; i < 10; i++) {
+            prep = conn.prepareStatement("select ? + " + (i % 4) + " from test");
+            prep.setInt(1, i);
+            rs2 = prep.executeQuery();
+            assertTrue(rs2.next());
+            assertEquals(i + i % 4, rs2.getInt(1));
+            prep.close();
+        }
+        prep = conn.prepareStatement("insert into test(id) values(?)");
+        prep.setInt(1, 2);
+        prep.executeUpdate();
+        prep.close();
+        // a LOB parameter that was inserted is kept
+        stat.execute("create table lob(id int, data clob)");
+        String data = new String(new char[10000]).replace('\0', 'x');
+        prep = conn.prepareStatement("insert into lob values(?, ?)");
+        prep.setInt(1, 1);
+        prep.setCharacterStream(2, new StringReader(data), -1);
+        prep.executeUpdate();
+        prep.close();
+        // a LOB parameter that was only used in a query is removed
+        prep = conn.prepareStatement("select length(?) from test");
+        prep.setCharacterStream(1, new StringReader(data), -1);
+        rs2 = prep.executeQuery();
+        assertTrue(rs2.next());
+        assertEquals(10000, rs2.getInt(1));
+        prep.close();
+        if (!config.mvStore && !config.networked) {
+            rs2 = stat.executeQuery("select count(*) " +
+                    "from information_schema.lobs where table = -2");
+            rs2.next();
+            assertEquals(0, rs2.getInt(1));
+        }
+        rs2 = stat.executeQuery("select data from lob");
+        assertTrue(rs2.next());
+        assertEquals(data, rs2.getString(1));
+        conn.close();
+        deleteDb("preparedStatement");
+    }
+
     private void checkBigDecimal(ResultSet rs, String[] value) throws SQLException {
         for (String v : value) {
             assertTrue(rs.next());
@@ -75,6 +75,8 @@ public class TestResultSet extends TestBase {
         testColumnLabelColumnName();
         testAbsolute();
         testFetchSize();
+        testFetchAhead();
+        testRowEncoding();
         testOwnUpdates();
         testUpdatePrimaryKey();
         testFindColumn();
@@ -398,6 +400,111 @@ public class TestResultSet extends TestBase {
         assertEquals(a + 1, b);
     }
 
+    private void testFetchAhead() throws SQLException {
+        // over the network, the next block of rows is requested while the
+        // current block is processed
+        stat.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR)");
+        PreparedStatement prep = conn.prepareStatement(
+                "INSERT INTO TEST VALUES(?, ?)");
+        String big = new String(new char[100000]).replace((char) 0, 'x');
+        for (int fetchSize = 0; fetchSize < 20; fetchSize += 7) {
+            Statement s = conn.createStatement();
+            s.setFetchSize(fetchSize);
+            ResultSet rs = s.executeQuery(
+                    "SELECT X FROM SYSTEM_RANGE(1, 3000)");
+            for (int i = 1; i <= 3000; i++) {
+                assertTrue(rs.next());
+                assertEquals(i, rs.getInt(1));
+                if (i % 500 == 0) {
+                    // other statements while the result is open
+                    prep.setInt(1, i);
+                    prep.setString(2, big);
+                    prep.execute();
+                    ResultSet rs2 = stat.executeQuery(
+                            "SELECT LENGTH(NAME) FROM TEST WHERE ID = " + i);
+                    assertTrue(rs2.next());
+                    assertEquals(big.length(), rs2.getInt(1));
+                    rs2.close();
+                }
+            }
+            assertFalse(rs.next());
+            rs = s.executeQuery("SELECT X FROM SYSTEM_RANGE(1, 3000)");
+            for (int i = 1; i <= 250; i++) {
+                assertTrue(rs.next());
+            }
+            // close while the next block may be on its way
+            rs.close();
+            rs = stat.executeQuery("SELECT COUNT(*) FROM TEST");
+            rs.next();
+            assertEquals(6, rs.getInt(1));
+            stat.execute("DELETE FROM TEST");
+        }
+        stat.execute("DROP TABLE TEST");
+    }
+
+    private void testRowEncoding() throws SQLException {
+        // over the network, null values are sent in a bitmap, and the other
+        // values are sent without data type if they have the column type
+        stat.execute("CREATE TABLE TEST(ID INT, A TINYINT, B SMALLINT, " +
+                "C INT, D BIGINT, E DECIMAL(40, 10), F DECIMAL, G DATE, " +
+                "H TIME, I TIMESTAMP, J VARCHAR)");
+        PreparedStatement prep = conn.prepareStatement(
+                "INSERT INTO TEST VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        Object[][] data = {
+                { 0, (byte) 0, (short) 0, 0, 0L, new BigDecimal("0E-10"),
+                        new BigDecimal("0"), Date.valueOf("2000-01-01"),
+                        Time.valueOf("00:00:00"),
+                        Timestamp.valueOf("2000-01-01 00:00:00.0"), "" },
+                { 1, Byte.MIN_VALUE, Short.MIN_VALUE, Integer.MIN_VALUE,
+                        Long.MIN_VALUE,
+                        new BigDecimal("-123456789012345678901234567890.0123456789"),
+                        new BigDecimal("-1E+30"), Date.valueOf("0001-01-01"),
+                        Time.valueOf("23:59:59"),
+                        Timestamp.valueOf("1900-01-01 12:00:00.000000001"), "x" },
+                { 2, Byte.MAX_VALUE, Short.MAX_VALUE, Integer.MAX_VALUE,
+                        Long.MAX_VALUE, new BigDecimal("1.0000000001"),
+                        new BigDecimal("0.00000000000000000001"),
+                        Date.valueOf("9999-12-31"), Time.valueOf("12:34:56"),
+                        Timestamp.valueOf("2100-12-31 23:59:59.999999999"),
+                        "Hello" } };
+        int columnCount = data[0].length;
+        for (int i = 0; i < 30; i++) {
+            Object[] row = data[i % data.length];
+            prep.setInt(1, i);
+            for (int j = 1; j < columnCount; j++) {
+                prep.setObject(j + 1, (i + j) % 4 == 0 ? null : row[j]);
+            }
+            prep.execute();
+        }
+        ResultSet rs = stat.executeQuery("SELECT * FROM TEST ORDER BY ID");
+        for (int i = 0; i < 30; i++) {
+            assertTrue(rs.next());
+            Object[] row = data[i % data.length];
+            assertEquals(i, rs.getInt(1));
+            for (int j = 1; j < columnCount; j++) {
+                Object o = rs.getObject(j + 1);
+                if ((i + j) % 4 == 0) {
+                    assertTrue(o == null);
+                } else if (o instanceof BigDecimal) {
+                    assertEquals(0, ((BigDecimal) row[j]).compareTo((BigDecimal) o));
+                } else {
+                    assertEquals(row[j].toString(), o.toString());
+                }
+            }
+        }
+        assertFalse(rs.next());
+        stat.execute("DROP TABLE TEST");
+        // a value that doesn't have the data type of the column
+        rs = stat.executeQuery("SELECT ARRAY_GET((1, 'a'), X) " +
+                "FROM SYSTEM_RANGE(1, 2)");
+        assertEquals(Types.VARCHAR, rs.getMetaData().getColumnType(1));
+        rs.next();
+        assertTrue(rs.getObject(1) instanceof Integer);
+        rs.next();
+        assertEquals("a", rs.getString(1));
+        assertFalse(rs.next());
+    }
+
     private void testOwnUpdates() throws SQLException {
         DatabaseMetaData meta = conn.getMetaData();
         for (int i = 0; i < 3; i++) {
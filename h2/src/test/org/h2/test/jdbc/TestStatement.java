@@ -47,6 +47,7 @@ public class TestStatement extends TestBase {
         testSavepoint();
         testConnectionRollback();
         testStatement();
+        testPrepareError();
         testIdentityMerge();
         testIdentity();
         conn.close();
@@ -317,6 +318,29 @@ public class TestStatement extends TestBase {
         stat.close();
     }
 
+    private void testPrepareError() throws SQLException {
+        // over the network, the statements are prepared and executed in the
+        // same round trip
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key)");
+        for (int i = 0; i < 3; i++) {
+            assertThrows(ErrorCode.SYNTAX_ERROR_2, stat).
+                    executeQuery("select * from test where");
+            assertThrows(ErrorCode.TABLE_OR_VIEW_NOT_FOUND_1, stat).
+                    executeUpdate("insert into test_missing values(1)");
+            assertThrows(ErrorCode.PARAMETER_NOT_SET_1, stat).
+                    executeQuery("select * from test where id = ?");
+            assertEquals(1, stat.executeUpdate("insert into test values(" +
+                    i + ")"));
+            assertThrows(ErrorCode.DUPLICATE_KEY_1, stat).
+                    executeUpdate("insert into test values(" + i + ")");
+            ResultSet rs = stat.executeQuery("select count(*) from test");
+            rs.next();
+            assertEquals(i + 1, rs.getInt(1));
+        }
+        stat.execute("drop table test");
+    }
+
     private void testIdentityMerge() throws SQLException {
         Statement stat = conn.createStatement();
         stat.execute("drop table if exists test1");
@@ -51,6 +51,7 @@ public class TestMVTableEngine extends TestBase {
     public void test() throws Exception {
         testGarbageCollectionForLOB();
         testSpatial();
+        testHashIndex();
         testCount();
         testMinMaxWithNull();
         testTimeout();
@@ -131,6 +132,98 @@ public class TestMVTableEngine extends TestBase {
         conn.close();
     }
 
+    private void testHashIndex() throws Exception {
+        FileUtils.deleteRecursive(getBaseDir(), true);
+        Connection conn;
+        Statement stat;
+        ResultSet rs;
+        String url = "mvstore;MV_STORE=TRUE";
+        url = getURL(url, true);
+        conn = getConnection(url);
+        stat = conn.createStatement();
+        stat.execute("create table test(id int, name varchar, value decimal)");
+        // more rows than fit in one buffer when building the index
+        stat.execute("insert into test select x, 'n' || mod(x, 1000), " +
+                "x / 10.0 from system_range(1, 12000)");
+        stat.execute("create unique hash index idx_id on test(id)");
+        stat.execute("create hash index idx_name on test(name)");
+        stat.execute("create hash index idx_value_name on test(value, name)");
+        rs = stat.executeQuery("explain select * from test where id = 5");
+        rs.next();
+        assertContains(rs.getString(1), "IDX_ID: ID = 5");
+        rs = stat.executeQuery("explain select * from test where name = 'n5'");
+        rs.next();
+        assertContains(rs.getString(1), "IDX_NAME: NAME = 'n5'");
+        rs = stat.executeQuery("explain select * from test where id > 5");
+        rs.next();
+        assertContains(rs.getString(1), "tableScan");
+        assertThrows(ErrorCode.DUPLICATE_KEY_1, stat).
+                execute("insert into test values(5, 'x', 0)");
+        stat.execute("insert into test values(null, 'x', 0), (null, 'x', 0)");
+        rs = stat.executeQuery("select count(*) from test where name = 'x'");
+        rs.next();
+        assertEquals(2, rs.getInt(1));
+        stat.execute("delete from test where name = 'x'");
+        conn.close();
+
+        conn = getConnection(url);
+        stat = conn.createStatement();
+        rs = stat.executeQuery("select name from test where id = 1234");
+        assertTrue(rs.next());
+        assertEquals("n234", rs.getString(1));
+        assertFalse(rs.next());
+        rs = stat.executeQuery("select count(*) from test where name = 'n5'");
+        rs.next();
+        assertEquals(12, rs.getInt(1));
+        // the search value is converted to the column type
+        rs = stat.executeQuery("select id from test " +
+                "where value = 1.50 and name = 'n15'");
+        assertTrue(rs.next());
+        assertEquals(15, rs.getInt(1));
+        assertFalse(rs.next());
+        rs = stat.executeQuery("select count(*) from test " +
+                "where id in(1, 2, 3, 20000)");
+        rs.next();
+        assertEquals(3, rs.getInt(1));
+        stat.execute("delete from test where name = 'n5'");
+        rs = stat.executeQuery("select count(*) from test where name = 'n5'");
+        rs.next();
+        assertEquals(0, rs.getInt(1));
+        stat.execute("update test set id = -id where id = 6");
+        rs = stat.executeQuery("select name from test where id = -6");
+        assertTrue(rs.next());
+        assertEquals("n6", rs.getString(1));
+        stat.execute("drop table test");
+        // an IN(..) list can not be used for a multi-column hash index
+        stat.execute("create table test(id int, a int, b int)");
+        stat.execute("create hash index idx_a_b on test(a, b)");
+        stat.execute("insert into test values(1, 1, 5), (2, 2, 5), " +
+                "(3, 3, 5), (4, 0, 6), (5, -1, 5)");
+        rs = stat.executeQuery("explain select count(*) from test " +
+                "where a in(1, 2, -1) and b = 5");
+        rs.next();
+        assertContains(rs.getString(1), "tableScan");
+        rs = stat.executeQuery("select count(*) from test " +
+                "where a in(1, 2, -1) and b = 5");
+        rs.next();
+        assertEquals(3, rs.getInt(1));
+        rs = stat.executeQuery("select count(*) from test " +
+                "where a = 2 and b = 5");
+        rs.next();
+        assertEquals(1, rs.getInt(1));
+        stat.execute("drop table test");
+        // strings that are equal in the collation are found
+        stat.execute("set collation english strength primary");
+        stat.execute("create table test(name varchar)");
+        stat.execute("insert into test values('A')");
+        stat.execute("create hash index idx_name on test(name)");
+        rs = stat.executeQuery("select count(*) from test where name = 'a'");
+        rs.next();
+        assertEquals(1, rs.getInt(1));
+        stat.execute("drop table test");
+        conn.close();
+    }
+
     private void testCount() throws Exception {
         if (config.memory) {
             return;
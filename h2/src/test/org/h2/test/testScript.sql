@@ -28,6 +28,27 @@ select case seq.nextval when 2 then 'two' when 3 then 'three' when 1 then 'one'
 drop sequence seq;
 > ok
 
+create table test(a bigint, b int, c decimal(20, 2)) as select 9223372036854775807, 2147483647, 1.5 from system_range(1, 3);
+> ok
+
+select sum(a), avg(a), sum(b), avg(b), sum(c) from test;
+> SUM(A)               AVG(A)              SUM(B)     AVG(B)     SUM(C)
+> -------------------- ------------------- ---------- ---------- ------
+> 27670116110564327421 9223372036854775807 6442450941 2147483647 4.50
+> rows: 1
+
+insert into test values(-9223372036854775808, -2147483648, null);
+> update count: 1
+
+select sum(a), sum(b), count(c), sum(distinct b) from test;
+> SUM(A)               SUM(B)     COUNT(C) SUM(DISTINCT B)
+> -------------------- ---------- -------- ---------------
+> 18446744073709551613 4294967293 3        -1
+> rows: 1
+
+drop table test;
+> ok
+
 select decode(1, 1, '1', 1, '11') r from dual;
 > R
 > -
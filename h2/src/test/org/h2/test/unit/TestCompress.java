@@ -20,6 +20,8 @@ import java.util.Arrays;
 import java.util.Random;
 import org.h2.compress.CompressLZF;
 import org.h2.compress.Compressor;
+import org.h2.compress.LZFFrameInputStream;
+import org.h2.compress.LZFFrameOutputStream;
 import org.h2.engine.Constants;
 import org.h2.store.fs.FileUtils;
 import org.h2.test.TestBase;
@@ -70,6 +72,7 @@ public class TestCompress extends TestBase {
         }
         test(4000000);
         testVariableEnd();
+        testFrameStreams();
     }
 
     private void testVariableSizeInt() {
@@ -139,6 +142,47 @@ public class TestCompress extends TestBase {
         }
     }
 
+    private void testFrameStreams() throws IOException {
+        Random r = new Random(1);
+        ByteArrayOutputStream buff = new ByteArrayOutputStream();
+        LZFFrameOutputStream out = new LZFFrameOutputStream(buff, 100);
+        // small frames are not compressed
+        out.write(new byte[50]);
+        out.flush();
+        assertEquals(54, buff.size());
+        buff.reset();
+        out.write(new byte[1000]);
+        out.flush();
+        assertSmaller(buff.size(), 100);
+        buff.reset();
+        ArrayList<byte[]> list = New.arrayList();
+        for (int i = 0; i < 100; i++) {
+            byte[] b = new byte[r.nextInt(2) == 0 ? r.nextInt(200) :
+                    r.nextInt(300000)];
+            if (r.nextBoolean()) {
+                r.nextBytes(b);
+            } else {
+                Arrays.fill(b, (byte) i);
+            }
+            list.add(b);
+            out.write(b);
+            if (r.nextBoolean()) {
+                out.flush();
+            }
+        }
+        out.close();
+        LZFFrameInputStream in = new LZFFrameInputStream(
+                new ByteArrayInputStream(buff.toByteArray()));
+        for (byte[] b : list) {
+            byte[] test = new byte[b.length];
+            assertEquals(b.length, IOUtils.readFully(in, test, b.length));
+            assertEquals(b, test);
+        }
+        assertEquals(0, in.available());
+        assertEquals(-1, in.read());
+        in.close();
+    }
+
     private void testDatabase() throws Exception {
         deleteDb("memFS:compress");
         Connection conn = getConnection("memFS:compress");
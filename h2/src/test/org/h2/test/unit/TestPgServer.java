@@ -6,6 +6,14 @@
  */
 package org.h2.test.unit;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
@@ -16,6 +24,8 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
+import java.util.Calendar;
+import java.util.TimeZone;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -47,6 +57,8 @@ public class TestPgServer extends TestBase {
         testKeyAlias();
         testCancelQuery();
         testBinaryTypes();
+        testExtendedQuery();
+        testCopy();
     }
 
     private void testLowerCaseIdentifiers() throws SQLException {
@@ -408,4 +420,397 @@ public class TestPgServer extends TestBase {
             server.stop();
         }
     }
+
+    private void testExtendedQuery() throws Exception {
+        Server server = Server.createPgServer(
+                "-pgPort", "5535", "-pgDaemon", "-key", "test", "mem:test");
+        server.start();
+        try {
+            PgClient c = new PgClient(5535, "test", "sa", "sa");
+            c.query("create table test(id int primary key, b boolean, " +
+                    "s smallint, l bigint, d double, ts timestamp, " +
+                    "dt date, t time, bin binary, name varchar)");
+            c.readUntil('Z');
+            int[] types = { 23, 16, 21, 20, 701, 1114, 1082, 1083, 17, 0 };
+            // 2013-05-06 07:08:09.123456
+            long micros = (utcMillis(2013, 5, 6, 7, 8, 9) -
+                    utcMillis(2000, 1, 1, 0, 0, 0)) * 1000 + 123456;
+            for (int id = 1; id <= 2; id++) {
+                // the second parse re-uses the prepared statement
+                c.parse("insert into test values(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", types);
+                c.writeShort(10);
+                for (int i = 0; i < 9; i++) {
+                    c.writeShort(1);
+                }
+                c.writeShort(0);
+                c.writeShort(10);
+                c.writeParam(id);
+                if (id == 1) {
+                    c.writeInt(1);
+                    c.data.writeByte(1);
+                    c.writeInt(2);
+                    c.writeShort(-2);
+                    c.writeInt(8);
+                    c.data.writeLong(Long.MIN_VALUE);
+                    c.writeInt(8);
+                    c.data.writeDouble(1.5);
+                    c.writeInt(8);
+                    c.data.writeLong(micros);
+                    c.writeInt(4);
+                    c.writeInt(-1);
+                    c.writeInt(8);
+                    c.data.writeLong(3723000001L);
+                    c.writeInt(2);
+                    c.data.write(new byte[] { 1, (byte) 0xff });
+                    c.writeInt(5);
+                    c.data.write("Hello".getBytes("UTF-8"));
+                } else {
+                    for (int i = 0; i < 9; i++) {
+                        c.writeInt(-1);
+                    }
+                }
+                c.writeShort(0);
+                c.send('B');
+                c.execute("");
+                assertEquals('1', c.read());
+                assertEquals('2', c.read());
+                assertEquals('C', c.read());
+                assertEquals("INSERT 0 1", c.readString());
+                assertEquals('Z', c.read());
+            }
+            c.query("select cast(ts as varchar), dt, t from test where id = 1");
+            assertEquals('T', c.read());
+            assertEquals('D', c.read());
+            assertEquals(3, c.readShort());
+            assertEquals("2013-05-06 07:08:09.123456", c.readValue());
+            assertEquals("1999-12-31", c.readValue());
+            assertEquals("01:02:03", c.readValue());
+            c.readUntil('Z');
+
+            c.parse("select * from test order by id", new int[0]);
+            c.writeShort(0);
+            c.writeShort(0);
+            c.writeShort(1);
+            c.writeShort(1);
+            c.send('B');
+            c.writeByte('P');
+            c.writeString("");
+            c.send('D');
+            c.execute("");
+            assertEquals('1', c.read());
+            assertEquals('2', c.read());
+            assertEquals('T', c.read());
+            assertEquals(10, c.readShort());
+            for (int i = 0; i < 10; i++) {
+                c.readString();
+                c.readInt();
+                c.readShort();
+                assertEquals(i == 0 ? 23 : types[i] == 0 ? 1043 : types[i], c.readInt());
+                c.readShort();
+                c.readInt();
+                // the varchar column is sent as text
+                assertEquals(i == 9 ? 0 : 1, c.readShort());
+            }
+            assertEquals('D', c.read());
+            assertEquals(10, c.readShort());
+            assertEquals(4, c.readInt());
+            assertEquals(1, c.readInt());
+            assertEquals(1, c.readInt());
+            assertEquals(1, c.msg.readByte());
+            assertEquals(2, c.readInt());
+            assertEquals(-2, c.readShort());
+            assertEquals(8, c.readInt());
+            assertEquals(Long.MIN_VALUE, c.msg.readLong());
+            assertEquals(8, c.readInt());
+            assertEquals(1.5, c.msg.readDouble());
+            assertEquals(8, c.readInt());
+            assertEquals(micros, c.msg.readLong());
+            assertEquals(4, c.readInt());
+            assertEquals(-1, c.readInt());
+            assertEquals(8, c.readInt());
+            assertEquals(3723000000L, c.msg.readLong());
+            assertEquals(2, c.readInt());
+            assertEquals(1, c.msg.readByte());
+            assertEquals(-1, c.msg.readByte());
+            assertEquals("Hello", c.readValue());
+            assertEquals('D', c.read());
+            assertEquals(10, c.readShort());
+            assertEquals(4, c.readInt());
+            assertEquals(2, c.readInt());
+            for (int i = 1; i < 10; i++) {
+                assertEquals(-1, c.readInt());
+            }
+            assertEquals('C', c.read());
+            assertEquals('Z', c.read());
+            c.close();
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static long utcMillis(int year, int month, int day,
+            int hour, int minute, int second) {
+        Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        cal.clear();
+        cal.set(year, month - 1, day, hour, minute, second);
+        return cal.getTimeInMillis();
+    }
+
+    private void testCopy() throws Exception {
+        Server server = Server.createPgServer(
+                "-pgPort", "5535", "-pgDaemon", "-key", "test", "mem:test");
+        server.start();
+        try {
+            PgClient c = new PgClient(5535, "test", "sa", "sa");
+            c.query("create table test(id int primary key, name varchar, flag boolean)");
+            c.readUntil('Z');
+            c.query("copy test from stdin");
+            assertEquals('G', c.read());
+            assertEquals(0, c.msg.readByte());
+            assertEquals(3, c.readShort());
+            // a row may span multiple messages
+            c.copyData("1\thello\tt\n2\t");
+            c.copyData("a\\tb\\\\c\\nd\tf\n");
+            c.copyData("3\t\\N\t\\N\n");
+            c.send('c');
+            c.flush();
+            assertEquals('C', c.read());
+            assertEquals("COPY 3", c.readString());
+            assertEquals('Z', c.read());
+
+            c.query("copy (select * from test order by id) to stdout;");
+            assertEquals('H', c.read());
+            assertEquals(0, c.msg.readByte());
+            assertEquals(3, c.readShort());
+            assertEquals('d', c.read());
+            assertEquals("1\thello\tt\n", c.readCopyData());
+            assertEquals('d', c.read());
+            assertEquals("2\ta\\tb\\\\c\\nd\tf\n", c.readCopyData());
+            assertEquals('d', c.read());
+            assertEquals("3\t\\N\t\\N\n", c.readCopyData());
+            assertEquals('c', c.read());
+            assertEquals('C', c.read());
+            assertEquals("COPY 3", c.readString());
+            assertEquals('Z', c.read());
+
+            c.query("COPY test(name, id) TO STDOUT");
+            assertEquals('H', c.read());
+            assertEquals(0, c.msg.readByte());
+            assertEquals(2, c.readShort());
+            assertEquals('d', c.read());
+            assertEquals("hello\t1\n", c.readCopyData());
+            c.readUntil('Z');
+
+            // an error aborts the whole copy, the remaining data is ignored
+            c.query("copy test from stdin");
+            assertEquals('G', c.read());
+            c.copyData("4\tx\tt\n");
+            c.copyData("5\ty\n");
+            c.flush();
+            assertEquals('E', c.read());
+            assertEquals('Z', c.read());
+            c.copyData("6\tz\tt\n");
+            c.send('c');
+            c.query("copy test from stdin");
+            assertEquals('G', c.read());
+            c.copyData("4\tx\tt\n");
+            c.writeString("cancelled");
+            c.send('f');
+            c.flush();
+            assertEquals('E', c.read());
+            assertEquals('Z', c.read());
+            // rows are inserted in batches, so a constraint violation is
+            // reported at the end
+            c.query("copy test from stdin");
+            assertEquals('G', c.read());
+            c.copyData("4\tx\tt\n1\ty\tt\n");
+            c.send('c');
+            c.flush();
+            assertEquals('E', c.read());
+            assertEquals('Z', c.read());
+            c.query("select count(*) from test");
+            assertEquals('T', c.read());
+            assertEquals('D', c.read());
+            assertEquals(1, c.readShort());
+            assertEquals("3", c.readValue());
+            c.readUntil('Z');
+
+            // multiple batches
+            c.query("copy test from stdin");
+            assertEquals('G', c.read());
+            for (int i = 10; i < 2510; i++) {
+                c.copyData(i + "\tx\tt\n");
+            }
+            c.send('c');
+            c.flush();
+            assertEquals('C', c.read());
+            assertEquals("COPY 2500", c.readString());
+            assertEquals('Z', c.read());
+            c.query("select count(*) from test");
+            assertEquals('T', c.read());
+            assertEquals('D', c.read());
+            assertEquals(1, c.readShort());
+            assertEquals("2503", c.readValue());
+            c.readUntil('Z');
+
+            c.query("copy test from '/tmp/test.txt'");
+            assertEquals('E', c.read());
+            assertEquals('Z', c.read());
+            c.close();
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * A minimal client for the PostgreSQL protocol, to test messages that are
+     * not available using the JDBC API.
+     */
+    private static class PgClient {
+
+        final ByteArrayOutputStream buff = new ByteArrayOutputStream();
+        final DataOutputStream data = new DataOutputStream(buff);
+        DataInputStream msg;
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        PgClient(int port, String database, String user, String password)
+                throws IOException {
+            socket = new Socket("localhost", port);
+            in = new DataInputStream(new BufferedInputStream(
+                    socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(
+                    socket.getOutputStream()));
+            // protocol version 3.0
+            writeInt(196608);
+            writeString("user");
+            writeString(user);
+            writeString("database");
+            writeString(database);
+            writeByte(0);
+            out.writeInt(buff.size() + 4);
+            buff.writeTo(out);
+            buff.reset();
+            flush();
+            readUntil('R');
+            writeString(password);
+            send('p');
+            flush();
+            readUntil('Z');
+        }
+
+        void writeByte(int x) throws IOException {
+            data.writeByte(x);
+        }
+
+        void writeShort(int x) throws IOException {
+            data.writeShort(x);
+        }
+
+        void writeInt(int x) throws IOException {
+            data.writeInt(x);
+        }
+
+        void writeString(String s) throws IOException {
+            data.write(s.getBytes("UTF-8"));
+            data.write(0);
+        }
+
+        void writeParam(int x) throws IOException {
+            writeInt(4);
+            writeInt(x);
+        }
+
+        void send(int type) throws IOException {
+            out.write(type);
+            out.writeInt(buff.size() + 4);
+            buff.writeTo(out);
+            buff.reset();
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        void query(String sql) throws IOException {
+            writeString(sql);
+            send('Q');
+            flush();
+        }
+
+        void parse(String sql, int[] types) throws IOException {
+            writeString("");
+            writeString(sql);
+            writeShort(types.length);
+            for (int t : types) {
+                writeInt(t);
+            }
+            send('P');
+            // the bind message follows
+            writeString("");
+            writeString("");
+        }
+
+        void execute(String portal) throws IOException {
+            writeString(portal);
+            writeInt(0);
+            send('E');
+            send('S');
+            flush();
+        }
+
+        void copyData(String s) throws IOException {
+            data.write(s.getBytes("UTF-8"));
+            send('d');
+        }
+
+        int read() throws IOException {
+            int type = in.read();
+            byte[] m = new byte[in.readInt() - 4];
+            in.readFully(m);
+            msg = new DataInputStream(new ByteArrayInputStream(m));
+            return type;
+        }
+
+        void readUntil(int type) throws IOException {
+            while (read() != type) {
+                // ignore
+            }
+        }
+
+        int readShort() throws IOException {
+            return msg.readShort();
+        }
+
+        int readInt() throws IOException {
+            return msg.readInt();
+        }
+
+        String readString() throws IOException {
+            ByteArrayOutputStream b = new ByteArrayOutputStream();
+            for (int x; (x = msg.read()) > 0;) {
+                b.write(x);
+            }
+            return new String(b.toByteArray(), "UTF-8");
+        }
+
+        String readValue() throws IOException {
+            byte[] b = new byte[readInt()];
+            msg.readFully(b);
+            return new String(b, "UTF-8");
+        }
+
+        String readCopyData() throws IOException {
+            byte[] b = new byte[msg.available()];
+            msg.readFully(b);
+            return new String(b, "UTF-8");
+        }
+
+        void close() throws IOException {
+            send('X');
+            flush();
+            socket.close();
+        }
+    }
 }
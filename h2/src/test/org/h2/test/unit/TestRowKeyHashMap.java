@@ -0,0 +1,128 @@
+/*
+ * Copyright 2004-2013 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.test.unit;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import org.h2.test.TestBase;
+import org.h2.util.New;
+import org.h2.util.RowKeyHashMap;
+import org.h2.value.Value;
+import org.h2.value.ValueDecimal;
+import org.h2.value.ValueInt;
+import org.h2.value.ValueLong;
+import org.h2.value.ValueNull;
+import org.h2.value.ValueString;
+
+/**
+ * Tests the hash map used by the in-memory hash indexes.
+ */
+public class TestRowKeyHashMap extends TestBase {
+
+    /**
+     * Run just this test.
+     *
+     * @param a ignored
+     */
+    public static void main(String... a) throws Exception {
+        TestBase.createCaller().init().test();
+    }
+
+    @Override
+    public void test() {
+        testZeroAndNull();
+        for (int type : new int[] { Value.INT, Value.LONG, Value.STRING,
+                Value.DECIMAL }) {
+            testRandomized(type, 20);
+            testRandomized(type, 2000);
+        }
+    }
+
+    private void testZeroAndNull() {
+        RowKeyHashMap map = RowKeyHashMap.newInstance(Value.INT);
+        assertFalse(map.containsKey(ValueInt.get(0)));
+        assertFalse(map.containsKey(ValueNull.INSTANCE));
+        map.add(ValueInt.get(0), 10);
+        map.add(ValueNull.INSTANCE, 20);
+        map.add(ValueNull.INSTANCE, 21);
+        assertEquals(2, map.size());
+        assertEquals("[10]", Arrays.toString(map.get(ValueInt.get(0))));
+        assertEquals("[20, 21]", Arrays.toString(map.get(ValueNull.INSTANCE)));
+        // the NULL key must survive a rehash
+        for (int i = 1; i < 1000; i++) {
+            map.add(ValueInt.get(i), i);
+        }
+        assertEquals("[20, 21]", Arrays.toString(map.get(ValueNull.INSTANCE)));
+        assertFalse(map.remove(ValueNull.INSTANCE, 10));
+        assertTrue(map.remove(ValueNull.INSTANCE, 20));
+        assertTrue(map.remove(ValueNull.INSTANCE, 21));
+        assertFalse(map.containsKey(ValueNull.INSTANCE));
+        assertEquals(1000, map.size());
+    }
+
+    private void testRandomized(int type, int range) {
+        RowKeyHashMap map = RowKeyHashMap.newInstance(type);
+        HashMap<Value, ArrayList<Long>> hash = New.hashMap();
+        Random random = new Random(1);
+        long rowKey = 0;
+        for (int i = 0; i < 50000; i++) {
+            Value key = getKey(type, random.nextInt(range));
+            ArrayList<Long> list = hash.get(key);
+            int op = random.nextInt(10);
+            if (op < 4) {
+                map.add(key, rowKey);
+                if (list == null) {
+                    list = New.arrayList();
+                    hash.put(key, list);
+                }
+                list.add(rowKey++);
+            } else if (op < 8) {
+                long r = list == null ? -1 :
+                    list.get(random.nextInt(list.size()));
+                assertEquals(list != null, map.remove(key, r));
+                if (list != null) {
+                    list.remove(r);
+                    if (list.isEmpty()) {
+                        hash.remove(key);
+                    }
+                }
+            } else {
+                long[] a = map.get(key);
+                assertEquals(list != null, map.containsKey(key));
+                if (list == null) {
+                    assertTrue(a == null);
+                } else {
+                    assertEquals(list.size(), a.length);
+                    for (int j = 0; j < a.length; j++) {
+                        assertEquals(list.get(j).longValue(), a[j]);
+                    }
+                }
+            }
+            assertEquals(hash.size(), map.size());
+        }
+    }
+
+    private static Value getKey(int type, int x) {
+        if (x == 0) {
+            return ValueNull.INSTANCE;
+        }
+        switch (type) {
+        case Value.INT:
+            return ValueInt.get(x * 1024);
+        case Value.LONG:
+            return ValueLong.get(((long) x << 32) - x);
+        case Value.STRING:
+            return ValueString.get("k" + x);
+        default:
+            return ValueDecimal.get(BigDecimal.valueOf(x, 2));
+        }
+    }
+
+}
@@ -82,6 +82,10 @@ public class TestTools extends TestBase {
         org.h2.Driver.load();
         testSimpleResultSet();
         testTcpServerWithoutPort();
+        testTcpServerNio();
+        testTcpServerNioBlocked();
+        testNetworkCompression();
+        testTcpSessionPool();
         testConsole();
         testJdbcDriverUtils();
         testWrongServer();
@@ -118,6 +122,179 @@ public class TestTools extends TestBase {
         s1.stop();
     }
 
+    private void testTcpServerNio() throws Exception {
+        Server tcpServer = Server.createTcpServer("-tcpNio", "-tcpThreads",
+                "2", "-tcpPort", "9192").start();
+        int threadCount = Thread.activeCount();
+        String url = "jdbc:h2:tcp://localhost:9192/mem:tcpServerNio";
+        Connection[] list = new Connection[20];
+        for (int i = 0; i < list.length; i++) {
+            list[i] = getConnection(url, "sa", "");
+        }
+        // the connections don't have their own threads
+        assertSmaller(Thread.activeCount(), threadCount + list.length);
+        Statement stat = list[0].createStatement();
+        stat.execute("create table test(id int primary key, name varchar)");
+        for (int i = 0; i < list.length; i++) {
+            PreparedStatement prep = list[i].prepareStatement(
+                    "insert into test values(?, ?)");
+            for (int j = 0; j < 10; j++) {
+                prep.setInt(1, i * 10 + j);
+                prep.setString(2, "Hello " + i);
+                prep.addBatch();
+            }
+            prep.executeBatch();
+        }
+        for (Connection conn : list) {
+            assertThrows(ErrorCode.SYNTAX_ERROR_1, conn.createStatement()).
+                    executeQuery("select * fro test");
+            Statement s = conn.createStatement();
+            s.setFetchSize(7);
+            ResultSet rs = s.executeQuery("select * from test order by id");
+            for (int i = 0; i < list.length * 10; i++) {
+                assertTrue(rs.next());
+                assertEquals(i, rs.getInt(1));
+                assertEquals("Hello " + i / 10, rs.getString(2));
+            }
+            assertFalse(rs.next());
+        }
+        for (Connection conn : list) {
+            conn.close();
+        }
+        tcpServer.stop();
+    }
+
+    private void testTcpServerNioBlocked() throws Exception {
+        Server tcpServer = Server.createTcpServer("-tcpNio", "-tcpThreads",
+                "2", "-tcpPort", "9192").start();
+        final String url = "jdbc:h2:tcp://localhost:9192/" +
+                "mem:tcpServerNioBlocked;LOCK_TIMEOUT=20000";
+        Connection conn = getConnection(url, "sa", "");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, value int)");
+        stat.execute("insert into test values(1, 0)");
+        conn.setAutoCommit(false);
+        stat.execute("update test set value = 1");
+        // more statements wait for the lock than there are worker threads
+        Task[] tasks = new Task[3];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new Task() {
+                @Override
+                public void call() throws Exception {
+                    Connection c = getConnection(url, "sa", "");
+                    c.createStatement().execute(
+                            "update test set value = value + 1");
+                    c.close();
+                }
+            }.execute();
+        }
+        Thread.sleep(500);
+        long time = System.currentTimeMillis();
+        // new connections and the commit don't wait for a worker thread
+        Connection conn2 = getConnection(url, "sa", "");
+        conn.commit();
+        for (Task t : tasks) {
+            t.get();
+        }
+        assertSmaller(System.currentTimeMillis() - time, 10000);
+        ResultSet rs = conn2.createStatement().executeQuery(
+                "select value from test");
+        rs.next();
+        assertEquals(4, rs.getInt(1));
+        conn2.close();
+        conn.close();
+        tcpServer.stop();
+    }
+
+    private void testNetworkCompression() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            Server tcpServer = i == 0 ?
+                    Server.createTcpServer("-tcpPort", "9192") :
+                    Server.createTcpServer("-tcpNio", "-tcpPort", "9192");
+            tcpServer.start();
+            Connection conn = getConnection(
+                    "jdbc:h2:tcp://localhost:9192/mem:compression;" +
+                    "NETWORK_COMPRESSION=TRUE", "sa", "");
+            Statement stat = conn.createStatement();
+            stat.execute("create table test(id int primary key, " +
+                    "name varchar, data clob)");
+            PreparedStatement prep = conn.prepareStatement(
+                    "insert into test values(?, ?, ?)");
+            String data = new String(new char[100000]).replace((char) 0, 'x');
+            for (int j = 0; j < 100; j++) {
+                prep.setInt(1, j);
+                prep.setString(2, "Hello " + j);
+                prep.setString(3, j % 10 == 0 ? data + j : null);
+                prep.execute();
+            }
+            ResultSet rs = stat.executeQuery("select * from test order by id");
+            for (int j = 0; j < 100; j++) {
+                assertTrue(rs.next());
+                assertEquals(j, rs.getInt(1));
+                assertEquals("Hello " + j, rs.getString(2));
+                assertEquals(j % 10 == 0 ? data + j : null, rs.getString(3));
+            }
+            assertFalse(rs.next());
+            conn.close();
+            tcpServer.stop();
+        }
+    }
+
+    private void testTcpSessionPool() throws Exception {
+        Server tcpServer = Server.createTcpServer("-tcpSessionPool", "2",
+                "-tcpPort", "9192").start();
+        String url = "jdbc:h2:tcp://localhost:9192/mem:sessionPool";
+        Connection conn = getConnection(url, "sa", "");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key)");
+        stat.execute("create user test password 'abc'");
+        stat.execute("create schema s");
+        ResultSet rs = stat.executeQuery("call session_id()");
+        rs.next();
+        int id = rs.getInt(1);
+        stat.execute("set @x = 1");
+        stat.execute("set schema s");
+        stat.execute("create local temporary table temp(id int)");
+        conn.setAutoCommit(false);
+        stat.execute("insert into public.test values(1)");
+        conn.close();
+
+        // the session is re-used, but its state is reset
+        conn = getConnection(url, "sa", "");
+        stat = conn.createStatement();
+        rs = stat.executeQuery("call session_id()");
+        rs.next();
+        assertEquals(id, rs.getInt(1));
+        assertTrue(conn.getAutoCommit());
+        rs = stat.executeQuery("call @x");
+        rs.next();
+        assertEquals(null, rs.getString(1));
+        rs = stat.executeQuery("call schema()");
+        rs.next();
+        assertEquals("PUBLIC", rs.getString(1));
+        rs = stat.executeQuery("select count(*) from test");
+        rs.next();
+        assertEquals(0, rs.getInt(1));
+        stat.execute("create local temporary table temp(id int)");
+
+        // pooled sessions are not used for other users or wrong passwords
+        assertThrows(ErrorCode.WRONG_USER_OR_PASSWORD, this).
+                getConnection(url, "sa", "wrong");
+        Connection conn2 = getConnection(url, "test", "abc");
+        rs = conn2.createStatement().executeQuery("call user()");
+        rs.next();
+        assertEquals("TEST", rs.getString(1));
+
+        // the exclusive mode ends when the connection is closed
+        conn.createStatement().execute("set exclusive 1");
+        conn.close();
+        rs = conn2.createStatement().executeQuery("call 1");
+        rs.next();
+        assertEquals(1, rs.getInt(1));
+        conn2.close();
+        tcpServer.stop();
+    }
+
     private void testConsole() throws Exception {
         String old = System.getProperty(SysProperties.H2_BROWSER);
         Console c = new Console();